@@ -5,86 +5,294 @@
 package bna.bnlib;
 
 import bna.bnlib.learning.StructuralConstraints;
-import bna.bnlib.misc.Toolkit;
+import bna.bnlib.misc.IndexedDigraph;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
 
 
 /**
  * Iterator of all possible alteration actions of a BN.
- * The implementation uses Warshall's algorithm and is based on theory
- * of binary relations and topological orderings (see text of the thesis for
- * a detailed explanation).
+ * The implementation is based on theory of binary relations (see text of the
+ * thesis for a detailed explanation): edge (X,Y) can be added iff there is no
+ * path from Y to X and edge (X,Y) can be reversed iff there is no other path
+ * from X to Y than the edge itself.
+ * <p>
+ * The enumerator keeps its own copy of the structure (an IndexedDigraph) with
+ * the set of descendants of each node (as a bitset). When an alteration is taken, the
+ * enumerator can be updated by the apply method, which recomputes only the
+ * descendants and the alterations affected by the changed edge (instead of
+ * creating a new enumerator for the altered network). The alterations are
+ * grouped by their child variable.
  */
 public class AlterationEnumerator implements Iterable<AlterationAction> {
-    private ArrayList<AlterationAction> possibleActions;
-    
-    
+    private Variable[] variables;
+    private HashMap<Variable, Integer> variableIndices;
+    private StructuralConstraints constraints;
+    private int words; // length of each bitset
+    private IndexedDigraph graph;
+    private long[][] descendants; // [node][bitset word]
+    private int[] parentCounts;
+    private ArrayList<AlterationAction>[] actionsByChild;
+    private int actionCount;
+
+
     /**
      * Computes all possible structural alterations that meet given constraints.
      * The alterations are saved within the object to allow repeated iteration.
      */
     public AlterationEnumerator(BayesianNetwork bn, StructuralConstraints constraints) {
-        this.possibleActions = this.determinePossibleActions(bn, constraints);
+        this.constraints = constraints;
+        this.variables = bn.getVariables();
+        final int NODE_COUNT = this.variables.length;
+        this.variableIndices = new HashMap<Variable, Integer>();
+        for(int i = 0 ; i < NODE_COUNT ; i++)
+            this.variableIndices.put(this.variables[i], i);
+        this.words = IndexedDigraph.bitsetLength(NODE_COUNT);
+        this.graph = bn.copyIndexedStructure(); // indexed the same way as the variables
+        this.descendants = new long[NODE_COUNT][this.words];
+        this.parentCounts = new int[NODE_COUNT];
+        for(int j = 0 ; j < NODE_COUNT ; j++)
+            this.parentCounts[j] = this.graph.getInDegree(j);
+        // descendants of a node are known once the descendants of its children are known
+        int[] topsort = this.graph.topologicalSort();
+        if(topsort == null)
+            throw new BNLibIllegalNetworkSpecificationException("Network is not acyclic.");
+        for(int t = NODE_COUNT - 1 ; t >= 0 ; t--)
+            this.recomputeDescendants(topsort[t]);
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayList<AlterationAction>[] actionsByChild = (ArrayList<AlterationAction>[])new ArrayList[NODE_COUNT];
+        this.actionsByChild = actionsByChild;
+        this.actionCount = 0;
+        for(int j = 0 ; j < NODE_COUNT ; j++) {
+            this.actionsByChild[j] = new ArrayList<AlterationAction>();
+            this.determinePossibleActions(j);
+        }
     }
-    
-    private ArrayList<AlterationAction> determinePossibleActions(BayesianNetwork bn, StructuralConstraints constraints) {
-        ArrayList<AlterationAction> actions = new ArrayList<AlterationAction>();
-        Node[] topsort = bn.topologicalSortNodes();
-        final int NODE_COUNT = topsort.length;
-        boolean[][] r = bn.adjacencyMatrix(topsort);
-        boolean[][] rTrans = Toolkit.transitiveClosure(r);
-        
-        for(int i = 0 ; i < NODE_COUNT ; i++) {
-            for(int j = 0 ; j < NODE_COUNT ; j++) {
-                if(i == j)
-                    continue;
-                Variable iVar = topsort[i].getVariable(),
-                         jVar = topsort[j].getVariable();
-                
-                if(r[i][j] == true) {
-                    // edge removal is always possible
-                    actions.add(new AlterationActionRemoveEdge(iVar, jVar));
-                    
-                    // edge reversal has more complicated conditions (please, see thesis for justification)
-                    boolean reversalPossible = constraints.isConnectionAllowed(jVar, iVar)
-                                            && constraints.isOKParentsCount(topsort[i].getParentCount() + 1);
-                    for(int m = i + 1 ; m < j && reversalPossible; m++) {
-                        if(rTrans[i][m] && rTrans[m][j])
-                            reversalPossible = false;
-                    }
-                    if(reversalPossible)
-                        actions.add(new AlterationActionReverseEdge(iVar, jVar));
-                }
-                else {
-                    // edge addition
-                    if(rTrans[j][i] == false) {
-                        boolean additionPossible = constraints.isConnectionAllowed(iVar, jVar)
-                                                && constraints.isOKParentsCount(topsort[j].getParentCount() + 1);
-                        if(additionPossible)
-                            actions.add(new AlterationActionAddEdge(iVar, jVar));
-                    }
+
+    /** Set descendants of the node as union of its children and their descendants. */
+    private void recomputeDescendants(int node) {
+        long[] desc = this.descendants[node];
+        Arrays.fill(desc, 0);
+        long[] nodeChildren = this.graph.getChildren(node);
+        for(int child = IndexedDigraph.nextSetBit(nodeChildren, 0) ; child >= 0 ; child = IndexedDigraph.nextSetBit(nodeChildren, child + 1)) {
+            IndexedDigraph.setBit(desc, child);
+            long[] childDesc = this.descendants[child];
+            for(int w = 0 ; w < this.words ; w++)
+                desc[w] |= childDesc[w];
+        }
+    }
+
+    /** Determine all possible alterations whose child is the given node. */
+    private void determinePossibleActions(int j) {
+        ArrayList<AlterationAction> actions = this.actionsByChild[j];
+        this.actionCount -= actions.size();
+        actions.clear();
+        Variable jVar = this.variables[j];
+        long[] jParents = this.graph.getParents(j);
+        for(int i = 0 ; i < this.variables.length ; i++) {
+            if(i == j)
+                continue;
+            Variable iVar = this.variables[i];
+            if(IndexedDigraph.testBit(jParents, i)) {
+                // edge removal is always possible
+                actions.add(new AlterationActionRemoveEdge(iVar, jVar));
+                // edge reversal has more complicated conditions (please, see thesis for justification)
+                boolean reversalPossible = this.constraints.isConnectionAllowed(jVar, iVar)
+                                        && this.constraints.isOKParentsCount(this.parentCounts[i] + 1)
+                                        && !this.existsIndirectPath(i, j);
+                if(reversalPossible)
+                    actions.add(new AlterationActionReverseEdge(iVar, jVar));
+            }
+            else {
+                // edge addition
+                if(!IndexedDigraph.testBit(this.descendants[j], i)) {
+                    boolean additionPossible = this.constraints.isConnectionAllowed(iVar, jVar)
+                                            && this.constraints.isOKParentsCount(this.parentCounts[j] + 1);
+                    if(additionPossible)
+                        actions.add(new AlterationActionAddEdge(iVar, jVar));
                 }
-                
             }
         }
-        return actions;
+        this.actionCount += actions.size();
+    }
+
+    /** Is there a path from i to j other than the edge (i,j)? */
+    private boolean existsIndirectPath(int i, int j) {
+        long[] iChildren = this.graph.getChildren(i);
+        for(int c = IndexedDigraph.nextSetBit(iChildren, 0) ; c >= 0 ; c = IndexedDigraph.nextSetBit(iChildren, c + 1)) {
+            if(c != j && IndexedDigraph.testBit(this.descendants[c], j))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Update the possible alterations after the given alteration has been applied to the network.
+     * Only the alterations whose conditions might have been affected by the
+     * changed edge(s) are recomputed.
+     * @return Variables whose alterations (see getAlterationsOfChild) have
+     *         been recomputed.
+     * @throws BNLibIllegalStructuralModificationException When the action
+     *         cannot be applied to the structure known by this enumerator.
+     * @throws BNLibIllegalArgumentException When the action is of unknown type.
+     */
+    public Variable[] apply(AlterationAction action) throws BNLibIllegalStructuralModificationException, BNLibIllegalArgumentException {
+        Integer parentIndex = this.variableIndices.get(action.getParentVariable()),
+                childIndex = this.variableIndices.get(action.getChildVariable());
+        if(parentIndex == null || childIndex == null)
+            throw new BNLibIllegalStructuralModificationException("The action concerns a variable not present in the network.");
+        int u = parentIndex, v = childIndex;
+        long[] affectedRows = new long[this.words];
+        if(action instanceof AlterationActionAddEdge)
+            this.addEdge(u, v, affectedRows);
+        else if(action instanceof AlterationActionRemoveEdge)
+            this.removeEdge(u, v, affectedRows);
+        else if(action instanceof AlterationActionReverseEdge) {
+            this.removeEdge(u, v, affectedRows);
+            this.addEdge(v, u, affectedRows);
+        }
+        else
+            throw new BNLibIllegalArgumentException("Unknown action type.");
+        Variable[] affectedVariables = new Variable[IndexedDigraph.cardinality(affectedRows)];
+        int affectedCount = 0;
+        for(int j = IndexedDigraph.nextSetBit(affectedRows, 0) ; j >= 0 ; j = IndexedDigraph.nextSetBit(affectedRows, j + 1)) {
+            this.determinePossibleActions(j);
+            affectedVariables[affectedCount++] = this.variables[j];
+        }
+        return affectedVariables;
+    }
+
+    private void addEdge(int u, int v, long[] affectedRows) throws BNLibIllegalStructuralModificationException {
+        if(this.graph.hasEdge(u, v) || u == v || IndexedDigraph.testBit(this.descendants[v], u))
+            throw new BNLibIllegalStructuralModificationException("The edge cannot be added.");
+        this.graph.addEdge(u, v);
+        this.parentCounts[v]++;
+        // u and all its ancestors gain v and its descendants
+        long[] changedDescendants = new long[this.words];
+        for(int a = 0 ; a < this.variables.length ; a++) {
+            if(a != u && !IndexedDigraph.testBit(this.descendants[a], u))
+                continue;
+            long[] desc = this.descendants[a];
+            long changed = 0;
+            for(int w = 0 ; w < this.words ; w++) {
+                long newWord = desc[w] | this.descendants[v][w];
+                if(w == v >>> 6)
+                    newWord |= 1L << v;
+                changed |= newWord ^ desc[w];
+                desc[w] = newWord;
+            }
+            if(changed != 0)
+                IndexedDigraph.setBit(changedDescendants, a);
+        }
+        this.markAffectedRows(u, v, changedDescendants, affectedRows);
     }
-    
+
+    private void removeEdge(int u, int v, long[] affectedRows) throws BNLibIllegalStructuralModificationException {
+        if(!this.graph.hasEdge(u, v))
+            throw new BNLibIllegalStructuralModificationException("The edge cannot be removed because it doesn't exist.");
+        this.graph.removeEdge(u, v);
+        this.parentCounts[v]--;
+        // descendants of u and all its ancestors may shrink, recompute them
+        // (a node is recomputed only after all its affected children)
+        long[] stale = new long[this.words];
+        for(int a = 0 ; a < this.variables.length ; a++)
+            if(a == u || IndexedDigraph.testBit(this.descendants[a], u))
+                IndexedDigraph.setBit(stale, a);
+        long[] changedDescendants = new long[this.words];
+        for(int a = IndexedDigraph.nextSetBit(stale, 0) ; a >= 0 ; a = IndexedDigraph.nextSetBit(stale, a + 1))
+            this.recomputeStaleDescendants(a, stale, changedDescendants);
+        this.markAffectedRows(u, v, changedDescendants, affectedRows);
+    }
+
+    private void recomputeStaleDescendants(int node, long[] stale, long[] changedDescendants) {
+        if(!IndexedDigraph.testBit(stale, node))
+            return;
+        long[] nodeChildren = this.graph.getChildren(node);
+        for(int child = IndexedDigraph.nextSetBit(nodeChildren, 0) ; child >= 0 ; child = IndexedDigraph.nextSetBit(nodeChildren, child + 1))
+            this.recomputeStaleDescendants(child, stale, changedDescendants);
+        long[] oldDescendants = Arrays.copyOf(this.descendants[node], this.words);
+        this.recomputeDescendants(node);
+        if(!Arrays.equals(oldDescendants, this.descendants[node]))
+            IndexedDigraph.setBit(changedDescendants, node);
+        IndexedDigraph.clearBit(stale, node);
+    }
+
+    /**
+     * Mark rows of alterations that may have changed when edge (u,v) changed.
+     * Addition to a row depends on descendants of its child and on the parent
+     * count of the child. Reversal of (i,j) depends on the parent count of i
+     * and on children of i and their descendants.
+     */
+    private void markAffectedRows(int u, int v, long[] changedDescendants, long[] affectedRows) {
+        IndexedDigraph.setBit(affectedRows, u);
+        IndexedDigraph.setBit(affectedRows, v);
+        long[] uChildren = this.graph.getChildren(u),
+               vChildren = this.graph.getChildren(v);
+        for(int w = 0 ; w < this.words ; w++)
+            affectedRows[w] |= changedDescendants[w] | uChildren[w] | vChildren[w];
+        for(int c = IndexedDigraph.nextSetBit(changedDescendants, 0) ; c >= 0 ; c = IndexedDigraph.nextSetBit(changedDescendants, c + 1)) {
+            long[] cParents = this.graph.getParents(c);
+            for(int p = IndexedDigraph.nextSetBit(cParents, 0) ; p >= 0 ; p = IndexedDigraph.nextSetBit(cParents, p + 1)) {
+                long[] pChildren = this.graph.getChildren(p);
+                for(int w = 0 ; w < this.words ; w++)
+                    affectedRows[w] |= pChildren[w];
+            }
+        }
+    }
+
     @Override
     public Iterator<AlterationAction> iterator() {
-        return this.possibleActions.iterator();
+        return new Iterator<AlterationAction>() {
+            private int row = 0, position = 0;
+
+            @Override
+            public boolean hasNext() {
+                while(this.row < actionsByChild.length && this.position >= actionsByChild[this.row].size()) {
+                    this.row++;
+                    this.position = 0;
+                }
+                return this.row < actionsByChild.length;
+            }
+
+            @Override
+            public AlterationAction next() {
+                if(!this.hasNext())
+                    throw new NoSuchElementException();
+                return actionsByChild[this.row].get(this.position++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("The alterations are read only.");
+            }
+        };
     }
-    
+
+    /** Get all legal alterations (wrt the given constraints) whose child is the given variable. */
+    public List<AlterationAction> getAlterationsOfChild(Variable child) {
+        return Collections.unmodifiableList(this.actionsByChild[this.variableIndices.get(child)]);
+    }
+
     /** Get number of all legal alterations wrt the given constraints. */
     public int getAlterationCount() {
-        return this.possibleActions.size();
+        return this.actionCount;
     }
-    
+
     /** Randomly pick a single legal alteration. */
     public AlterationAction getRandomAlteration(Random rand) {
-        int index = rand.nextInt(this.possibleActions.size());
-        return this.possibleActions.get(index);
+        int index = rand.nextInt(this.actionCount);
+        for(ArrayList<AlterationAction> actions : this.actionsByChild) {
+            if(index < actions.size())
+                return actions.get(index);
+            index -= actions.size();
+        }
+        throw new BNLibInternalException("Inconsistent count of alterations.");
     }
 }
@@ -5,12 +5,12 @@
 package bna.bnlib;
 
 import bna.bnlib.io.*;
-import bna.bnlib.misc.Digraph;
+import bna.bnlib.misc.IndexedDigraph;
 import bna.bnlib.misc.Toolkit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
 
 
@@ -22,6 +22,8 @@ import java.util.List;
  */
 public class BayesianNetwork {
     private Node[] nodes;
+    private HashMap<Variable, Integer> nodeIndices = new HashMap<Variable, Integer>();
+    private IndexedDigraph structure; // edges between indices of the nodes
     
     
     /**
@@ -35,6 +37,13 @@ public class BayesianNetwork {
         this.nodes = new Node[variables.length];
         for(int i = 0 ; i < variables.length ; i++)
             this.nodes[i] = new Node(variables[i]);
+        this.indexNodes();
+    }
+    
+    private void indexNodes() {
+        for(int i = 0 ; i < this.nodes.length ; i++)
+            this.nodeIndices.put(this.nodes[i].getVariable(), i);
+        this.structure = new IndexedDigraph(this.nodes.length);
     }
     
     /** Create a deep copy of given network. */
@@ -46,6 +55,7 @@ public class BayesianNetwork {
                 Node nodeOrig = original.nodes[i];
                 this.nodes[i] = new Node(nodeOrig.getVariable());
             }
+            this.indexNodes();
             if(!copyStructure)
                 return;
             // duplicate structure
@@ -101,6 +111,7 @@ public class BayesianNetwork {
             throw new BNLibIllegalStructuralModificationException("One of the variables you want to connect is not in the network.");
         parent.addChild(child);
         child.addParent(parent);
+        this.structure.addEdge(this.getNodeIndex(parent.getVariable()), this.getNodeIndex(child.getVariable()));
     }
     
     public void removeDependency(Variable parent, Variable child) throws BNLibIllegalStructuralModificationException {
@@ -113,6 +124,7 @@ public class BayesianNetwork {
         
         parent.removeChild(child);
         child.removeParent(parent);
+        this.structure.removeEdge(this.getNodeIndex(parent.getVariable()), this.getNodeIndex(child.getVariable()));
     }
     
     public void reverseDependency(Variable parent, Variable child) throws BNLibIllegalStructuralModificationException {
@@ -155,16 +167,7 @@ public class BayesianNetwork {
     
     /** Check whether "descendant" is an (indirect) descendant of "var". */
     public boolean hasDescendant(Variable var, Variable descendant) {
-        LinkedList<Node> openQueue = new LinkedList<Node>();
-        openQueue.add(this.getNode(var));
-        while(!openQueue.isEmpty()) {
-            Node firstNode = openQueue.removeFirst();
-            if(firstNode.getVariable().equals(descendant))
-                return true;
-            for(Node childNode : firstNode.getChildNodes())
-                openQueue.addLast(childNode);
-        }
-        return false;
+        return this.structure.hasPath(this.getNodeIndex(var), this.getNodeIndex(descendant));
     }
     
     /**
@@ -187,9 +190,7 @@ public class BayesianNetwork {
     }
     
     private void validateAcyclicity() throws BNLibIllegalNetworkSpecificationException {
-        // create a general graph representation and test for acyclicity
-        Digraph g = this.convertToDigraph();
-        if(!g.isAcyclic())
+        if(!this.structure.isAcyclic())
             throw new BNLibIllegalNetworkSpecificationException("The network is not acyclic.");
     }
     
@@ -310,10 +311,25 @@ public class BayesianNetwork {
      *         in this network.
      */
     public Node getNode(Variable variable) throws BNLibNonexistentVariableException {
-        for(Node n : this.nodes)
-            if(n.getVariable().equals(variable))
-                return n;
-        throw new BNLibNonexistentVariableException("Node with variable \"" + variable.getName() + "\" is not in the network.");
+        return this.nodes[this.getNodeIndex(variable)];
+    }
+    
+    /**
+     * Get index of the node representing the given variable (the same as
+     * index of the variable in getVariables).
+     * @throws BNLibNonexistentVariableException When no such variable exists
+     *         in this network.
+     */
+    int getNodeIndex(Variable variable) throws BNLibNonexistentVariableException {
+        Integer index = this.nodeIndices.get(variable);
+        if(index == null)
+            throw new BNLibNonexistentVariableException("Node with variable \"" + variable.getName() + "\" is not in the network.");
+        return index;
+    }
+    
+    /** Get a copy of the structure of this network indexed the same way as getVariables. */
+    IndexedDigraph copyIndexedStructure() {
+        return new IndexedDigraph(this.structure);
     }
     
     /** Get all nodes of this network. */
@@ -331,10 +347,8 @@ public class BayesianNetwork {
     
     /** Is there a node with variable v in this network? */
     private boolean containsVariable(Variable v) {
-        for(Node node : this.nodes)
-            if(v == node.getVariable())
-                return true;
-        return false;
+        Integer index = this.nodeIndices.get(v);
+        return index != null && this.nodes[index].getVariable() == v;
     }
     
      /** Return number of degrees of freedom of the network wrt CPD entries. */
@@ -424,25 +438,15 @@ public class BayesianNetwork {
      *         acyclic (therefore topological sort can't exist).
      */
     public Node[] topologicalSortNodes() throws BNLibIllegalNetworkSpecificationException {
-        Digraph digraph = this.convertToDigraph();
-        Object[] topologicalOrderObjects = digraph.topologicalSort();
-        if(topologicalOrderObjects == null)
+        int[] topologicalOrderIndices = this.structure.topologicalSort();
+        if(topologicalOrderIndices == null)
             throw new BNLibIllegalNetworkSpecificationException("Network is not acyclic.");
-        Node[] topologicalOrderNodes = new Node[topologicalOrderObjects.length];
-        for(int i = 0 ; i < topologicalOrderObjects.length ; i++)
-            topologicalOrderNodes[i] = (Node)topologicalOrderObjects[i];
+        Node[] topologicalOrderNodes = new Node[topologicalOrderIndices.length];
+        for(int i = 0 ; i < topologicalOrderIndices.length ; i++)
+            topologicalOrderNodes[i] = this.nodes[topologicalOrderIndices[i]];
         return topologicalOrderNodes;
     }
     
-    private Digraph convertToDigraph() {
-        Digraph g = new Digraph(this.nodes);
-        for(Node u : this.nodes) {
-            for(Node v : u.getChildNodes())
-                g.addEdge(u, v);
-        }
-        return g;
-    }
-    
     /**
      * Compute adjacency matrix.
      * Indices of variables/nodes in the resulting matrix are the same as in
@@ -88,19 +88,81 @@ public class Factor implements Iterable<int[]> {
         Variable[] newScope = Toolkit.difference(this.scope, over);
         if(newScope.length == 0)
             throw new BNLibIllegalOperationException("Marginalizing over all variables yields an empty factor.");
-        double[] newValues = new double[Toolkit.cardinality(newScope)];
-        VariableSubsetMapper scopeToNewScopeMapper = new VariableSubsetMapper(this.scope, newScope);
-        AssignmentIndexMapper newScopeIndexMapper = new AssignmentIndexMapper(newScope);
-        int[] newScopeAssignment = new int[newScope.length];
-        for(int[] scopeAssignment : this) {
-            double value = this.getProbability(scopeAssignment);
-            scopeToNewScopeMapper.map(scopeAssignment, newScopeAssignment);
-            int index = newScopeIndexMapper.assignmentToIndex(newScopeAssignment);
-            newValues[index] += value;
+        // the new scope keeps the order of this scope, so a step in the new
+        // values when the i-th variable of this scope is incremented is either
+        // the stride of the variable in the new scope or 0 (marginalized)
+        int[] newStrides = new int[this.scope.length],
+              cardinalities = new int[this.scope.length];
+        int newStride = 1;
+        for(int i = 0, j = 0 ; i < this.scope.length ; i++) {
+            cardinalities[i] = this.scope[i].getCardinality();
+            if(j < newScope.length && this.scope[i].equals(newScope[j])) {
+                newStrides[i] = newStride;
+                newStride *= cardinalities[i];
+                j++;
+            }
+        }
+        double[] newValues = new double[newStride];
+        int[] assignment = new int[this.scope.length];
+        int newIndex = 0;
+        for(int index = 0 ; index < this.values.length ; index++) {
+            newValues[newIndex] += this.values[index];
+            for(int i = 0 ; i < assignment.length ; i++) {
+                assignment[i]++;
+                newIndex += newStrides[i];
+                if(assignment[i] < cardinalities[i])
+                    break;
+                newIndex -= newStrides[i] * cardinalities[i]; // overflow
+                assignment[i] = 0;
+            }
         }
         return new Factor(newScope, newValues);
     }
     
+    /**
+     * Return factor with the same values but with variables of the scope in the given order.
+     * If the order is the same as in this factor, this factor is returned.
+     * @throws BNLibIllegalArgumentException When the given variables aren't
+     *         a permutation of the scope of this factor (including the exact
+     *         same lists of values of each variable).
+     */
+    public Factor reorderScope(Variable[] newScope) throws BNLibIllegalArgumentException {
+        if(Arrays.equals(this.scope, newScope))
+            return this;
+        if(newScope.length != this.scope.length || !Toolkit.areEqual(this.scope, newScope))
+            throw new BNLibIllegalArgumentException("The new scope is not a permutation of the scope of the factor.");
+        // step in this.values when the i-th variable of the new scope is incremented
+        int[] scopeStrides = new int[this.scope.length];
+        scopeStrides[0] = 1;
+        for(int i = 1 ; i < this.scope.length ; i++)
+            scopeStrides[i] = scopeStrides[i - 1] * this.scope[i - 1].getCardinality();
+        int[] newScopeStrides = new int[newScope.length],
+              newScopeCardinalities = new int[newScope.length];
+        for(int i = 0 ; i < newScope.length ; i++) {
+            int position = Toolkit.indexOf(this.scope, newScope[i]);
+            if(!Arrays.equals(this.scope[position].getValues(), newScope[i].getValues()))
+                throw new BNLibIllegalArgumentException("Variable \"" + newScope[i].getName() + "\" has a different list of values.");
+            newScopeStrides[i] = scopeStrides[position];
+            newScopeCardinalities[i] = newScope[i].getCardinality();
+        }
+        // walk through the new values in order and follow the position in the old ones
+        double[] newValues = new double[this.values.length];
+        int[] newAssignment = new int[newScope.length];
+        int index = 0;
+        for(int newIndex = 0 ; newIndex < newValues.length ; newIndex++) {
+            newValues[newIndex] = this.values[index];
+            for(int i = 0 ; i < newAssignment.length ; i++) {
+                newAssignment[i]++;
+                index += newScopeStrides[i];
+                if(newAssignment[i] < newScopeCardinalities[i])
+                    break;
+                index -= newScopeStrides[i] * newScopeCardinalities[i]; // overflow
+                newAssignment[i] = 0;
+            }
+        }
+        return new Factor(newScope, newValues);
+    }
+
     /** Make all values of the factor sum to one. */
     public Factor normalize() {
         return this.normalizeByFirstNVariables(this.scope.length);
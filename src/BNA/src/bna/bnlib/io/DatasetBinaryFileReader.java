@@ -0,0 +1,260 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/07
+
+package bna.bnlib.io;
+
+import bna.bnlib.BNLibIOException;
+import bna.bnlib.BNLibIllegalVariableSpecificicationException;
+import bna.bnlib.Variable;
+import bna.bnlib.learning.Dataset;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Implementation of dataset file reader for the binary dataset format.
+ * <p>
+ * The format is (all numbers big-endian): magic number, format version,
+ * number of variables, then name, number of values and the values of each
+ * variable (strings in modified UTF-8 as by DataOutputStream.writeUTF),
+ * number of records (long), a flag whether some value is missing (boolean)
+ * and finally one column per variable holding the indices of values of the
+ * variable in all records. Each value of a column takes 1, 2 or 4 bytes
+ * (see bytesPerValue), a missing value has all the bits set.
+ * <p>
+ * Besides loading the whole dataset into memory, the reader can map the
+ * columns into memory (mapColumn) so that the data are accessed directly
+ * in the file without copying.
+ */
+public class DatasetBinaryFileReader extends DatasetFileReader {
+    static final int MAGIC = 0x424e4453; // "BNDS"
+    static final int VERSION = 2;
+    /** Maximal number of values of a column mapped by a single buffer (the buffers are int-indexed). */
+    public static final int MAX_VALUES_PER_MAPPING = 1 << 28;
+    
+    private boolean headerParsed = false;
+    private Variable[] variables = null;
+    private long recordCount;
+    private boolean missingValues;
+    private long[] columnOffsets;
+    
+    
+    public DatasetBinaryFileReader(String filename) {
+        super(filename);
+    }
+    
+    /**
+     * Number of bytes taken by a single value of the given variable.
+     * The largest code of each size is reserved for the missing value.
+     */
+    public static int bytesPerValue(Variable var) {
+        if(var.getCardinality() < 1 << 8)
+            return 1;
+        else if(var.getCardinality() < 1 << 16)
+            return 2;
+        else
+            return 4;
+    }
+    
+    private void parseHeader() throws BNLibIOException {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.filename)));
+            if(in.readInt() != MAGIC)
+                throw new BNLibIOException("The file \"" + this.filename + "\" is not a binary dataset file.");
+            int version = in.readInt();
+            if(version != VERSION)
+                throw new BNLibIOException("Unsupported version " + version + " of the binary dataset file.");
+            int variableCount = in.readInt();
+            if(variableCount <= 0)
+                throw new BNLibIOException("Invalid number of variables in the binary dataset file.");
+            this.variables = new Variable[variableCount];
+            // the header length isn't stored, count the bytes of the strings
+            long headerLength = 3 * 4;
+            for(int i = 0 ; i < variableCount ; i++) {
+                String name = in.readUTF();
+                int valueCount = in.readInt();
+                if(valueCount <= 0)
+                    throw new BNLibIOException("Invalid number of values of variable \"" + name + "\".");
+                String[] values = new String[valueCount];
+                headerLength += 2 + DatasetBinaryFileReader.utfLength(name) + 4;
+                for(int j = 0 ; j < valueCount ; j++) {
+                    values[j] = in.readUTF();
+                    headerLength += 2 + DatasetBinaryFileReader.utfLength(values[j]);
+                }
+                this.variables[i] = new Variable(name, values); // throws BNLibIllegalVariableSpecificicationException
+            }
+            this.recordCount = in.readLong();
+            if(this.recordCount < 0)
+                throw new BNLibIOException("Invalid number of records in the binary dataset file.");
+            this.missingValues = in.readBoolean();
+            headerLength += 8 + 1;
+            this.columnOffsets = new long[variableCount];
+            long offset = headerLength;
+            for(int i = 0 ; i < variableCount ; i++) {
+                this.columnOffsets[i] = offset;
+                offset += this.recordCount * DatasetBinaryFileReader.bytesPerValue(this.variables[i]);
+            }
+            this.headerParsed = true;
+        }
+        catch(FileNotFoundException ex) {
+            throw new BNLibIOException("File \"" + this.filename + "\" was not found.");
+        }
+        catch(EOFException ex) {
+            throw new BNLibIOException("The file \"" + this.filename + "\" is truncated.");
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("The following IOException occured: " + ex.getMessage());
+        }
+        catch(BNLibIllegalVariableSpecificicationException ex) {
+            throw new BNLibIOException("Invalid variable in the binary dataset file: " + ex.getMessage());
+        }
+        finally {
+            try {
+                if(in != null)
+                    in.close();
+            }
+            catch(IOException ex) {}
+        }
+    }
+    
+    /** Length of the string in modified UTF-8 (as written by DataOutputStream.writeUTF). */
+    private static int utfLength(String str) {
+        int length = 0;
+        for(int i = 0 ; i < str.length() ; i++) {
+            char c = str.charAt(i);
+            if(c >= 0x0001 && c <= 0x007F)
+                length += 1;
+            else if(c > 0x07FF)
+                length += 3;
+            else
+                length += 2;
+        }
+        return length;
+    }
+    
+    /** Variables whose instantiations are stored in the file (in order of the columns). */
+    public Variable[] getVariables() throws BNLibIOException {
+        return this.readVariables();
+    }
+    
+    /** Number of records stored in the file. */
+    public long getRecordCount() throws BNLibIOException {
+        if(!this.headerParsed)
+            this.parseHeader();
+        return this.recordCount;
+    }
+    
+    /** Can some of the records stored in the file have a missing value? */
+    public boolean hasMissingValues() throws BNLibIOException {
+        if(!this.headerParsed)
+            this.parseHeader();
+        return this.missingValues;
+    }
+    
+    /**
+     * Map values of the given column into memory (read only).
+     * As a single buffer can't exceed 2 GB, the column is split into
+     * consecutive buffers of MAX_VALUES_PER_MAPPING values.
+     * @throws BNLibIOException When the file is shorter than declared by its
+     *         header or a Java IOException occurs.
+     */
+    public MappedByteBuffer[] mapColumn(int variableIndex) throws BNLibIOException {
+        if(!this.headerParsed)
+            this.parseHeader();
+        int bytesPerValue = DatasetBinaryFileReader.bytesPerValue(this.variables[variableIndex]);
+        int mappingCount = (int)((this.recordCount + MAX_VALUES_PER_MAPPING - 1) / MAX_VALUES_PER_MAPPING);
+        MappedByteBuffer[] mappings = new MappedByteBuffer[mappingCount];
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(this.filename, "r");
+            FileChannel channel = file.getChannel();
+            long columnEnd = this.columnOffsets[variableIndex] + this.recordCount * bytesPerValue;
+            if(channel.size() < columnEnd)
+                throw new BNLibIOException("The file \"" + this.filename + "\" is truncated.");
+            for(int m = 0 ; m < mappingCount ; m++) {
+                long firstValue = (long)m * MAX_VALUES_PER_MAPPING,
+                     values = Math.min(MAX_VALUES_PER_MAPPING, this.recordCount - firstValue);
+                mappings[m] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                          this.columnOffsets[variableIndex] + firstValue * bytesPerValue,
+                                          values * bytesPerValue);
+            }
+            // the mappings stay valid after the channel is closed
+            return mappings;
+        }
+        catch(FileNotFoundException ex) {
+            throw new BNLibIOException("File \"" + this.filename + "\" was not found.");
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("The following IOException occured: " + ex.getMessage());
+        }
+        finally {
+            try {
+                if(file != null)
+                    file.close();
+            }
+            catch(IOException ex) {}
+        }
+    }
+    
+    /**
+     * Read the value index at the given position of a column buffer
+     * (Dataset.MISSING_VALUE for a missing value).
+     */
+    public static int getValue(ByteBuffer column, int position, int bytesPerValue) {
+        int value;
+        if(bytesPerValue == 1)
+            value = column.get(position) & 0xFF;
+        else if(bytesPerValue == 2)
+            value = column.getShort(position << 1) & 0xFFFF;
+        else
+            return column.getInt(position << 2); // all ones is -1 already
+        return (value == (1 << (8 * bytesPerValue)) - 1) ? Dataset.MISSING_VALUE : value;
+    }
+
+    @Override
+    protected Variable[] readVariables() {
+        if(!this.headerParsed)
+            this.parseHeader();
+        return this.variables;
+    }
+
+    @Override
+    protected List<int[]> readDataRows() {
+        if(!this.headerParsed)
+            this.parseHeader();
+        if(this.recordCount > Integer.MAX_VALUE)
+            throw new BNLibIOException("The binary dataset file is too large to be loaded into memory.");
+        ArrayList<int[]> dataRows = new ArrayList<int[]>((int)this.recordCount);
+        for(long r = 0 ; r < this.recordCount ; r++)
+            dataRows.add(new int[this.variables.length]);
+        for(int i = 0 ; i < this.variables.length ; i++) {
+            int bytesPerValue = DatasetBinaryFileReader.bytesPerValue(this.variables[i]),
+                cardinality = this.variables[i].getCardinality();
+            int r = 0;
+            for(MappedByteBuffer mapping : this.mapColumn(i)) {
+                int values = mapping.capacity() / bytesPerValue;
+                for(int v = 0 ; v < values ; v++) {
+                    int value = DatasetBinaryFileReader.getValue(mapping, v, bytesPerValue);
+                    // a missing value is allowed only when declared by the header
+                    boolean valid = (value == Dataset.MISSING_VALUE) ? this.missingValues : value >= 0 && value < cardinality;
+                    if(!valid)
+                        throw new BNLibIOException("Invalid value in the binary dataset file.");
+                    dataRows.get(r++)[i] = value;
+                }
+            }
+        }
+        return dataRows;
+    }
+}
@@ -0,0 +1,72 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/07
+
+package bna.bnlib.io;
+
+import bna.bnlib.BNLibIOException;
+import bna.bnlib.Variable;
+import bna.bnlib.learning.Dataset;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+
+/**
+ * Implementation of dataset file writer for the binary dataset format.
+ * The file starts with a header (see DatasetBinaryFileReader) followed by
+ * the records stored column by column. Each value of a column takes 1, 2
+ * or 4 bytes (big-endian) according to cardinality of its variable,
+ * a missing value has all the bits set.
+ */
+public class DatasetBinaryFileWriter extends DatasetFileWriter {
+    public DatasetBinaryFileWriter(String filename) {
+        super(filename);
+    }
+
+    @Override
+    public void save(Dataset dataset) throws BNLibIOException {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.filename), 1 << 16));
+            Variable[] vars = dataset.getVariables();
+            List<int[]> records = dataset.getDataReadOnly();
+            // header
+            out.writeInt(DatasetBinaryFileReader.MAGIC);
+            out.writeInt(DatasetBinaryFileReader.VERSION);
+            out.writeInt(vars.length);
+            for(Variable var : vars) {
+                out.writeUTF(var.getName());
+                out.writeInt(var.getCardinality());
+                for(String value : var.getValues())
+                    out.writeUTF(value);
+            }
+            out.writeLong(records.size());
+            out.writeBoolean(dataset.hasMissingValues());
+            // data columns (a missing value is written as all ones)
+            for(int i = 0 ; i < vars.length ; i++) {
+                int bytesPerValue = DatasetBinaryFileReader.bytesPerValue(vars[i]);
+                for(int[] record : records) {
+                    if(bytesPerValue == 1)
+                        out.writeByte(record[i]);
+                    else if(bytesPerValue == 2)
+                        out.writeShort(record[i]);
+                    else
+                        out.writeInt(record[i]);
+                }
+            }
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("The following IO exception occured: " + ex.getMessage());
+        }
+        finally {
+            try {
+                if(out != null)
+                    out.close();
+            }
+            catch(IOException ex) {}
+        }
+    }
+}
@@ -57,7 +57,10 @@ public class DatasetCSVFileWriter extends DatasetFileWriter {
                     if(!firstRecordOfLine)
                         writer.write(this.separator);
                     firstRecordOfLine = false;
-                    writer.write(vars[i].getValues()[rowData[i]]);
+                    if(rowData[i] == Dataset.MISSING_VALUE)
+                        writer.write(IOConfiguration.MISSING_VALUE_TOKEN);
+                    else
+                        writer.write(vars[i].getValues()[rowData[i]]);
                 }
                 writer.write(System.getProperty("line.separator"));
             }
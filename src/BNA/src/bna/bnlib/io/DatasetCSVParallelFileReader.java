@@ -0,0 +1,282 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/08
+
+package bna.bnlib.io;
+
+import bna.bnlib.BNLibIOException;
+import bna.bnlib.BNLibIllegalArgumentException;
+import bna.bnlib.BNLibIllegalVariableSpecificicationException;
+import bna.bnlib.Variable;
+import bna.bnlib.learning.Dataset;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Implementation of dataset file reader for CSV files parsing the file in parallel.
+ * The data part of the file is split at line boundaries into chunks of
+ * roughly equal size. The chunks are memory-mapped and parsed by a pool of
+ * threads, values of the variables are resolved via hash maps
+ * (instead of the linear search of Variable.getValueIndex). The result
+ * (including error messages) is the same as of DatasetCSVFileReader,
+ * a line ends with '\n', '\r' or "\r\n" as in BufferedReader.readLine.
+ */
+public class DatasetCSVParallelFileReader extends DatasetFileReader {
+    /** Default size of a chunk parsed by a single worker at once. */
+    public static final int DEFAULT_CHUNK_BYTES = 8 << 20;
+
+    private String separator;
+    private int threadcount;
+    private int chunkBytes;
+    private Charset charset = Charset.defaultCharset(); // the same as used by FileReader
+    private boolean parsed = false;
+    private Variable[] variables = null;
+    private ArrayList<HashMap<String, Integer>> valueIndices = null; // for each variable maps value to its index
+    private List<int[]> data = null;
+
+
+    /**
+     * Create reader that parses the file using threadcount threads.
+     * @throws BNLibIllegalArgumentException When the threadcount is not positive.
+     */
+    public DatasetCSVParallelFileReader(String csvFile, String separator, int threadcount) throws BNLibIllegalArgumentException {
+        this(csvFile, separator, threadcount, DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * Create reader that parses the file using threadcount threads, splitting
+     * the file into chunks of (approximately) the given size.
+     * @throws BNLibIllegalArgumentException When the threadcount or the chunk
+     *         size is not positive.
+     */
+    public DatasetCSVParallelFileReader(String csvFile, String separator, int threadcount, int chunkBytes) throws BNLibIllegalArgumentException {
+        super(csvFile);
+        if(threadcount <= 0 || chunkBytes <= 0)
+            throw new BNLibIllegalArgumentException("Number of threads and size of a chunk must be positive.");
+        this.separator = separator;
+        this.threadcount = threadcount;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /** Result of parsing of one chunk of the file. */
+    private static class ChunkResult {
+        ArrayList<int[]> rows = new ArrayList<int[]>();
+        int lines = 0;          // number of lines in the chunk
+        int errorLine = 0;      // line within the chunk where the error occured
+        String errorMessage = null;
+    }
+
+    private void parse() throws BNLibIOException {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(this.filename, "r");
+            // parse header (variable names and set of possible values)
+            byte[] headerBytes = DatasetCSVParallelFileReader.readLineBytes(file, 0);
+            long dataStart = file.getFilePointer();
+            String line = new String(headerBytes, this.charset);
+            if(line.trim().length() == 0)
+                throw new BNLibIOException("The file \"" + this.filename + "\" appears to be empty.");
+            String[] variableSpecifications = line.split(this.separator);
+            this.variables = new Variable[variableSpecifications.length];
+            this.valueIndices = new ArrayList<HashMap<String, Integer>>(variableSpecifications.length);
+            for(int i = 0 ; i < variableSpecifications.length ; i++) {
+                this.variables[i] = DatasetCSVRecordReader.parseVariableSpecification(variableSpecifications[i]);
+                HashMap<String, Integer> indices = new HashMap<String, Integer>();
+                String[] values = this.variables[i].getValues();
+                for(int j = 0 ; j < values.length ; j++)
+                    indices.put(values[j], j);
+                this.valueIndices.add(indices);
+            }
+
+            // split the rest of the file into chunks ending with a line end
+            ArrayList<Long> chunkBounds = new ArrayList<Long>();
+            chunkBounds.add(dataStart);
+            long fileSize = file.length(),
+                 position = dataStart;
+            while(position < fileSize) {
+                position += this.chunkBytes;
+                if(position < fileSize) {
+                    DatasetCSVParallelFileReader.readLineBytes(file, position);
+                    position = file.getFilePointer();
+                }
+                else
+                    position = fileSize;
+                chunkBounds.add(position);
+            }
+
+            // parse the chunks in parallel
+            ChunkResult[] results = this.parseChunks(file.getChannel(), chunkBounds);
+            int recordCount = 0;
+            for(ChunkResult result : results)
+                recordCount += result.rows.size();
+            ArrayList<int[]> dataRows = new ArrayList<int[]>(recordCount);
+            int lineNumber = 1; // the header
+            for(ChunkResult result : results) {
+                if(result.errorMessage != null) {
+                    String msg = String.format("Line %d: %s", lineNumber + result.errorLine, result.errorMessage);
+                    throw new BNLibIOException(msg);
+                }
+                dataRows.addAll(result.rows);
+                lineNumber += result.lines;
+            }
+
+            this.data = dataRows;
+            this.parsed = true;
+        }
+        catch(FileNotFoundException ex) {
+            throw new BNLibIOException("File \"" + this.filename + "\" was not found.");
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("The following IOException occured: " + ex.getMessage());
+        }
+        catch(BNLibIllegalVariableSpecificicationException ex) {
+            throw new BNLibIOException("Line 1: " + ex.getMessage());
+        }
+        finally {
+            try {
+                if(file != null)
+                    file.close();
+            }
+            catch(IOException ex) {
+                throw new BNLibIOException("An IOException occured while closing the input file: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read bytes of the file from the given position up to the end of line
+     * (excluding the line end) or up to the end of file. The file pointer
+     * is left right after the end of the line.
+     */
+    private static byte[] readLineBytes(RandomAccessFile file, long position) throws IOException {
+        file.seek(position);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while(true) {
+            int read = file.read(buffer);
+            if(read < 0)
+                return line.toByteArray();
+            for(int i = 0 ; i < read ; i++) {
+                if(buffer[i] == '\n' || buffer[i] == '\r') {
+                    line.write(buffer, 0, i);
+                    long lineEnd = position + line.size() + 1;
+                    file.seek(lineEnd);
+                    if(buffer[i] == '\r' && file.read() != '\n')
+                        file.seek(lineEnd); // not a "\r\n" line end
+                    return line.toByteArray();
+                }
+            }
+            line.write(buffer, 0, read);
+        }
+    }
+
+    private ChunkResult[] parseChunks(final FileChannel channel, final List<Long> chunkBounds) throws BNLibIOException {
+        ChunkResult[] results = new ChunkResult[chunkBounds.size() - 1];
+        if(results.length == 0)
+            return results;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threadcount, results.length));
+        try {
+            ArrayList<Future<ChunkResult>> futures = new ArrayList<Future<ChunkResult>>();
+            for(int c = 0 ; c < results.length ; c++) {
+                final int chunk = c;
+                futures.add(executor.submit(new Callable<ChunkResult>() {
+                    @Override
+                    public ChunkResult call() {
+                        return parseChunk(channel, chunkBounds.get(chunk), chunkBounds.get(chunk + 1));
+                    }
+                }));
+            }
+            for(int c = 0 ; c < results.length ; c++)
+                results[c] = futures.get(c).get();
+            return results;
+        }
+        catch(InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new BNLibIOException("Reading of the file \"" + this.filename + "\" has been interrupted.");
+        }
+        catch(ExecutionException ex) {
+            executor.shutdownNow();
+            throw new BNLibIOException("Reading of the file \"" + this.filename + "\" failed: " + ex.getCause());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private ChunkResult parseChunk(FileChannel channel, long start, long end) {
+        ChunkResult result = new ChunkResult();
+        String text;
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            text = this.charset.decode(buffer).toString();
+        }
+        catch(IOException ex) {
+            result.errorMessage = "The following IOException occured: " + ex.getMessage();
+            return result;
+        }
+        int variableCount = this.variables.length;
+        int lineStart = 0;
+        while(lineStart < text.length()) {
+            int lineEnd = lineStart;
+            while(lineEnd < text.length() && text.charAt(lineEnd) != '\n' && text.charAt(lineEnd) != '\r')
+                lineEnd++;
+            String line = text.substring(lineStart, lineEnd);
+            boolean crlf = text.startsWith("\r\n", lineEnd);
+            lineStart = lineEnd + (crlf ? 2 : 1);
+            result.lines++;
+            if(line.trim().isEmpty())
+                continue;
+            String[] lineFields = line.split(this.separator);
+            if(lineFields.length != variableCount) {
+                result.errorLine = result.lines;
+                result.errorMessage = String.format("Unexpected number of records - expected %d, found %d.",
+                                                    variableCount, lineFields.length);
+                return result;
+            }
+            int[] dataRow = new int[variableCount];
+            for(int i = 0 ; i < variableCount ; i++) {
+                Integer indexOfValue = this.valueIndices.get(i).get(lineFields[i]);
+                if(indexOfValue == null && lineFields[i].equals(IOConfiguration.MISSING_VALUE_TOKEN))
+                    indexOfValue = Dataset.MISSING_VALUE;
+                if(indexOfValue == null) {
+                    result.errorLine = result.lines;
+                    result.errorMessage = String.format("\"%s\" is not an assignment of variable \"%s\".",
+                                                        lineFields[i], this.variables[i].getName());
+                    return result;
+                }
+                dataRow[i] = indexOfValue;
+            }
+            result.rows.add(dataRow);
+        }
+        return result;
+    }
+
+    @Override
+    protected Variable[] readVariables() {
+        if(!this.parsed)
+            this.parse();
+        return this.variables;
+    }
+
+    @Override
+    protected List<int[]> readDataRows() {
+        if(!this.parsed)
+            this.parse();
+        return this.data;
+    }
+}
@@ -0,0 +1,153 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/06
+
+package bna.bnlib.io;
+
+import bna.bnlib.BNLibIOException;
+import bna.bnlib.BNLibIllegalVariableSpecificicationException;
+import bna.bnlib.BNLibNonexistentVariableValueException;
+import bna.bnlib.Variable;
+import bna.bnlib.learning.Dataset;
+import bna.bnlib.misc.Toolkit;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Implementation of sequential dataset record reader for CSV files.
+ * The file is opened (and its header parsed) on the first request.
+ */
+public class DatasetCSVRecordReader extends DatasetRecordReader {
+    private String separator;
+    private BufferedReader in = null;
+    private Variable[] variables = null;
+    private int lineNumber = 0;
+    
+    
+    public DatasetCSVRecordReader(String csvFile, String separator) {
+        super(csvFile);
+        this.separator = separator;
+    }
+    
+    static Variable parseVariableSpecification(String spec) throws BNLibIllegalVariableSpecificicationException {
+        // each record has to be in the form "<var-name>(<var-value1>|...|<var-value-n>)"
+        String patternStr = String.format("(%s)"           // \1 is variable name
+                                        + "\\("
+                                        + "(%s(:?\\|%s)*)" // \2 is list of possible values
+                                        + "\\)",
+                                          IOConfiguration.VARNAME_REGEX,
+                                          IOConfiguration.VARVALUE_REGEX,
+                                          IOConfiguration.VARVALUE_REGEX);
+        Pattern pattern = Pattern.compile(patternStr);
+        Matcher matcher = pattern.matcher(spec);
+        if(!matcher.matches()) {
+            String msg = String.format("\"%s\" is not a valid variable specification (must contain name and list of possible values).", spec);
+            throw new BNLibIllegalVariableSpecificicationException(msg);
+        }
+        String varName = matcher.group(1);
+        String[] varValues = matcher.group(2).split("\\|");
+        return new Variable(varName, varValues);
+    }
+    
+    private void open() throws BNLibIOException {
+        try {
+            this.in = new BufferedReader(new FileReader(this.filename));
+            // parse header (variable names and set of possible values)
+            String line = this.in.readLine();
+            this.lineNumber = 1;
+            if(line == null || line.trim().length() == 0)
+                throw new BNLibIOException("The file \"" + this.filename + "\" appears to be empty.");
+            String[] variableSpecifications = line.split(this.separator);
+            this.variables = new Variable[variableSpecifications.length];
+            for(int i = 0 ; i < variableSpecifications.length ; i++)
+                this.variables[i] = DatasetCSVRecordReader.parseVariableSpecification(variableSpecifications[i]);
+        }
+        catch(FileNotFoundException ex) {
+            throw new BNLibIOException("File \"" + this.filename + "\" was not found.");
+        }
+        catch(IOException ex) {
+            this.closeQuietly();
+            throw new BNLibIOException("The following IOException occured: " + ex.getMessage());
+        }
+        catch(BNLibIllegalVariableSpecificicationException ex) {
+            this.closeQuietly();
+            String msg = String.format("Line %d: %s", this.lineNumber, ex.getMessage());
+            throw new BNLibIOException(msg);
+        }
+        catch(BNLibIOException ex) {
+            this.closeQuietly();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Variable[] getVariables() throws BNLibIOException {
+        if(this.variables == null)
+            this.open();
+        return this.variables;
+    }
+
+    @Override
+    public int[] nextRecord() throws BNLibIOException {
+        if(this.variables == null)
+            this.open();
+        if(this.in == null)
+            return null; // already closed
+        try {
+            String line;
+            do {
+                line = this.in.readLine();
+                this.lineNumber++;
+                if(line == null)
+                    return null;
+            } while(line.trim().isEmpty());
+            String[] lineFields = line.split(this.separator);
+            if(lineFields.length != this.variables.length) {
+                String msg = String.format("Line %d: Unexpected number of records - expected %d, found %d.",
+                                           this.lineNumber, this.variables.length, lineFields.length);
+                throw new BNLibIOException(msg);
+            }
+            int[] record = new int[this.variables.length];
+            for(int i = 0 ; i < this.variables.length ; i++) {
+                if(lineFields[i].equals(IOConfiguration.MISSING_VALUE_TOKEN) && !Toolkit.arrayContains(this.variables[i].getValues(), lineFields[i]))
+                    record[i] = Dataset.MISSING_VALUE;
+                else
+                    record[i] = this.variables[i].getValueIndex(lineFields[i]); // throws BNLibNonexistentVariableValueException
+            }
+            return record;
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("The following IOException occured: " + ex.getMessage());
+        }
+        catch(BNLibNonexistentVariableValueException ex) {
+            String msg = String.format("Line %d: %s", this.lineNumber, ex.getMessage());
+            throw new BNLibIOException(msg);
+        }
+    }
+
+    @Override
+    public void close() throws BNLibIOException {
+        try {
+            if(this.in != null)
+                this.in.close();
+            this.in = null;
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("An IOException occured while closing the input file: " + ex.getMessage());
+        }
+    }
+    
+    private void closeQuietly() {
+        try {
+            if(this.in != null)
+                this.in.close();
+        }
+        catch(IOException ex) {}
+        this.in = null;
+    }
+}
@@ -28,8 +28,7 @@ public abstract class DatasetFileReader {
      */
     public final Dataset load() throws BNLibIOException {
         Dataset dataset = new Dataset(this.readVariables());
-        for(int[] row : this.readDataRows())
-            dataset.addRecord(row);
+        dataset.addRecords(this.readDataRows());
         return dataset;
     }
     
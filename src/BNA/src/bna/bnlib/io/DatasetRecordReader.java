@@ -0,0 +1,37 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/06
+
+package bna.bnlib.io;
+
+import bna.bnlib.BNLibIOException;
+import bna.bnlib.Variable;
+
+
+/**
+ * Sequential reader of dataset records from a file.
+ * Unlike DatasetFileReader, the records are handed out one by one so that
+ * the whole file never needs to be kept in memory.
+ */
+public abstract class DatasetRecordReader {
+    protected String filename;
+    
+    
+    public DatasetRecordReader(String filename) {
+        this.filename = filename;
+    }
+    
+    /** Variables whose instantiations are stored in the file (in order of the values in records). */
+    public abstract Variable[] getVariables() throws BNLibIOException;
+    
+    /**
+     * Read the next record (indices of values of the variables).
+     * Returns null when there are no more records.
+     * @throws BNLibIOException When the file is corrupted or a Java
+     *         IOException occurs.
+     */
+    public abstract int[] nextRecord() throws BNLibIOException;
+    
+    /** Release the underlying file. */
+    public abstract void close() throws BNLibIOException;
+}
@@ -11,4 +11,6 @@ package bna.bnlib.io;
 class IOConfiguration {
     final static String VARNAME_REGEX =  "[^,|=()\\s]+",
                         VARVALUE_REGEX = "[^,|=()\\s]+";
+    /** Value of a dataset file field that hasn't been observed (see Dataset.MISSING_VALUE). */
+    final static String MISSING_VALUE_TOKEN = "?";
 }
@@ -2,7 +2,8 @@
  * Reading/writing of datasets and network specification files.
  * Contains classes for reading/writing .net files with Bayesian network
  * specification, writing .gv files for BN structure visualization using
- * Graphviz and reading/writing .csv files with datasets. Also contains logic
+ * Graphviz and reading/writing datasets (.csv files or a compact binary
+ * format which can also be memory-mapped). Also contains logic
  * for parsing textual probabilistic queries.
  */
 package bna.bnlib.io;
\ No newline at end of file
@@ -0,0 +1,25 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/20
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+
+
+/**
+ * Class implementing the AIC score, ie. the BIC score with the penalty
+ * of a single free parameter being 1 instead of log(N) / 2.
+ * Super-class takes care of caching of delta family scores.
+ */
+public class AICScoringMethod extends BICScoringMethod {
+    
+    public AICScoringMethod(DatasetInterface dataset) {
+        super(dataset);
+    }
+    
+    @Override
+    protected double getParameterPenalty() {
+        return 1;
+    }
+}
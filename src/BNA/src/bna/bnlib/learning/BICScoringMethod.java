@@ -5,6 +5,8 @@
 package bna.bnlib.learning;
 
 import bna.bnlib.*;
+import bna.bnlib.misc.Toolkit;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -12,6 +14,7 @@ import bna.bnlib.*;
  * Super-class takes care of caching of delta family scores.
  */
 public class BICScoringMethod extends DecomposableScoringMethod {
+    private ConcurrentHashMap<Variable, Double> entropies = new ConcurrentHashMap<Variable, Double>(); // for the bounds
     
     public BICScoringMethod(DatasetInterface dataset) {
         super(dataset);
@@ -30,22 +33,64 @@ public class BICScoringMethod extends DecomposableScoringMethod {
     
     @Override
     /**
-     * Compute the mutual information between node and its parents from the dataset.
-     * Cache is not used at all.
+     * Compute the mutual information between node and its parents from the counts
+     * of the family (see FamilyCounts). Cache is not used at all.
      */
-    protected double computeFamilyScore(Node n) {
+    protected double computeFamilyScore(Variable x, Variable[] parents) {
         int N = this.dataset.getSize();
-        if(n.getParentCount() == 0)
+        if(parents.length == 0)
             return 0.0;
-        Variable[] nSet = {n.getVariable()};
-        Variable[] parentsSet = n.getParentVariables();
-        return N * dataset.mutualInformation(nSet, parentsSet);
+        return N * FamilyCounts.count(this.dataset, x, parents).getMutualInformation();
+    }
+    
+    /** Penalty of a single free parameter of the network (log(N) / 2 for BIC). */
+    protected double getParameterPenalty() {
+        return Math.log(this.dataset.getSize()) / 2;
+    }
+    
+    @Override
+    protected double computeFamilyComplexityPenalty(Variable x, Variable[] parents) {
+        double dim = (x.getCardinality() - 1) * Toolkit.cardinality(parents);
+        return -this.getParameterPenalty() * dim;
     }
     
     @Override
     protected double computeComplexityPenalty(BayesianNetwork bn) {
-        double N = this.dataset.getSize();
         double dim = bn.getNetworkDimension();
-        return -Math.log(N) / 2 * dim;
+        return -this.getParameterPenalty() * dim;
+    }
+    
+    /**
+     * The family score N * I(X; Pa) cannot exceed N * H(X) and the penalty
+     * of a proper superset is at least the penalty of the set multiplied
+     * by the smallest cardinality of an added variable.
+     */
+    @Override
+    protected double upperBoundOfSupersetsLocalScore(Variable x, Variable[] parents) {
+        int minCardinality = Integer.MAX_VALUE;
+        for(Variable var : this.dataset.getVariables())
+            if(!var.equals(x) && Toolkit.indexOf(parents, var) == -1)
+                minCardinality = Math.min(minCardinality, var.getCardinality());
+        if(minCardinality == Integer.MAX_VALUE)
+            return Double.NEGATIVE_INFINITY; // there is no superset
+        double N = this.dataset.getSize();
+        double minDim = (x.getCardinality() - 1) * (double)Toolkit.cardinality(parents) * minCardinality;
+        return N * this.entropy(x) - this.getParameterPenalty() * minDim;
+    }
+    
+    private double entropy(Variable x) {
+        Double entropy = this.entropies.get(x);
+        if(entropy == null) {
+            Factor counts = this.dataset.computeFactor(new Variable[] {x});
+            double N = this.dataset.getSize();
+            entropy = 0.0;
+            for(int i = 0 ; i < x.getCardinality() ; i++) {
+                double p = counts.getProbability(i) / N;
+                if(p > 0)
+                    entropy -= p * Math.log(p);
+            }
+            this.entropies.put(x, entropy);
+        }
+        return entropy;
     }
 }
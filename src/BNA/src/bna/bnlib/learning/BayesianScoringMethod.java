@@ -5,8 +5,7 @@
 package bna.bnlib.learning;
 
 import bna.bnlib.*;
-import bna.bnlib.misc.Toolkit;
-import org.apache.commons.math3.special.Gamma;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -14,7 +13,10 @@ import org.apache.commons.math3.special.Gamma;
  * Super-class takes care of caching of delta family scores.
  */
 public class BayesianScoringMethod extends DecomposableScoringMethod {
+    private static final double C = 0.9; // structure prior P(G) is C ** (number of edges)
+    private static final int LOG_GAMMA_TABLE_SIZE = 1 << 16; // counts up to this size are tabulated
     private double alpha; // equivalent sample size for BDe discrete unifor prior
+    private ConcurrentHashMap<Double, LogGammaTable> logGammaTables = new ConcurrentHashMap<Double, LogGammaTable>();
     
     
     public BayesianScoringMethod(DatasetInterface dataset, double alpha) {
@@ -38,53 +40,71 @@ public class BayesianScoringMethod extends DecomposableScoringMethod {
         return this.computeFamilyScore(Xi);
     }*/
     
+    /**
+     * The log P(X | G) part of the family Xi, Pa. The counts N_Xi_Pa are read
+     * from the contingency table directly: Xi is the first variable of the
+     * scope, so the counts of each parent assignment form a contiguous block.
+     * As the BDe prior is uniform, the prior counts alpha_x_pa and alpha_Xi_pa
+     * are the same for all the blocks and the log-gamma terms are taken from
+     * tables of the two offsets. An assignment of parents that doesn't occur
+     * in the data contributes zero and is skipped.
+     */
     @Override
-    protected double computeFamilyScore(Node Xi) {
-        // the log P(X | G)
+    protected double computeFamilyScore(Variable Xi, Variable[] Pa) {
         // (notation is consistent with the formulas presented in thesis)
+        Variable[] scope_Xi_Pa = new Variable[1 + Pa.length];
+        scope_Xi_Pa[0] = Xi;
+        System.arraycopy(Pa, 0, scope_Xi_Pa, 1, Pa.length);
+        Factor N_Xi_Pa = this.dataset.computeFactor(scope_Xi_Pa);
+        int r = Xi.getCardinality(),
+            q = N_Xi_Pa.getCardinality() / r;
+        // BDe prior as if the prior network were discrete (without any edge)
+        // and all the variables had a uniform distribution
+        // => ensures the same Bayesian score of I-equivalent structures
+        LogGammaTable lgamma_alpha_x_pa = this.getLogGammaTable(this.alpha / (r * (double)q)),
+                      lgamma_alpha_Xi_pa = this.getLogGammaTable(this.alpha / q);
         double log_P_X_given_G = 0;
-        if(Xi.getParentCount() == 0) {
-            Factor prior_Xi = this.getParameterPriorBDEUniform(Xi);
-            Factor N_Xi = this.dataset.computeFactor(Xi.getScope());
-            double alpha_Xi = 0;
-            double N = 0;
-            for(int assignment_x = 0 ; assignment_x < Xi.getVariable().getCardinality() ; assignment_x++) {
-                double alpha_x = prior_Xi.getProbability(assignment_x),
-                        N_x = N_Xi.getProbability(assignment_x);
-                log_P_X_given_G += Gamma.logGamma(alpha_x + N_x) - Gamma.logGamma(alpha_x);
-                alpha_Xi += alpha_x;
-                N += N_x;
-            }
-            log_P_X_given_G += Gamma.logGamma(alpha_Xi) - Gamma.logGamma(alpha_Xi + N);
-        }
-        else {
-            Factor prior_Xi_Pa = this.getParameterPriorBDEUniform(Xi);
-            Factor N_Xi_Pa = this.dataset.computeFactor(Xi.getScope());
-            int[] assignment_x_pa = new int[Xi.getScope().length];
-            for(int[] assignment_pa : new Factor(Xi.getParentVariables(), Double.NaN)) { // create a factor of parents just to iterate over it
-                System.arraycopy(assignment_pa, 0, assignment_x_pa, 1, assignment_pa.length);
-                double alpha_Xi_pa = 0;
-                double N_pa = 0;
-                for(int assignment_x = 0 ; assignment_x < Xi.getVariable().getCardinality() ; assignment_x++) {
-                    assignment_x_pa[0] = assignment_x;
-                    double alpha_x_pa = prior_Xi_Pa.getProbability(assignment_x_pa),
-                            N_x_pa = N_Xi_Pa.getProbability(assignment_x_pa);
-                    log_P_X_given_G += Gamma.logGamma(alpha_x_pa + N_x_pa) - Gamma.logGamma(alpha_x_pa);
-                    alpha_Xi_pa += alpha_x_pa;
+        for(int pa = 0, index = 0 ; pa < q ; pa++) {
+            double N_pa = 0,
+                   log_P_X_given_pa = 0;
+            for(int x = 0 ; x < r ; x++, index++) {
+                double N_x_pa = N_Xi_Pa.getProbability(index);
+                if(N_x_pa > 0) {
+                    log_P_X_given_pa += lgamma_alpha_x_pa.logGammaRatio(N_x_pa);
                     N_pa += N_x_pa;
                 }
-                log_P_X_given_G += Gamma.logGamma(alpha_Xi_pa) - Gamma.logGamma(alpha_Xi_pa + N_pa);
             }
+            if(N_pa > 0)
+                log_P_X_given_G += log_P_X_given_pa - lgamma_alpha_Xi_pa.logGammaRatio(N_pa);
         }
         return log_P_X_given_G;
     }
     
-    private Factor getParameterPriorBDEUniform(Node n) {
-        Variable[] scope = n.getScope();
-        // BDe prior as if the prior network were discrete (without any edge)
-        // and all the variables had a uniform distribution
-        // => ensures the same Bayesian score of I-equivalent structures
-        return new Factor(scope, this.alpha / Toolkit.cardinality(scope));
+    /** Log-gamma table of the given offset (shared by the families of the same prior counts). */
+    private LogGammaTable getLogGammaTable(double offset) {
+        LogGammaTable table = this.logGammaTables.get(offset);
+        if(table == null) {
+            table = new LogGammaTable(offset, Math.min(this.dataset.getSize(), LOG_GAMMA_TABLE_SIZE) + 1);
+            LogGammaTable existingTable = this.logGammaTables.putIfAbsent(offset, table);
+            if(existingTable != null)
+                table = existingTable;
+        }
+        return table;
+    }
+    
+    @Override
+    protected double computeFamilyComplexityPenalty(Variable x, Variable[] parents) {
+        return parents.length * Math.log(C); // share of log P(G)
+    }
+    
+    /**
+     * Log-probability of the data given the family (the family score) is
+     * never positive, so only the structure prior of the smallest proper
+     * superset remains.
+     */
+    @Override
+    protected double upperBoundOfSupersetsLocalScore(Variable x, Variable[] parents) {
+        return (parents.length + 1) * Math.log(C);
     }
     
     @Override
@@ -93,7 +113,6 @@ public class BayesianScoringMethod extends DecomposableScoringMethod {
     }
     
     private double computeLog_P_G(BayesianNetwork bn) {
-        final double C = 0.9;
         double dim = bn.getEdgeCount();
         double logStructureScore = dim * Math.log(C); // log(C ** dim)
         return logStructureScore;
@@ -0,0 +1,81 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/21
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.Random;
+
+
+/**
+ * Structure learning from bootstrap replicas of a dataset. Each run learns
+ * a network from its own replica (records drawn with replacement, see
+ * ResampledDataset), the runs are executed by ParallelStructureLearning. The learnt
+ * networks are registered in a StructureLearningStatistics, so that the edge
+ * frequency matrix gives the bootstrap confidence of each edge (the fraction
+ * of replicas whose network contains the edge).
+ * <p>
+ * A replica only holds the multiplicities of the records, and only the
+ * replicas being learnt from are kept, so the memory needed doesn't grow with
+ * the number of replicas.
+ */
+public class BootstrapStructureLearning {
+    private Dataset dataset;
+    private DecomposableScoringMethod scoringMethod;
+    private ReplicaLearningAlgorithmFactory factory;
+    private int threadcount;
+    private long seed;
+
+
+    /**
+     * Create the bootstrap learning.
+     * @param dataset The data to draw the replicas from.
+     * @param method Scoring method of the learnt networks in the statistics
+     *               (presumably over the whole dataset).
+     * @param factory Creates the learning algorithm for each replica.
+     * @param threadcount Number of replicas learnt at once.
+     * @param seed Seed of the drawing of the replicas.
+     * @throws BNLibIllegalArgumentException When the threadcount is not positive.
+     */
+    public BootstrapStructureLearning(Dataset dataset,
+                                      DecomposableScoringMethod method,
+                                      ReplicaLearningAlgorithmFactory factory,
+                                      int threadcount,
+                                      long seed) throws BNLibIllegalArgumentException {
+        if(threadcount <= 0)
+            throw new BNLibIllegalArgumentException("Number of threads must be positive.");
+        this.dataset = dataset;
+        this.scoringMethod = method;
+        this.factory = factory;
+        this.threadcount = threadcount;
+        this.seed = seed;
+    }
+
+    /**
+     * Learn a network from each of the given number of replicas, each run
+     * starting from the initial network. When the stop flag of the controller
+     * is set, the running runs are discarded and no other run is started.
+     * The i-th replica is the same regardless of the number of threads.
+     * @param observer Notified after each run (can be null).
+     * @return Statistics of the networks of the finished runs.
+     */
+    public StructureLearningStatistics learn(BayesianNetwork bnInitial,
+                                             LearningController controller,
+                                             StructuralConstraints constraints,
+                                             int replicaCount,
+                                             StructureLearningObserver observer) {
+        final long[] replicaSeeds = new long[Math.max(0, replicaCount)];
+        Random rand = new Random(this.seed);
+        for(int i = 0 ; i < replicaSeeds.length ; i++)
+            replicaSeeds[i] = rand.nextLong();
+        StructureLearningAlgorithmFactory replicaFactory = new StructureLearningAlgorithmFactory() {
+            @Override
+            public StructureLearningAlgorithm createLearningAlgorithm(int run) {
+                return factory.createLearningAlgorithm(ResampledDataset.bootstrap(dataset, new Random(replicaSeeds[run])));
+            }
+        };
+        return new ParallelStructureLearning(this.scoringMethod, replicaFactory, this.threadcount)
+                .learn(bnInitial, controller, constraints, replicaCount, observer);
+    }
+}
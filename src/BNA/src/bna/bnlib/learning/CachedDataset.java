@@ -4,29 +4,136 @@
 
 package bna.bnlib.learning;
 
+import bna.bnlib.BNLibIllegalArgumentException;
+import bna.bnlib.BNLibIllegalOperationException;
+import bna.bnlib.BNLibInconsistentVariableSetsException;
 import bna.bnlib.Factor;
 import bna.bnlib.Variable;
-import bna.bnlib.misc.LRUCache;
-import java.util.Arrays;
+import bna.bnlib.misc.CacheStatistics;
+import bna.bnlib.misc.ConcurrentLRUCache;
+import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * Provides caching of factor queries and of mutual information queries.
  * There are two separate caches for factors and for mutual information.
- * Please not that if the underlying dataset is modified, the cached values
- * are no longer valid.
+ * Please not that if the underlying dataset is modified directly, the cached
+ * values are no longer valid.
+ * <p>
+ * Records can be appended through addRecord of the cached dataset (as long
+ * as the underlying dataset supports it). Counts of the registered scopes
+ * (see registerCounts) are then updated by each appended record, while all
+ * other cached values are dropped (at once by the first query following
+ * the appended records). This way eg. the family counts needed by
+ * ParameterLearner stay available without rescanning the whole dataset.
+ * Records mustn't be appended concurrently with other queries.
+ * <p>
+ * The caches are thread-safe (see ConcurrentLRUCache), so a single cached
+ * dataset can be shared by several concurrently running learning threads.
+ * When two threads miss the same entry at the same time, both compute it.
+ * <p>
+ * A factor missing in the cache is derived by marginalization of a cached
+ * factor over a superset of the requested variables when there is one (this
+ * is cheaper than a pass through the dataset as long as the superset factor
+ * has less entries than there are records). The candidate supersets are found
+ * by an index of the cached scopes by their variables. Mutual information is computed
+ * from the (cached) factor of the union of both sets. As records with missing
+ * values are counted only for the scopes they have observed, the factors
+ * aren't derived once the underlying dataset contains such a record
+ * (see DatasetInterface.hasMissingValues).
  */
 public class CachedDataset implements DatasetInterface {
-    private Dataset dataset;
-    private LRUCache<SetOfVariables, Factor> factorCache;
-    private LRUCache<TwoSetsOfVariables, Double> mutualInformationCache;
+    /** Approximate memory taken by a cached factor apart from its values. */
+    private static final long FACTOR_OVERHEAD_BYTES = 128;
+    /** Maximal number of cached scopes examined when looking for a superset of a missing factor. */
+    private static final int MAX_SUPERSET_CANDIDATES = 64;
     
+    private DatasetInterface dataset;
+    private HashMap<Variable, Integer> variableIndices; // for the cache keys (read only)
+    private ConcurrentLRUCache<VariableSetKey, Factor> factorCache;
+    private ConcurrentLRUCache<TwoSetsOfVariables, Double> mutualInformationCache;
+    private ArrayList<Set<VariableSetKey>> cachedScopes; // cached scopes containing each variable (a hint, see cacheFactor)
+    private AtomicLong derivedFactors = new AtomicLong(); // factor cache misses answered without a dataset pass
+    private volatile boolean stale = false; // records have been appended since the caches were cleared
+    private HashMap<VariableSetKey, LiveCounts> liveCounts = new HashMap<VariableSetKey, LiveCounts>(); // guarded by itself
     
-    /** Create an LRU caching proxy encapsulating the given dataset. */
-    public CachedDataset(Dataset dataset, int cacheCapacity) {
+    
+    /** Create an LRU caching proxy encapsulating the given dataset (capacities are numbers of entries). */
+    public CachedDataset(DatasetInterface dataset, int cacheCapacity) {
+        this.dataset = dataset;
+        this.variableIndices = VariableSetKey.indexVariables(dataset.getVariables());
+        this.cachedScopes = CachedDataset.createScopeIndex(this.variableIndices.size());
+        this.factorCache = new ConcurrentLRUCache<VariableSetKey, Factor>(cacheCapacity, ConcurrentLRUCache.DEFAULT_SEGMENT_COUNT,
+                                                                          null, this.createEvictionListener());
+        this.mutualInformationCache = new ConcurrentLRUCache<TwoSetsOfVariables, Double>(cacheCapacity, ConcurrentLRUCache.DEFAULT_SEGMENT_COUNT);
+    }
+    
+    /**
+     * Create an LRU caching proxy whose factor cache is limited by memory.
+     * Evicting by size keeps a few huge factors from occupying the heap,
+     * while many small ones can be kept at the same time.
+     * @param factorCacheBytes Maximal (approximate) size of all cached factors.
+     * @param mutualInformationCacheCapacity Maximal number of cached values
+     *                                       of mutual information.
+     */
+    public CachedDataset(DatasetInterface dataset, long factorCacheBytes, int mutualInformationCacheCapacity) {
         this.dataset = dataset;
-        this.factorCache = new LRUCache<SetOfVariables, Factor>(cacheCapacity);
-        this.mutualInformationCache = new LRUCache<TwoSetsOfVariables, Double>(cacheCapacity);
+        this.variableIndices = VariableSetKey.indexVariables(dataset.getVariables());
+        this.cachedScopes = CachedDataset.createScopeIndex(this.variableIndices.size());
+        this.factorCache = new ConcurrentLRUCache<VariableSetKey, Factor>(factorCacheBytes, ConcurrentLRUCache.DEFAULT_SEGMENT_COUNT,
+                new ConcurrentLRUCache.Weigher<Factor>() {
+                    @Override
+                    public long weigh(Factor factor) {
+                        return CachedDataset.FACTOR_OVERHEAD_BYTES + 8L * factor.getCardinality();
+                    }
+                },
+                this.createEvictionListener());
+        this.mutualInformationCache = new ConcurrentLRUCache<TwoSetsOfVariables, Double>(mutualInformationCacheCapacity, ConcurrentLRUCache.DEFAULT_SEGMENT_COUNT);
+    }
+
+    private static ArrayList<Set<VariableSetKey>> createScopeIndex(int variableCount) {
+        ArrayList<Set<VariableSetKey>> index = new ArrayList<Set<VariableSetKey>>(variableCount);
+        for(int i = 0 ; i < variableCount ; i++)
+            index.add(Collections.newSetFromMap(new ConcurrentHashMap<VariableSetKey, Boolean>()));
+        return index;
+    }
+    
+    /** Removes the evicted factors from the index of the cached scopes. */
+    private ConcurrentLRUCache.EvictionListener<VariableSetKey, Factor> createEvictionListener() {
+        return new ConcurrentLRUCache.EvictionListener<VariableSetKey, Factor>() {
+            @Override
+            public void evicted(VariableSetKey key, Factor factor) {
+                for(Variable var : factor.getScope())
+                    CachedDataset.this.cachedScopes.get(CachedDataset.this.variableIndices.get(var)).remove(key);
+            }
+        };
+    }
+    
+    /**
+     * Put the factor into the cache and into the index of the cached scopes.
+     * The scope is indexed before the factor is put, so that its eviction
+     * always removes it from the index again. Racing with an eviction of the
+     * same key, the index may miss a cached scope or hold an evicted one,
+     * which only affects whether a factor is derived from a superset.
+     */
+    private void cacheFactor(VariableSetKey set, Factor factor) {
+        for(Variable var : factor.getScope())
+            this.cachedScopes.get(this.variableIndices.get(var)).add(set);
+        this.factorCache.put(set, factor);
+    }
+    
+    /** Drop all the cached factors. */
+    private void clearFactorCache() {
+        this.factorCache.clear();
+        for(Set<VariableSetKey> scopes : this.cachedScopes)
+            scopes.clear();
     }
 
     @Override
@@ -39,70 +146,294 @@ public class CachedDataset implements DatasetInterface {
         return this.dataset.getSize();
     }
 
+    @Override
+    public boolean hasMissingValues() {
+        return this.dataset.hasMissingValues();
+    }
+
+    /**
+     * Append a record to the underlying dataset.
+     * Counts of all registered scopes are updated, other cached values are
+     * dropped by the next query (so appending many records clears the caches
+     * only once).
+     * @throws UnsupportedOperationException When the underlying dataset
+     *         doesn't support record addition.
+     */
     @Override
     public void addRecord(int[] record) {
-        throw new UnsupportedOperationException("Record addition is not supported for a cached dataset.");
+        synchronized(this.liveCounts) {
+            this.dataset.addRecord(record); // validates the record
+            for(LiveCounts counts : this.liveCounts.values())
+                counts.add(record);
+            this.stale = true;
+        }
+    }
+    
+    /** Drop the cached values if records have been appended since they were cached. */
+    private void dropStaleValues() {
+        if(!this.stale)
+            return;
+        synchronized(this.liveCounts) {
+            if(this.stale) {
+                this.clearFactorCache();
+                this.mutualInformationCache.clear();
+                this.stale = false;
+            }
+        }
+    }
+    
+    /**
+     * Keep counts of the given scope up to date when records are appended.
+     * The counts are then returned by computeFactor (in any order of the scope).
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain all variables from the scope parameter.
+     * @throws BNLibIllegalOperationException When the underlying dataset is
+     *         a WindowedDataset, appended records don't only add to its counts
+     *         (the scope has to be registered by WindowedDataset.registerCounts).
+     */
+    public void registerCounts(Variable[] scope) throws BNLibInconsistentVariableSetsException, BNLibIllegalOperationException {
+        if(this.dataset instanceof WindowedDataset)
+            throw new BNLibIllegalOperationException("Counts of a windowed dataset forget old records, register them by WindowedDataset.registerCounts instead.");
+        VariableSetKey set = VariableSetKey.create(scope, this.variableIndices);
+        synchronized(this.liveCounts) {
+            if(this.liveCounts.containsKey(set))
+                return;
+            this.liveCounts.put(set, new LiveCounts(this.computeFactor(scope), this.variableIndices));
+        }
+    }
+    
+    /** Stop updating counts of the given scope (if they were registered). */
+    public void unregisterCounts(Variable[] scope) throws BNLibInconsistentVariableSetsException {
+        VariableSetKey set = VariableSetKey.create(scope, this.variableIndices);
+        synchronized(this.liveCounts) {
+            this.liveCounts.remove(set);
+        }
     }
 
+    /**
+     * Count occurences of all assignments to given variables and return as a factor.
+     * The cache doesn't distinguish order of the variables, a cached factor
+     * is permuted to the requested order of the scope.
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain all variables from the scope parameter.
+     */
     @Override
-    public Factor computeFactor(Variable[] scope) {
-        SetOfVariables set = new SetOfVariables(scope);
+    public Factor computeFactor(Variable[] scope) throws BNLibInconsistentVariableSetsException {
+        this.dropStaleValues();
+        VariableSetKey set = VariableSetKey.create(scope, this.variableIndices);
+        synchronized(this.liveCounts) {
+            LiveCounts counts = this.liveCounts.get(set);
+            if(counts != null)
+                return counts.toFactor().reorderScope(scope);
+        }
         Factor factor = this.factorCache.get(set);
         if(factor == null) {
-            factor = this.dataset.computeFactor(scope);
-            this.factorCache.put(set, factor);
+            factor = this.marginalizeCachedSuperset(set, scope);
+            if(factor == null)
+                factor = this.dataset.computeFactor(scope);
+            else
+                this.derivedFactors.incrementAndGet();
+            this.cacheFactor(set, factor);
+            return factor;
         }
-        return factor;
+        return factor.reorderScope(scope);
+    }
+    
+    /**
+     * Count occurences of all assignments of each of the scopes. Factors
+     * that aren't cached (and cannot be derived from a cached superset)
+     * are counted by the dataset at once and put into the cache.
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain all variables from some scope.
+     */
+    @Override
+    public Factor[] computeFactors(Variable[][] scopes) throws BNLibInconsistentVariableSetsException {
+        return this.computeFactors(scopes, null, 1);
+    }
+    
+    /**
+     * Count occurences of all assignments of each of the scopes like
+     * computeFactors, the factors that aren't cached are counted by at most
+     * threadcount threads of the executor (see ParallelCounting).
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain all variables from some scope.
+     */
+    Factor[] computeFactors(Variable[][] scopes, ExecutorService executor, int threadcount) throws BNLibInconsistentVariableSetsException {
+        this.dropStaleValues();
+        Factor[] factors = new Factor[scopes.length];
+        VariableSetKey[] sets = new VariableSetKey[scopes.length];
+        ArrayList<Integer> missing = new ArrayList<Integer>();
+        for(int s = 0 ; s < scopes.length ; s++) {
+            sets[s] = VariableSetKey.create(scopes[s], this.variableIndices);
+            synchronized(this.liveCounts) {
+                LiveCounts counts = this.liveCounts.get(sets[s]);
+                if(counts != null) {
+                    factors[s] = counts.toFactor().reorderScope(scopes[s]);
+                    continue;
+                }
+            }
+            Factor factor = this.factorCache.get(sets[s]);
+            if(factor == null) {
+                factor = this.marginalizeCachedSuperset(sets[s], scopes[s]);
+                if(factor != null) {
+                    this.derivedFactors.incrementAndGet();
+                    this.cacheFactor(sets[s], factor);
+                }
+            }
+            if(factor != null)
+                factors[s] = factor.reorderScope(scopes[s]);
+            else
+                missing.add(s);
+        }
+        if(!missing.isEmpty()) {
+            Variable[][] missingScopes = new Variable[missing.size()][];
+            for(int i = 0 ; i < missingScopes.length ; i++)
+                missingScopes[i] = scopes[missing.get(i)];
+            Factor[] counted = ParallelCounting.computeFactors(this.dataset, missingScopes, executor, threadcount);
+            for(int i = 0 ; i < counted.length ; i++) {
+                int s = missing.get(i);
+                factors[s] = counted[i];
+                this.cacheFactor(sets[s], counted[i]);
+            }
+        }
+        return factors;
+    }
+    
+    /**
+     * Find the smallest cached factor over a proper superset of the given set
+     * and marginalize it to the scope. Returns null if there is no such factor
+     * or if summing up the superset factor would be more expensive than
+     * counting records of the dataset. Only the cached scopes containing the
+     * least frequently cached variable of the scope are examined (at most
+     * MAX_SUPERSET_CANDIDATES of them).
+     */
+    private Factor marginalizeCachedSuperset(VariableSetKey set, Variable[] scope) {
+        if(this.dataset.hasMissingValues() || scope.length == 0)
+            return null; // marginal of the superset isn't the count of the subset
+        Set<VariableSetKey> candidates = null;
+        for(Variable var : scope) {
+            Set<VariableSetKey> varScopes = this.cachedScopes.get(this.variableIndices.get(var));
+            if(candidates == null || varScopes.size() < candidates.size())
+                candidates = varScopes;
+        }
+        VariableSetKey bestKey = null;
+        int examined = 0;
+        for(VariableSetKey key : candidates) {
+            if(examined++ == CachedDataset.MAX_SUPERSET_CANDIDATES)
+                break;
+            if(key.getCardinality() >= this.dataset.getSize() || key.equals(set) || !set.isSubsetOf(key))
+                continue;
+            if(bestKey == null || key.getCardinality() < bestKey.getCardinality())
+                bestKey = key;
+        }
+        if(bestKey == null)
+            return null;
+        // the entry might have been evicted meanwhile, the superset isn't requested itself (no hit)
+        Factor superset = this.factorCache.peek(bestKey);
+        if(superset == null)
+            return null;
+        Variable[] supersetScope = superset.getScope();
+        return superset.marginalize(Toolkit.difference(supersetScope, scope)).reorderScope(scope);
     }
 
+    /**
+     * Compute mutual information between two sets of variables.
+     * @throws BNLibIllegalArgumentException When the two sets aren't disjoint.
+     * @throws BNLibInconsistentVariableSetsException When the sets contain
+     *         a variable not present in the dataset.
+     */
     @Override
-    public double mutualInformation(Variable[] set1, Variable[] set2) {
-        TwoSetsOfVariables infObject = new TwoSetsOfVariables(set1, set2);
+    public double mutualInformation(Variable[] set1, Variable[] set2) throws BNLibIllegalArgumentException, BNLibInconsistentVariableSetsException {
+        this.dropStaleValues();
+        TwoSetsOfVariables infObject = new TwoSetsOfVariables(VariableSetKey.create(set1, this.variableIndices),
+                                                              VariableSetKey.create(set2, this.variableIndices));
         Double infValue = this.mutualInformationCache.get(infObject);
         if(infValue == null) {
-            infValue = this.dataset.mutualInformation(set1, set2);
+            if(!Toolkit.areDisjoint(set1, set2))
+                throw new BNLibIllegalArgumentException("Sets to compute mutual information for are not disjoint.");
+            if(set1.length == 0 || set2.length == 0)
+                infValue = 0.0;
+            else
+                infValue = Dataset.mutualInformation(this.computeFactor(Toolkit.union(set1, set2)), set1, set2);
             this.mutualInformationCache.put(infObject, infValue);
         }
         return infValue;
     }
     
-    /** Hashable class representing an ordered set of variables. */
-    class SetOfVariables {
-        Variable[] set;
-        public SetOfVariables(Variable[] vars) {
-            this.set = vars;
+    /** Number of factors that were derived from a cached factor of a superset instead of counting the dataset. */
+    public long getDerivedFactorCount() {
+        return this.derivedFactors.get();
+    }
+    
+    /** Hits, misses and evictions of the factor cache. */
+    public CacheStatistics getFactorCacheStatistics() {
+        return this.factorCache.getStatistics();
+    }
+    
+    /** Hits, misses and evictions of the mutual information cache. */
+    public CacheStatistics getMutualInformationCacheStatistics() {
+        return this.mutualInformationCache.getStatistics();
+    }
+    
+    /**
+     * Counts of assignments of a scope maintained record by record.
+     * The counts are stored as values of a factor (the leftmost variable
+     * changes fastest), so that a record is added in time linear in size
+     * of the scope.
+     */
+    static class LiveCounts {
+        private final Variable[] scope;
+        private final int[] recordPositions; // position of each scope variable in a record
+        private final int[] strides;
+        private final double[] counts;
+        
+        LiveCounts(Factor initialCounts, HashMap<Variable, Integer> variableIndices) {
+            this.scope = initialCounts.getScope();
+            this.recordPositions = new int[this.scope.length];
+            this.strides = new int[this.scope.length];
+            int stride = 1;
+            for(int i = 0 ; i < this.scope.length ; i++) {
+                this.recordPositions[i] = variableIndices.get(this.scope[i]);
+                this.strides[i] = stride;
+                stride *= this.scope[i].getCardinality();
+            }
+            this.counts = new double[initialCounts.getCardinality()];
+            for(int i = 0 ; i < this.counts.length ; i++)
+                this.counts[i] = initialCounts.getProbability(i);
         }
         
-        @Override
-        public int hashCode() {
-            int hash = 5;
-            hash = 37 * hash + Arrays.deepHashCode(this.set);
-            return hash;
+        void add(int[] record) {
+            int index = 0;
+            for(int i = 0 ; i < this.scope.length ; i++) {
+                int value = record[this.recordPositions[i]];
+                if(value == Dataset.MISSING_VALUE)
+                    return; // not observed for the scope
+                index += value * this.strides[i];
+            }
+            this.counts[index]++;
         }
-
-        @Override
-        public boolean equals(Object o) {
-            if(!(o instanceof SetOfVariables))
-                return false;
-            SetOfVariables mo = (SetOfVariables)o;
-            return Arrays.equals(this.set, mo.set);
+        
+        Factor toFactor() {
+            return new Factor(this.scope, this.counts); // the values are copied
         }
     }
     
-    /** We cache values of mutual information for 2-tuples of variable sets ({X}, Parents(X)). */
-    class TwoSetsOfVariables {
-        Variable[] set1, set2;
-        public TwoSetsOfVariables(Variable[] set1, Variable[] set2) {
+    /**
+     * Unordered pair of unordered sets of variables.
+     * We cache values of mutual information for 2-tuples of variable sets
+     * ({X}, Parents(X)); as mutual information is symmetric, MI(X;Y) and MI(Y;X)
+     * share the same key.
+     */
+    static class TwoSetsOfVariables {
+        final VariableSetKey set1, set2;
+        public TwoSetsOfVariables(VariableSetKey set1, VariableSetKey set2) {
             this.set1 = set1;
             this.set2 = set2;
         }
 
         @Override
         public int hashCode() {
-            int hash = 5;
-            hash = 37 * hash + Arrays.deepHashCode(this.set1);
-            hash = 37 * hash + Arrays.deepHashCode(this.set2);
-            return hash;
+            return this.set1.hashCode() + this.set2.hashCode(); // symmetric
         }
 
         @Override
@@ -110,7 +441,8 @@ public class CachedDataset implements DatasetInterface {
             if(!(o instanceof TwoSetsOfVariables))
                 return false;
             TwoSetsOfVariables mo = (TwoSetsOfVariables)o;
-            return Arrays.equals(this.set1, mo.set1) && Arrays.equals(this.set2, mo.set2);
+            return (this.set1.equals(mo.set1) && this.set2.equals(mo.set2))
+                || (this.set1.equals(mo.set2) && this.set2.equals(mo.set1));
         }
     }
 }
@@ -0,0 +1,124 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
+
+
+/**
+ * Dataset whose incomplete records have been replaced by their completions
+ * weighted by the posterior probability of the completion (the weights of
+ * the completions of a record sum up to 1). Counts of any scope are therefore
+ * the expected counts given the network the completions were inferred with
+ * (see ExpectationMaximization). Complete records are shared with the original
+ * dataset, not copied. Values of variables outside of the network stay missing
+ * and such records are skipped as in Dataset.
+ */
+final class CompletedDataset implements DatasetInterface {
+    private Variable[] variables;
+    private ArrayList<int[]> records;
+    private double[] weights;
+    private int size;
+    private boolean hasMissingValues;
+
+
+    /**
+     * @param records Completed records.
+     * @param weights Weight of each record.
+     * @param size Number of records of the original dataset.
+     */
+    CompletedDataset(Variable[] variables, ArrayList<int[]> records, double[] weights, int size) {
+        this.variables = variables;
+        this.records = records;
+        this.weights = weights;
+        this.size = size;
+        for(int[] record : records) {
+            if(!Dataset.isComplete(record)) {
+                this.hasMissingValues = true;
+                break;
+            }
+        }
+    }
+
+    @Override
+    public Variable[] getVariables() {
+        return this.variables.clone();
+    }
+
+    /** Number of records of the original dataset (the sum of weights). */
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /** Do values of a variable outside of the network remain missing? */
+    @Override
+    public boolean hasMissingValues() {
+        return this.hasMissingValues;
+    }
+
+    @Override
+    public void addRecord(int[] record) {
+        throw new UnsupportedOperationException("Record addition is not supported for a completed dataset.");
+    }
+
+    @Override
+    public Factor computeFactor(Variable[] scope) throws BNLibInconsistentVariableSetsException {
+        return this.computeFactors(new Variable[][] {scope})[0];
+    }
+
+    /**
+     * Sum the weights of the records of each assignment of each of the scopes
+     * in a single pass over the records (records with a value of the scope
+     * missing are skipped).
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain all variables from some scope.
+     */
+    @Override
+    public Factor[] computeFactors(Variable[][] scopes) throws BNLibInconsistentVariableSetsException {
+        return RecordCounts.count(this.variables, scopes, this.weightedRecords());
+    }
+
+    /** The completed records with their weights (see RecordCounts). */
+    RecordCounts.WeightedRecords weightedRecords() {
+        return new RecordCounts.WeightedRecords() {
+            @Override
+            public int size() {
+                return records.size();
+            }
+
+            @Override
+            public int[] get(int index) {
+                return records.get(index);
+            }
+
+            @Override
+            public double getWeight(int index) {
+                return weights[index];
+            }
+        };
+    }
+
+    /**
+     * Compute mutual information between two sets of variables (from the expected counts).
+     * @throws BNLibIllegalArgumentException When the two sets aren't disjoint
+     *         or containt a variable not present in the dataset.
+     */
+    @Override
+    public double mutualInformation(Variable[] set1, Variable[] set2) throws BNLibIllegalArgumentException {
+        if(!Toolkit.areDisjoint(set1, set2))
+            throw new BNLibIllegalArgumentException("Sets to compute mutual information for are not disjoint.");
+        Variable[] union = Toolkit.union(set1, set2);
+        if(!Toolkit.isSubset(this.variables, union))
+            throw new BNLibIllegalArgumentException("Sets contain variables not present in the dataset.");
+
+        if(set1.length == 0 || set2.length == 0)
+            return 0.0;
+
+        return Dataset.mutualInformation(this.computeFactor(union), set1, set2);
+    }
+}
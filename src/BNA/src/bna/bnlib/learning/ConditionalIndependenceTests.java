@@ -0,0 +1,261 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/18
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.CacheStatistics;
+import bna.bnlib.misc.ConcurrentLRUCache;
+import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import org.apache.commons.math3.special.Gamma;
+
+
+/**
+ * Tests of conditional independence of two variables X and Y given a set of
+ * variables Z over a dataset. Each test counts the contingency table of
+ * {X,Y} u Z and computes the G² and Pearson's χ² statistics, the conditional
+ * mutual information I(X;Y|Z) and the p-values wrt the degrees of freedom
+ * (rX - 1) * (rY - 1) * rZ.
+ * <p>
+ * The results are cached by the canonical form of the test (order of X and Y
+ * and order of the variables of Z don't matter). A batch of tests is evaluated
+ * at once: the distinct contingency tables the batch needs are counted in
+ * a single pass over the dataset whose records are split among several threads
+ * (see ParallelCounting).
+ * <p>
+ * The tests can be issued concurrently as long as the dataset is thread-safe.
+ */
+public class ConditionalIndependenceTests {
+    /** Default number of cached test results. */
+    public static final int DEFAULT_CACHE_CAPACITY = 1 << 20;
+
+    private DatasetInterface dataset;
+    private HashMap<Variable, Integer> variableIndices;
+    private ConcurrentLRUCache<TestKey, Result> cache;
+    private int threadcount;
+    private ExecutorService executor; // counting threads, see ParallelCounting
+
+
+    /**
+     * Create the tests over the given dataset.
+     * @param cacheCapacity Maximal number of cached test results.
+     * @param threadcount Number of threads counting the tables of a batch of tests.
+     * @throws BNLibIllegalArgumentException When the cache capacity or the
+     *         threadcount is not positive.
+     */
+    public ConditionalIndependenceTests(DatasetInterface dataset, int cacheCapacity, int threadcount) throws BNLibIllegalArgumentException {
+        if(cacheCapacity <= 0 || threadcount <= 0)
+            throw new BNLibIllegalArgumentException("Cache capacity and the number of threads must be positive.");
+        this.dataset = dataset;
+        this.variableIndices = VariableSetKey.indexVariables(dataset.getVariables());
+        this.cache = new ConcurrentLRUCache<TestKey, Result>(cacheCapacity, ConcurrentLRUCache.DEFAULT_SEGMENT_COUNT);
+        this.threadcount = threadcount;
+        this.executor = ParallelCounting.createExecutor(threadcount);
+    }
+
+    public DatasetInterface getDataset() {
+        return this.dataset;
+    }
+
+    /**
+     * Test independence of x and y given z.
+     * @throws BNLibIllegalArgumentException When x, y and z are not disjoint.
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain some of the variables.
+     */
+    public Result test(Variable x, Variable y, Variable[] z) throws BNLibIllegalArgumentException, BNLibInconsistentVariableSetsException {
+        return this.test(new Variable[] {x}, new Variable[] {y}, new Variable[][] {z})[0];
+    }
+
+    /**
+     * Test independence of xs[i] and ys[i] given zs[i] for each i.
+     * Results of the tests that aren't cached are computed in parallel.
+     * @throws BNLibIllegalArgumentException When the arrays have different
+     *         lengths or some test is given sets that are not disjoint.
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain some of the variables.
+     */
+    public Result[] test(Variable[] xs, Variable[] ys, Variable[][] zs) throws BNLibIllegalArgumentException, BNLibInconsistentVariableSetsException {
+        if(xs.length != ys.length || xs.length != zs.length)
+            throw new BNLibIllegalArgumentException("Each test needs its X, Y and Z.");
+        Result[] results = new Result[xs.length];
+        // distinct tests missing in the cache
+        HashMap<TestKey, ArrayList<Integer>> missing = new HashMap<TestKey, ArrayList<Integer>>();
+        for(int i = 0 ; i < xs.length ; i++) {
+            Variable[] xy = new Variable[] {xs[i], ys[i]};
+            if(xs[i] == ys[i] || !Toolkit.areDisjoint(xy, zs[i]))
+                throw new BNLibIllegalArgumentException("Variables of a conditional independence test are not disjoint.");
+            TestKey key = new TestKey(VariableSetKey.create(xy, this.variableIndices),
+                                      VariableSetKey.create(zs[i], this.variableIndices));
+            results[i] = this.cache.get(key);
+            if(results[i] == null) {
+                ArrayList<Integer> indices = missing.get(key);
+                if(indices == null)
+                    missing.put(key, indices = new ArrayList<Integer>());
+                indices.add(i);
+            }
+        }
+        if(missing.isEmpty())
+            return results;
+
+        // distinct contingency tables of the tests (the scope of a table is x, y, z...)
+        ArrayList<TestKey> keys = new ArrayList<TestKey>(missing.keySet());
+        Variable[][] testScopes = new Variable[keys.size()][];
+        int[] tableOfTest = new int[keys.size()];
+        HashMap<VariableSetKey, Integer> tableIndices = new HashMap<VariableSetKey, Integer>();
+        ArrayList<Variable[]> tableScopes = new ArrayList<Variable[]>();
+        for(int t = 0 ; t < testScopes.length ; t++) {
+            int i = missing.get(keys.get(t)).get(0);
+            testScopes[t] = new Variable[zs[i].length + 2];
+            testScopes[t][0] = xs[i];
+            testScopes[t][1] = ys[i];
+            System.arraycopy(zs[i], 0, testScopes[t], 2, zs[i].length);
+            VariableSetKey union = VariableSetKey.create(testScopes[t], this.variableIndices);
+            Integer table = tableIndices.get(union);
+            if(table == null) {
+                table = tableScopes.size();
+                tableIndices.put(union, table);
+                tableScopes.add(testScopes[t]);
+            }
+            tableOfTest[t] = table;
+        }
+        Factor[] tables = ParallelCounting.computeFactors(this.dataset, tableScopes.toArray(new Variable[0][]), this.executor, this.threadcount);
+        for(int t = 0 ; t < testScopes.length ; t++) {
+            Result result = ConditionalIndependenceTests.computeResult(tables[tableOfTest[t]].reorderScope(testScopes[t]));
+            this.cache.put(keys.get(t), result);
+            for(int i : missing.get(keys.get(t)))
+                results[i] = result;
+        }
+        return results;
+    }
+
+    /** Compute the statistics from the counts of the scope x, y, z... (in this order). */
+    private static Result computeResult(Factor table) {
+        Variable[] scope = table.getScope();
+        int rx = scope[0].getCardinality(),
+            ry = scope[1].getCardinality(),
+            rxy = rx * ry,
+            rz = table.getCardinality() / rxy;
+        double g2 = 0, chi2 = 0, N = 0;
+        double[] nxz = new double[rx],
+                 nyz = new double[ry];
+        for(int zi = 0 ; zi < rz ; zi++) {
+            // the counts of a single assignment of z form a contiguous block
+            int base = zi * rxy;
+            double nz = 0;
+            Arrays.fill(nxz, 0);
+            Arrays.fill(nyz, 0);
+            for(int yi = 0, index = base ; yi < ry ; yi++) {
+                for(int xi = 0 ; xi < rx ; xi++, index++) {
+                    double n = table.getProbability(index);
+                    nxz[xi] += n;
+                    nyz[yi] += n;
+                    nz += n;
+                }
+            }
+            if(nz == 0)
+                continue;
+            N += nz;
+            for(int yi = 0, index = base ; yi < ry ; yi++) {
+                for(int xi = 0 ; xi < rx ; xi++, index++) {
+                    double expected = nxz[xi] * nyz[yi] / nz;
+                    if(expected == 0)
+                        continue;
+                    double n = table.getProbability(index);
+                    if(n > 0)
+                        g2 += 2 * n * Math.log(n / expected);
+                    chi2 += (n - expected) * (n - expected) / expected;
+                }
+            }
+        }
+        g2 = Math.max(g2, 0.0);
+        long df = (long)(rx - 1) * (ry - 1) * rz;
+        return new Result(g2, chi2, (N == 0) ? 0.0 : g2 / (2 * N), df);
+    }
+
+    /** Remove all the cached results (eg. when the dataset has changed). */
+    public void clearCache() {
+        this.cache.clear();
+    }
+
+    public CacheStatistics getCacheStatistics() {
+        return this.cache.getStatistics();
+    }
+
+
+    /** Result of a single conditional independence test. */
+    public static class Result {
+        private double g2, chi2, conditionalMutualInformation;
+        private long degreesOfFreedom;
+
+        Result(double g2, double chi2, double conditionalMutualInformation, long degreesOfFreedom) {
+            this.g2 = g2;
+            this.chi2 = chi2;
+            this.conditionalMutualInformation = conditionalMutualInformation;
+            this.degreesOfFreedom = degreesOfFreedom;
+        }
+
+        /** The G² statistic (ie. 2 * N * I(X;Y|Z)). */
+        public double getG2() {
+            return this.g2;
+        }
+
+        /** The Pearson's χ² statistic. */
+        public double getChiSquare() {
+            return this.chi2;
+        }
+
+        /** The conditional mutual information I(X;Y|Z) in nats. */
+        public double getConditionalMutualInformation() {
+            return this.conditionalMutualInformation;
+        }
+
+        public long getDegreesOfFreedom() {
+            return this.degreesOfFreedom;
+        }
+
+        /** P-value of the G² statistic (1 if there are no degrees of freedom). */
+        public double getPValue() {
+            return Result.pValue(this.g2, this.degreesOfFreedom);
+        }
+
+        /** P-value of the χ² statistic (1 if there are no degrees of freedom). */
+        public double getChiSquarePValue() {
+            return Result.pValue(this.chi2, this.degreesOfFreedom);
+        }
+
+        private static double pValue(double statistic, long df) {
+            if(df == 0)
+                return 1.0;
+            return Gamma.regularizedGammaQ(df / 2.0, statistic / 2.0);
+        }
+    }
+
+    /** Canonical form of a test (unordered pair {X,Y} and unordered set Z). */
+    private static final class TestKey {
+        private final VariableSetKey xy, z;
+
+        public TestKey(VariableSetKey xy, VariableSetKey z) {
+            this.xy = xy;
+            this.z = z;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.xy.hashCode() + this.z.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof TestKey))
+                return false;
+            TestKey ko = (TestKey)o;
+            return this.xy.equals(ko.xy) && this.z.equals(ko.z);
+        }
+    }
+}
@@ -5,14 +5,17 @@
 package bna.bnlib.learning;
 
 import bna.bnlib.*;
-import bna.bnlib.io.DatasetCSVFileReader;
+import bna.bnlib.io.DatasetBinaryFileReader;
+import bna.bnlib.io.DatasetBinaryFileWriter;
+import bna.bnlib.io.DatasetCSVParallelFileReader;
 import bna.bnlib.io.DatasetCSVFileWriter;
 import bna.bnlib.io.DatasetFileReader;
 import bna.bnlib.io.DatasetFileWriter;
 import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 
@@ -20,25 +23,36 @@ import java.util.List;
  * Holds samples for a set of variables (ie. a multiset of instantiations).
  * Provides counting of occurences for a subset of dataset variables and also
  * computes mutual information.
+ * <p>
+ * A value of a record can be missing (MISSING_VALUE). Counting of a scope
+ * then takes into account only the records that have all the variables
+ * of the scope observed (see ExpectationMaximization for learning that
+ * uses the incomplete records as well).
  */
 public class Dataset implements DatasetInterface {
+    /** Value of a record for a variable whose value hasn't been observed. */
+    public static final int MISSING_VALUE = -1;
+    
     private Variable[] variables;
-    List<int[]> records; // package-private for the DatasetIterator
+    ArrayList<int[]> records; // package-private for the DatasetIterator
+    private int incompleteRecords = 0;
     
     
     /** Create a dataset that can contain instantiations of given variables. */
     public Dataset(Variable[] variables) {
         this.variables = Arrays.copyOf(variables, variables.length);
-        this.records = new LinkedList<int[]>();
+        this.records = new ArrayList<int[]>();
     }
     
     /**
      * Create new dataset by reading data from given CSV file.
+     * The file is parsed in parallel by all available processors.
      * @throws BNLibIOException When an IO error occurs or the datafile content
      *                          is invalid.
      */
     public static Dataset loadCSVFile(String csvFileName, String separator) throws BNLibIOException {
-        DatasetFileReader reader = new DatasetCSVFileReader(csvFileName, separator);
+        int threadcount = Runtime.getRuntime().availableProcessors();
+        DatasetFileReader reader = new DatasetCSVParallelFileReader(csvFileName, separator, threadcount);
         return reader.load();
     }
     
@@ -51,6 +65,26 @@ public class Dataset implements DatasetInterface {
         csvWriter.save(this);
     }
     
+    /**
+     * Create new dataset by reading data from given binary dataset file.
+     * @throws BNLibIOException When an IO error occurs or the datafile content
+     *                          is invalid.
+     */
+    public static Dataset loadBinaryFile(String binaryFileName) throws BNLibIOException {
+        DatasetFileReader reader = new DatasetBinaryFileReader(binaryFileName);
+        return reader.load();
+    }
+    
+    /**
+     * Saves this dataset to the given binary dataset file (which can be
+     * memory-mapped by MappedDataset).
+     * @throws BNLibIOException When an IO error occurs.
+     */
+    public void saveBinaryFile(String binaryFileName) throws BNLibIOException {
+        DatasetFileWriter binaryWriter = new DatasetBinaryFileWriter(binaryFileName);
+        binaryWriter.save(this);
+    }
+    
     @Override
     public Variable[] getVariables() {
         return Arrays.copyOf(this.variables, this.variables.length);
@@ -66,40 +100,107 @@ public class Dataset implements DatasetInterface {
         return this.records.size();
     }
     
+    @Override
+    public boolean hasMissingValues() {
+        return this.incompleteRecords > 0;
+    }
+    
+    /** Does the record have all the values observed? */
+    public static boolean isComplete(int[] record) {
+        for(int value : record)
+            if(value == MISSING_VALUE)
+                return false;
+        return true;
+    }
+    
+    /** Is the record an assignment of the variables with some values possibly missing? */
+    static boolean validateRecord(Variable[] variables, int[] record) {
+        if(record == null || variables.length != record.length)
+            return false;
+        for(int i = 0 ; i < variables.length ; i++)
+            if(record[i] != MISSING_VALUE && (record[i] < 0 || record[i] >= variables[i].getCardinality()))
+                return false;
+        return true;
+    }
+    
     /** Return all records in a read only list. */
     public List<int[]> getDataReadOnly() {
         return Collections.unmodifiableList(this.records);
     }
     
     /**
-     * Add new record to the dataset.
+     * Add new record to the dataset (some of its values can be MISSING_VALUE).
      * @throws BNLibIllegalArgumentException When the given record cannot be an
      *         assignment of the variables in this dataset.
      */
     @Override
     public void addRecord(int[] record) throws BNLibIllegalArgumentException {
-        if(!Toolkit.validateAssignment(this.variables, record))
+        if(!Dataset.validateRecord(this.variables, record))
             throw new BNLibIllegalArgumentException("Record of invalid lenght or with invalid values.");
         this.records.add(Arrays.copyOf(record, record.length));
+        if(!Dataset.isComplete(record))
+            this.incompleteRecords++;
+    }
+    
+    /**
+     * Add all the given records to the dataset at once.
+     * If any of the records is invalid, no record is added.
+     * @throws BNLibIllegalArgumentException When some of the given records
+     *         cannot be an assignment of the variables in this dataset.
+     */
+    public void addRecords(Collection<int[]> newRecords) throws BNLibIllegalArgumentException {
+        for(int[] record : newRecords)
+            if(!Dataset.validateRecord(this.variables, record))
+                throw new BNLibIllegalArgumentException("Record of invalid lenght or with invalid values.");
+        this.records.ensureCapacity(this.records.size() + newRecords.size());
+        for(int[] record : newRecords) {
+            this.records.add(Arrays.copyOf(record, record.length));
+            if(!Dataset.isComplete(record))
+                this.incompleteRecords++;
+        }
     }
     
     /**
      * Count occurences of all assignments to given variables and return as a factor.
+     * Records with a value of the scope missing are not counted.
      * @throws BNLibInconsistentVariableSetsException When this dataset doesn't
      *         contain all variables from the scope parameter.
      */
     @Override
     public Factor computeFactor(Variable[] scope) throws BNLibInconsistentVariableSetsException {
-        if(!this.containsVariables(scope))
-            throw new BNLibInconsistentVariableSetsException("Dataset doesn't contain all requested variables.");
-        Counter counter = new Counter(scope);
-        VariableSubsetMapper recordToScopeMapper = new VariableSubsetMapper(this.variables, scope);
-        int[] scopeAssignment = new int[scope.length];
-        for(int[] record : this.records) {
-            recordToScopeMapper.map(record, scopeAssignment);
-            counter.add(scopeAssignment, 1);
-        }
-        return counter.toFactor();
+        return this.computeFactors(new Variable[][] {scope})[0];
+    }
+    
+    /**
+     * Count occurences of all assignments of each of the scopes in a single
+     * pass over the records. Records with a value of a scope missing are not
+     * counted for the scope.
+     * @throws BNLibInconsistentVariableSetsException When this dataset doesn't
+     *         contain all variables from some scope.
+     */
+    @Override
+    public Factor[] computeFactors(Variable[][] scopes) throws BNLibInconsistentVariableSetsException {
+        return RecordCounts.count(this.variables, scopes, this.weightedRecords());
+    }
+    
+    /** The records, each of weight 1 (see RecordCounts). */
+    RecordCounts.WeightedRecords weightedRecords() {
+        return new RecordCounts.WeightedRecords() {
+            @Override
+            public int size() {
+                return records.size();
+            }
+            
+            @Override
+            public int[] get(int index) {
+                return records.get(index);
+            }
+            
+            @Override
+            public double getWeight(int index) {
+                return 1.0;
+            }
+        };
     }
     
     /**
@@ -118,12 +219,23 @@ public class Dataset implements DatasetInterface {
         if(set1.length == 0 || set2.length == 0)
             return 0.0;
         
+        return Dataset.mutualInformation(this.computeFactor(union), set1, set2);
+    }
+    
+    /**
+     * Compute mutual information between two disjoint sets of variables from
+     * the counts of joint assignments of their union.
+     * The scope of unionCounts is expected to be the union of the two sets
+     * (in any order). The sets mustn't be empty.
+     */
+    static double mutualInformation(Factor unionCounts, Variable[] set1, Variable[] set2) {
+        Variable[] union = unionCounts.getScope();
         double inf = 0.0;
-        Factor unionFactor = this.computeFactor(union).normalize(),
+        Factor unionFactor = unionCounts.normalize(),
                set1Factor = unionFactor.marginalize(set2).normalize(),
                set2Factor = unionFactor.marginalize(set1).normalize();
-        VariableSubsetMapper unionToSet1Mapper = new VariableSubsetMapper(union, set1),
-                             unionToSet2Mapper = new VariableSubsetMapper(union, set2);
+        VariableSubsetMapper unionToSet1Mapper = new VariableSubsetMapper(union, set1Factor.getScope()),
+                             unionToSet2Mapper = new VariableSubsetMapper(union, set2Factor.getScope());
         int[] set1Assignment = new int[set1.length],
               set2Assignment = new int[set2.length];
         for(int[] unionAssignment : unionFactor) {
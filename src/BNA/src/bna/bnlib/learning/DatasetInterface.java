@@ -17,12 +17,25 @@ public interface DatasetInterface {
     /** Get the number of records in this dataset. */
     public int getSize();
     
+    /**
+     * Does any record have a missing value (see Dataset.MISSING_VALUE)?
+     * Counts of a scope then take into account only the records with all
+     * the variables of the scope observed.
+     */
+    public boolean hasMissingValues();
+    
     /** Add new record to the dataset. */
     public void addRecord(int[] record);
     
     /** Count occurences of all assignments to given variables and return as a factor. */
     public Factor computeFactor(Variable[] scope);
     
+    /**
+     * Count occurences of all assignments of each of the scopes. The records
+     * are read once for all the scopes (if the implementation allows).
+     */
+    public Factor[] computeFactors(Variable[][] scopes);
+    
     /** Compute mutual information between two sets of variables. */
     public double mutualInformation(Variable[] set1, Variable[] set2);
 }
@@ -5,10 +5,14 @@
 package bna.bnlib.learning;
 
 import bna.bnlib.*;
-import java.util.ArrayList;
+import bna.bnlib.misc.CacheStatistics;
+import bna.bnlib.misc.ConcurrentLRUCache;
+import bna.bnlib.misc.Toolkit;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -16,27 +20,59 @@ import java.util.Set;
  * scores plus a penalty term for complexity.
  * <p>
  * The scoring method works with a notion of "current network" in order to use
- * an efficient caching scheme of delta family scores. Therefore the optimization
+ * an efficient caching scheme of delta local scores. Therefore the optimization
  * algorithm needs to notify the scoring method about the new network structure
  * for the next step of local search so that right cache entries can be
- * invalidated and the cache doesn't grow too large.
+ * invalidated and the cache doesn't grow too large. The delta local scores
+ * are cached for each current network separately (and dropped together with
+ * the network), so that several searches can share the scoring method.
  * <p>
- * This class implements the logic of caching delta family scores and proper
- * invalidation of delta family score based on the currently accepted network
+ * Family scores of the nodes of networks are kept in a bounded cache keyed by
+ * the family (the child and the set of its parents). The cache doesn't depend
+ * on any particular network, so it's shared by all the networks scored.
+ * <p>
+ * The cached delta scores are kept in a bucket per family (per child
+ * variable), each bucket mapping a variable to the change of the local score
+ * of the family when the variable is added to (or removed from) the parents
+ * of the family. An alteration of the network therefore only drops the buckets
+ * of the families it has changed. The complexity penalty is expected to be
+ * decomposable as well (a sum of terms of the individual families, as is
+ * the case of BIC or of the structure prior), so that the delta score of an
+ * alteration depends only on the families it changes.
+ * <p>
+ * Delta scores are computed from the current and the proposed parent sets
+ * of the changed families, the network is never modified to score an
+ * alteration. Alterations of the current network can therefore be scored
+ * by several threads at once (as long as no thread alters the network
+ * meanwhile). Computation of the family scores then has to be thread-safe
+ * (which holds as long as the dataset is).
+ * <p>
+ * This class implements the logic of caching delta local scores and proper
+ * invalidation of delta local score based on the currently accepted network
  * alteration.
  * A subclass needs to define the following methods:
  * <ul>
  *  <li> computeFamilyScore(...)
+ *  <li> computeFamilyComplexityPenalty(...)
  *  <li> computeComplexityPenalty(...)
  * </ul>
+ * and it may define upperBoundOfSupersetsLocalScore(...) to allow pruning
+ * of parent sets (see ParentSetScoreCache).
  */
 public abstract class DecomposableScoringMethod extends ScoringMethod {
+    /** Default maximal number of cached family scores. */
+    public static final int DEFAULT_FAMILY_SCORE_CACHE_CAPACITY = 1 << 18;
+    
     protected DatasetInterface dataset;
-    private BayesianNetwork bnTheCacheIsFor = null;
-    // cache for storing the change increse of family score for given alteration
-    // !!! this isn't the delta score, delta score is given by change of family
-    //     scores and by change complexity penalization
-    private HashMap<AlterationAction, Double> deltaFamilyScoreCache = new HashMap<AlterationAction, Double>();
+    // cache for storing the change of local score (family score plus the share
+    // of complexity penalty) of a child variable when a parent variable is added
+    // or removed (bucket for each child) for each current network (the networks
+    // are compared by identity)
+    private Map<BayesianNetwork, ConcurrentHashMap<Variable, ConcurrentHashMap<Variable, Double>>> deltaLocalScoreCaches =
+            Collections.synchronizedMap(new WeakHashMap<BayesianNetwork, ConcurrentHashMap<Variable, ConcurrentHashMap<Variable, Double>>>());
+    // family scores shared by all the networks
+    private HashMap<Variable, Integer> variableIndices;
+    private ConcurrentLRUCache<FamilyKey, Double> familyScoreCache;
 
     
     /**
@@ -47,6 +83,9 @@ public abstract class DecomposableScoringMethod extends ScoringMethod {
      */
     public DecomposableScoringMethod(DatasetInterface dataset) {
         this.dataset = dataset;
+        this.variableIndices = VariableSetKey.indexVariables(dataset.getVariables());
+        this.familyScoreCache = new ConcurrentLRUCache<FamilyKey, Double>(DEFAULT_FAMILY_SCORE_CACHE_CAPACITY,
+                                                                          ConcurrentLRUCache.DEFAULT_SEGMENT_COUNT);
     }
     
     @Override
@@ -62,122 +101,173 @@ public abstract class DecomposableScoringMethod extends ScoringMethod {
     
     /**
      * Compute the score increase when the given action is applied on the supplied network.
-     * @throws BNLibIllegalStructuralModificationException When the alteration
-     *         cannot be applied to given network.
+     * The network isn't modified, so that alterations of the same network can
+     * be scored concurrently.
+     * @throws BNLibIllegalArgumentException When the action is of unknown type.
+     * @throws BNLibNonexistentVariableException When the variables of the
+     *         action aren't in the network.
      */
-    public final double deltaScore(BayesianNetwork bn, AlterationAction action) throws BNLibIllegalStructuralModificationException {
-        Double deltaFamilyScore = this.deltaFamilyScorecacheLookup(bn, action);
-        if(deltaFamilyScore == null) {
-            deltaFamilyScore = this.computeDeltaFamilyScore(bn, action);
-            this.deltaFamilyScorecachePut(bn, action, deltaFamilyScore);
-        }
-        double dimensionPenaltyChange = this.computeIncreaseOfComplexityPenalty(bn, action);
-        return deltaFamilyScore + dimensionPenaltyChange;
+    public final double deltaScore(BayesianNetwork bn, AlterationAction action) throws BNLibIllegalArgumentException, BNLibNonexistentVariableException {
+        Variable childVar = action.getChildVariable(),
+                 parentVar = action.getParentVariable();
+        if(action instanceof AlterationActionAddEdge || action instanceof AlterationActionRemoveEdge)
+            return this.deltaLocalScore(bn, childVar, parentVar);
+        else if(action instanceof AlterationActionReverseEdge)
+            return this.deltaLocalScore(bn, childVar, parentVar)
+                 + this.deltaLocalScore(bn, parentVar, childVar);
+        else
+            throw new BNLibIllegalArgumentException("Unknown action type.");
     }
     
-    private Double deltaFamilyScorecacheLookup(BayesianNetwork bn, AlterationAction action) {
-        if(this.bnTheCacheIsFor != bn)
-            return null;
-        return this.deltaFamilyScoreCache.get(action);
+    /** Change of local score of x when p is added to (or removed from) Parents(x) in bn (cached). */
+    private double deltaLocalScore(BayesianNetwork bn, Variable x, Variable p) throws BNLibNonexistentVariableException {
+        ConcurrentHashMap<Variable, Double> bucket = this.deltaLocalScoreBucket(bn, x);
+        Double deltaLocalScore = bucket.get(p);
+        if(deltaLocalScore == null) {
+            Variable[] parents = bn.getNode(x).getParentVariables(),
+                       pSet = new Variable[] {p};
+            Variable[] proposedParents = Toolkit.arrayContains(parents, p)
+                                         ? Toolkit.difference(parents, pSet)
+                                         : Toolkit.union(parents, pSet);
+            deltaLocalScore = this.computeDeltaLocalScore(x, parents, proposedParents);
+            bucket.put(p, deltaLocalScore);
+        }
+        return deltaLocalScore;
     }
     
-    private void deltaFamilyScorecachePut(BayesianNetwork bn, AlterationAction action, Double value) {
-        if(this.bnTheCacheIsFor != bn) {
-            this.deltaFamilyScoreCache.clear();
-            this.bnTheCacheIsFor = bn;
+    private ConcurrentHashMap<Variable, Double> deltaLocalScoreBucket(BayesianNetwork bn, Variable x) {
+        ConcurrentHashMap<Variable, ConcurrentHashMap<Variable, Double>> deltaLocalScoreCache;
+        synchronized(this.deltaLocalScoreCaches) {
+            deltaLocalScoreCache = this.deltaLocalScoreCaches.get(bn);
+            if(deltaLocalScoreCache == null) {
+                deltaLocalScoreCache = new ConcurrentHashMap<Variable, ConcurrentHashMap<Variable, Double>>();
+                this.deltaLocalScoreCaches.put(bn, deltaLocalScoreCache);
+            }
         }
-        this.deltaFamilyScoreCache.put(action, value);
+        ConcurrentHashMap<Variable, Double> bucket = deltaLocalScoreCache.get(x);
+        if(bucket == null) {
+            bucket = new ConcurrentHashMap<Variable, Double>();
+            ConcurrentHashMap<Variable, Double> existingBucket = deltaLocalScoreCache.putIfAbsent(x, bucket);
+            if(existingBucket != null)
+                bucket = existingBucket;
+        }
+        return bucket;
     }
     
     /**
-     * Determines the delta family score if given action is applied.
-     * @throws BNLibIllegalStructuralModificationException If the structural modification
-     *         is invalid.
-     * @throws BNLibIllegalArgumentException If the action is unknown.
+     * Change of local score of x (family score plus its share of complexity
+     * penalty) when its parents are changed to the proposed ones. The family
+     * scores are taken from the cache, the penalty depends on the family only,
+     * so the cost doesn't depend on the size of the network.
      */
-    private double computeDeltaFamilyScore(BayesianNetwork bn, AlterationAction action) throws BNLibIllegalStructuralModificationException, BNLibIllegalArgumentException {
-        double scoreOld, scoreNew;
-        if(action instanceof AlterationActionAddEdge || action instanceof AlterationActionRemoveEdge) {
-            Variable childVar = action.getChildVariable();
-            Node childNode = bn.getNode(childVar);
-            scoreOld = this.computeFamilyScore(childNode);
-            action.apply(bn);
-            scoreNew = this.computeFamilyScore(childNode);
-            action.undo(bn);
-        }
-        else if(action instanceof AlterationActionReverseEdge) {
-            Variable childVar = action.getChildVariable(),
-                     parentVar = action.getParentVariable();
-            Node childNode = bn.getNode(childVar),
-                 parentNode = bn.getNode(parentVar);
-            scoreOld = this.computeFamilyScore(childNode) + this.computeFamilyScore(parentNode);
-            action.apply(bn);
-            scoreNew = this.computeFamilyScore(childNode) + this.computeFamilyScore(parentNode);
-            action.undo(bn);
-        }
-        else
-            throw new BNLibIllegalArgumentException("Unknown action type.");
-        
-        return scoreNew - scoreOld;
+    public final double computeDeltaLocalScore(Variable x, Variable[] parents, Variable[] proposedParents) {
+        double deltaFamilyScore = this.cachedFamilyScore(x, proposedParents) - this.cachedFamilyScore(x, parents),
+               deltaPenalty = this.computeFamilyComplexityPenalty(x, proposedParents) - this.computeFamilyComplexityPenalty(x, parents);
+        return deltaFamilyScore + deltaPenalty;
     }
     
-    /** In the BIC formula, how does the dimension term change? */
-    private double computeIncreaseOfComplexityPenalty(BayesianNetwork bn, AlterationAction action) throws BNLibIllegalStructuralModificationException {
-        double penaltyOld = this.computeComplexityPenalty(bn);
-        action.apply(bn);
-        double penaltyNew = this.computeComplexityPenalty(bn);
-        action.undo(bn);
-        return penaltyNew - penaltyOld;
+    /**
+     * Cached values of delta local score for some AlterationAction have to be invalidated.
+     * If we make add or remove (X,Y) action, then parents of Y change and hence
+     * any cached value of delta local score that was computed using Parents(Y)
+     * (the bucket of Y) is no longer valid. If we make a reverse (X,Y) action,
+     * then both parents of X and of Y change, hence the buckets of both X and
+     * Y are no longer valid.
+     * @param bn The network the action has been applied to.
+     * @throws BNLibIllegalArgumentException When the action is of unknown type.
+     */
+    public final void notifyNetworkAlteration(BayesianNetwork bn, AlterationAction actionTaken) {
+        ConcurrentHashMap<Variable, ConcurrentHashMap<Variable, Double>> deltaLocalScoreCache = this.deltaLocalScoreCaches.get(bn);
+        if(deltaLocalScoreCache == null)
+            return;
+        for(Variable variable : DecomposableScoringMethod.getVariablesWithNewParents(actionTaken))
+            deltaLocalScoreCache.remove(variable);
     }
     
     /**
-     * Cached values of delta family score for some AlterationAction have to be invalidated.
-     * If we make add or remove (X,Y) action, then parents of Y change and hence
-     * any cached value of delta family score that was computed using Parents(Y)
-     * is no longer valid. If we make a reverse (X,Y) action, then both parents
-     * of X and of Y change, hence any cached delta family score value that was
-     * computed using Parents(X) or Parents(Y) is no longer valid.
-     * Cached value of add/remove (X,Y) is invalid if Parents(Y) changed.
-     * Cached value of reverse (X,Y) is invalid if Parents(X) or Parents(Y) changed.
+     * By taking the given action, whose parents have changed?
      * @throws BNLibIllegalArgumentException When the action is of unknown type.
      */
-    public final void notifyNetworkAlteration(AlterationAction actionTaken) {
-        // by taking the given action, whose parents have changed?
-        ArrayList<Variable> variablesWithNewParents = new ArrayList<Variable>();
-        if(actionTaken instanceof AlterationActionAddEdge || actionTaken instanceof AlterationActionRemoveEdge) {
-            variablesWithNewParents.add(actionTaken.getChildVariable());
-        }
-        else if(actionTaken instanceof AlterationActionReverseEdge) {
-            variablesWithNewParents.add(actionTaken.getChildVariable());
-            variablesWithNewParents.add(actionTaken.getParentVariable());
-        }
+    static Variable[] getVariablesWithNewParents(AlterationAction action) throws BNLibIllegalArgumentException {
+        if(action instanceof AlterationActionAddEdge || action instanceof AlterationActionRemoveEdge)
+            return new Variable[] {action.getChildVariable()};
+        else if(action instanceof AlterationActionReverseEdge)
+            return new Variable[] {action.getChildVariable(), action.getParentVariable()};
         else
             throw new BNLibIllegalArgumentException("Unknown action type.");
-        
-        // determine what cached mutual information changes are invalidated by the action
-        Set<AlterationAction> cachedActions = this.deltaFamilyScoreCache.keySet();
-        Iterator<AlterationAction> cachedActionsIterator = cachedActions.iterator();
-        while(cachedActionsIterator.hasNext()) {
-            // we can use the iterator's "remove" method to remove mapping from the map
-            AlterationAction cachedAction = cachedActionsIterator.next();
-            if(cachedAction instanceof AlterationActionAddEdge || cachedAction instanceof AlterationActionRemoveEdge) {
-                if(variablesWithNewParents.contains(cachedAction.getChildVariable()))
-                    cachedActionsIterator.remove();
-            }
-            else if(cachedAction instanceof AlterationActionReverseEdge) {
-                if(variablesWithNewParents.contains(cachedAction.getChildVariable())
-                        || variablesWithNewParents.contains(cachedAction.getParentVariable()))
-                    cachedActionsIterator.remove();
-            }
-            else
-                throw new BNLibIllegalArgumentException("Unknown action type.");
+    }
+    
+    
+    /**
+     * Compute the local score of variable x with the given parents, ie. its
+     * family score plus its share of the complexity penalty. The score of
+     * a network is the sum of local scores of its variables.
+     */
+    public final double computeLocalScore(Variable x, Variable[] parents) {
+        return this.computeFamilyScore(x, parents) + this.computeFamilyComplexityPenalty(x, parents);
+    }
+    
+    /** Family score of the node (cached). */
+    protected double computeFamilyScore(Node x) {
+        return this.cachedFamilyScore(x.getVariable(), x.getParentVariables());
+    }
+    
+    private double cachedFamilyScore(Variable x, Variable[] parents) {
+        FamilyKey family = new FamilyKey(this.variableIndices.get(x),
+                                         VariableSetKey.create(parents, this.variableIndices));
+        Double score = this.familyScoreCache.get(family);
+        if(score == null) {
+            score = this.computeFamilyScore(x, parents);
+            this.familyScoreCache.put(family, score);
         }
+        return score;
+    }
+    
+    public CacheStatistics getFamilyScoreCacheStatistics() {
+        return this.familyScoreCache.getStatistics();
+    }
+    
+    /**
+     * Upper bound of the local score of x with any proper superset of the given parents.
+     * A parent set needn't be extended once the bound isn't higher than
+     * the local score of the set itself (or of some of its subsets).
+     * Default implementation doesn't allow any pruning.
+     */
+    protected double upperBoundOfSupersetsLocalScore(Variable x, Variable[] parents) {
+        return Double.POSITIVE_INFINITY;
     }
     
     
     // methods implemented by children (BIC of Bayesian score)
     
-    protected abstract double computeFamilyScore(Node x);
+    protected abstract double computeFamilyScore(Variable x, Variable[] parents);
+    
+    protected abstract double computeFamilyComplexityPenalty(Variable x, Variable[] parents);
     
     protected abstract double computeComplexityPenalty(BayesianNetwork bn);
+    
+    
+    /** Hashable family (index of the child variable and the set of its parents). */
+    private static final class FamilyKey {
+        private final int child;
+        private final VariableSetKey parents;
+        
+        public FamilyKey(int child, VariableSetKey parents) {
+            this.child = child;
+            this.parents = parents;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * this.parents.hashCode() + this.child;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof FamilyKey))
+                return false;
+            FamilyKey ko = (FamilyKey)o;
+            return this.child == ko.child && this.parents.equals(ko.parents);
+        }
+    }
 }
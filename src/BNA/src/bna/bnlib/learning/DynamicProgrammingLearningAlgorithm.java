@@ -0,0 +1,269 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/16
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Exact structure learning by dynamic programming over subsets of variables
+ * (the algorithm of Silander and Myllymäki) for small networks.
+ * For each subset W of the variables (a bitmask) the best score of a network
+ * over W is computed as the maximum over its possible sinks x of
+ * score(W - {x}) + the best local score of x with parents from W - {x}.
+ * The subsets are processed layer by layer (by their size, enumerated by
+ * Gosper's hack), subsets of a layer are processed by several threads.
+ * The optimal network is then reconstructed from the best sinks.
+ * <p>
+ * Local scores are taken from a ParentSetScoreCache. If the memory budget
+ * allows, a table of the best parent set of each variable for each subset
+ * of the other variables is precomputed. Otherwise (memory-bounded mode) the
+ * best parent set is found by a scan of the sorted parent sets of the
+ * variable whenever needed. The score and the best sink of all the subsets
+ * are always kept (9 bytes per subset).
+ * <p>
+ * The iteration limit of the learning controller is ignored (the algorithm
+ * has no iterations), the stop flag is checked after each layer.
+ */
+public class DynamicProgrammingLearningAlgorithm extends StructureLearningAlgorithm {
+    /** Maximal number of variables (the subsets are indexed by int bitmasks). */
+    public static final int MAX_VARIABLES = 30;
+
+    private ParentSetScoreCache cache; // null => computed for each learn
+    private int threadcount;
+    private long memoryBudget;
+    // parent sets of each variable (only during learn)
+    private int[][] parentMasks;     // [variable][parent set] as bitmasks
+    private double[][] parentScores; // [variable][parent set]
+    private int[][] bestParentSets;  // [variable][subset of the other variables] or null
+
+
+    /**
+     * Create an instance of the exact learning algorithm running in a single
+     * thread and using at most half of the maximal heap size.
+     */
+    public DynamicProgrammingLearningAlgorithm(DecomposableScoringMethod method) {
+        this(method, null, 1, Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * Create an instance of the exact learning algorithm.
+     * @param cache Scores of the parent sets or null if they should be computed
+     *              at the beginning of each learn (for the constraints given
+     *              to learn).
+     * @param memoryBudget Maximal number of bytes of the tables used by the algorithm.
+     * @throws BNLibIllegalArgumentException When the threadcount or the memory
+     *         budget is not positive.
+     */
+    public DynamicProgrammingLearningAlgorithm(DecomposableScoringMethod method,
+                                               ParentSetScoreCache cache,
+                                               int threadcount,
+                                               long memoryBudget) throws BNLibIllegalArgumentException {
+        super(method);
+        if(threadcount <= 0 || memoryBudget <= 0)
+            throw new BNLibIllegalArgumentException("Number of threads and the memory budget must be positive.");
+        this.cache = cache;
+        this.threadcount = threadcount;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Find an optimal network (wrt the scoring method and the constraints).
+     * The initial network only determines the variables. If the stop flag of
+     * the controller is set before the computation finishes, a copy of the
+     * initial network is returned.
+     * @throws BNLibIllegalArgumentException When there are more than
+     *         MAX_VARIABLES variables or the tables don't fit into the memory
+     *         budget.
+     * @throws BNLibInconsistentVariableSetsException When the given cache
+     *         is for different variables than the initial network has.
+     */
+    @Override
+    public BayesianNetwork learn(BayesianNetwork bnInitial,
+                                 LearningController controller,
+                                 StructuralConstraints constraints) {
+        final int NODE_COUNT = bnInitial.getVariablesCount();
+        final long SUBSET_COUNT = 1L << NODE_COUNT;
+        if(NODE_COUNT > MAX_VARIABLES || SUBSET_COUNT * 9 > this.memoryBudget)
+            throw new BNLibIllegalArgumentException("Too many variables for the exact learning (wrt the memory budget).");
+        ParentSetScoreCache scores = this.cache;
+        if(scores == null)
+            scores = ParentSetScoreCache.compute(this.scoringMethod, bnInitial.getVariables(), constraints);
+        else if(!Toolkit.areEqual(scores.getVariables(), bnInitial.getVariables()))
+            throw new BNLibInconsistentVariableSetsException("The parent set scores are for different variables.");
+
+        this.parentMasks = new int[NODE_COUNT][];
+        this.parentScores = new double[NODE_COUNT][];
+        for(int x = 0 ; x < NODE_COUNT ; x++) {
+            int count = scores.getParentSetCount(x);
+            this.parentMasks[x] = new int[count];
+            this.parentScores[x] = new double[count];
+            for(int k = 0 ; k < count ; k++) {
+                for(int parent : scores.getParentIndices(x, k))
+                    this.parentMasks[x][k] |= 1 << parent;
+                this.parentScores[x][k] = scores.getScore(x, k);
+            }
+        }
+        boolean useTables = SUBSET_COUNT * 9 + NODE_COUNT * (SUBSET_COUNT / 2) * 4 <= this.memoryBudget;
+        final double[] bestScores = new double[(int)SUBSET_COUNT];
+        final byte[] bestSinks = new byte[(int)SUBSET_COUNT];
+        ExecutorService executor = Executors.newFixedThreadPool(this.threadcount);
+        try {
+            if(useTables) {
+                this.bestParentSets = new int[NODE_COUNT][];
+                this.runInParallel(executor, new LayerTask() {
+                    @Override
+                    public void run(int thread, int threadcount) {
+                        for(int x = thread ; x < NODE_COUNT ; x += threadcount)
+                            computeBestParentSets(x, NODE_COUNT);
+                    }
+                });
+            }
+            for(int size = 1 ; size <= NODE_COUNT ; size++) {
+                if(controller.getStopFlag())
+                    return bnInitial.copyStructureWithEmptyCPDs();
+                final int SIZE = size;
+                this.runInParallel(executor, new LayerTask() {
+                    @Override
+                    public void run(int thread, int threadcount) {
+                        computeBestSinks(SIZE, NODE_COUNT, thread, threadcount, bestScores, bestSinks);
+                    }
+                });
+            }
+            
+            // reconstruct the network from the sinks
+            BayesianNetwork bn = bnInitial.copyEmptyStructure();
+            Variable[] variables = scores.getVariables();
+            int subset = (int)(SUBSET_COUNT - 1);
+            while(subset != 0) {
+                int x = bestSinks[subset];
+                subset &= ~(1 << x);
+                Variable child = bn.getVariable(variables[x].getName());
+                for(Variable parent : scores.getParents(x, this.getBestParentSet(x, subset)))
+                    bn.addDependency(bn.getVariable(parent.getName()), child);
+            }
+            return bn;
+        }
+        catch(InterruptedException ex) {
+            controller.setStopFlag();
+            Thread.currentThread().interrupt();
+            return bnInitial.copyStructureWithEmptyCPDs();
+        }
+        catch(BNLibIllegalStructuralModificationException ex) {
+            throw new BNLibInternalException("Internal structure inconsistency during learing: " + ex.getMessage());
+        }
+        finally {
+            executor.shutdownNow();
+            this.parentMasks = null;
+            this.parentScores = null;
+            this.bestParentSets = null;
+        }
+    }
+
+    /** Part of the work of a layer done by one of the threads. */
+    private interface LayerTask {
+        void run(int thread, int threadcount);
+    }
+
+    private void runInParallel(ExecutorService executor, final LayerTask task) throws InterruptedException {
+        ArrayList<Future<Void>> results = new ArrayList<Future<Void>>();
+        for(int t = 0 ; t < this.threadcount ; t++) {
+            final int thread = t;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    task.run(thread, threadcount);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for(Future<Void> result : results)
+                result.get();
+        }
+        catch(ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new BNLibInternalException("Exact structure learning failed: " + ex.getCause());
+        }
+    }
+
+    /**
+     * For each subset of the variables other than x find the best parent set
+     * of x contained in the subset. The parent sets are sorted by their score,
+     * so the best one is the one of the lowest index. The subsets are indexed
+     * by bitmasks with the bit of x left out.
+     */
+    private void computeBestParentSets(int x, int nodeCount) {
+        int[] table = new int[1 << (nodeCount - 1)];
+        Arrays.fill(table, Integer.MAX_VALUE);
+        for(int k = 0 ; k < this.parentMasks[x].length ; k++) {
+            int index = DynamicProgrammingLearningAlgorithm.compress(this.parentMasks[x][k], x);
+            table[index] = Math.min(table[index], k);
+        }
+        // each subset takes the best of its own and of its subsets of one less variable
+        for(int index = 1 ; index < table.length ; index++) {
+            for(int rest = index ; rest != 0 ; rest &= rest - 1) {
+                int smaller = index & ~(rest & -rest);
+                if(table[smaller] < table[index])
+                    table[index] = table[smaller];
+            }
+        }
+        this.bestParentSets[x] = table;
+    }
+
+    /** Remove bit x from the bitmask (the higher bits are shifted down). */
+    private static int compress(int mask, int x) {
+        int lowBits = (1 << x) - 1;
+        return (mask & lowBits) | ((mask >>> (x + 1)) << x);
+    }
+
+    /** Index of the best parent set of x with parents from the given subset. */
+    private int getBestParentSet(int x, int subset) {
+        if(this.bestParentSets != null)
+            return this.bestParentSets[x][DynamicProgrammingLearningAlgorithm.compress(subset, x)];
+        // memory-bounded mode
+        int[] masks = this.parentMasks[x];
+        for(int k = 0 ; k < masks.length ; k++)
+            if((masks[k] & ~subset) == 0)
+                return k;
+        throw new BNLibInternalException("The empty parent set is missing.");
+    }
+
+    /** Process the thread-th part of the subsets of the given size. */
+    private void computeBestSinks(int size, int nodeCount, int thread, int threadcount, double[] bestScores, byte[] bestSinks) {
+        final int LIMIT = 1 << nodeCount;
+        int counter = 0;
+        // Gosper's hack: iterate the bitmasks with size bits set in increasing order
+        for(int subset = (1 << size) - 1 ; subset < LIMIT && subset > 0 ; counter++) {
+            if(counter % threadcount == thread) {
+                double bestScore = Double.NEGATIVE_INFINITY;
+                int bestSink = -1;
+                for(int rest = subset ; rest != 0 ; rest &= rest - 1) {
+                    int x = Integer.numberOfTrailingZeros(rest);
+                    int others = subset & ~(1 << x);
+                    double score = bestScores[others] + this.parentScores[x][this.getBestParentSet(x, others)];
+                    if(score > bestScore) {
+                        bestScore = score;
+                        bestSink = x;
+                    }
+                }
+                bestScores[subset] = bestScore;
+                bestSinks[subset] = (byte)bestSink;
+            }
+            int lowest = subset & -subset,
+                ripple = subset + lowest;
+            subset = (((ripple ^ subset) >>> 2) / lowest) | ripple;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * Learning from a dataset with missing values by the expectation-maximization
+ * algorithm. The E-step replaces each incomplete record by its completions
+ * weighted by their posterior probability given the observed values of the
+ * record and the current network (see CompletedDataset), the M-step then
+ * learns the parameters from the expected counts by Bayesian estimation
+ * (ParameterLearner.learnBayesianEstimationUniform).
+ * <p>
+ * The posterior of a record is computed exactly by enumerating all assignments
+ * of its missing values if there aren't too many of them, otherwise it is
+ * approximated by Gibbs sampling of the missing values. Only the CPDs
+ * of the missing variables and of their children are evaluated in both cases.
+ * The records are split among the threads.
+ * <p>
+ * Structural EM (learnStructure) alternates the E-step with a structure
+ * learning over the completed dataset and EM of the parameters of the new
+ * structure (Friedman 1998).
+ */
+public class ExpectationMaximization {
+    /** Posterior of a record is enumerated when it has at most this many completions. */
+    public static final int EXACT_INFERENCE_LIMIT = 256;
+    /** Completions less probable than this (relatively to the record) are dropped. */
+    private static final double COMPLETION_THRESHOLD = 1e-4;
+    private static final int GIBBS_BURN_IN_SWEEPS = 20;
+    private static final int GIBBS_SAMPLES = 20;
+
+    private Dataset dataset;
+    private double alpha;
+    private int threadcount;
+    private ExecutorService executor; // threads of the E-step and M-step, see ParallelCounting
+    protected Random rand = new Random();
+
+
+    /**
+     * Create the EM learning over the given dataset.
+     * @param alpha Equivalent sample size of the uniform prior of the M-step.
+     *              A positive value keeps all the completions possible.
+     * @param threadcount Number of threads of the E-step and of the counting of the M-step.
+     * @throws BNLibIllegalArgumentException When alpha or the threadcount
+     *         is not positive.
+     */
+    public ExpectationMaximization(Dataset dataset, double alpha, int threadcount) throws BNLibIllegalArgumentException {
+        if(!(alpha > 0))
+            throw new BNLibIllegalArgumentException("Equivalent sample size must be positive.");
+        if(threadcount <= 0)
+            throw new BNLibIllegalArgumentException("Number of threads must be positive.");
+        this.dataset = dataset;
+        this.alpha = alpha;
+        this.threadcount = threadcount;
+        this.executor = ParallelCounting.createExecutor(threadcount);
+    }
+
+    /**
+     * Learn the parameters of the network by EM. The iterations start from
+     * the CPDs of the network if it has valid ones, otherwise from parameters
+     * learnt from the observed values only. The iterations stop when no
+     * parameter changes by more than the tolerance.
+     * @return New network with the same structure and the learnt CPDs.
+     * @throws BNLibInconsistentVariableSetsException When the network contains
+     *         some variable not present in the dataset.
+     */
+    public BayesianNetwork learnParameters(BayesianNetwork bn, int maxIterations, double tolerance) throws BNLibInconsistentVariableSetsException {
+        BayesianNetwork bnCurrent;
+        if(bn.hasValidCPDs()) {
+            if(!this.dataset.containsVariables(bn.getVariables()))
+                throw new BNLibInconsistentVariableSetsException("Some variables of the network aren't present in the dataset.");
+            bnCurrent = bn.copyStructureAndCPDs();
+        }
+        else
+            bnCurrent = ParameterLearner.learnBayesianEstimationUniform(bn, this.dataset, this.alpha, this.executor, this.threadcount);
+        return this.iterate(bnCurrent, maxIterations, tolerance);
+    }
+
+    private BayesianNetwork iterate(BayesianNetwork bnCurrent, int maxIterations, double tolerance) {
+        if(!this.dataset.hasMissingValues())
+            return bnCurrent; // a single M-step is all that's needed
+        for(int i = 0 ; i < maxIterations ; i++) {
+            DatasetInterface completed = this.complete(bnCurrent);
+            BayesianNetwork bnNext = ParameterLearner.learnBayesianEstimationUniform(bnCurrent, completed, this.alpha, this.executor, this.threadcount);
+            double change = ExpectationMaximization.maxParameterChange(bnCurrent, bnNext);
+            bnCurrent = bnNext;
+            if(change <= tolerance)
+                break;
+        }
+        return bnCurrent;
+    }
+
+    /**
+     * Learn the structure by structural EM. Parameters of the initial network
+     * are learnt by EM first, then in each iteration the dataset is completed
+     * by the current network, a new structure is learnt from the completed
+     * dataset by the algorithm of the factory and its parameters are learnt
+     * by EM. The iterations stop when the structure doesn't change anymore,
+     * after the given number of iterations or when the stop flag of the
+     * controller is set.
+     * @param factory Creates the structure learning algorithm over a completed dataset.
+     * @param emIterations Maximum number of EM iterations of the parameters
+     *                     of each structure.
+     * @return The learnt network (with CPDs).
+     * @throws BNLibInconsistentVariableSetsException When the network contains
+     *         some variable not present in the dataset.
+     */
+    public BayesianNetwork learnStructure(BayesianNetwork bnInitial,
+                                          ReplicaLearningAlgorithmFactory factory,
+                                          LearningController controller,
+                                          StructuralConstraints constraints,
+                                          int maxStructuralIterations,
+                                          int emIterations,
+                                          double tolerance) throws BNLibInconsistentVariableSetsException {
+        BayesianNetwork bnCurrent = this.learnParameters(bnInitial, emIterations, tolerance);
+        for(int i = 0 ; i < maxStructuralIterations && !controller.getStopFlag() ; i++) {
+            DatasetInterface completed = this.complete(bnCurrent);
+            StructureLearningAlgorithm algorithm = factory.createLearningAlgorithm(completed);
+            BayesianNetwork bnLearnt = algorithm.learn(bnCurrent.copyStructureWithEmptyCPDs(), controller, constraints);
+            if(controller.getStopFlag())
+                break;
+            boolean structureChanged = !bnLearnt.equalsStructurally(bnCurrent);
+            // parameters of the new structure start from the current expected counts
+            bnLearnt = ParameterLearner.learnBayesianEstimationUniform(bnLearnt, completed, this.alpha, this.executor, this.threadcount);
+            bnCurrent = this.iterate(bnLearnt, emIterations, tolerance);
+            if(!structureChanged)
+                break;
+        }
+        return bnCurrent;
+    }
+
+    /** Largest absolute difference of CPD entries of two networks of the same structure. */
+    private static double maxParameterChange(BayesianNetwork bn1, BayesianNetwork bn2) {
+        double max = 0;
+        for(Node node1 : bn1.getNodes()) {
+            Factor factor1 = node1.getFactor(),
+                   factor2 = bn2.getNode(node1.getVariable()).getFactor().reorderScope(factor1.getScope());
+            for(int i = 0 ; i < factor1.getCardinality() ; i++)
+                max = Math.max(max, Math.abs(factor1.getProbability(i) - factor2.getProbability(i)));
+        }
+        return max;
+    }
+
+    /**
+     * The E-step: complete the dataset by the network. Each incomplete record
+     * is replaced by its completions weighted by their posterior probability,
+     * so that counts of the completed dataset are the expected counts.
+     * Values of variables not present in the network stay missing.
+     * @throws BNLibInconsistentVariableSetsException When the network contains
+     *         some variable not present in the dataset.
+     * @throws BNLibIllegalArgumentException When the network doesn't have valid CPDs.
+     */
+    DatasetInterface complete(BayesianNetwork bn) throws BNLibIllegalArgumentException {
+        if(!this.dataset.containsVariables(bn.getVariables()))
+            throw new BNLibInconsistentVariableSetsException("Some variables of the network aren't present in the dataset.");
+        if(!bn.hasValidCPDs())
+            throw new BNLibIllegalArgumentException("The network doesn't have valid CPDs.");
+        final CompletionContext context = new CompletionContext(bn, this.dataset.getVariables());
+        final ArrayList<int[]> records = this.dataset.records;
+        final int threads = Math.max(1, Math.min(this.threadcount, records.size()));
+        final Completions[] results = new Completions[threads];
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for(int t = 0 ; t < threads ; t++) {
+                final int thread = t;
+                final long seed = this.rand.nextLong();
+                futures.add(this.executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        int from = (int)((long)records.size() * thread / threads),
+                            to = (int)((long)records.size() * (thread + 1) / threads);
+                        Completions myCompletions = new Completions(to - from);
+                        Random myRand = new Random(seed);
+                        for(int r = from ; r < to ; r++)
+                            context.complete(records.get(r), myCompletions, myRand);
+                        results[thread] = myCompletions;
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> future : futures)
+                future.get();
+        }
+        catch(InterruptedException ex) {
+            for(Future<Void> future : futures)
+                future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BNLibInternalException("Completion of the dataset has been interrupted.");
+        }
+        catch(ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new BNLibInternalException("Completion of the dataset failed: " + ex.getCause());
+        }
+        // concatenate the completions in the order of the records
+        int count = 0;
+        for(Completions completions : results)
+            count += completions.count;
+        ArrayList<int[]> completedRecords = new ArrayList<int[]>(count);
+        double[] weights = new double[count];
+        for(Completions completions : results) {
+            System.arraycopy(completions.weights, 0, weights, completedRecords.size(), completions.count);
+            completedRecords.addAll(completions.records);
+        }
+        return new CompletedDataset(this.dataset.getVariables(), completedRecords, weights, records.size());
+    }
+
+
+    /** Completed records of a part of the dataset and their weights. */
+    private static class Completions {
+        ArrayList<int[]> records;
+        double[] weights;
+        int count;
+
+        Completions(int expectedCount) {
+            this.records = new ArrayList<int[]>(expectedCount);
+            this.weights = new double[Math.max(1, expectedCount)];
+        }
+
+        void add(int[] record, double weight) {
+            if(this.count == this.weights.length)
+                this.weights = Arrays.copyOf(this.weights, 2 * this.count);
+            this.records.add(record);
+            this.weights[this.count++] = weight;
+        }
+    }
+
+
+    /**
+     * The CPDs of the network indexed directly by the records of the dataset.
+     * Immutable, shared by all the threads.
+     */
+    private static class CompletionContext {
+        // for each node: CPD entries (scope of the node), positions of the
+        // scope variables in a record and their strides in the CPD
+        private double[][] cpds;
+        private int[][] recordPositions;
+        private int[][] strides;
+        // for each position of a record: nodes whose scope contains the
+        // variable (the variable and its children), empty for variables
+        // not present in the network
+        private int[][] nodesOfPosition;
+        private int[] cardinalities;
+
+
+        CompletionContext(BayesianNetwork bn, Variable[] datasetVariables) {
+            Node[] nodes = bn.getNodes();
+            this.cpds = new double[nodes.length][];
+            this.recordPositions = new int[nodes.length][];
+            this.strides = new int[nodes.length][];
+            ArrayList<ArrayList<Integer>> nodesOfPositionList = new ArrayList<ArrayList<Integer>>();
+            for(int p = 0 ; p < datasetVariables.length ; p++)
+                nodesOfPositionList.add(new ArrayList<Integer>());
+            for(int n = 0 ; n < nodes.length ; n++) {
+                Variable[] scope = nodes[n].getScope();
+                Factor cpd = nodes[n].getFactor().reorderScope(scope);
+                this.cpds[n] = new double[cpd.getCardinality()];
+                for(int i = 0 ; i < this.cpds[n].length ; i++)
+                    this.cpds[n][i] = cpd.getProbability(i);
+                this.recordPositions[n] = new int[scope.length];
+                this.strides[n] = new int[scope.length];
+                int stride = 1;
+                for(int i = 0 ; i < scope.length ; i++) {
+                    int position = Toolkit.indexOf(datasetVariables, scope[i]);
+                    this.recordPositions[n][i] = position;
+                    this.strides[n][i] = stride;
+                    stride *= scope[i].getCardinality();
+                    nodesOfPositionList.get(position).add(n);
+                }
+            }
+            this.nodesOfPosition = new int[datasetVariables.length][];
+            this.cardinalities = new int[datasetVariables.length];
+            for(int p = 0 ; p < datasetVariables.length ; p++) {
+                ArrayList<Integer> list = nodesOfPositionList.get(p);
+                this.nodesOfPosition[p] = new int[list.size()];
+                for(int i = 0 ; i < list.size() ; i++)
+                    this.nodesOfPosition[p][i] = list.get(i);
+                this.cardinalities[p] = datasetVariables[p].getCardinality();
+            }
+        }
+
+        /** Product of the CPD entries of the given nodes for the (complete) record. */
+        private double probability(int[] nodes, int[] record) {
+            double probability = 1.0;
+            for(int n : nodes) {
+                int[] nPositions = this.recordPositions[n],
+                      nStrides = this.strides[n];
+                int index = 0;
+                for(int i = 0 ; i < nPositions.length ; i++)
+                    index += record[nPositions[i]] * nStrides[i];
+                probability *= this.cpds[n][index];
+            }
+            return probability;
+        }
+
+        /** Add the completions of the record (the record itself if it isn't missing a value). */
+        void complete(int[] record, Completions completions, Random rand) {
+            // missing values of variables of the network
+            int[] missing = new int[record.length];
+            int missingCount = 0;
+            long completionsCount = 1;
+            for(int p = 0 ; p < record.length ; p++) {
+                if(record[p] == Dataset.MISSING_VALUE && this.nodesOfPosition[p].length > 0) {
+                    missing[missingCount++] = p;
+                    completionsCount *= this.cardinalities[p];
+                    completionsCount = Math.min(completionsCount, Integer.MAX_VALUE);
+                }
+            }
+            if(missingCount == 0)
+                completions.add(record, 1.0);
+            else if(completionsCount <= EXACT_INFERENCE_LIMIT)
+                this.enumerate(record, Arrays.copyOf(missing, missingCount), (int)completionsCount, completions);
+            else
+                this.sample(record, Arrays.copyOf(missing, missingCount), completions, rand);
+        }
+
+        /** Nodes affected by the missing values (without duplicates). */
+        private int[] affectedNodes(int[] missing) {
+            boolean[] affected = new boolean[this.cpds.length];
+            int count = 0;
+            for(int p : missing) {
+                for(int n : this.nodesOfPosition[p]) {
+                    if(!affected[n]) {
+                        affected[n] = true;
+                        count++;
+                    }
+                }
+            }
+            int[] nodes = new int[count];
+            for(int n = 0, i = 0 ; n < affected.length ; n++)
+                if(affected[n])
+                    nodes[i++] = n;
+            return nodes;
+        }
+
+        /** Exact posterior of all the assignments of the missing values. */
+        private void enumerate(int[] record, int[] missing, int completionsCount, Completions completions) {
+            int[] nodes = this.affectedNodes(missing);
+            int[] assignment = record.clone();
+            for(int p : missing)
+                assignment[p] = 0;
+            double[] probabilities = new double[completionsCount];
+            double sum = 0;
+            for(int c = 0 ; c < completionsCount ; c++) {
+                probabilities[c] = this.probability(nodes, assignment);
+                sum += probabilities[c];
+                // next assignment of the missing values
+                for(int i = 0 ; i < missing.length ; i++) {
+                    if(++assignment[missing[i]] < this.cardinalities[missing[i]])
+                        break;
+                    assignment[missing[i]] = 0;
+                }
+            }
+            if(sum == 0) {
+                // the observed values are impossible in the network
+                Arrays.fill(probabilities, 1.0);
+                sum = completionsCount;
+            }
+            double keptSum = 0;
+            for(int c = 0 ; c < completionsCount ; c++) {
+                if(probabilities[c] < COMPLETION_THRESHOLD * sum)
+                    probabilities[c] = 0;
+                keptSum += probabilities[c];
+            }
+            for(int c = 0 ; c < completionsCount ; c++) {
+                if(probabilities[c] > 0)
+                    completions.add(assignment.clone(), probabilities[c] / keptSum);
+                for(int i = 0 ; i < missing.length ; i++) {
+                    if(++assignment[missing[i]] < this.cardinalities[missing[i]])
+                        break;
+                    assignment[missing[i]] = 0;
+                }
+            }
+        }
+
+        /** Posterior of the missing values approximated by Gibbs sampling. */
+        private void sample(int[] record, int[] missing, Completions completions, Random rand) {
+            int[] assignment = record.clone();
+            for(int p : missing)
+                assignment[p] = rand.nextInt(this.cardinalities[p]);
+            for(int sweep = 0 ; sweep < GIBBS_BURN_IN_SWEEPS ; sweep++)
+                this.resample(assignment, missing, rand);
+            for(int s = 0 ; s < GIBBS_SAMPLES ; s++) {
+                this.resample(assignment, missing, rand);
+                completions.add(assignment.clone(), 1.0 / GIBBS_SAMPLES);
+            }
+        }
+
+        /** Resample each missing value given all the others (a single sweep). */
+        private void resample(int[] assignment, int[] missing, Random rand) {
+            for(int p : missing) {
+                double[] probabilities = new double[this.cardinalities[p]];
+                double sum = 0;
+                for(int value = 0 ; value < probabilities.length ; value++) {
+                    assignment[p] = value;
+                    probabilities[value] = this.probability(this.nodesOfPosition[p], assignment);
+                    sum += probabilities[value];
+                }
+                if(sum == 0)
+                    assignment[p] = rand.nextInt(probabilities.length);
+                else
+                    assignment[p] = Toolkit.randomIndex(probabilities, sum, rand);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/20
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Class implementing the factorized normalized maximum likelihood (fNML) score.
+ * The family score is the maximized log-likelihood of the child given its
+ * parents minus the regret log C(N_pa, r) of each assignment pa of parents
+ * (r being the cardinality of the child). The regret replaces the explicit
+ * complexity penalty, so there's no penalty term.
+ * <p>
+ * The regrets are taken from a table per cardinality of the child computed
+ * for all the sample sizes up to the size of the dataset.
+ * Super-class takes care of caching of delta family scores.
+ */
+public class FNMLScoringMethod extends DecomposableScoringMethod {
+    private ConcurrentHashMap<Integer, double[]> regretTables = new ConcurrentHashMap<Integer, double[]>();
+    
+    
+    public FNMLScoringMethod(DatasetInterface dataset) {
+        super(dataset);
+    }
+    
+    @Override
+    protected double computeFamilyScore(Variable x, Variable[] parents) {
+        FamilyCounts counts = FamilyCounts.count(this.dataset, x, parents);
+        double[] logRegrets = this.getRegretTable(x.getCardinality(), (int)counts.getSize());
+        double score = counts.getConditionalLogLikelihood();
+        for(int pa = 0 ; pa < counts.getParentConfigurations() ; pa++)
+            score -= logRegrets[(int)Math.round(counts.getParentCount(pa))];
+        return score;
+    }
+    
+    /** Log-regrets of the given cardinality for the sample sizes 0 to (at least) maxSize. */
+    private double[] getRegretTable(int cardinality, int maxSize) {
+        double[] table = this.regretTables.get(cardinality);
+        if(table == null || table.length <= maxSize) {
+            table = MultinomialRegret.logRegretsOfSampleSizes(cardinality, Math.max(maxSize, this.dataset.getSize()));
+            this.regretTables.put(cardinality, table);
+        }
+        return table;
+    }
+    
+    @Override
+    protected double computeFamilyComplexityPenalty(Variable x, Variable[] parents) {
+        return 0;
+    }
+    
+    @Override
+    protected double computeComplexityPenalty(BayesianNetwork bn) {
+        return 0;
+    }
+}
@@ -0,0 +1,98 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/20
+
+package bna.bnlib.learning;
+
+import bna.bnlib.Factor;
+import bna.bnlib.Variable;
+
+
+/**
+ * Sufficient statistics of a family (child variable and its parents) computed
+ * in a single pass over the counts of the family. The child is the first
+ * variable of the scope of the counts, so the counts of each assignment
+ * of parents form a contiguous block. The log-likelihood terms are computed
+ * straight from the counts (without normalizing or marginalizing factors)
+ * and are shared by the scoring methods based on the maximum likelihood
+ * (likelihood, BIC, AIC, fNML and qNML).
+ */
+final class FamilyCounts {
+    private final int childCardinality;
+    private final double[] parentCounts; // N_pa for each assignment pa of parents
+    private final double size;
+    private final double conditionalLogLikelihood, // sum N_x_pa * log(N_x_pa / N_pa)
+                         marginalLogLikelihood; // sum N_x * log(N_x / N)
+
+
+    /** Count the family of x in the dataset. */
+    static FamilyCounts count(DatasetInterface dataset, Variable x, Variable[] parents) {
+        Variable[] scope = new Variable[1 + parents.length];
+        scope[0] = x;
+        System.arraycopy(parents, 0, scope, 1, parents.length);
+        return new FamilyCounts(dataset.computeFactor(scope));
+    }
+
+    /** Statistics of the counts of scope child, parents... (in this order). */
+    FamilyCounts(Factor counts) {
+        int r = counts.getScope()[0].getCardinality(),
+            q = counts.getCardinality() / r;
+        double[] childCounts = new double[r];
+        double N = 0, ll = 0;
+        this.parentCounts = new double[q];
+        for(int pa = 0, base = 0 ; pa < q ; pa++, base += r) {
+            double N_pa = 0;
+            for(int x = 0 ; x < r ; x++) {
+                double N_x_pa = counts.getProbability(base + x);
+                if(N_x_pa > 0) {
+                    ll += N_x_pa * Math.log(N_x_pa);
+                    childCounts[x] += N_x_pa;
+                    N_pa += N_x_pa;
+                }
+            }
+            if(N_pa > 0)
+                ll -= N_pa * Math.log(N_pa);
+            this.parentCounts[pa] = N_pa;
+            N += N_pa;
+        }
+        double marginal = 0;
+        for(int x = 0 ; x < r ; x++)
+            if(childCounts[x] > 0)
+                marginal += childCounts[x] * Math.log(childCounts[x] / N);
+        this.childCardinality = r;
+        this.size = N;
+        this.conditionalLogLikelihood = ll;
+        this.marginalLogLikelihood = marginal;
+    }
+
+    int getChildCardinality() {
+        return this.childCardinality;
+    }
+
+    /** Number of assignments of the parents. */
+    int getParentConfigurations() {
+        return this.parentCounts.length;
+    }
+
+    /** Number of records counted. */
+    double getSize() {
+        return this.size;
+    }
+
+    /** Number of records with the given assignment (index) of the parents. */
+    double getParentCount(int index) {
+        return this.parentCounts[index];
+    }
+
+    /** Maximized log-likelihood of the child given its parents (ie. -N * H(X|Pa)). */
+    double getConditionalLogLikelihood() {
+        return this.conditionalLogLikelihood;
+    }
+
+    /** Mutual information I(X;Pa) of the child and its parents in nats. */
+    double getMutualInformation() {
+        if(this.size == 0)
+            return 0.0;
+        return Math.max(0.0, (this.conditionalLogLikelihood - this.marginalLogLikelihood) / this.size);
+    }
+}
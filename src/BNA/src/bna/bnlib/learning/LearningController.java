@@ -10,7 +10,7 @@ package bna.bnlib.learning;
  */
 public class LearningController {
     private Long maxIterations;
-    private boolean stopFlag;
+    private volatile boolean stopFlag; // set by another thread
     
     
     /** Create controller of structure learning possibly limited by iterations count (if not null). */
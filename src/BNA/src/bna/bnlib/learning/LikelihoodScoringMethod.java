@@ -20,16 +20,19 @@ public class LikelihoodScoringMethod extends DecomposableScoringMethod {
     
     @Override
     /**
-     * Compute the mutual information between node and its parents from the dataset.
-     * Cache is not used at all.
+     * Compute the mutual information between node and its parents from the counts
+     * of the family (see FamilyCounts). Cache is not used at all.
      */
-    protected double computeFamilyScore(Node n) {
+    protected double computeFamilyScore(Variable x, Variable[] parents) {
         int N = this.dataset.getSize();
-        if(n.getParentCount() == 0)
+        if(parents.length == 0)
             return 0.0;
-        Variable[] nSet = {n.getVariable()};
-        Variable[] parentsSet = n.getParentVariables();
-        return N * dataset.mutualInformation(nSet, parentsSet);
+        return N * FamilyCounts.count(this.dataset, x, parents).getMutualInformation();
+    }
+    
+    @Override
+    protected double computeFamilyComplexityPenalty(Variable x, Variable[] parents) {
+        return 0;
     }
     
     @Override
@@ -0,0 +1,38 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/20
+
+package bna.bnlib.learning;
+
+import org.apache.commons.math3.special.Gamma;
+
+
+/**
+ * Precomputed values of log(Gamma(a + n) / Gamma(a)) for a fixed offset a and
+ * integers n = 0, 1, ..., size - 1. The table is built by the recurrence
+ * Gamma(a + n + 1) = (a + n) * Gamma(a + n), ie. a single logarithm per entry.
+ * Values outside of the table (too large or non-integer n, eg. expected
+ * counts) are computed directly.
+ */
+final class LogGammaTable {
+    private final double offset;
+    private final double logGammaOfOffset;
+    private final double[] values;
+
+
+    LogGammaTable(double offset, int size) {
+        this.offset = offset;
+        this.logGammaOfOffset = Gamma.logGamma(offset);
+        this.values = new double[Math.max(1, size)];
+        for(int n = 1 ; n < this.values.length ; n++)
+            this.values[n] = this.values[n - 1] + Math.log(offset + n - 1);
+    }
+
+    /** Value of log(Gamma(a + n) / Gamma(a)) for the offset a of this table. */
+    double logGammaRatio(double n) {
+        int index = (int)n;
+        if(index == n && index < this.values.length)
+            return this.values[index];
+        return Gamma.logGamma(this.offset + n) - this.logGammaOfOffset;
+    }
+}
@@ -0,0 +1,180 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/07
+
+package bna.bnlib.learning;
+
+import bna.bnlib.BNLibIOException;
+import bna.bnlib.BNLibIllegalArgumentException;
+import bna.bnlib.BNLibInconsistentVariableSetsException;
+import bna.bnlib.Factor;
+import bna.bnlib.Variable;
+import bna.bnlib.io.DatasetBinaryFileReader;
+import bna.bnlib.misc.Toolkit;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * Read-only dataset memory-mapped from a binary dataset file.
+ * The records aren't copied into the heap, the operating system pages in
+ * the columns as they are accessed. As the file is stored column by column,
+ * a query reads only the columns of the variables it is interested in.
+ * <p>
+ * The dataset can be used concurrently by several threads. Content of the file
+ * mustn't be modified while the dataset is in use.
+ */
+public class MappedDataset implements DatasetInterface {
+    /** Number of records whose factor indices are computed at once (column by column). */
+    private static final int BLOCK_RECORDS = 4096;
+
+    private Variable[] variables;
+    private int size;
+    private ByteBuffer[][] columns; // [variable][mapping]
+    private int[] bytesPerValue;
+    private boolean missingValues;
+
+
+    private MappedDataset(Variable[] variables, int size, ByteBuffer[][] columns, boolean missingValues) {
+        this.variables = variables;
+        this.size = size;
+        this.columns = columns;
+        this.missingValues = missingValues;
+        this.bytesPerValue = new int[variables.length];
+        for(int i = 0 ; i < variables.length ; i++)
+            this.bytesPerValue[i] = DatasetBinaryFileReader.bytesPerValue(variables[i]);
+    }
+
+    /**
+     * Map the given binary dataset file (see DatasetBinaryFileWriter).
+     * @throws BNLibIOException When the file is corrupted, it holds more
+     *         records than can be addressed by getSize or a Java IOException
+     *         occurs.
+     */
+    public static MappedDataset open(String binaryFileName) throws BNLibIOException {
+        DatasetBinaryFileReader reader = new DatasetBinaryFileReader(binaryFileName);
+        long recordCount = reader.getRecordCount();
+        if(recordCount > Integer.MAX_VALUE)
+            throw new BNLibIOException("The binary dataset file contains too many records.");
+        Variable[] variables = reader.getVariables();
+        ByteBuffer[][] columns = new ByteBuffer[variables.length][];
+        for(int i = 0 ; i < variables.length ; i++)
+            columns[i] = reader.mapColumn(i);
+        return new MappedDataset(variables, (int)recordCount, columns, reader.hasMissingValues());
+    }
+
+    @Override
+    public Variable[] getVariables() {
+        return Arrays.copyOf(this.variables, this.variables.length);
+    }
+
+    /** Check whether the dataset contains each of the specified variables. */
+    public boolean containsVariables(Variable[] vars) {
+        return Toolkit.isSubset(this.variables, vars);
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /** Has the file been written from a dataset with missing values? */
+    @Override
+    public boolean hasMissingValues() {
+        return this.missingValues;
+    }
+
+    @Override
+    public void addRecord(int[] record) {
+        throw new UnsupportedOperationException("Record addition is not supported for a memory-mapped dataset.");
+    }
+
+    /**
+     * Count occurences of all assignments to given variables and return as a factor.
+     * @throws BNLibInconsistentVariableSetsException When this dataset doesn't
+     *         contain all variables from the scope parameter.
+     * @throws BNLibIOException When the file contains an invalid value.
+     */
+    @Override
+    public Factor computeFactor(Variable[] scope) throws BNLibInconsistentVariableSetsException, BNLibIOException {
+        return this.computeFactors(new Variable[][] {scope})[0];
+    }
+
+    /**
+     * Count occurences of all assignments of each of the scopes. All the scopes
+     * are counted block by block, so each block of the columns is paged in once.
+     * A record with a value of a scope missing isn't counted for the scope.
+     * @throws BNLibInconsistentVariableSetsException When this dataset doesn't
+     *         contain all variables from some scope.
+     * @throws BNLibIOException When the file contains an invalid value.
+     */
+    @Override
+    public Factor[] computeFactors(Variable[][] scopes) throws BNLibInconsistentVariableSetsException, BNLibIOException {
+        int[][] columnIndices = new int[scopes.length][],
+                strides = new int[scopes.length][];
+        double[][] counts = new double[scopes.length][];
+        for(int s = 0 ; s < scopes.length ; s++) {
+            if(!this.containsVariables(scopes[s]))
+                throw new BNLibInconsistentVariableSetsException("Dataset doesn't contain all requested variables.");
+            columnIndices[s] = new int[scopes[s].length];
+            strides[s] = new int[scopes[s].length];
+            int stride = 1;
+            for(int i = 0 ; i < scopes[s].length ; i++) {
+                columnIndices[s][i] = Toolkit.indexOf(this.variables, scopes[s][i]);
+                strides[s][i] = stride;
+                stride *= scopes[s][i].getCardinality();
+            }
+            counts[s] = new double[stride];
+        }
+        int[] indices = new int[BLOCK_RECORDS];
+        for(int first = 0 ; first < this.size ; first += BLOCK_RECORDS) {
+            int blockLength = Math.min(BLOCK_RECORDS, this.size - first);
+            // blocks never cross a mapping boundary (the mappings are multiples of the block length)
+            int mapping = first / DatasetBinaryFileReader.MAX_VALUES_PER_MAPPING,
+                offset = first % DatasetBinaryFileReader.MAX_VALUES_PER_MAPPING;
+            for(int s = 0 ; s < scopes.length ; s++) {
+                Arrays.fill(indices, 0, blockLength, 0);
+                for(int i = 0 ; i < columnIndices[s].length ; i++) {
+                    ByteBuffer column = this.columns[columnIndices[s][i]][mapping];
+                    int iBytesPerValue = this.bytesPerValue[columnIndices[s][i]],
+                        iStride = strides[s][i];
+                    int iCardinality = scopes[s][i].getCardinality();
+                    for(int r = 0 ; r < blockLength ; r++) {
+                        int value = DatasetBinaryFileReader.getValue(column, offset + r, iBytesPerValue);
+                        if(value == Dataset.MISSING_VALUE ? !this.missingValues : value < 0 || value >= iCardinality)
+                            throw new BNLibIOException("Invalid value in the binary dataset file.");
+                        // a missing value makes the index negative for good
+                        indices[r] = (value == Dataset.MISSING_VALUE || indices[r] < 0) ? -1 : indices[r] + iStride * value;
+                    }
+                }
+                double[] sCounts = counts[s];
+                for(int r = 0 ; r < blockLength ; r++)
+                    if(indices[r] >= 0)
+                        sCounts[indices[r]]++;
+            }
+        }
+        Factor[] factors = new Factor[scopes.length];
+        for(int s = 0 ; s < scopes.length ; s++)
+            factors[s] = new Factor(scopes[s], counts[s]);
+        return factors;
+    }
+
+    /**
+     * Compute mutual information between two sets of variables.
+     * @throws BNLibIllegalArgumentException When the two sets aren't disjoint
+     *         or containt a variable not present in the dataset.
+     */
+    @Override
+    public double mutualInformation(Variable[] set1, Variable[] set2) throws BNLibIllegalArgumentException {
+        if(!Toolkit.areDisjoint(set1, set2))
+            throw new BNLibIllegalArgumentException("Sets to compute mutual information for are not disjoint.");
+        Variable[] union = Toolkit.union(set1, set2);
+        if(!Toolkit.isSubset(this.variables, union))
+            throw new BNLibIllegalArgumentException("Sets contain variables not present in the dataset.");
+
+        if(set1.length == 0 || set2.length == 0)
+            return 0.0;
+
+        return Dataset.mutualInformation(this.computeFactor(union), set1, set2);
+    }
+}
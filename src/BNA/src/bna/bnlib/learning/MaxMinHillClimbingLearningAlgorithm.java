@@ -0,0 +1,61 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/17
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+
+
+/**
+ * Hybrid structure learning in the manner of the max-min hill-climbing (MMHC)
+ * algorithm. First the skeleton of the network is found by the constraint-based
+ * MaxMinParentsChildren, then the tabu search is run with the constraints
+ * restricted to the edges of the skeleton. The search thus considers only
+ * a small number of candidate alterations even for networks of many variables.
+ */
+public class MaxMinHillClimbingLearningAlgorithm extends StructureLearningAlgorithm {
+    private MaxMinParentsChildren skeletonDiscovery;
+    private TabuSearchLearningAlgorithm search;
+
+
+    /**
+     * Create an instance of the hybrid learning algorithm. The independence
+     * tests are computed over the dataset of the scoring method.
+     * @param significance Significance level of the independence tests.
+     * @param maxConditioningSetSize Maximal size of the conditioning sets
+     *                               of the independence tests.
+     * @param threadcount Number of threads running the independence tests
+     *                    and scoring the alterations of the tabu search.
+     * @throws BNLibIllegalArgumentException When the parameters of the
+     *         independence tests or the threadcount are illegal.
+     */
+    public MaxMinHillClimbingLearningAlgorithm(DecomposableScoringMethod method,
+                                               double significance,
+                                               int maxConditioningSetSize,
+                                               int tabulistSize,
+                                               int randomRestartSteps,
+                                               int threadcount) throws BNLibIllegalArgumentException {
+        super(method);
+        ConditionalIndependenceTests tests = new ConditionalIndependenceTests(method.dataset,
+                                                                              ConditionalIndependenceTests.DEFAULT_CACHE_CAPACITY,
+                                                                              threadcount);
+        this.skeletonDiscovery = new MaxMinParentsChildren(tests, significance, maxConditioningSetSize);
+        this.search = new TabuSearchLearningAlgorithm(method, tabulistSize, randomRestartSteps, threadcount);
+    }
+
+    /**
+     * Runs the skeleton discovery and then the tabu search.
+     * Edges of the initial network outside of the skeleton can only be
+     * removed by the search.
+     */
+    @Override
+    public BayesianNetwork learn(BayesianNetwork bnInitial,
+                                 LearningController controller,
+                                 StructuralConstraints constraints) {
+        StructuralConstraints restricted = this.skeletonDiscovery.restrictConstraints(bnInitial.getVariables(), constraints);
+        if(controller.getStopFlag())
+            return bnInitial.copyStructureWithEmptyCPDs();
+        return this.search.learn(bnInitial, controller, restricted);
+    }
+}
@@ -0,0 +1,252 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/17
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Constraint-based discovery of the skeleton of a network by the max-min
+ * parents and children (MMPC) algorithm of Tsamardinos et al.
+ * Conditional independence of X and Y given Z is tested by the G² test
+ * of ConditionalIndependenceTests (the tests of a single step are issued
+ * as a batch).
+ * <p>
+ * For each target variable the candidate parents and children are collected
+ * greedily: the variable with the highest minimal association (the lowest
+ * maximal p-value over the subsets of the current candidates) is added until
+ * all the remaining variables are found independent of the target. Then the
+ * false positives are removed. An edge is kept in the skeleton only if each
+ * of its variables is in the parents and children set of the other one.
+ */
+public class MaxMinParentsChildren {
+    /** A test is considered reliable if there are at least so many records per degree of freedom. */
+    public static final int MIN_RECORDS_PER_DF = 5;
+
+    private ConditionalIndependenceTests tests;
+    private double significance;
+    private int maxConditioningSetSize;
+
+
+    /**
+     * Create the skeleton discovery over the given dataset (tests run in a single thread).
+     * @throws BNLibIllegalArgumentException When the significance is not
+     *         in (0,1) or the maximal conditioning set size is negative.
+     */
+    public MaxMinParentsChildren(DatasetInterface dataset, double significance, int maxConditioningSetSize) throws BNLibIllegalArgumentException {
+        this(new ConditionalIndependenceTests(dataset, ConditionalIndependenceTests.DEFAULT_CACHE_CAPACITY, 1),
+             significance, maxConditioningSetSize);
+    }
+
+    /**
+     * Create the skeleton discovery using the given independence tests
+     * (and their cached results).
+     * @param significance Significance level of the independence tests
+     *                     (typically 0.05).
+     * @param maxConditioningSetSize Maximal size of the conditioning sets.
+     * @throws BNLibIllegalArgumentException When the significance is not
+     *         in (0,1) or the maximal conditioning set size is negative.
+     */
+    public MaxMinParentsChildren(ConditionalIndependenceTests tests, double significance, int maxConditioningSetSize) throws BNLibIllegalArgumentException {
+        if(significance <= 0 || significance >= 1)
+            throw new BNLibIllegalArgumentException("The significance level has to be in (0,1).");
+        if(maxConditioningSetSize < 0)
+            throw new BNLibIllegalArgumentException("The maximal conditioning set size mustn't be negative.");
+        this.tests = tests;
+        this.significance = significance;
+        this.maxConditioningSetSize = maxConditioningSetSize;
+    }
+
+    /**
+     * Restrict the given constraints to the edges of the skeleton found by MMPC.
+     * Only the pairs of variables allowed by the given constraints are tested.
+     * @return New constraints (the given ones are not modified).
+     */
+    public StructuralConstraints restrictConstraints(Variable[] variables, StructuralConstraints constraints) {
+        boolean[][] adjacent = this.findSkeleton(variables, constraints);
+        StructuralConstraints restricted = new StructuralConstraints(constraints);
+        for(int i = 0 ; i < variables.length ; i++) {
+            for(int j = 0 ; j < variables.length ; j++) {
+                if(i != j && !adjacent[i][j])
+                    restricted.setConnectionAllowed(variables[i], variables[j], false);
+            }
+        }
+        return restricted;
+    }
+
+    /**
+     * Find the skeleton (undirected) of a network over the variables.
+     * @return Symmetric adjacency matrix indexed as the variables array.
+     */
+    public boolean[][] findSkeleton(Variable[] variables, StructuralConstraints constraints) {
+        ArrayList<ArrayList<Variable>> candidates = new ArrayList<ArrayList<Variable>>(variables.length);
+        ArrayList<Variable> xs = new ArrayList<Variable>(),
+                            ys = new ArrayList<Variable>();
+        for(int i = 0 ; i < variables.length ; i++) {
+            candidates.add(new ArrayList<Variable>());
+            for(int j = 0 ; j < variables.length ; j++) {
+                if(i != j && (constraints.isConnectionAllowed(variables[j], variables[i])
+                              || constraints.isConnectionAllowed(variables[i], variables[j]))) {
+                    candidates.get(i).add(variables[j]);
+                    if(i < j) {
+                        xs.add(variables[i]);
+                        ys.add(variables[j]);
+                    }
+                }
+            }
+        }
+        // the marginal tests of all the pairs at once (the results are cached)
+        Variable[][] emptySets = new Variable[xs.size()][];
+        Arrays.fill(emptySets, new Variable[0]);
+        this.tests.test(xs.toArray(new Variable[0]), ys.toArray(new Variable[0]), emptySets);
+        Variable[][] parentsChildren = new Variable[variables.length][];
+        for(int i = 0 ; i < variables.length ; i++)
+            parentsChildren[i] = this.findParentsChildren(variables[i], candidates.get(i));
+        // symmetry correction
+        boolean[][] adjacent = new boolean[variables.length][variables.length];
+        for(int i = 0 ; i < variables.length ; i++) {
+            for(int j = i + 1 ; j < variables.length ; j++) {
+                adjacent[i][j] = adjacent[j][i] =
+                        Toolkit.arrayContains(parentsChildren[i], variables[j])
+                        && Toolkit.arrayContains(parentsChildren[j], variables[i]);
+            }
+        }
+        return adjacent;
+    }
+
+    /** Find the parents and children of the target among the candidates (MMPC). */
+    public Variable[] findParentsChildren(Variable target, List<Variable> candidates) {
+        // maximal p-value of each remaining candidate over the tested conditioning sets
+        ArrayList<Variable> remaining = new ArrayList<Variable>();
+        ArrayList<Double> maxPValues = new ArrayList<Double>();
+        double[] marginalPValues = this.pValues(candidates, target, new Variable[0]);
+        for(int i = 0 ; i < candidates.size() ; i++) {
+            if(marginalPValues[i] < this.significance) {
+                remaining.add(candidates.get(i));
+                maxPValues.add(marginalPValues[i]);
+            }
+        }
+        // forward phase
+        ArrayList<Variable> cpc = new ArrayList<Variable>();
+        while(!remaining.isEmpty()) {
+            int best = 0;
+            for(int i = 1 ; i < remaining.size() ; i++) {
+                if(maxPValues.get(i) < maxPValues.get(best))
+                    best = i;
+            }
+            Variable added = remaining.remove(best);
+            maxPValues.remove(best);
+            // only the conditioning sets with the new candidate haven't been tested yet
+            for(Variable[] z : this.conditioningSets(cpc, added)) {
+                if(remaining.isEmpty())
+                    break;
+                double[] pValues = this.pValues(remaining, target, z);
+                for(int i = remaining.size() - 1 ; i >= 0 ; i--) {
+                    if(pValues[i] >= this.significance) {
+                        remaining.remove(i);
+                        maxPValues.remove(i);
+                    }
+                    else if(pValues[i] > maxPValues.get(i))
+                        maxPValues.set(i, pValues[i]);
+                }
+            }
+            cpc.add(added);
+        }
+        // backward phase (removal of false positives)
+        for(int i = cpc.size() - 1 ; i >= 0 ; i--) {
+            Variable x = cpc.remove(i);
+            ArrayList<Variable[]> zs = this.conditioningSets(cpc, null);
+            Variable[] xs = new Variable[zs.size()],
+                       ys = new Variable[zs.size()];
+            Arrays.fill(xs, x);
+            Arrays.fill(ys, target);
+            boolean separated = false;
+            for(double p : this.pValues(xs, ys, zs.toArray(new Variable[0][])))
+                separated |= p >= this.significance;
+            if(!separated)
+                cpc.add(i, x);
+        }
+        return cpc.toArray(new Variable[0]);
+    }
+
+    /**
+     * All subsets of the pool (of size up to the maximal conditioning set size)
+     * extended by the required variable (if not null).
+     */
+    private ArrayList<Variable[]> conditioningSets(List<Variable> pool, Variable required) {
+        ArrayList<Variable[]> sets = new ArrayList<Variable[]>();
+        int requiredCount = (required == null) ? 0 : 1;
+        int maxSize = Math.min(pool.size(), this.maxConditioningSetSize - requiredCount);
+        for(int size = 0 ; size <= maxSize ; size++) {
+            // indices of the chosen variables of the pool in increasing order
+            int[] chosen = new int[size];
+            for(int k = 0 ; k < size ; k++)
+                chosen[k] = k;
+            while(true) {
+                Variable[] z = new Variable[size + requiredCount];
+                for(int k = 0 ; k < size ; k++)
+                    z[k] = pool.get(chosen[k]);
+                if(required != null)
+                    z[size] = required;
+                sets.add(z);
+                // next combination
+                int k = size - 1;
+                while(k >= 0 && chosen[k] == pool.size() - size + k)
+                    k--;
+                if(k < 0)
+                    break;
+                chosen[k]++;
+                for(int l = k + 1 ; l < size ; l++)
+                    chosen[l] = chosen[l - 1] + 1;
+            }
+        }
+        return sets;
+    }
+
+    /** P-values of the tests of independence of each of the xs and y given z. */
+    private double[] pValues(List<Variable> xs, Variable y, Variable[] z) {
+        Variable[] ys = new Variable[xs.size()];
+        Variable[][] zs = new Variable[xs.size()][];
+        Arrays.fill(ys, y);
+        Arrays.fill(zs, z);
+        return this.pValues(xs.toArray(new Variable[0]), ys, zs);
+    }
+
+    /**
+     * P-values of the G² tests of independence of xs[i] and ys[i] given zs[i].
+     * If there are too few records for the number of degrees of freedom of
+     * a test, the test is unreliable and its p-value is 0 (dependence), so
+     * that such a conditioning set cannot separate the variables.
+     */
+    private double[] pValues(Variable[] xs, Variable[] ys, Variable[][] zs) {
+        double[] pValues = new double[xs.length];
+        int N = this.tests.getDataset().getSize();
+        ArrayList<Integer> reliable = new ArrayList<Integer>();
+        for(int i = 0 ; i < xs.length ; i++) {
+            long df = (long)(xs[i].getCardinality() - 1) * (ys[i].getCardinality() - 1);
+            for(Variable zi : zs[i])
+                df *= zi.getCardinality();
+            if(zs[i].length == 0 || N >= MIN_RECORDS_PER_DF * df)
+                reliable.add(i);
+        }
+        Variable[] testXs = new Variable[reliable.size()],
+                   testYs = new Variable[reliable.size()];
+        Variable[][] testZs = new Variable[reliable.size()][];
+        for(int k = 0 ; k < testXs.length ; k++) {
+            int i = reliable.get(k);
+            testXs[k] = xs[i];
+            testYs[k] = ys[i];
+            testZs[k] = zs[i];
+        }
+        ConditionalIndependenceTests.Result[] results = this.tests.test(testXs, testYs, testZs);
+        for(int k = 0 ; k < results.length ; k++)
+            pValues[reliable.get(k)] = results[k].getPValue();
+        return pValues;
+    }
+}
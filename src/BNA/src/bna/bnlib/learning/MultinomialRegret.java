@@ -0,0 +1,121 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/20
+
+package bna.bnlib.learning;
+
+import java.util.Arrays;
+
+
+/**
+ * Logarithm of the normalizing constant C(n, k) of the normalized maximum
+ * likelihood of a multinomial variable with k values given n records
+ * (the regret). C(n, 1) = 1 and C(n, 2) is computed as a sum of n + 1
+ * binomial terms (or by the asymptotic expansion of Szpankowski for large n),
+ * the rest follows from the recurrence of Kontkanen and Myllymaki
+ * C(n, k + 2) = C(n, k + 1) + n / k * C(n, k).
+ * <p>
+ * The regrets are kept in tables of a fixed sample size (growing with k)
+ * or of a fixed k (for sample sizes up to some maximum) as needed by qNML
+ * and fNML respectively.
+ */
+final class MultinomialRegret {
+    /** C(n, 2) is computed exactly for n up to this limit. */
+    private static final int EXACT_LIMIT = 1000;
+    private static final double[] LOG_REGRETS_OF_TWO = new double[EXACT_LIMIT + 1];
+
+    static {
+        for(int n = 0 ; n <= EXACT_LIMIT ; n++)
+            LOG_REGRETS_OF_TWO[n] = MultinomialRegret.exactLogRegretOfTwo(n);
+    }
+
+
+    private MultinomialRegret() {
+    }
+
+    /** Log of sum_h binom(n, h) * (h / n)^h * ((n - h) / n)^(n - h) (with 0^0 = 1). */
+    private static double exactLogRegretOfTwo(int n) {
+        if(n == 0)
+            return 0.0;
+        double[] terms = new double[n + 1];
+        double logBinom = 0, max = Double.NEGATIVE_INFINITY;
+        for(int h = 0 ; h <= n ; h++) {
+            terms[h] = logBinom;
+            if(h > 0)
+                terms[h] += h * Math.log(h / (double)n);
+            if(h < n)
+                terms[h] += (n - h) * Math.log((n - h) / (double)n);
+            max = Math.max(max, terms[h]);
+            logBinom += Math.log((n - h) / (h + 1.0));
+        }
+        double sum = 0;
+        for(double term : terms)
+            sum += Math.exp(term - max);
+        return max + Math.log(sum);
+    }
+
+    /** Log C(n, 2) by the expansion of Szpankowski (accurate for large n). */
+    private static double approximateLogRegretOfTwo(double n) {
+        return 0.5 * Math.log(n / 2) + 0.5 * Math.log(Math.PI)
+               + 2 * Math.sqrt(2) / (3 * Math.sqrt(Math.PI * n))
+               + (1.0 / 12 - 4 / (9 * Math.PI)) / n;
+    }
+
+    static double logRegretOfTwo(int n) {
+        if(n <= EXACT_LIMIT)
+            return LOG_REGRETS_OF_TWO[n];
+        return MultinomialRegret.approximateLogRegretOfTwo(n);
+    }
+
+    /** Log C(n, k + 2) given log C(n, k) and log C(n, k + 1). */
+    private static double nextLogRegret(int n, int k, double logRegretK, double logRegretK1) {
+        return logRegretK1 + Math.log1p(n / (double)k * Math.exp(logRegretK - logRegretK1));
+    }
+
+    /**
+     * Log C(n, k) for all the sample sizes n = 0, 1, ..., maxSize
+     * and the fixed number of values k.
+     */
+    static double[] logRegretsOfSampleSizes(int k, int maxSize) {
+        double[] logRegrets = new double[maxSize + 1];
+        if(k == 1)
+            return logRegrets;
+        for(int n = 0 ; n <= maxSize ; n++) {
+            double logRegretK = 0, // C(n, 1)
+                   logRegretK1 = MultinomialRegret.logRegretOfTwo(n);
+            for(int j = 1 ; j + 1 < k ; j++) {
+                double next = MultinomialRegret.nextLogRegret(n, j, logRegretK, logRegretK1);
+                logRegretK = logRegretK1;
+                logRegretK1 = next;
+            }
+            logRegrets[n] = logRegretK1;
+        }
+        return logRegrets;
+    }
+
+
+    /** Log C(n, k) of a fixed sample size n, the values are computed as k grows. */
+    static final class FixedSampleSize {
+        private final int size;
+        private double[] logRegrets; // index k - 1
+        private int computed;
+
+        FixedSampleSize(int size) {
+            this.size = size;
+            this.logRegrets = new double[] {0.0, MultinomialRegret.logRegretOfTwo(size)};
+            this.computed = 2;
+        }
+
+        synchronized double logRegret(int k) {
+            if(k > this.logRegrets.length)
+                this.logRegrets = Arrays.copyOf(this.logRegrets, Math.max(k, 2 * this.logRegrets.length));
+            for( ; this.computed < k ; this.computed++) {
+                int j = this.computed - 1; // logRegrets[computed] is C(size, j + 2)
+                this.logRegrets[this.computed] = MultinomialRegret.nextLogRegret(this.size, j,
+                                                                                 this.logRegrets[j - 1],
+                                                                                 this.logRegrets[j]);
+            }
+            return this.logRegrets[k - 1];
+        }
+    }
+}
@@ -0,0 +1,227 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/15
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.IndexedDigraph;
+import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * Implementation of ordering-based search (OBS) with random restarts.
+ * The search moves in the space of orders of the variables. For a given order
+ * each variable simply takes its best parent set among the variables preceding
+ * it (from the precomputed ParentSetScoreCache), the resulting network is
+ * acyclic by construction and no cycle checks are needed.
+ * <p>
+ * A step of the search moves a single variable to another position in the order
+ * (insertion neighborhood, which includes swaps of adjacent variables). Only
+ * the variables between the old and the new position can change their parents,
+ * so all the insertions of a variable are scored incrementally in a single
+ * pass. When no move improves the score, the given number of random swaps of
+ * adjacent variables is taken (random restart).
+ */
+public class OrderingSearchLearningAlgorithm extends StructureLearningAlgorithm {
+    protected Random rand = new Random();
+    private ParentSetScoreCache cache; // null => computed for each learn
+    private int randomRestartSteps;
+    // state of the search (only during learn)
+    private ParentSetScoreCache scores;
+    private int[] order;
+    private long[][] predecessors; // predecessors[k] are the variables order[0..k-1]
+    private int[] parentSets;      // chosen parent set of each variable
+
+
+    /**
+     * Create an instance of the ordering-based search with random restarts.
+     * Scores of the parent sets are precomputed at the beginning of each learn.
+     */
+    public OrderingSearchLearningAlgorithm(DecomposableScoringMethod method, int randomRestartSteps) {
+        this(method, null, randomRestartSteps);
+    }
+
+    /**
+     * Create an instance of the ordering-based search with random restarts
+     * using the given scores of parent sets (eg. loaded from a file or shared
+     * by several runs). The cache has to be computed for the same variables
+     * and constraints as are later given to learn.
+     */
+    public OrderingSearchLearningAlgorithm(DecomposableScoringMethod method, ParentSetScoreCache cache, int randomRestartSteps) {
+        super(method);
+        this.cache = cache;
+        this.randomRestartSteps = randomRestartSteps;
+    }
+
+    /**
+     * Runs the ordering-based search.
+     * The search starts from a topological order of the initial network.
+     * @throws BNLibInconsistentVariableSetsException When the given cache
+     *         is for different variables than the initial network has.
+     */
+    @Override
+    public BayesianNetwork learn(BayesianNetwork bnInitial,
+                                 LearningController controller,
+                                 StructuralConstraints constraints) {
+        this.scores = this.cache;
+        if(this.scores == null)
+            this.scores = ParentSetScoreCache.compute(this.scoringMethod, bnInitial.getVariables(), constraints);
+        else if(!Toolkit.areEqual(this.scores.getVariables(), bnInitial.getVariables()))
+            throw new BNLibInconsistentVariableSetsException("The parent set scores are for different variables.");
+        final int NODE_COUNT = bnInitial.getVariablesCount();
+        try {
+            this.order = new int[NODE_COUNT];
+            Variable[] topsort = bnInitial.topologicalSort();
+            for(int i = 0 ; i < NODE_COUNT ; i++)
+                this.order[i] = this.scores.getVariableIndex(topsort[i]);
+            this.predecessors = new long[NODE_COUNT + 1][IndexedDigraph.bitsetLength(NODE_COUNT)];
+            this.parentSets = new int[NODE_COUNT];
+            double currentScore = this.updateParentSets();
+            int[] bestOrder = Arrays.copyOf(this.order, NODE_COUNT);
+            double bestScore = currentScore;
+
+            long iteration = 0;
+            int randomStepsToGo = 0;
+            while(!controller.shouldStop(iteration)) {
+                if(randomStepsToGo > 0) {
+                    int position = this.rand.nextInt(NODE_COUNT - 1);
+                    this.moveVariable(position, position + 1);
+                    randomStepsToGo--;
+                }
+                else {
+                    int[] move = this.getBestMove();
+                    if(move == null) {
+                        // local maxima => random restart (if any)
+                        if(this.randomRestartSteps == 0 || NODE_COUNT < 2)
+                            break;
+                        randomStepsToGo = this.randomRestartSteps;
+                        continue;
+                    }
+                    this.moveVariable(move[0], move[1]);
+                }
+                currentScore = this.updateParentSets();
+                // keep track of the overall best order seen so far
+                if(currentScore > bestScore && !Toolkit.doubleEquals(currentScore, bestScore)) {
+                    bestScore = currentScore;
+                    bestOrder = Arrays.copyOf(this.order, NODE_COUNT);
+                }
+                iteration++;
+            }
+
+            this.order = bestOrder;
+            this.updateParentSets();
+            return this.createNetwork(bnInitial);
+        }
+        finally {
+            this.scores = null;
+            this.order = null;
+            this.predecessors = null;
+            this.parentSets = null;
+        }
+    }
+
+    /** Choose the best parent set of each variable wrt the current order and return the score of the order. */
+    private double updateParentSets() {
+        double score = 0;
+        Arrays.fill(this.predecessors[0], 0);
+        for(int k = 0 ; k < this.order.length ; k++) {
+            int x = this.order[k];
+            this.parentSets[x] = this.scores.getBestParentSet(x, this.predecessors[k]);
+            score += this.scores.getScore(x, this.parentSets[x]);
+            System.arraycopy(this.predecessors[k], 0, this.predecessors[k + 1], 0, this.predecessors[k].length);
+            IndexedDigraph.setBit(this.predecessors[k + 1], x);
+        }
+        return score;
+    }
+
+    /** Local score of x if its parents are chosen from the given variables. */
+    private double bestScore(int x, long[] allowedParents) {
+        return this.scores.getScore(x, this.scores.getBestParentSet(x, allowedParents));
+    }
+
+    /**
+     * Find the move (from position, to position) that improves the score the most.
+     * If more moves are equally good, one of them is picked randomly.
+     * Returns null when no move improves the score.
+     */
+    private int[] getBestMove() {
+        final int NODE_COUNT = this.order.length;
+        double[] currentScores = new double[NODE_COUNT];
+        for(int x = 0 ; x < NODE_COUNT ; x++)
+            currentScores[x] = this.scores.getScore(x, this.parentSets[x]);
+        long[] allowed = new long[this.predecessors[0].length];
+        ArrayList<int[]> bestMoves = new ArrayList<int[]>();
+        double bestDelta = Toolkit.DOUBLE_EPS; // only strict improvements
+        for(int i = 0 ; i < NODE_COUNT ; i++) {
+            int x = this.order[i];
+            // move x right after order[k] (the variables in between lose x)
+            double deltaOthers = 0;
+            for(int k = i + 1 ; k < NODE_COUNT ; k++) {
+                int y = this.order[k];
+                System.arraycopy(this.predecessors[k], 0, allowed, 0, allowed.length);
+                IndexedDigraph.clearBit(allowed, x);
+                deltaOthers += this.bestScore(y, allowed) - currentScores[y];
+                IndexedDigraph.setBit(allowed, y);
+                double delta = deltaOthers + this.bestScore(x, allowed) - currentScores[x];
+                bestDelta = this.offerMove(bestMoves, bestDelta, i, k, delta);
+            }
+            // move x right before order[k] (the variables in between gain x)
+            deltaOthers = 0;
+            for(int k = i - 1 ; k >= 0 ; k--) {
+                int y = this.order[k];
+                System.arraycopy(this.predecessors[k], 0, allowed, 0, allowed.length);
+                IndexedDigraph.setBit(allowed, x);
+                deltaOthers += this.bestScore(y, allowed) - currentScores[y];
+                double delta = deltaOthers + this.bestScore(x, this.predecessors[k]) - currentScores[x];
+                bestDelta = this.offerMove(bestMoves, bestDelta, i, k, delta);
+            }
+        }
+        if(bestMoves.isEmpty())
+            return null;
+        return bestMoves.get(this.rand.nextInt(bestMoves.size()));
+    }
+
+    private double offerMove(ArrayList<int[]> bestMoves, double bestDelta, int from, int to, double delta) {
+        if(delta >= bestDelta) {
+            if(Toolkit.doubleEquals(delta, bestDelta))
+                bestMoves.add(new int[] {from, to});
+            else {
+                bestMoves.clear();
+                bestMoves.add(new int[] {from, to});
+                return delta;
+            }
+        }
+        return bestDelta;
+    }
+
+    /** Move the variable at position "from" in the order to position "to". */
+    private void moveVariable(int from, int to) {
+        int x = this.order[from];
+        if(from < to)
+            System.arraycopy(this.order, from + 1, this.order, from, to - from);
+        else
+            System.arraycopy(this.order, to, this.order, to + 1, from - to);
+        this.order[to] = x;
+    }
+
+    /** Create network with the chosen parent sets. */
+    private BayesianNetwork createNetwork(BayesianNetwork bnInitial) {
+        BayesianNetwork bn = bnInitial.copyEmptyStructure();
+        Variable[] variables = this.scores.getVariables();
+        try {
+            for(int x = 0 ; x < variables.length ; x++) {
+                Variable child = bn.getVariable(variables[x].getName());
+                for(Variable parent : this.scores.getParents(x, this.parentSets[x]))
+                    bn.addDependency(bn.getVariable(parent.getName()), child);
+            }
+        }
+        catch(BNLibIllegalStructuralModificationException ex) {
+            throw new BNLibInternalException("Internal structure inconsistency during learing: " + ex.getMessage());
+        }
+        return bn;
+    }
+}
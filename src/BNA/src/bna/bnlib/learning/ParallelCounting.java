@@ -0,0 +1,130 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Counting of many scopes by several threads. The records of the dataset are
+ * split among the threads, each thread counts all the scopes over its part
+ * of the records (see RecordCounts) and the counts of the threads are summed
+ * up, so the dataset is scanned only once. Only the datasets holding their
+ * records in memory are split, other datasets count all the scopes in a single
+ * pass by themselves (see DatasetInterface.computeFactors). A CachedDataset
+ * answers the scopes it has cached and the rest is counted over its
+ * underlying dataset.
+ * <p>
+ * The threads are taken from a pool kept by the caller (see createExecutor),
+ * so that repeated counting (eg. each M-step of EM) doesn't start new threads.
+ * Callers without a pool of their own share the default one (see
+ * getDefaultExecutor).
+ */
+final class ParallelCounting {
+    /** Datasets with less records per thread are counted by a single thread. */
+    static final int MIN_RECORDS_PER_THREAD = 1000;
+    /** Time after which an idle thread of the pool is terminated. */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    /** Number of threads of the default pool. */
+    static final int DEFAULT_THREADCOUNT = Runtime.getRuntime().availableProcessors();
+
+    private static ExecutorService defaultExecutor = null;
+
+    private ParallelCounting() {
+    }
+
+    /**
+     * Create a pool of the given number of threads for counting. The threads
+     * are started when needed and terminated when idle, and they don't keep
+     * the application running, so the pool doesn't need to be shut down.
+     */
+    static ExecutorService createExecutor(int threadcount) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadcount, threadcount,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "bnlib-counting");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** The pool of DEFAULT_THREADCOUNT threads shared by all callers without a pool of their own. */
+    static synchronized ExecutorService getDefaultExecutor() {
+        if(ParallelCounting.defaultExecutor == null)
+            ParallelCounting.defaultExecutor = ParallelCounting.createExecutor(DEFAULT_THREADCOUNT);
+        return ParallelCounting.defaultExecutor;
+    }
+
+    /**
+     * Count the tables of the given scopes (in the order of the scopes)
+     * by at most threadcount threads of the executor.
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain all variables from some scope.
+     */
+    static Factor[] computeFactors(DatasetInterface dataset, final Variable[][] scopes, ExecutorService executor, int threadcount) throws BNLibInconsistentVariableSetsException {
+        if(dataset instanceof CachedDataset)
+            return ((CachedDataset)dataset).computeFactors(scopes, executor, threadcount);
+        final RecordCounts.WeightedRecords records = ParallelCounting.weightedRecords(dataset);
+        int threads = (records == null) ? 1 : Math.min(threadcount, records.size() / MIN_RECORDS_PER_THREAD);
+        if(threads <= 1)
+            return dataset.computeFactors(scopes);
+        final Variable[] variables = dataset.getVariables();
+        RecordCounts counts = new RecordCounts(variables, scopes); // checks the scopes
+        ArrayList<Future<RecordCounts>> futures = new ArrayList<Future<RecordCounts>>();
+        try {
+            for(int t = 0 ; t < threads ; t++) {
+                final int from = (int)((long)records.size() * t / threads),
+                          to = (int)((long)records.size() * (t + 1) / threads);
+                futures.add(executor.submit(new Callable<RecordCounts>() {
+                    @Override
+                    public RecordCounts call() {
+                        RecordCounts myCounts = new RecordCounts(variables, scopes);
+                        myCounts.addRecords(records, from, to);
+                        return myCounts;
+                    }
+                }));
+            }
+            for(Future<RecordCounts> future : futures)
+                counts.addAll(future.get(), 1);
+            return counts.toFactors();
+        }
+        catch(InterruptedException ex) {
+            for(Future<RecordCounts> future : futures)
+                future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BNLibInternalException("Counting of the dataset has been interrupted.");
+        }
+        catch(ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new BNLibInternalException("Counting of the dataset failed: " + ex.getCause());
+        }
+    }
+
+    /** The records of a dataset holding them in memory, null for other datasets. */
+    private static RecordCounts.WeightedRecords weightedRecords(DatasetInterface dataset) {
+        if(dataset instanceof Dataset)
+            return ((Dataset)dataset).weightedRecords();
+        if(dataset instanceof ResampledDataset)
+            return ((ResampledDataset)dataset).weightedRecords();
+        if(dataset instanceof CompletedDataset)
+            return ((CompletedDataset)dataset).weightedRecords();
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/19
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Repeated structure learning (eg. tabu search with random restarts run
+ * several times) whose runs are independent and therefore executed by
+ * a pool of threads. The factory creates a new learning algorithm for each
+ * run given the index of the run. Runs over the same data should share
+ * a single scoring method, so that the family scores computed by one run
+ * are reused by the others; runs over different data (eg. the replicas of
+ * BootstrapStructureLearning) have their own. The learnt networks are
+ * registered in a StructureLearningStatistics as soon as they are learnt.
+ */
+public class ParallelStructureLearning {
+    private DecomposableScoringMethod scoringMethod;
+    private StructureLearningAlgorithmFactory factory;
+    private int threadcount;
+
+
+    /**
+     * Create the parallel learning.
+     * @param method Scoring method of the learnt networks in the statistics.
+     * @param factory Creates the learning algorithm of each run.
+     * @param threadcount Number of runs executed at once.
+     * @throws BNLibIllegalArgumentException When the threadcount is not positive.
+     */
+    public ParallelStructureLearning(DecomposableScoringMethod method,
+                                     StructureLearningAlgorithmFactory factory,
+                                     int threadcount) throws BNLibIllegalArgumentException {
+        if(threadcount <= 0)
+            throw new BNLibIllegalArgumentException("Number of threads must be positive.");
+        this.scoringMethod = method;
+        this.factory = factory;
+        this.threadcount = threadcount;
+    }
+
+    /**
+     * Execute the given number of learning runs, each starting from the initial
+     * network. When the stop flag of the controller is set, the running runs
+     * are discarded and no other run is started.
+     * @param observer Notified after each run (can be null).
+     * @return Statistics of the networks of the finished runs.
+     */
+    public StructureLearningStatistics learn(final BayesianNetwork bnInitial,
+                                             final LearningController controller,
+                                             final StructuralConstraints constraints,
+                                             final int runCount,
+                                             final StructureLearningObserver observer) {
+        final StructureLearningStatistics statistics = new StructureLearningStatistics(bnInitial.getVariables());
+        final AtomicInteger nextRun = new AtomicInteger(0);
+        final Object observerLock = new Object();
+        final int[] finishedRuns = new int[] {0}; // guarded by the observer lock
+        int threads = Math.max(1, Math.min(this.threadcount, runCount));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for(int t = 0 ; t < threads ; t++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int run;
+                    while(!controller.getStopFlag() && (run = nextRun.getAndIncrement()) < runCount) {
+                        BayesianNetwork bnRunInitial;
+                        synchronized(bnInitial) {
+                            bnRunInitial = bnInitial.copyStructureWithEmptyCPDs();
+                        }
+                        StructureLearningAlgorithm algorithm = factory.createLearningAlgorithm(run);
+                        BayesianNetwork bnLearnt = algorithm.learn(bnRunInitial, controller, constraints);
+                        if(controller.getStopFlag())
+                            break;
+                        statistics.registerLearntNetwork(bnLearnt, scoringMethod.absoluteScore(bnLearnt));
+                        synchronized(observerLock) {
+                            finishedRuns[0]++;
+                            if(observer != null)
+                                observer.notifyRunFinished(finishedRuns[0], statistics);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
+        boolean interrupted = false;
+        try {
+            for(Future<Void> future : futures) {
+                while(true) {
+                    try {
+                        future.get();
+                        break;
+                    }
+                    catch(InterruptedException ex) {
+                        // stop the runs and wait for them to finish
+                        interrupted = true;
+                        controller.setStopFlag();
+                    }
+                }
+            }
+        }
+        catch(ExecutionException ex) {
+            controller.setStopFlag();
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new BNLibInternalException("Structure learning run failed: " + ex.getCause());
+        }
+        finally {
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
+        return statistics;
+    }
+}
@@ -6,53 +6,147 @@ package bna.bnlib.learning;
 
 import bna.bnlib.*;
 import bna.bnlib.misc.Toolkit;
+import java.util.concurrent.ExecutorService;
 
 
 /**
  * Static class for learning parameters of a network based on given dataset.
+ * The families of all nodes are counted in a single pass over the dataset
+ * (possibly by several threads, see ParallelCounting).
+ * To refresh parameters of a network as new records arrive, register its
+ * families in a CachedDataset (registerFamilies), append the records to the
+ * cached dataset and learn the parameters from the cached dataset again.
  */
 public class ParameterLearner {
+    
+    /**
+     * Make the cached dataset maintain counts of all families of the network.
+     * Learning the parameters from the cached dataset then doesn't need to
+     * count the records again even after new records are appended.
+     * @throws BNLibInconsistentVariableSetsException When the network contains
+     *         some variable not present in the dataset.
+     */
+    public static void registerFamilies(BayesianNetwork bn, CachedDataset dataset) throws BNLibInconsistentVariableSetsException {
+        for(Node node : bn.getNodes())
+            dataset.registerCounts(Toolkit.union(new Variable[]{node.getVariable()}, node.getParentVariables()));
+    }
 
     /**
      * Produce a new network with identical structure but with CPTs computed by maximum likelihood estimation.
+     * The families of all nodes are counted by the shared pool of a thread
+     * per processor (see ParallelCounting.getDefaultExecutor).
      * @throws BNLibInconsistentVariableSetsException When the network contains
      *         some variable not present in the dataset.
      */
-    public static BayesianNetwork learnMLE(BayesianNetwork bnOrig, Dataset dataset) throws BNLibInconsistentVariableSetsException {
-        if(!dataset.containsVariables(bnOrig.getVariables()))
-            throw new BNLibInconsistentVariableSetsException("Some variables of the network aren't present in the dataset.");
-        
-        BayesianNetwork bnLearnt = bnOrig.copyStructureWithEmptyCPDs();
-        for(Node node : bnLearnt.getNodes()) {
-            Variable[] nodeFactorScope = Toolkit.union(new Variable[]{node.getVariable()}, node.getParentVariables());
-            Factor nodeFactorUnnormalized = dataset.computeFactor(nodeFactorScope);
-            Factor nodeFactor = nodeFactorUnnormalized.normalizeByFirstNVariables(1);
-            bnLearnt.setCPT(node.getVariable().getName(), nodeFactor);
-        }
-        return bnLearnt;
+    public static BayesianNetwork learnMLE(BayesianNetwork bnOrig, DatasetInterface dataset) throws BNLibInconsistentVariableSetsException {
+        return ParameterLearner.learn(bnOrig, dataset, 0.0, ParallelCounting.getDefaultExecutor(), ParallelCounting.DEFAULT_THREADCOUNT);
+    }
+    
+    /**
+     * Produce a new network with identical structure but with CPTs computed by maximum likelihood estimation.
+     * The families of all nodes are counted by the given number of threads.
+     * @throws BNLibInconsistentVariableSetsException When the network contains
+     *         some variable not present in the dataset.
+     * @throws BNLibIllegalArgumentException When the threadcount is not positive.
+     */
+    public static BayesianNetwork learnMLE(BayesianNetwork bnOrig, DatasetInterface dataset, int threadcount) throws BNLibIllegalArgumentException {
+        return ParameterLearner.learn(bnOrig, dataset, 0.0, threadcount);
+    }
+    
+    /**
+     * Produce a new network with identical structure but with CPTs computed by Bayesian estimation with uniform prior.
+     * The families of all nodes are counted by the shared pool of a thread
+     * per processor (see ParallelCounting.getDefaultExecutor).
+     * @param alpha Equivalent sample size for uniform BDe prior (see thesis for details).
+     * @throws BNLibInconsistentVariableSetsException When the network contains
+     *         some variable not present in the dataset.
+     */
+    public static BayesianNetwork learnBayesianEstimationUniform(BayesianNetwork bnOrig, DatasetInterface dataset, double alpha) throws BNLibInconsistentVariableSetsException {
+        return ParameterLearner.learn(bnOrig, dataset, alpha, ParallelCounting.getDefaultExecutor(), ParallelCounting.DEFAULT_THREADCOUNT);
     }
     
     /**
      * Produce a new network with identical structure but with CPTs computed by Bayesian estimation with uniform prior.
+     * The families of all nodes are counted by the given number of threads.
      * @param alpha Equivalent sample size for uniform BDe prior (see thesis for details).
      * @throws BNLibInconsistentVariableSetsException When the network contains
      *         some variable not present in the dataset.
+     * @throws BNLibIllegalArgumentException When the threadcount is not positive.
+     */
+    public static BayesianNetwork learnBayesianEstimationUniform(BayesianNetwork bnOrig, DatasetInterface dataset, double alpha, int threadcount) throws BNLibIllegalArgumentException {
+        return ParameterLearner.learn(bnOrig, dataset, alpha, threadcount);
+    }
+    
+    /**
+     * Produce a new network with identical structure but with CPTs computed by Bayesian estimation with uniform prior.
+     * The families of all nodes are counted by threadcount threads of the given
+     * pool (see ParallelCounting.createExecutor), so that a repeated learning
+     * (eg. the M-steps of EM) doesn't start new threads each time.
+     * @throws BNLibInconsistentVariableSetsException When the network contains
+     *         some variable not present in the dataset.
      */
-    public static BayesianNetwork learnBayesianEstimationUniform(BayesianNetwork bnOrig, Dataset dataset, double alpha) throws BNLibIllegalArgumentException {
-        if(!dataset.containsVariables(bnOrig.getVariables()))
+    static BayesianNetwork learnBayesianEstimationUniform(BayesianNetwork bnOrig, DatasetInterface dataset, double alpha, ExecutorService executor, int threadcount) throws BNLibInconsistentVariableSetsException {
+        return ParameterLearner.learn(bnOrig, dataset, alpha, executor, threadcount);
+    }
+    
+    /** Learn with a pool of threads created for this learning only. */
+    private static BayesianNetwork learn(BayesianNetwork bnOrig, DatasetInterface dataset, double alpha, int threadcount) throws BNLibIllegalArgumentException {
+        if(threadcount <= 0)
+            throw new BNLibIllegalArgumentException("Number of threads must be positive.");
+        if(threadcount == 1)
+            return ParameterLearner.learn(bnOrig, dataset, alpha, null, 1);
+        ExecutorService executor = ParallelCounting.createExecutor(threadcount);
+        try {
+            return ParameterLearner.learn(bnOrig, dataset, alpha, executor, threadcount);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Count the families of all nodes at once (in a single pass over the dataset,
+     * see ParallelCounting) and turn the counts into CPTs, adding the pseudo-count
+     * alpha / card(family) to each entry (0 for MLE).
+     */
+    private static BayesianNetwork learn(BayesianNetwork bnOrig, DatasetInterface dataset, double alpha, ExecutorService executor, int threadcount) throws BNLibInconsistentVariableSetsException {
+        if(!Toolkit.isSubset(dataset.getVariables(), bnOrig.getVariables()))
             throw new BNLibInconsistentVariableSetsException("Some variables of the network aren't present in the dataset.");
         
         BayesianNetwork bnLearnt = bnOrig.copyStructureWithEmptyCPDs();
-        for(Node node : bnLearnt.getNodes()) {
-            Variable[] nodeFactorScope = Toolkit.union(new Variable[]{node.getVariable()}, node.getParentVariables());
-            Factor nodeFactorRealCounts = dataset.computeFactor(nodeFactorScope);
-            double alphaUniform = alpha / Toolkit.cardinality(nodeFactorScope);
-            Counter pseudoCounts = new Counter(nodeFactorScope, alphaUniform);
-            Factor nodeFactorPseudoCounts = pseudoCounts.toFactor();
-            Factor nodeFactor = Factor.sumFactors(new Factor[] {nodeFactorRealCounts, nodeFactorPseudoCounts});
-            nodeFactor = nodeFactor.normalizeByFirstNVariables(1);
-            bnLearnt.setCPT(node.getVariable().getName(), nodeFactor);
+        Node[] nodes = bnLearnt.getNodes();
+        Variable[][] familyScopes = new Variable[nodes.length][];
+        for(int i = 0 ; i < nodes.length ; i++)
+            familyScopes[i] = nodes[i].getScope(); // the node's variable first
+        Factor[] familyCounts = ParallelCounting.computeFactors(dataset, familyScopes, executor, threadcount);
+        for(int i = 0 ; i < nodes.length ; i++) {
+            double alphaUniform = alpha / familyCounts[i].getCardinality();
+            Factor nodeFactor = ParameterLearner.normalizeCounts(familyCounts[i], alphaUniform);
+            bnLearnt.setCPT(nodes[i].getVariable().getName(), nodeFactor);
         }
         return bnLearnt;
     }
+    
+    /**
+     * Normalize the counts (plus the pseudo-count) of each assignment of the parents
+     * (the counts of an assignment of the parents form a contiguous block).
+     * Blocks summing to zero stay zero as in Factor.normalizeByFirstNVariables.
+     */
+    private static Factor normalizeCounts(Factor counts, double pseudoCount) {
+        Variable[] scope = counts.getScope();
+        int r = scope[0].getCardinality();
+        double[] values = new double[counts.getCardinality()];
+        for(int base = 0 ; base < values.length ; base += r) {
+            double sum = 0;
+            for(int k = 0 ; k < r ; k++) {
+                values[base + k] = counts.getProbability(base + k) + pseudoCount;
+                sum += values[base + k];
+            }
+            if(sum == 0)
+                continue;
+            for(int k = 0 ; k < r ; k++)
+                values[base + k] /= sum;
+        }
+        return new Factor(scope, values);
+    }
 }
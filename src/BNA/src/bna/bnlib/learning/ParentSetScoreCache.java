@@ -0,0 +1,366 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/14
+
+package bna.bnlib.learning;
+
+import bna.bnlib.BNLibIOException;
+import bna.bnlib.BNLibInternalException;
+import bna.bnlib.BNLibNonexistentVariableException;
+import bna.bnlib.Variable;
+import bna.bnlib.misc.IndexedDigraph;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+
+/**
+ * Precomputed local scores of candidate parent sets of each variable.
+ * All parent sets up to the maximal parent count of the structural constraints
+ * (and consisting of allowed parents only) are considered. A parent set is
+ * kept only if its local score is higher than the local score of each of its
+ * subsets, otherwise it can never be a part of an optimal network (the
+ * subset would be better and introduces no cycle). Supersets of a parent
+ * set aren't evaluated at all once the bound of the scoring method (see
+ * DecomposableScoringMethod.upperBoundOfSupersetsLocalScore) says they
+ * cannot be better.
+ * <p>
+ * For each variable the parent sets are sorted by their local score (the best
+ * one first) and stored in flat arrays of variable indices (indices of the
+ * variables in getVariables). The cache can be saved to a file and loaded
+ * again, so that several searches can share the same scores.
+ */
+public class ParentSetScoreCache {
+    static final int MAGIC = 0x424e5053; // "BNPS"
+    static final int VERSION = 1;
+
+    private Variable[] variables;
+    private HashMap<Variable, Integer> variableIndices;
+    private double[][] scores;        // [variable][parent set]
+    private int[][] parentSetOffsets; // [variable][parent set], the last one is the end
+    private int[][] parentIndices;    // [variable][parents of all the parent sets]
+    private int evaluatedCount = 0;
+
+
+    private ParentSetScoreCache(Variable[] variables) {
+        this.variables = Arrays.copyOf(variables, variables.length);
+        this.variableIndices = VariableSetKey.indexVariables(this.variables);
+        this.scores = new double[variables.length][];
+        this.parentSetOffsets = new int[variables.length][];
+        this.parentIndices = new int[variables.length][];
+    }
+
+    /**
+     * Compute the local scores of parent sets of the given variables.
+     * @param variables Variables of the network (contained in the dataset of the scoring method).
+     */
+    public static ParentSetScoreCache compute(DecomposableScoringMethod method,
+                                              Variable[] variables,
+                                              StructuralConstraints constraints) {
+        ParentSetScoreCache cache = new ParentSetScoreCache(variables);
+        for(int x = 0 ; x < variables.length ; x++)
+            cache.computeParentSets(method, constraints, x);
+        return cache;
+    }
+
+    /** Scored parent set (before it is stored into the flat arrays). */
+    private static class ScoredParentSet {
+        int[] parents;            // indices into candidates
+        double score;
+        double bestScoreOfSubsets; // max. score of the set itself and all its subsets
+        boolean extendable;
+
+        ScoredParentSet(int[] parents) {
+            this.parents = parents;
+        }
+    }
+
+    private void computeParentSets(DecomposableScoringMethod method, StructuralConstraints constraints, int x) {
+        Variable xVar = this.variables[x];
+        ArrayList<Integer> candidateList = new ArrayList<Integer>();
+        for(int i = 0 ; i < this.variables.length ; i++)
+            if(i != x && constraints.isConnectionAllowed(this.variables[i], xVar))
+                candidateList.add(i);
+        int[] candidates = new int[candidateList.size()];
+        for(int i = 0 ; i < candidates.length ; i++)
+            candidates[i] = candidateList.get(i);
+        int maxSize = Math.min(constraints.getMaxParentCount(), candidates.length);
+
+        ArrayList<ScoredParentSet> kept = new ArrayList<ScoredParentSet>();
+        // layer of sets of the current size (by their keys wrt candidates)
+        HashMap<VariableSetKey, ScoredParentSet> layer = new HashMap<VariableSetKey, ScoredParentSet>();
+        HashMap<Variable, Integer> candidateIndices = new HashMap<Variable, Integer>();
+        Variable[] candidateVars = new Variable[candidates.length];
+        for(int i = 0 ; i < candidates.length ; i++) {
+            candidateVars[i] = this.variables[candidates[i]];
+            candidateIndices.put(candidateVars[i], i);
+        }
+        ScoredParentSet emptySet = new ScoredParentSet(new int[0]);
+        this.evaluate(method, xVar, candidateVars, emptySet, Double.NEGATIVE_INFINITY, maxSize);
+        kept.add(emptySet);
+        layer.put(VariableSetKey.create(new Variable[0], candidateIndices), emptySet);
+        for(int size = 1 ; size <= maxSize && !layer.isEmpty() ; size++) {
+            HashMap<VariableSetKey, ScoredParentSet> nextLayer = new HashMap<VariableSetKey, ScoredParentSet>();
+            for(ScoredParentSet subset : layer.values()) {
+                if(!subset.extendable)
+                    continue;
+                // generate each superset only from its subset without the last parent
+                int last = subset.parents.length == 0 ? -1 : subset.parents[subset.parents.length - 1];
+                for(int c = last + 1 ; c < candidates.length ; c++) {
+                    int[] parents = Arrays.copyOf(subset.parents, size);
+                    parents[size - 1] = c;
+                    // all the subsets of one less parent have to be present and extendable
+                    double bestScoreOfSubsets = Double.NEGATIVE_INFINITY;
+                    boolean prunedBySubset = false;
+                    for(int omit = 0 ; omit < size && !prunedBySubset ; omit++) {
+                        ScoredParentSet other = layer.get(VariableSetKey.create(this.selectVariables(candidateVars, parents, omit), candidateIndices));
+                        if(other == null || !other.extendable)
+                            prunedBySubset = true;
+                        else
+                            bestScoreOfSubsets = Math.max(bestScoreOfSubsets, other.bestScoreOfSubsets);
+                    }
+                    if(prunedBySubset)
+                        continue;
+                    ScoredParentSet superset = new ScoredParentSet(parents);
+                    this.evaluate(method, xVar, candidateVars, superset, bestScoreOfSubsets, maxSize);
+                    if(superset.score > bestScoreOfSubsets)
+                        kept.add(superset);
+                    nextLayer.put(VariableSetKey.create(this.selectVariables(candidateVars, parents, -1), candidateIndices), superset);
+                }
+            }
+            layer = nextLayer;
+        }
+
+        // store the kept sets, the best first
+        Collections.sort(kept, new Comparator<ScoredParentSet>() {
+            @Override
+            public int compare(ScoredParentSet a, ScoredParentSet b) {
+                return Double.compare(b.score, a.score);
+            }
+        });
+        int parentCount = 0;
+        for(ScoredParentSet set : kept)
+            parentCount += set.parents.length;
+        this.scores[x] = new double[kept.size()];
+        this.parentSetOffsets[x] = new int[kept.size() + 1];
+        this.parentIndices[x] = new int[parentCount];
+        int offset = 0;
+        for(int k = 0 ; k < kept.size() ; k++) {
+            ScoredParentSet set = kept.get(k);
+            this.scores[x][k] = set.score;
+            this.parentSetOffsets[x][k] = offset;
+            for(int c : set.parents)
+                this.parentIndices[x][offset++] = candidates[c];
+        }
+        this.parentSetOffsets[x][kept.size()] = offset;
+    }
+
+    private void evaluate(DecomposableScoringMethod method, Variable x, Variable[] candidateVars,
+                          ScoredParentSet set, double bestScoreOfSubsets, int maxSize) {
+        Variable[] parents = this.selectVariables(candidateVars, set.parents, -1);
+        set.score = method.computeLocalScore(x, parents);
+        set.bestScoreOfSubsets = Math.max(set.score, bestScoreOfSubsets);
+        set.extendable = set.parents.length < maxSize
+                      && method.upperBoundOfSupersetsLocalScore(x, parents) > set.bestScoreOfSubsets;
+        this.evaluatedCount++;
+    }
+
+    /** Variables of the given indices except for the omit-th one (if non-negative). */
+    private Variable[] selectVariables(Variable[] vars, int[] indices, int omit) {
+        Variable[] selected = new Variable[omit < 0 ? indices.length : indices.length - 1];
+        int count = 0;
+        for(int i = 0 ; i < indices.length ; i++)
+            if(i != omit)
+                selected[count++] = vars[indices[i]];
+        return selected;
+    }
+
+    /** Get variables of the cache (the variable indices refer to this array). */
+    public Variable[] getVariables() {
+        return Arrays.copyOf(this.variables, this.variables.length);
+    }
+
+    /**
+     * Get index of the variable in getVariables.
+     * @throws BNLibNonexistentVariableException When the variable isn't in the cache.
+     */
+    public int getVariableIndex(Variable variable) throws BNLibNonexistentVariableException {
+        Integer index = this.variableIndices.get(variable);
+        if(index == null)
+            throw new BNLibNonexistentVariableException("Variable \"" + variable.getName() + "\" is not in the cache.");
+        return index;
+    }
+
+    /** Number of kept parent sets of the x-th variable (at least 1, the empty set). */
+    public int getParentSetCount(int x) {
+        return this.scores[x].length;
+    }
+
+    /** Local score of the k-th parent set of the x-th variable (the sets are sorted by the score, best first). */
+    public double getScore(int x, int k) {
+        return this.scores[x][k];
+    }
+
+    /** Indices of the variables of the k-th parent set of the x-th variable. */
+    public int[] getParentIndices(int x, int k) {
+        return Arrays.copyOfRange(this.parentIndices[x], this.parentSetOffsets[x][k], this.parentSetOffsets[x][k + 1]);
+    }
+
+    /** Variables of the k-th parent set of the x-th variable. */
+    public Variable[] getParents(int x, int k) {
+        int from = this.parentSetOffsets[x][k],
+            to = this.parentSetOffsets[x][k + 1];
+        Variable[] parents = new Variable[to - from];
+        for(int i = from ; i < to ; i++)
+            parents[i - from] = this.variables[this.parentIndices[x][i]];
+        return parents;
+    }
+
+    /**
+     * Find the best parent set of the x-th variable whose parents are all
+     * contained in the given set (a bitset over variable indices, see
+     * IndexedDigraph). The empty parent set is always kept, so some set is
+     * always found.
+     * @return Index of the parent set.
+     */
+    public int getBestParentSet(int x, long[] allowedParents) {
+        int[] offsets = this.parentSetOffsets[x],
+              parents = this.parentIndices[x];
+        for(int k = 0 ; k < this.scores[x].length ; k++) {
+            boolean allowed = true;
+            for(int i = offsets[k] ; i < offsets[k + 1] && allowed ; i++)
+                allowed = IndexedDigraph.testBit(allowedParents, parents[i]);
+            if(allowed)
+                return k;
+        }
+        throw new BNLibInternalException("The empty parent set is missing.");
+    }
+
+    /** Number of local scores computed while creating the cache (0 for a loaded cache). */
+    public int getEvaluatedCount() {
+        return this.evaluatedCount;
+    }
+
+    /** Total number of kept parent sets. */
+    public int getParentSetCount() {
+        int count = 0;
+        for(double[] variableScores : this.scores)
+            count += variableScores.length;
+        return count;
+    }
+
+
+    // persistence
+
+    /**
+     * Save the cache to a binary file.
+     * @throws BNLibIOException When a Java IOException occurs.
+     */
+    public void save(String filename) throws BNLibIOException {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(this.variables.length);
+            for(Variable var : this.variables)
+                out.writeUTF(var.getName());
+            for(int x = 0 ; x < this.variables.length ; x++) {
+                out.writeInt(this.scores[x].length);
+                for(int k = 0 ; k < this.scores[x].length ; k++) {
+                    out.writeDouble(this.scores[x][k]);
+                    int from = this.parentSetOffsets[x][k],
+                        to = this.parentSetOffsets[x][k + 1];
+                    out.writeInt(to - from);
+                    for(int i = from ; i < to ; i++)
+                        out.writeInt(this.parentIndices[x][i]);
+                }
+            }
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("The following IO exception occured: " + ex.getMessage());
+        }
+        finally {
+            try {
+                if(out != null)
+                    out.close();
+            }
+            catch(IOException ex) {}
+        }
+    }
+
+    /**
+     * Load the cache saved by the save method.
+     * @param variables The variables of the cache (in the same order as
+     *                  when the cache was saved).
+     * @throws BNLibIOException When the file is corrupted, doesn't correspond
+     *         to the given variables or a Java IOException occurs.
+     */
+    public static ParentSetScoreCache load(String filename, Variable[] variables) throws BNLibIOException {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16));
+            if(in.readInt() != MAGIC)
+                throw new BNLibIOException("The file \"" + filename + "\" is not a parent set score cache.");
+            if(in.readInt() != VERSION)
+                throw new BNLibIOException("Unsupported version of the parent set score cache file.");
+            if(in.readInt() != variables.length)
+                throw new BNLibIOException("The parent set score cache is for a different set of variables.");
+            for(Variable var : variables)
+                if(!in.readUTF().equals(var.getName()))
+                    throw new BNLibIOException("The parent set score cache is for a different set of variables.");
+            ParentSetScoreCache cache = new ParentSetScoreCache(variables);
+            for(int x = 0 ; x < variables.length ; x++) {
+                int count = in.readInt();
+                if(count <= 0)
+                    throw new BNLibIOException("The parent set score cache file is corrupted.");
+                cache.scores[x] = new double[count];
+                cache.parentSetOffsets[x] = new int[count + 1];
+                ArrayList<Integer> parents = new ArrayList<Integer>();
+                for(int k = 0 ; k < count ; k++) {
+                    cache.scores[x][k] = in.readDouble();
+                    cache.parentSetOffsets[x][k] = parents.size();
+                    int size = in.readInt();
+                    for(int i = 0 ; i < size ; i++) {
+                        int parent = in.readInt();
+                        if(parent < 0 || parent >= variables.length || parent == x)
+                            throw new BNLibIOException("The parent set score cache file is corrupted.");
+                        parents.add(parent);
+                    }
+                }
+                cache.parentSetOffsets[x][count] = parents.size();
+                cache.parentIndices[x] = new int[parents.size()];
+                for(int i = 0 ; i < parents.size() ; i++)
+                    cache.parentIndices[x][i] = parents.get(i);
+            }
+            return cache;
+        }
+        catch(FileNotFoundException ex) {
+            throw new BNLibIOException("File \"" + filename + "\" was not found.");
+        }
+        catch(EOFException ex) {
+            throw new BNLibIOException("Unexpected end of the parent set score cache file.");
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("The following IO exception occured: " + ex.getMessage());
+        }
+        finally {
+            try {
+                if(in != null)
+                    in.close();
+            }
+            catch(IOException ex) {}
+        }
+    }
+}
@@ -0,0 +1,48 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/20
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+
+
+/**
+ * Class implementing the quotient normalized maximum likelihood (qNML) score.
+ * The family score is log P_NML(X, Pa) - log P_NML(Pa), where both the family
+ * and the parents are treated as a single multinomial variable, ie.
+ * the maximized log-likelihood of the child given its parents minus
+ * log C(N, r * q) - log C(N, q) (r being the cardinality of the child and
+ * q the number of assignments of the parents). Unlike fNML the score is the same
+ * for I-equivalent structures. The regret replaces the explicit complexity
+ * penalty, so there's no penalty term.
+ * Super-class takes care of caching of delta family scores.
+ */
+public class QNMLScoringMethod extends DecomposableScoringMethod {
+    private MultinomialRegret.FixedSampleSize regrets;
+    
+    
+    public QNMLScoringMethod(DatasetInterface dataset) {
+        super(dataset);
+        this.regrets = new MultinomialRegret.FixedSampleSize(dataset.getSize());
+    }
+    
+    @Override
+    protected double computeFamilyScore(Variable x, Variable[] parents) {
+        FamilyCounts counts = FamilyCounts.count(this.dataset, x, parents);
+        int q = counts.getParentConfigurations();
+        return counts.getConditionalLogLikelihood()
+               - this.regrets.logRegret(x.getCardinality() * q)
+               + this.regrets.logRegret(q);
+    }
+    
+    @Override
+    protected double computeFamilyComplexityPenalty(Variable x, Variable[] parents) {
+        return 0;
+    }
+    
+    @Override
+    protected double computeComplexityPenalty(BayesianNetwork bn) {
+        return 0;
+    }
+}
@@ -0,0 +1,122 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.BNLibInconsistentVariableSetsException;
+import bna.bnlib.Factor;
+import bna.bnlib.Variable;
+import bna.bnlib.misc.Toolkit;
+
+
+/**
+ * Counts of assignments of several scopes collected record by record, as done
+ * by the datasets holding their records in memory. Each record is counted
+ * with its weight (its multiplicity), a record with a value of a scope missing
+ * isn't counted for the scope. The counts are stored as values of a factor
+ * (the leftmost variable changes fastest).
+ */
+final class RecordCounts {
+    /** Records of a dataset accessible by index, each with its weight. */
+    interface WeightedRecords {
+        int size();
+        int[] get(int index);
+        double getWeight(int index);
+    }
+
+
+    private final Variable[][] scopes;
+    private final int[][] recordPositions; // position of each scope variable in a record
+    private final int[][] strides;
+    private final double[][] counts;
+
+
+    /**
+     * Prepare zero counts of the scopes over records of the given variables.
+     * @throws BNLibInconsistentVariableSetsException When some scope contains
+     *         a variable not present in the records.
+     */
+    RecordCounts(Variable[] variables, Variable[][] scopes) throws BNLibInconsistentVariableSetsException {
+        this.scopes = scopes;
+        this.recordPositions = new int[scopes.length][];
+        this.strides = new int[scopes.length][];
+        this.counts = new double[scopes.length][];
+        for(int s = 0 ; s < scopes.length ; s++) {
+            this.recordPositions[s] = new int[scopes[s].length];
+            this.strides[s] = new int[scopes[s].length];
+            int stride = 1;
+            for(int i = 0 ; i < scopes[s].length ; i++) {
+                int position = Toolkit.indexOf(variables, scopes[s][i]);
+                if(position < 0)
+                    throw new BNLibInconsistentVariableSetsException("Dataset doesn't contain all requested variables.");
+                this.recordPositions[s][i] = position;
+                this.strides[s][i] = stride;
+                stride *= scopes[s][i].getCardinality();
+            }
+            this.counts[s] = new double[stride];
+        }
+    }
+
+    /**
+     * Count the scopes of the records in a single pass.
+     * @throws BNLibInconsistentVariableSetsException When some scope contains
+     *         a variable not present in the records.
+     */
+    static Factor[] count(Variable[] variables, Variable[][] scopes, WeightedRecords records) throws BNLibInconsistentVariableSetsException {
+        RecordCounts counts = new RecordCounts(variables, scopes);
+        counts.addRecords(records, 0, records.size());
+        return counts.toFactors();
+    }
+
+    /** Count the record with the given weight. */
+    void add(int[] record, double weight) {
+        for(int s = 0 ; s < this.counts.length ; s++) {
+            int[] sPositions = this.recordPositions[s],
+                  sStrides = this.strides[s];
+            int index = 0;
+            for(int i = 0 ; i < sPositions.length && index >= 0 ; i++) {
+                int value = record[sPositions[i]];
+                index = (value == Dataset.MISSING_VALUE) ? -1 : index + value * sStrides[i];
+            }
+            if(index >= 0)
+                this.counts[s][index] += weight;
+        }
+    }
+
+    /** Count the records from index from (inclusive) to index to (exclusive). */
+    void addRecords(WeightedRecords records, int from, int to) {
+        for(int r = from ; r < to ; r++) {
+            double weight = records.getWeight(r);
+            if(weight != 0)
+                this.add(records.get(r), weight);
+        }
+    }
+
+    /** Add counts of another instance (of the same scopes) multiplied by the weight. */
+    void addAll(RecordCounts other, double weight) {
+        for(int s = 0 ; s < this.counts.length ; s++)
+            for(int i = 0 ; i < this.counts[s].length ; i++)
+                this.counts[s][i] += weight * other.counts[s][i];
+    }
+
+    /** Multiply all the counts by the factor (eg. to decay them). */
+    void scale(double factor) {
+        for(int s = 0 ; s < this.counts.length ; s++)
+            for(int i = 0 ; i < this.counts[s].length ; i++)
+                this.counts[s][i] *= factor;
+    }
+
+    /** The counts of the s-th scope as a factor (the values are copied). */
+    Factor toFactor(int s) {
+        return new Factor(this.scopes[s], this.counts[s]);
+    }
+
+    /** The counts of each scope as a factor (in the order of the scopes). */
+    Factor[] toFactors() {
+        Factor[] factors = new Factor[this.scopes.length];
+        for(int s = 0 ; s < this.scopes.length ; s++)
+            factors[s] = this.toFactor(s);
+        return factors;
+    }
+}
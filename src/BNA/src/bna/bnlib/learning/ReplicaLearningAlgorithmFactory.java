@@ -0,0 +1,16 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/21
+
+package bna.bnlib.learning;
+
+
+/**
+ * Creates instances of a structure learning algorithm scoring the networks
+ * over a given dataset (eg. over a bootstrap replica of the data). Each
+ * replica needs its own scoring method and thus its own learning algorithm.
+ */
+public interface ReplicaLearningAlgorithmFactory {
+    /** Create a new instance of the learning algorithm learning from the given dataset. */
+    public StructureLearningAlgorithm createLearningAlgorithm(DatasetInterface replica);
+}
@@ -0,0 +1,149 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/21
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
+import java.util.Random;
+
+
+/**
+ * Read-only view of a dataset whose records are taken with the given
+ * multiplicities (weights), eg. a bootstrap replica of the dataset.
+ * The records are not copied, the view only holds the weight of each record
+ * of the underlying dataset, so that many replicas can be created (and
+ * learnt from) without multiplying the memory needed for the records.
+ * <p>
+ * The underlying dataset mustn't change while the view is in use.
+ */
+public class ResampledDataset implements DatasetInterface {
+    private Dataset dataset;
+    private int[] weights;
+    private int size;
+
+
+    /**
+     * Create a view with the given multiplicity of each record of the dataset.
+     * @throws BNLibIllegalArgumentException When there isn't a non-negative
+     *         weight for each record of the dataset.
+     */
+    public ResampledDataset(Dataset dataset, int[] weights) throws BNLibIllegalArgumentException {
+        if(weights.length != dataset.getSize())
+            throw new BNLibIllegalArgumentException("There has to be a weight for each record of the dataset.");
+        long size = 0;
+        for(int weight : weights) {
+            if(weight < 0)
+                throw new BNLibIllegalArgumentException("Weights of records mustn't be negative.");
+            size += weight;
+        }
+        if(size > Integer.MAX_VALUE)
+            throw new BNLibIllegalArgumentException("Too many records in the resampled dataset.");
+        this.dataset = dataset;
+        this.weights = weights.clone();
+        this.size = (int)size;
+    }
+
+    /**
+     * Create a bootstrap replica of the dataset, ie. draw as many records
+     * as the dataset has uniformly with replacement.
+     */
+    public static ResampledDataset bootstrap(Dataset dataset, Random rand) {
+        int N = dataset.getSize();
+        int[] weights = new int[N];
+        for(int i = 0 ; i < N ; i++)
+            weights[rand.nextInt(N)]++;
+        return new ResampledDataset(dataset, weights);
+    }
+
+    @Override
+    public Variable[] getVariables() {
+        return this.dataset.getVariables();
+    }
+
+    /** Get the number of records drawn (ie. the sum of weights). */
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /** Does the underlying dataset have a record with a missing value (drawn or not)? */
+    @Override
+    public boolean hasMissingValues() {
+        return this.dataset.hasMissingValues();
+    }
+
+    /** Get how many times the index-th record of the underlying dataset is taken. */
+    public int getWeight(int index) {
+        return this.weights[index];
+    }
+
+    @Override
+    public void addRecord(int[] record) {
+        throw new UnsupportedOperationException("Record addition is not supported for a resampled dataset.");
+    }
+
+    /**
+     * Count occurences of all assignments to given variables and return as a factor.
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain all variables from the scope parameter.
+     */
+    @Override
+    public Factor computeFactor(Variable[] scope) throws BNLibInconsistentVariableSetsException {
+        return this.computeFactors(new Variable[][] {scope})[0];
+    }
+
+    /**
+     * Count (weighted) occurences of all assignments of each of the scopes
+     * in a single pass over the records. Records that haven't been drawn
+     * are skipped, as well as records with a value of the scope missing.
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain all variables from some scope.
+     */
+    @Override
+    public Factor[] computeFactors(Variable[][] scopes) throws BNLibInconsistentVariableSetsException {
+        return RecordCounts.count(this.dataset.getVariables(), scopes, this.weightedRecords());
+    }
+
+    /** The records of the underlying dataset weighted by their multiplicities (see RecordCounts). */
+    RecordCounts.WeightedRecords weightedRecords() {
+        final ArrayList<int[]> records = this.dataset.records;
+        return new RecordCounts.WeightedRecords() {
+            @Override
+            public int size() {
+                return weights.length;
+            }
+
+            @Override
+            public int[] get(int index) {
+                return records.get(index);
+            }
+
+            @Override
+            public double getWeight(int index) {
+                return weights[index];
+            }
+        };
+    }
+
+    /**
+     * Compute mutual information between two sets of variables (from the weighted counts).
+     * @throws BNLibIllegalArgumentException When the two sets aren't disjoint
+     *         or containt a variable not present in the dataset.
+     */
+    @Override
+    public double mutualInformation(Variable[] set1, Variable[] set2) throws BNLibIllegalArgumentException {
+        if(!Toolkit.areDisjoint(set1, set2))
+            throw new BNLibIllegalArgumentException("Sets to compute mutual information for are not disjoint.");
+        Variable[] union = Toolkit.union(set1, set2);
+        if(!this.dataset.containsVariables(union))
+            throw new BNLibIllegalArgumentException("Sets contain variables not present in the dataset.");
+
+        if(set1.length == 0 || set2.length == 0)
+            return 0.0;
+
+        return Dataset.mutualInformation(this.computeFactor(union), set1, set2);
+    }
+}
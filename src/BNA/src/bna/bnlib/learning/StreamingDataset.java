@@ -0,0 +1,373 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/06
+
+package bna.bnlib.learning;
+
+import bna.bnlib.BNLibIOException;
+import bna.bnlib.BNLibIllegalArgumentException;
+import bna.bnlib.BNLibInconsistentVariableSetsException;
+import bna.bnlib.Factor;
+import bna.bnlib.Variable;
+import bna.bnlib.io.DatasetCSVRecordReader;
+import bna.bnlib.io.DatasetRecordReader;
+import bna.bnlib.misc.Toolkit;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+
+/**
+ * Dataset whose records don't have to fit into the memory.
+ * The records are stored in a compact binary form (each value takes 1, 2 or
+ * 4 bytes according to the largest variable cardinality, a missing value has
+ * all the bits set). As long as all the
+ * records fit into the given memory budget, they are kept in memory. Once the
+ * budget is exceeded, the records are moved to a temporary file and each query
+ * streams through the file.
+ * <p>
+ * Queries (computeFactor and mutualInformation) can be issued concurrently,
+ * each of them reads the file independently. The temporary file is deleted
+ * by the close method (or at the latest when the JVM exits).
+ */
+public class StreamingDataset implements DatasetInterface {
+    /** Size of a block of the temporary file read at once during a query. */
+    private static final int READ_BLOCK_BYTES = 1 << 16;
+
+    private Variable[] variables;
+    private int bytesPerValue, recordBytes;
+    private long memoryBudget;
+    private int size = 0;
+    private boolean missingValues = false;
+    // in-memory storage (used until the memory budget is exceeded)
+    private byte[] memory = new byte[0];
+    private int memoryUsed = 0;
+    // file storage
+    private File spillFile = null;
+    private OutputStream spillStream = null;
+
+
+    /**
+     * Create an empty dataset that can contain instantiations of given variables.
+     * @param memoryBudget Maximal number of bytes of records kept in memory
+     *                     (0 means that the records go right to a temporary file).
+     * @throws BNLibIllegalArgumentException When the memory budget is negative.
+     */
+    public StreamingDataset(Variable[] variables, long memoryBudget) throws BNLibIllegalArgumentException {
+        if(memoryBudget < 0)
+            throw new BNLibIllegalArgumentException("Memory budget cannot be negative.");
+        this.variables = Arrays.copyOf(variables, variables.length);
+        this.memoryBudget = Math.min(memoryBudget, Integer.MAX_VALUE - 8);
+        int maxCardinality = 1;
+        for(Variable var : variables)
+            maxCardinality = Math.max(maxCardinality, var.getCardinality());
+        // the largest code is reserved for the missing value
+        if(maxCardinality < 1 << 8)
+            this.bytesPerValue = 1;
+        else if(maxCardinality < 1 << 16)
+            this.bytesPerValue = 2;
+        else
+            this.bytesPerValue = 4;
+        this.recordBytes = this.bytesPerValue * this.variables.length;
+    }
+
+    /**
+     * Create new dataset by reading records from the given reader.
+     * The reader is closed afterwards. When the reading fails, the temporary
+     * file of the records read so far is deleted.
+     * @throws BNLibIOException When an IO error occurs or the records are invalid.
+     */
+    public static StreamingDataset load(DatasetRecordReader reader, long memoryBudget) throws BNLibIOException {
+        StreamingDataset dataset = null;
+        boolean loaded = false;
+        try {
+            dataset = new StreamingDataset(reader.getVariables(), memoryBudget);
+            int[] record;
+            while((record = reader.nextRecord()) != null)
+                dataset.addRecord(record);
+            loaded = true;
+            return dataset;
+        }
+        finally {
+            if(!loaded && dataset != null)
+                dataset.discard();
+            reader.close();
+        }
+    }
+
+    /**
+     * Create new dataset by reading data from given CSV file line by line.
+     * @throws BNLibIOException When an IO error occurs or the datafile content
+     *                          is invalid.
+     */
+    public static StreamingDataset loadCSVFile(String csvFileName, String separator, long memoryBudget) throws BNLibIOException {
+        return StreamingDataset.load(new DatasetCSVRecordReader(csvFileName, separator), memoryBudget);
+    }
+
+    @Override
+    public Variable[] getVariables() {
+        return Arrays.copyOf(this.variables, this.variables.length);
+    }
+
+    /** Check whether the dataset contains each of the specified variables. */
+    public boolean containsVariables(Variable[] vars) {
+        return Toolkit.isSubset(this.variables, vars);
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public synchronized boolean hasMissingValues() {
+        return this.missingValues;
+    }
+
+    /** Are the records stored in a temporary file (rather than in memory)? */
+    public synchronized boolean isSpilled() {
+        return this.spillFile != null;
+    }
+
+    /**
+     * Add new record to the dataset.
+     * @throws BNLibIllegalArgumentException When the given record cannot be an
+     *         assignment of the variables in this dataset (some of its values
+     *         can be missing).
+     * @throws BNLibIOException When the record cannot be written to the
+     *         temporary file.
+     */
+    @Override
+    public synchronized void addRecord(int[] record) throws BNLibIllegalArgumentException, BNLibIOException {
+        if(record == null || record.length != this.variables.length)
+            throw new BNLibIllegalArgumentException("Record of invalid length.");
+        boolean complete = true;
+        for(int i = 0 ; i < record.length ; i++) {
+            if(record[i] == Dataset.MISSING_VALUE)
+                complete = false;
+            else if(record[i] < 0 || record[i] >= this.variables[i].getCardinality())
+                throw new BNLibIllegalArgumentException("Invalid value of variable \"" + this.variables[i].getName() + "\" in the record.");
+        }
+        byte[] encoded = new byte[this.recordBytes];
+        for(int i = 0 ; i < record.length ; i++) {
+            int value = record[i];
+            for(int b = this.bytesPerValue - 1 ; b >= 0 ; b--) {
+                encoded[i * this.bytesPerValue + b] = (byte)value;
+                value >>>= 8;
+            }
+        }
+        try {
+            if(this.spillFile == null && (long)this.memoryUsed + this.recordBytes > this.memoryBudget)
+                this.spill();
+            if(this.spillFile == null) {
+                if(this.memoryUsed + this.recordBytes > this.memory.length) {
+                    long newLength = Math.max(2L * this.memory.length, this.memoryUsed + this.recordBytes);
+                    this.memory = Arrays.copyOf(this.memory, (int)Math.min(newLength, this.memoryBudget));
+                }
+                System.arraycopy(encoded, 0, this.memory, this.memoryUsed, this.recordBytes);
+                this.memoryUsed += this.recordBytes;
+            }
+            else
+                this.spillStream.write(encoded);
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("The following IOException occured: " + ex.getMessage());
+        }
+        this.size++;
+        if(!complete)
+            this.missingValues = true;
+    }
+
+    /** Move records from memory to a new temporary file (deleted again if that fails). */
+    private void spill() throws IOException {
+        File file = File.createTempFile("bnlib-dataset", ".bin");
+        file.deleteOnExit();
+        OutputStream stream = null;
+        try {
+            stream = new BufferedOutputStream(new FileOutputStream(file), StreamingDataset.READ_BLOCK_BYTES);
+            stream.write(this.memory, 0, this.memoryUsed);
+        }
+        catch(IOException ex) {
+            try {
+                if(stream != null)
+                    stream.close();
+            }
+            catch(IOException closeEx) {}
+            file.delete();
+            throw ex;
+        }
+        this.spillFile = file;
+        this.spillStream = stream;
+        this.memory = new byte[0];
+        this.memoryUsed = 0;
+    }
+
+    /** Delete the temporary file (if any). The dataset cannot be used afterwards. */
+    public synchronized void close() throws BNLibIOException {
+        this.memory = new byte[0];
+        this.memoryUsed = 0;
+        if(this.spillFile == null)
+            return;
+        try {
+            this.spillStream.close();
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("An IOException occured while closing the temporary file: " + ex.getMessage());
+        }
+        finally {
+            this.spillFile.delete();
+        }
+    }
+
+    /** Close the dataset after a failure without masking the failure by another exception. */
+    private void discard() {
+        try {
+            this.close();
+        }
+        catch(BNLibIOException ex) {} // the temporary file is deleted anyway
+    }
+
+    /**
+     * Count occurences of all assignments to given variables and return as a factor.
+     * When the records are stored in a file, the file is read once.
+     * @throws BNLibInconsistentVariableSetsException When this dataset doesn't
+     *         contain all variables from the scope parameter.
+     * @throws BNLibIOException When the temporary file cannot be read.
+     */
+    @Override
+    public Factor computeFactor(Variable[] scope) throws BNLibInconsistentVariableSetsException, BNLibIOException {
+        return this.computeFactors(new Variable[][] {scope})[0];
+    }
+
+    /**
+     * Count occurences of all assignments of each of the scopes.
+     * When the records are stored in a file, the file is read once for all
+     * the scopes.
+     * @throws BNLibInconsistentVariableSetsException When this dataset doesn't
+     *         contain all variables from some scope.
+     * @throws BNLibIOException When the temporary file cannot be read.
+     */
+    @Override
+    public Factor[] computeFactors(Variable[][] scopes) throws BNLibInconsistentVariableSetsException, BNLibIOException {
+        // byte offset of each scope variable in a record and its stride in the factor
+        int[][] offsets = new int[scopes.length][],
+                strides = new int[scopes.length][];
+        double[][] counts = new double[scopes.length][];
+        for(int s = 0 ; s < scopes.length ; s++) {
+            if(!this.containsVariables(scopes[s]))
+                throw new BNLibInconsistentVariableSetsException("Dataset doesn't contain all requested variables.");
+            offsets[s] = new int[scopes[s].length];
+            strides[s] = new int[scopes[s].length];
+            int stride = 1;
+            for(int i = 0 ; i < scopes[s].length ; i++) {
+                offsets[s][i] = Toolkit.indexOf(this.variables, scopes[s][i]) * this.bytesPerValue;
+                strides[s][i] = stride;
+                stride *= scopes[s][i].getCardinality();
+            }
+            counts[s] = new double[stride];
+        }
+
+        byte[] memorySnapshot;
+        int memoryRecords, fileRecords;
+        File file;
+        synchronized(this) {
+            memorySnapshot = this.memory; // only appended to (or replaced) under the lock
+            memoryRecords = this.memoryUsed / this.recordBytes;
+            file = this.spillFile;
+            fileRecords = (file == null) ? 0 : this.size;
+            try {
+                if(file != null)
+                    this.spillStream.flush();
+            }
+            catch(IOException ex) {
+                throw new BNLibIOException("The following IOException occured: " + ex.getMessage());
+            }
+        }
+        this.countRecords(memorySnapshot, memoryRecords, offsets, strides, counts);
+        if(file != null)
+            this.countFileRecords(file, fileRecords, offsets, strides, counts);
+        Factor[] factors = new Factor[scopes.length];
+        for(int s = 0 ; s < scopes.length ; s++)
+            factors[s] = new Factor(scopes[s], counts[s]);
+        return factors;
+    }
+
+    private void countFileRecords(File file, int records, int[][] offsets, int[][] strides, double[][] counts) throws BNLibIOException {
+        int blockRecords = Math.max(1, StreamingDataset.READ_BLOCK_BYTES / this.recordBytes);
+        byte[] block = new byte[blockRecords * this.recordBytes];
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int remaining = records;
+            while(remaining > 0) {
+                int n = Math.min(remaining, blockRecords);
+                int length = n * this.recordBytes, read = 0;
+                while(read < length) {
+                    int r = in.read(block, read, length - read);
+                    if(r < 0)
+                        throw new BNLibIOException("Unexpected end of the temporary dataset file.");
+                    read += r;
+                }
+                this.countRecords(block, n, offsets, strides, counts);
+                remaining -= n;
+            }
+        }
+        catch(IOException ex) {
+            throw new BNLibIOException("The following IOException occured: " + ex.getMessage());
+        }
+        finally {
+            try {
+                if(in != null)
+                    in.close();
+            }
+            catch(IOException ex) {}
+        }
+    }
+
+    /**
+     * Add the given number of encoded records at the beginning of the data array
+     * to the counts of each scope. A record with a value of a scope missing isn't
+     * counted for the scope.
+     */
+    private void countRecords(byte[] data, int records, int[][] offsets, int[][] strides, double[][] counts) {
+        int missingCode = (this.bytesPerValue == 4) ? Dataset.MISSING_VALUE : (1 << (8 * this.bytesPerValue)) - 1;
+        for(int r = 0, base = 0 ; r < records ; r++, base += this.recordBytes) {
+            for(int s = 0 ; s < offsets.length ; s++) {
+                int index = 0;
+                for(int i = 0 ; i < offsets[s].length && index >= 0 ; i++) {
+                    int pos = base + offsets[s][i],
+                        value = data[pos] & 0xFF;
+                    for(int b = 1 ; b < this.bytesPerValue ; b++)
+                        value = (value << 8) | (data[pos + b] & 0xFF);
+                    index = (value == missingCode) ? -1 : index + value * strides[s][i];
+                }
+                if(index >= 0)
+                    counts[s][index]++;
+            }
+        }
+    }
+
+    /**
+     * Compute mutual information between two sets of variables.
+     * @throws BNLibIllegalArgumentException When the two sets aren't disjoint
+     *         or containt a variable not present in the dataset.
+     */
+    @Override
+    public double mutualInformation(Variable[] set1, Variable[] set2) throws BNLibIllegalArgumentException {
+        if(!Toolkit.areDisjoint(set1, set2))
+            throw new BNLibIllegalArgumentException("Sets to compute mutual information for are not disjoint.");
+        Variable[] union = Toolkit.union(set1, set2);
+        if(!Toolkit.isSubset(this.variables, union))
+            throw new BNLibIllegalArgumentException("Sets contain variables not present in the dataset.");
+
+        if(set1.length == 0 || set2.length == 0)
+            return 0.0;
+
+        return Dataset.mutualInformation(this.computeFactor(union), set1, set2);
+    }
+}
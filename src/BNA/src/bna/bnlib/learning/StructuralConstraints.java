@@ -37,11 +37,25 @@ public class StructuralConstraints {
         this.maxParentCount = Integer.MAX_VALUE;
     }
     
+    /** Create a copy of the given constraints (that can be further restricted independently). */
+    public StructuralConstraints(StructuralConstraints original) {
+        this.connectivityMatrix = new boolean[original.connectivityMatrix.length][];
+        for(int i = 0 ; i < this.connectivityMatrix.length ; i++)
+            this.connectivityMatrix[i] = Arrays.copyOf(original.connectivityMatrix[i], this.connectivityMatrix.length);
+        this.variable2IndexMapping = new HashMap<Variable, Integer>(original.variable2IndexMapping);
+        this.maxParentCount = original.maxParentCount;
+    }
+    
     /** Set the maximum number of parents a variable can have. */
     public void setMaxParentCount(int count) {
         this.maxParentCount = count;
     }
     
+    /** Get the maximum number of parents a variable can have (Integer.MAX_VALUE if unlimited). */
+    public int getMaxParentCount() {
+        return this.maxParentCount;
+    }
+    
     /** Would such parents count be within the legal bounds? */
     public boolean isOKParentsCount(int parentsCount) {
         return parentsCount <= this.maxParentCount;
@@ -0,0 +1,20 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/19
+
+package bna.bnlib.learning;
+
+
+/**
+ * Creates instances of a structure learning algorithm. A learning algorithm
+ * keeps the state of a search during learn, so each of the parallel learning
+ * runs needs its own instance.
+ */
+public interface StructureLearningAlgorithmFactory {
+    /**
+     * Create a new instance of the learning algorithm.
+     * @param run Index of the run (from 0) the algorithm is created for,
+     *            eg. to derive the data of the run (see BootstrapStructureLearning).
+     */
+    public StructureLearningAlgorithm createLearningAlgorithm(int run);
+}
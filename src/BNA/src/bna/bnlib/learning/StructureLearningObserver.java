@@ -0,0 +1,17 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/19
+
+package bna.bnlib.learning;
+
+
+/**
+ * Observer of repeated structure learning runs.
+ */
+public interface StructureLearningObserver {
+    /**
+     * Notification that a learning run has finished and its network has been
+     * registered in the statistics. The notifications are never concurrent.
+     */
+    public void notifyRunFinished(int finishedRuns, StructureLearningStatistics statistics);
+}
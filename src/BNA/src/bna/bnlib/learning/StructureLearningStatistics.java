@@ -18,6 +18,8 @@ import java.util.HashMap;
 /**
  * Provides means of evaluation of structure learning.
  * This means keeping best-scoring networks, connection matrix etc.
+ * The statistics is thread-safe, so that the networks of parallel learning
+ * runs can be registered as they are learnt.
  */
 public class StructureLearningStatistics {
     // what structures have been found (clustered by equal score and sorted in decreasing order)
@@ -40,7 +42,7 @@ public class StructureLearningStatistics {
     }
     
     /** Reflect the given network in this statistics. */
-    public void registerLearntNetwork(BayesianNetwork bnLearnt, double score) {
+    public synchronized void registerLearntNetwork(BayesianNetwork bnLearnt, double score) {
         this.addLearntNetworkStructure(bnLearnt, score);
         
         this.updateEdgeFrequencies(bnLearnt, score);
@@ -79,7 +81,7 @@ public class StructureLearningStatistics {
     }
     
     /** Print textual report to stdout. */
-    public void report() {
+    public synchronized void report() {
         // best-scoring network(s) hitparade
         System.out.println("Best-scoring networks hitparade");
         for(LearningRecord record : this.bnLearntHitparade) {
@@ -115,7 +117,7 @@ public class StructureLearningStatistics {
     }
     
     /** matrix[i][j] == count means that there has been count-times occurent of the edge (vertex_i, vertex_j). */
-    public int[][] getEdgeCountMatrix() {
+    public synchronized int[][] getEdgeCountMatrix() {
         int variableCount = this.variableOrder.length;
         int[][] copy = new int[variableCount][];
         for(int i = 0 ; i < variableCount ; i++)
@@ -123,8 +125,31 @@ public class StructureLearningStatistics {
         return copy;
     }
     
+    /**
+     * matrix[i][j] is the fraction of the registered networks containing
+     * the edge (vertex_i, vertex_j), eg. the bootstrap confidence of the edge.
+     * As a network contains at most one of (vertex_i, vertex_j) and (vertex_j, vertex_i),
+     * matrix[i][j] + matrix[j][i] is the fraction of networks where the two
+     * vertices are adjacent.
+     */
+    public synchronized double[][] getEdgeFrequencyMatrix() {
+        int variableCount = this.variableOrder.length;
+        double[][] frequencies = new double[variableCount][variableCount];
+        if(this.allNetworksCount == 0)
+            return frequencies;
+        for(int i = 0 ; i < variableCount ; i++)
+            for(int j = 0 ; j < variableCount ; j++)
+                frequencies[i][j] = this.edgeOccurences[i][j] / (double)this.allNetworksCount;
+        return frequencies;
+    }
+    
+    /** Number of networks registered. */
+    public synchronized int getNetworksCount() {
+        return this.allNetworksCount;
+    }
+    
     /** What is the highest score we have seen so far? */
-    public Double getBestScoreSoFar() {
+    public synchronized Double getBestScoreSoFar() {
         if(this.bnLearntHitparade.isEmpty())
             return null;
         LearningRecord firstRecord = this.bnLearntHitparade.get(0);
@@ -132,7 +157,7 @@ public class StructureLearningStatistics {
     }
     
     /** Get networks sharing the best score achieved. */
-    public BayesianNetwork[] getBestScoringNetworks() {
+    public synchronized BayesianNetwork[] getBestScoringNetworks() {
         if(this.bnLearntHitparade.isEmpty())
             return null;
         LearningRecord firstRecord = this.bnLearntHitparade.get(0);
@@ -143,7 +168,7 @@ public class StructureLearningStatistics {
     }
     
     /** Average score of the best structure found. */
-    public double getMeanScore() {
+    public synchronized double getMeanScore() {
         if(this.allNetworksCount > 0)
             return this.scoresSum / this.allNetworksCount;
         else
@@ -160,7 +185,7 @@ public class StructureLearningStatistics {
      *         try add(u, v), if score worsenes then break, otherwise accept change
      *     return the network
      */
-    public BayesianNetwork getMostProbableNetwork(ScoringMethod scoringMethod) {
+    public synchronized BayesianNetwork getMostProbableNetwork(ScoringMethod scoringMethod) {
         final int VARIABLE_COUNT = this.variableOrder.length;
         BayesianNetwork bn = new BayesianNetwork(this.variableOrder);
         double currentScore = scoringMethod.absoluteScore(bn);
@@ -0,0 +1,70 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/19
+
+package bna.bnlib.learning;
+
+import bna.bnlib.AlterationAction;
+import java.util.HashMap;
+
+
+/**
+ * Tabu list of the tabu search: a FIFO of the given capacity held in a ring
+ * buffer together with the number of occurences of each action (compared
+ * by equals) in a hash map. Insertion, expiry and the membership test are
+ * therefore O(1) regardless of the capacity.
+ */
+final class TabuList {
+    private AlterationAction[] buffer;
+    private int first = 0, // index of the oldest action
+                size = 0;
+    private HashMap<AlterationAction, Integer> occurences = new HashMap<AlterationAction, Integer>();
+
+
+    /** Create an empty tabu list holding at most capacity actions. */
+    TabuList(int capacity) {
+        this.buffer = new AlterationAction[Math.max(0, capacity)];
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean contains(AlterationAction action) {
+        return this.occurences.containsKey(action);
+    }
+
+    /**
+     * Append the action. When the list is full, the oldest action expires.
+     * @return The expired action or null. If the capacity is zero, the given
+     *         action expires immediately.
+     */
+    AlterationAction addLast(AlterationAction action) {
+        if(this.buffer.length == 0)
+            return action;
+        AlterationAction expired = null;
+        if(this.size == this.buffer.length)
+            expired = this.removeFirst();
+        this.buffer[(this.first + this.size) % this.buffer.length] = action;
+        this.size++;
+        Integer count = this.occurences.get(action);
+        this.occurences.put(action, (count == null) ? 1 : count + 1);
+        return expired;
+    }
+
+    /** Remove and return the oldest action (or null if the list is empty). */
+    AlterationAction removeFirst() {
+        if(this.size == 0)
+            return null;
+        AlterationAction action = this.buffer[this.first];
+        this.buffer[this.first] = null;
+        this.first = (this.first + 1) % this.buffer.length;
+        this.size--;
+        int count = this.occurences.get(action);
+        if(count == 1)
+            this.occurences.remove(action);
+        else
+            this.occurences.put(action, count - 1);
+        return action;
+    }
+}
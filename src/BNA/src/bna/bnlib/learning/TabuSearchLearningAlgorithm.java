@@ -5,20 +5,48 @@
 package bna.bnlib.learning;
 
 import bna.bnlib.*;
+import bna.bnlib.misc.IndexedMaxHeap;
 import bna.bnlib.misc.Toolkit;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
-/** Implementation of tabu-search algorithm with random restarts. */
+/**
+ * Implementation of tabu-search algorithm with random restarts.
+ * Candidate alterations of each step can be scored by several threads at once
+ * as scoring an alteration doesn't modify the current network.
+ * <p>
+ * The best (non-tabu) alterations of each child variable are kept in
+ * a max-heap ordered by their delta-score. After a step only the children
+ * whose alterations, delta-scores or tabu status might have changed are
+ * marked as stale and their alterations are rescored lazily when the best
+ * alteration is requested.
+ */
 public class TabuSearchLearningAlgorithm extends StructureLearningAlgorithm {
     protected Random rand = new Random();
     // tabu list
-    private int tabuListSize;
-    private LinkedList<AlterationAction> tabuList = new LinkedList<AlterationAction>();
+    private TabuList tabuList;
     // random restart parameters
     private int randomRestartSteps;
+    // parallel scoring of candidate alterations (only during learn)
+    private int threadcount;
+    private ExecutorService scoringExecutor = null;
+    // feasible alterations of the current network (only during learn)
+    private AlterationEnumerator alterations = null;
+    // best alterations of each child variable (only during learn)
+    private HashMap<Variable, Integer> variableIndices = null;
+    private Variable[] variables = null;
+    private BestActions[] bestActionsOfChild = null;
+    private IndexedMaxHeap bestChildren = null; // by the delta-score of their best actions
+    private boolean[] staleChildren = null;
     
 
     /**
@@ -28,9 +56,25 @@ public class TabuSearchLearningAlgorithm extends StructureLearningAlgorithm {
     public TabuSearchLearningAlgorithm(DecomposableScoringMethod method,
                                        int tabulistSize,
                                        int randomRestartSteps) {
+        this(method, tabulistSize, randomRestartSteps, 1);
+    }
+    
+    /**
+     * Create an instance of the tabu-search structure learning algorithm with random restarts
+     * that scores candidate alterations by threadcount threads.
+     * The tabu-list size and random restart steps are absolute numbers.
+     * @throws BNLibIllegalArgumentException When the threadcount is not positive.
+     */
+    public TabuSearchLearningAlgorithm(DecomposableScoringMethod method,
+                                       int tabulistSize,
+                                       int randomRestartSteps,
+                                       int threadcount) throws BNLibIllegalArgumentException {
         super(method);
-        this.tabuListSize = tabulistSize;
+        if(threadcount <= 0)
+            throw new BNLibIllegalArgumentException("Number of threads must be positive.");
+        this.tabuList = new TabuList(tabulistSize);
         this.randomRestartSteps = randomRestartSteps;
+        this.threadcount = threadcount;
     }
     
     @Override
@@ -44,7 +88,18 @@ public class TabuSearchLearningAlgorithm extends StructureLearningAlgorithm {
         BayesianNetwork bnBest = bnCurrent;
         double bnBestScore = bnCurrentScore;
         
-        
+        this.alterations = new AlterationEnumerator(bnCurrent, constraints);
+        this.variables = bnCurrent.getVariables();
+        this.variableIndices = new HashMap<Variable, Integer>();
+        for(int i = 0 ; i < this.variables.length ; i++)
+            this.variableIndices.put(this.variables[i], i);
+        this.bestActionsOfChild = new BestActions[this.variables.length];
+        this.bestChildren = new IndexedMaxHeap(this.variables.length);
+        this.staleChildren = new boolean[this.variables.length];
+        Arrays.fill(this.staleChildren, true);
+        if(this.threadcount > 1) {
+            this.scoringExecutor = Executors.newFixedThreadPool(this.threadcount);
+        }
         try {
             long iteration = 0;
             int randomStepsToGo = 0; // how many random steps to take
@@ -52,17 +107,20 @@ public class TabuSearchLearningAlgorithm extends StructureLearningAlgorithm {
                 // single step of local search
                 AlterationAction selectedAteration;
                 if(randomStepsToGo == 0)
-                    selectedAteration = this.getBestAlteration(bnCurrent, constraints);
+                    selectedAteration = this.getBestAlteration(bnCurrent, controller);
                 else {
-                    selectedAteration = this.getRandomAlteration(bnCurrent, constraints);
+                    selectedAteration = this.getRandomAlteration();
                     randomStepsToGo--;
                 }
                 if(selectedAteration != null) {
                     double deltaScore = this.scoringMethod.deltaScore(bnCurrent, selectedAteration);
                     bnCurrentScore += deltaScore;
                     selectedAteration.apply(bnCurrent);
+                    for(Variable child : this.alterations.apply(selectedAteration))
+                        this.markStale(child);
                     this.insertIntoTabuList(selectedAteration.getUndoAction());
-                    this.scoringMethod.notifyNetworkAlteration(selectedAteration);
+                    this.scoringMethod.notifyNetworkAlteration(bnCurrent, selectedAteration);
+                    this.markChangedFamiliesStale(bnCurrent, selectedAteration);
                     // keep track of the overall best structure seen so far
                     if(bnBestScore < bnCurrentScore) {
                         bnBestScore = bnCurrentScore;
@@ -74,6 +132,8 @@ public class TabuSearchLearningAlgorithm extends StructureLearningAlgorithm {
                         //System.out.println(String.format("[iteration %d] random restart", iteration));
                     }
                 }
+                else if(controller.getStopFlag())
+                    break; // interrupted while scoring
                 else {
                     System.err.println(String.format("[iteration %d] no alteration possible! => making precautions", iteration));
                     this.reduceTabuList(0.5);
@@ -87,6 +147,17 @@ public class TabuSearchLearningAlgorithm extends StructureLearningAlgorithm {
             // actually in the network)
             throw new BNLibInternalException("Internal structure inconsistency during learing: " + bnex.getMessage());
         }
+        finally {
+            if(this.scoringExecutor != null)
+                this.scoringExecutor.shutdown();
+            this.scoringExecutor = null;
+            this.alterations = null;
+            this.variables = null;
+            this.variableIndices = null;
+            this.bestActionsOfChild = null;
+            this.bestChildren = null;
+            this.staleChildren = null;
+        }
         
         return bnBest;
     }
@@ -94,61 +165,170 @@ public class TabuSearchLearningAlgorithm extends StructureLearningAlgorithm {
     /**
      * From the currently feasible structural alterations pick the one with best delta-score.
      * If there is more than one best alteration, choose randomly one of them.
+     * Returns null when there is no alteration or when the scoring has been
+     * interrupted (the stop flag of the controller is set then).
      */
     private AlterationAction getBestAlteration(BayesianNetwork bnCurrent,
-                                              StructuralConstraints constraints)
+                                              LearningController controller)
                                               throws BNLibIllegalStructuralModificationException {
-        // for keeping of the best actions for single step of local search
-        ArrayList<AlterationAction> bestActions = new ArrayList<AlterationAction>();
-        double bestGain = Double.NEGATIVE_INFINITY;
-        // inspect all possibilities
-        AlterationEnumerator alterations = new AlterationEnumerator(bnCurrent, constraints);
-        for(AlterationAction alteration : alterations) {
-            if(this.isTabuAction(alteration))
+        // rescore the alterations of stale children only
+        ArrayList<AlterationAction> candidates = new ArrayList<AlterationAction>();
+        for(int j = 0 ; j < this.variables.length ; j++) {
+            if(!this.staleChildren[j])
                 continue;
-            double gain = this.scoringMethod.deltaScore(bnCurrent, alteration);
-            if(gain >= bestGain) {
-                if(Toolkit.doubleEquals(gain, bestGain))
-                    bestActions.add(alteration);
-                else {
-                    bestActions.clear();
-                    bestActions.add(alteration);
-                    bestGain = gain;
-                }
+            for(AlterationAction alteration : this.alterations.getAlterationsOfChild(this.variables[j])) {
+                if(!this.isTabuAction(alteration))
+                    candidates.add(alteration);
             }
         }
-        // return the best action (if more, pick one at random)
-        if(bestActions.isEmpty())
+        double[] gains = new double[candidates.size()];
+        if(this.scoringExecutor == null)
+            this.scoreAlterations(bnCurrent, candidates, gains, 0, 1);
+        else {
+            try {
+                this.scoreAlterationsInParallel(bnCurrent, candidates, gains);
+            }
+            catch(InterruptedException ex) {
+                controller.setStopFlag();
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        for(int j = 0 ; j < this.variables.length ; j++)
+            if(this.staleChildren[j])
+                this.bestActionsOfChild[j] = new BestActions();
+        for(int i = 0 ; i < candidates.size() ; i++) {
+            AlterationAction alteration = candidates.get(i);
+            this.bestActionsOfChild[this.variableIndices.get(alteration.getChildVariable())].offer(alteration, gains[i]);
+        }
+        for(int j = 0 ; j < this.variables.length ; j++) {
+            if(!this.staleChildren[j])
+                continue;
+            if(this.bestActionsOfChild[j].actions.isEmpty())
+                this.bestChildren.remove(j);
+            else
+                this.bestChildren.put(j, this.bestActionsOfChild[j].gain);
+            this.staleChildren[j] = false;
+        }
+        
+        if(this.bestChildren.isEmpty())
             return null;
-        else if(bestActions.size() == 1)
-            return bestActions.get(0);
+        // the best actions may be spread over several children
+        double bestGain = this.bestChildren.getPriority(this.bestChildren.peek());
+        BestActions best = new BestActions();
+        for(int j : this.bestChildren.keysAtLeast(bestGain - Toolkit.DOUBLE_EPS)) {
+            for(AlterationAction alteration : this.bestActionsOfChild[j].actions)
+                best.offer(alteration, this.bestActionsOfChild[j].gain);
+        }
+        // return the best action (if more, pick one at random)
+        if(best.actions.size() == 1)
+            return best.actions.get(0);
         else {
-            int rndIndex = this.rand.nextInt(bestActions.size());
-            return bestActions.get(rndIndex);
+            int rndIndex = this.rand.nextInt(best.actions.size());
+            return best.actions.get(rndIndex);
+        }
+    }
+    
+    /** Best alterations found among some candidates and their delta-score. */
+    private static class BestActions {
+        ArrayList<AlterationAction> actions = new ArrayList<AlterationAction>();
+        double gain = Double.NEGATIVE_INFINITY;
+        
+        void offer(AlterationAction alteration, double gain) {
+            if(gain >= this.gain) {
+                if(Toolkit.doubleEquals(gain, this.gain))
+                    this.actions.add(alteration);
+                else {
+                    this.actions.clear();
+                    this.actions.add(alteration);
+                    this.gain = gain;
+                }
+            }
+        }
+    }
+    
+    /** Score each step-th candidate starting with the first-th one into gains. */
+    private void scoreAlterations(BayesianNetwork bnCurrent,
+                                  List<AlterationAction> candidates,
+                                  double[] gains,
+                                  int first,
+                                  int step)
+                                  throws BNLibIllegalStructuralModificationException {
+        for(int i = first ; i < candidates.size() ; i += step)
+            gains[i] = this.scoringMethod.deltaScore(bnCurrent, candidates.get(i));
+    }
+    
+    /** Split the candidates among the scoring threads, each thread fills its part of gains. */
+    private void scoreAlterationsInParallel(final BayesianNetwork bnCurrent,
+                                            final List<AlterationAction> candidates,
+                                            final double[] gains)
+                                            throws InterruptedException, BNLibIllegalStructuralModificationException {
+        ArrayList<Future<Void>> results = new ArrayList<Future<Void>>();
+        for(int i = 0 ; i < this.threadcount ; i++) {
+            final int first = i;
+            results.add(this.scoringExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    scoreAlterations(bnCurrent, candidates, gains, first, threadcount);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for(Future<Void> result : results)
+                result.get();
+        }
+        catch(ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause(); // eg. BNLibIllegalStructuralModificationException
+            throw new BNLibInternalException("Scoring of alterations failed: " + ex.getCause());
+        }
+        finally {
+            for(Future<Void> result : results)
+                result.cancel(true);
+        }
+    }
+    
+    /** Alterations of the child have to be rescored before the next best alteration is picked. */
+    private void markStale(Variable child) {
+        this.staleChildren[this.variableIndices.get(child)] = true;
+    }
+    
+    /**
+     * Mark stale the children whose alterations have delta-score depending on
+     * the families changed by the action taken, ie. the changed variable
+     * itself (any alteration of its parents) and its children (reversal of
+     * the edge to the child).
+     */
+    private void markChangedFamiliesStale(BayesianNetwork bnCurrent, AlterationAction actionTaken) {
+        for(Variable variable : DecomposableScoringMethod.getVariablesWithNewParents(actionTaken)) {
+            this.markStale(variable);
+            for(Variable child : bnCurrent.getVariableChildren(variable))
+                this.markStale(child);
         }
     }
     
-    private AlterationAction getRandomAlteration(BayesianNetwork bnCurrent, StructuralConstraints constraints) {
-        AlterationEnumerator alterations = new AlterationEnumerator(bnCurrent, constraints);
-        if(alterations.getAlterationCount() == 0)
+    private AlterationAction getRandomAlteration() {
+        if(this.alterations.getAlterationCount() == 0)
             return null;
         else
-            return alterations.getRandomAlteration(this.rand);
+            return this.alterations.getRandomAlteration(this.rand);
     }
 
     
     // tabu list access and management
     
     private void insertIntoTabuList(AlterationAction action) {
-        this.tabuList.addLast(action);
-        while(this.tabuList.size() > this.tabuListSize)
-            this.tabuList.removeFirst();
+        AlterationAction expired = this.tabuList.addLast(action);
+        this.markStale(action.getChildVariable());
+        if(expired != null)
+            this.markStale(expired.getChildVariable());
     }
     
     private void reduceTabuList(double fraction) {
         int newSize = (int)(fraction * this.tabuList.size());
         while(this.tabuList.size() > newSize)
-            this.tabuList.removeFirst();
+            this.markStale(this.tabuList.removeFirst().getChildVariable());
     }
     
     private boolean isTabuAction(AlterationAction action) {
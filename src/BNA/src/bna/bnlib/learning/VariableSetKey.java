@@ -0,0 +1,85 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/04
+
+package bna.bnlib.learning;
+
+import bna.bnlib.BNLibInconsistentVariableSetsException;
+import bna.bnlib.Variable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * Hashable representation of an unordered set of variables of a dataset.
+ * The set is a bitset over indices of the variables in the dataset, so that
+ * {A,B} and {B,A} are represented by equal keys.
+ * The key also remembers the number of joint assignments of the variables
+ * (not taken into account by equals).
+ */
+final class VariableSetKey {
+    private final long[] bits;
+    private final int hash;
+    private final int cardinality;
+
+
+    private VariableSetKey(long[] bits, int cardinality) {
+        this.bits = bits;
+        this.hash = Arrays.hashCode(bits);
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Create key for the given variables.
+     * @param variableIndices Mapping of all variables of the dataset to their
+     *                        indices in the dataset.
+     * @throws BNLibInconsistentVariableSetsException When some variable isn't
+     *         contained in the mapping.
+     */
+    static VariableSetKey create(Variable[] vars, HashMap<Variable, Integer> variableIndices) throws BNLibInconsistentVariableSetsException {
+        long[] bits = new long[(variableIndices.size() + 63) / 64];
+        int cardinality = 1;
+        for(Variable var : vars) {
+            Integer index = variableIndices.get(var);
+            if(index == null)
+                throw new BNLibInconsistentVariableSetsException("Dataset doesn't contain all requested variables.");
+            bits[index >>> 6] |= 1L << index;
+            cardinality *= var.getCardinality();
+        }
+        return new VariableSetKey(bits, cardinality);
+    }
+
+    /** Create the mapping of variables to their indices for the create method. */
+    static HashMap<Variable, Integer> indexVariables(Variable[] variables) {
+        HashMap<Variable, Integer> variableIndices = new HashMap<Variable, Integer>();
+        for(int i = 0 ; i < variables.length ; i++)
+            variableIndices.put(variables[i], i);
+        return variableIndices;
+    }
+
+    /** Number of all joint assignments of the variables in this set. */
+    int getCardinality() {
+        return this.cardinality;
+    }
+
+    /** Is each variable of this set contained in the other set? */
+    boolean isSubsetOf(VariableSetKey other) {
+        for(int i = 0 ; i < this.bits.length ; i++)
+            if((this.bits[i] & ~other.bits[i]) != 0)
+                return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof VariableSetKey))
+            return false;
+        VariableSetKey ko = (VariableSetKey)o;
+        return this.hash == ko.hash && Arrays.equals(this.bits, ko.bits);
+    }
+}
@@ -0,0 +1,328 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/09
+
+package bna.bnlib.learning;
+
+import bna.bnlib.BNLibIllegalArgumentException;
+import bna.bnlib.BNLibIllegalOperationException;
+import bna.bnlib.BNLibInconsistentVariableSetsException;
+import bna.bnlib.Factor;
+import bna.bnlib.Variable;
+import bna.bnlib.misc.Toolkit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+
+/**
+ * Dataset holding counts of the most recent records, suitable for
+ * non-stationary data. The records are grouped into batches. A batch is
+ * closed when it reaches the maximal batch size or explicitly by endBatch
+ * (eg. at the end of a day).
+ * <p>
+ * Optionally the batches can be decayed exponentially: each record of the
+ * current batch counts as 1, each record of the previous batch as decay,
+ * of the batch before as decay^2 etc. Factors computed by this dataset
+ * then contain weighted counts and getSize returns the sum of the weights
+ * (rounded), so that ParameterLearner and the scoring methods work with the
+ * effective number of records.
+ * <p>
+ * The dataset is either a sliding window or purely decayed. A sliding window
+ * keeps only the given number of most recent batches, older batches are
+ * forgotten. A purely decayed dataset (see exponentialDecay) forgets nothing
+ * explicitly and doesn't keep the records at all.
+ * <p>
+ * Counts of the scopes registered by registerCounts (eg. the families of
+ * a network) are maintained record by record, so they are returned without
+ * a pass over the records: a window keeps the counts of each of its batches
+ * and sums them up when a new batch starts, a decayed dataset multiplies its
+ * counts by the decay. Other scopes are counted from the records of the
+ * window (outside of the lock, so that concurrent queries of the registered
+ * scopes don't wait); a purely decayed dataset cannot count them.
+ */
+public class WindowedDataset implements DatasetInterface {
+    /** Number of batches of a purely decayed dataset. */
+    private static final int UNLIMITED_WINDOW = 0;
+
+    private Variable[] variables;
+    private HashMap<Variable, Integer> variableIndices; // for the keys of registered scopes (read only)
+    private int windowBatches, batchSize;
+    private double decay;
+    private LinkedList<Batch> batches = new LinkedList<Batch>(); // the last one is the current batch (empty when decayed purely)
+    private int currentBatchSize = 0;
+    private boolean currentBatchEnded = true; // the first record starts a batch
+    private int recordCount = 0;
+    private double effectiveSize = 0;
+    private Variable[][] registeredScopes = new Variable[0][];
+    private HashMap<VariableSetKey, Integer> registeredIndices = new HashMap<VariableSetKey, Integer>();
+    private RecordCounts registeredCounts; // weighted counts of the registered scopes
+
+
+    /**
+     * Create a dataset keeping (without decay) the given number of most recent batches.
+     * @throws BNLibIllegalArgumentException When the number of batches or
+     *         size of a batch is not positive.
+     */
+    public WindowedDataset(Variable[] variables, int windowBatches, int batchSize) throws BNLibIllegalArgumentException {
+        this(variables, windowBatches, batchSize, 1.0);
+    }
+
+    /**
+     * Create a dataset keeping the given number of most recent batches
+     * whose weights decay by the given factor with age of the batch.
+     * @throws BNLibIllegalArgumentException When the number of batches or
+     *         size of a batch is not positive or the decay is not in (0, 1].
+     */
+    public WindowedDataset(Variable[] variables, int windowBatches, int batchSize, double decay) throws BNLibIllegalArgumentException {
+        if(windowBatches <= 0)
+            throw new BNLibIllegalArgumentException("Number of batches and size of a batch must be positive.");
+        this.init(variables, windowBatches, batchSize, decay);
+    }
+
+    private WindowedDataset() {
+    }
+
+    /**
+     * Create a dataset decaying the weights of batches by the given factor
+     * with their age without any window. Only the counts of scopes registered
+     * before the first record is added are available.
+     * @throws BNLibIllegalArgumentException When the size of a batch
+     *         is not positive or the decay is not in (0, 1].
+     */
+    public static WindowedDataset exponentialDecay(Variable[] variables, int batchSize, double decay) throws BNLibIllegalArgumentException {
+        WindowedDataset dataset = new WindowedDataset();
+        dataset.init(variables, UNLIMITED_WINDOW, batchSize, decay);
+        return dataset;
+    }
+
+    private void init(Variable[] variables, int windowBatches, int batchSize, double decay) throws BNLibIllegalArgumentException {
+        if(batchSize <= 0)
+            throw new BNLibIllegalArgumentException("Number of batches and size of a batch must be positive.");
+        if(!(decay > 0 && decay <= 1))
+            throw new BNLibIllegalArgumentException("The decay factor must be in (0, 1].");
+        this.variables = Arrays.copyOf(variables, variables.length);
+        this.variableIndices = VariableSetKey.indexVariables(this.variables);
+        this.windowBatches = windowBatches;
+        this.batchSize = batchSize;
+        this.decay = decay;
+        this.registeredCounts = new RecordCounts(this.variables, this.registeredScopes);
+    }
+
+    @Override
+    public Variable[] getVariables() {
+        return Arrays.copyOf(this.variables, this.variables.length);
+    }
+
+    /** Check whether the dataset contains each of the specified variables. */
+    public boolean containsVariables(Variable[] vars) {
+        return Toolkit.isSubset(this.variables, vars);
+    }
+
+    /** Get the number of records in the window with their weights taken into account (rounded). */
+    @Override
+    public synchronized int getSize() {
+        return (int)Math.round(this.effectiveSize);
+    }
+
+    /** Always false, records with missing values are rejected by addRecord. */
+    @Override
+    public boolean hasMissingValues() {
+        return false;
+    }
+
+    /** Get the sum of weights of records in the window. */
+    public synchronized double getEffectiveSize() {
+        return this.effectiveSize;
+    }
+
+    /** Get the number of records in the window (regardless of their weights). */
+    public synchronized int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Add new record to the current batch.
+     * @throws BNLibIllegalArgumentException When the given record cannot be an
+     *         assignment of the variables in this dataset.
+     */
+    @Override
+    public synchronized void addRecord(int[] record) throws BNLibIllegalArgumentException {
+        if(!Toolkit.validateAssignment(this.variables, record))
+            throw new BNLibIllegalArgumentException("Record of invalid lenght or with invalid values.");
+        if(this.currentBatchEnded || this.currentBatchSize >= this.batchSize)
+            this.startBatch();
+        int[] recordCopy = Arrays.copyOf(record, record.length);
+        if(this.windowBatches != UNLIMITED_WINDOW) {
+            Batch batch = this.batches.getLast();
+            batch.records.add(recordCopy);
+            batch.counts.add(recordCopy, 1);
+        }
+        this.registeredCounts.add(recordCopy, 1);
+        this.currentBatchSize++;
+        this.recordCount++;
+        this.effectiveSize++;
+    }
+
+    /** Close the current batch, the next record will start a new batch. */
+    public synchronized void endBatch() {
+        this.currentBatchEnded = true;
+    }
+
+    /** Age the closed batches (and forget the oldest one) and start an empty batch. */
+    private void startBatch() {
+        this.currentBatchEnded = false;
+        this.currentBatchSize = 0;
+        if(this.windowBatches == UNLIMITED_WINDOW) {
+            this.registeredCounts.scale(this.decay);
+            this.effectiveSize *= this.decay;
+            return;
+        }
+        this.batches.addLast(new Batch(new RecordCounts(this.variables, this.registeredScopes)));
+        if(this.batches.size() > this.windowBatches)
+            this.recordCount -= this.batches.removeFirst().records.size();
+        this.sumBatches();
+    }
+
+    /** Recompute the weighted counts of the registered scopes and the size from the batches of the window. */
+    private void sumBatches() {
+        this.registeredCounts = new RecordCounts(this.variables, this.registeredScopes);
+        this.effectiveSize = 0;
+        double weight = 1;
+        Iterator<Batch> newestFirst = this.batches.descendingIterator();
+        while(newestFirst.hasNext()) {
+            Batch batch = newestFirst.next();
+            this.registeredCounts.addAll(batch.counts, weight);
+            this.effectiveSize += weight * batch.records.size();
+            weight *= this.decay;
+        }
+    }
+
+    /**
+     * Maintain counts of the given scope, they are then returned by computeFactor
+     * (in any order of the scope) without a pass over the records. The window
+     * counts the scope in its records, a purely decayed dataset accepts the scope
+     * only before the first record is added.
+     * @throws BNLibInconsistentVariableSetsException When the dataset doesn't
+     *         contain all variables from the scope parameter.
+     * @throws BNLibIllegalOperationException When records have been already
+     *         added to a purely decayed dataset.
+     */
+    public synchronized void registerCounts(Variable[] scope) throws BNLibInconsistentVariableSetsException, BNLibIllegalOperationException {
+        VariableSetKey set = VariableSetKey.create(scope, this.variableIndices);
+        if(this.registeredIndices.containsKey(set))
+            return;
+        if(this.windowBatches == UNLIMITED_WINDOW && this.recordCount > 0)
+            throw new BNLibIllegalOperationException("Scopes of a decayed dataset must be registered before records are added.");
+        this.registeredIndices.put(set, this.registeredScopes.length);
+        this.registeredScopes = Arrays.copyOf(this.registeredScopes, this.registeredScopes.length + 1);
+        this.registeredScopes[this.registeredScopes.length - 1] = Arrays.copyOf(scope, scope.length);
+        for(Batch batch : this.batches) {
+            batch.counts = new RecordCounts(this.variables, this.registeredScopes);
+            for(int[] record : batch.records)
+                batch.counts.add(record, 1);
+        }
+        if(this.windowBatches == UNLIMITED_WINDOW)
+            this.registeredCounts = new RecordCounts(this.variables, this.registeredScopes);
+        else
+            this.sumBatches();
+    }
+
+    /**
+     * Count (weighted) occurences of all assignments to given variables and return as a factor.
+     * @throws BNLibInconsistentVariableSetsException When this dataset doesn't
+     *         contain all variables from the scope parameter.
+     * @throws BNLibIllegalOperationException When a purely decayed dataset
+     *         is asked for a scope that hasn't been registered.
+     */
+    @Override
+    public Factor computeFactor(Variable[] scope) throws BNLibInconsistentVariableSetsException, BNLibIllegalOperationException {
+        return this.computeFactors(new Variable[][] {scope})[0];
+    }
+
+    /**
+     * Count (weighted) occurences of all assignments of each of the scopes.
+     * The registered scopes are taken from the maintained counts, the others
+     * are counted in a single pass over the records of the window.
+     * @throws BNLibInconsistentVariableSetsException When this dataset doesn't
+     *         contain all variables from some scope.
+     * @throws BNLibIllegalOperationException When a purely decayed dataset
+     *         is asked for a scope that hasn't been registered.
+     */
+    @Override
+    public Factor[] computeFactors(Variable[][] scopes) throws BNLibInconsistentVariableSetsException, BNLibIllegalOperationException {
+        Factor[] factors = new Factor[scopes.length];
+        ArrayList<Integer> missing = new ArrayList<Integer>();
+        ArrayList<ArrayList<int[]>> windowRecords = new ArrayList<ArrayList<int[]>>(); // newest first
+        synchronized(this) {
+            for(int s = 0 ; s < scopes.length ; s++) {
+                Integer registered = this.registeredIndices.get(VariableSetKey.create(scopes[s], this.variableIndices));
+                if(registered != null)
+                    factors[s] = this.registeredCounts.toFactor(registered);
+                else
+                    missing.add(s);
+            }
+            if(missing.isEmpty())
+                return this.reorderScopes(factors, scopes);
+            if(this.windowBatches == UNLIMITED_WINDOW)
+                throw new BNLibIllegalOperationException("A decayed dataset counts only the registered scopes.");
+            // closed batches don't change anymore, the current one is copied
+            Iterator<Batch> newestFirst = this.batches.descendingIterator();
+            if(newestFirst.hasNext())
+                windowRecords.add(new ArrayList<int[]>(newestFirst.next().records));
+            while(newestFirst.hasNext())
+                windowRecords.add(newestFirst.next().records);
+        }
+        Variable[][] missingScopes = new Variable[missing.size()][];
+        for(int i = 0 ; i < missingScopes.length ; i++)
+            missingScopes[i] = scopes[missing.get(i)];
+        RecordCounts counts = new RecordCounts(this.variables, missingScopes);
+        double weight = 1;
+        for(ArrayList<int[]> batchRecords : windowRecords) {
+            for(int[] record : batchRecords)
+                counts.add(record, weight);
+            weight *= this.decay;
+        }
+        for(int i = 0 ; i < missingScopes.length ; i++)
+            factors[missing.get(i)] = counts.toFactor(i);
+        return this.reorderScopes(factors, scopes);
+    }
+
+    /** Permute the factors to the requested order of their scopes. */
+    private Factor[] reorderScopes(Factor[] factors, Variable[][] scopes) {
+        for(int s = 0 ; s < factors.length ; s++)
+            factors[s] = factors[s].reorderScope(scopes[s]);
+        return factors;
+    }
+
+    /**
+     * Compute mutual information between two sets of variables (from the weighted counts).
+     * @throws BNLibIllegalArgumentException When the two sets aren't disjoint
+     *         or containt a variable not present in the dataset.
+     */
+    @Override
+    public double mutualInformation(Variable[] set1, Variable[] set2) throws BNLibIllegalArgumentException {
+        if(!Toolkit.areDisjoint(set1, set2))
+            throw new BNLibIllegalArgumentException("Sets to compute mutual information for are not disjoint.");
+        Variable[] union = Toolkit.union(set1, set2);
+        if(!Toolkit.isSubset(this.variables, union))
+            throw new BNLibIllegalArgumentException("Sets contain variables not present in the dataset.");
+
+        if(set1.length == 0 || set2.length == 0)
+            return 0.0;
+
+        return Dataset.mutualInformation(this.computeFactor(union), set1, set2);
+    }
+
+    /** Records of a batch of the window and counts of the registered scopes in them. */
+    private static class Batch {
+        final ArrayList<int[]> records = new ArrayList<int[]>();
+        RecordCounts counts;
+
+        Batch(RecordCounts counts) {
+            this.counts = counts;
+        }
+    }
+}
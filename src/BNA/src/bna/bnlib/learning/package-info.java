@@ -1,4 +1,8 @@
 /**
  * Parameter learning and structure learning classes.
+ * Includes datasets (possibly with missing values, see ExpectationMaximization),
+ * scoring methods (with a cache of precomputed local scores of parent sets),
+ * the structure search algorithms and the constraint-based discovery
+ * of the skeleton restricting the search.
  */
-package bna.bnlib.learning;
\ No newline at end of file
+package bna.bnlib.learning;
@@ -0,0 +1,37 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/02
+
+package bna.bnlib.misc;
+
+
+/**
+ * Simple structure (no encapsulation) carrying a snapshot of cache usage counters.
+ */
+public class CacheStatistics {
+    public long hits,
+                misses,
+                evictions;
+    public int entries;
+    public long weight,
+                maxWeight;
+
+    public CacheStatistics() {
+        this.hits = this.misses = this.evictions = 0;
+        this.entries = 0;
+        this.weight = this.maxWeight = 0;
+    }
+
+    /** Fraction of lookups that were answered from the cache (0 if there was no lookup). */
+    public double getHitRate() {
+        long lookups = this.hits + this.misses;
+        return (lookups == 0) ? 0.0 : (double)this.hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits %d, misses %d (hit rate %.2f %%), evictions %d, entries %d, weight %d/%d",
+                             this.hits, this.misses, 100 * this.getHitRate(), this.evictions,
+                             this.entries, this.weight, this.maxWeight);
+    }
+}
@@ -0,0 +1,297 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/02
+
+package bna.bnlib.misc;
+
+import bna.bnlib.BNLibIllegalArgumentException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Thread-safe LRU associative cache whose capacity is given by total weight of the values.
+ * The key space is split into independent segments (lock striping) so that
+ * threads accessing different keys rarely compete for the same lock. Each
+ * segment is an access-ordered LinkedHashMap (as in LRUCache) guarded by its
+ * own lock and holding an equal share of the overall capacity. The LRU order
+ * is therefore maintained per segment, not globally.
+ * <p>
+ * Weight of a value is determined by a Weigher given in the constructor (eg.
+ * size of the value in bytes). When no weigher is given, each entry weights 1
+ * and the capacity is simply the maximal number of entries. An optional
+ * EvictionListener is told about the entries evicted by the cache (eg. to keep
+ * an index of the cached keys).
+ */
+public class ConcurrentLRUCache<K,V> implements Iterable<V> {
+    /** Default number of segments, suitable for a few concurrently working threads. */
+    public static final int DEFAULT_SEGMENT_COUNT = 16;
+
+    private Segment<K,V>[] segments;
+    private long maxWeight;
+    private Weigher<? super V> weigher; // null for unit weights
+    // usage counters
+    private AtomicLong hits = new AtomicLong(),
+                       misses = new AtomicLong(),
+                       evictions = new AtomicLong();
+
+
+    /** Determines weight of a value stored in the cache (eg. its size in bytes). */
+    public interface Weigher<V> {
+        public long weigh(V value);
+    }
+
+    /**
+     * Notified about each entry evicted to make space for another one (and
+     * about a key whose new value is too heavy to be cached). The listener
+     * is called while the segment of the entry is locked, so it has to be
+     * fast and it mustn't access the cache.
+     */
+    public interface EvictionListener<K,V> {
+        public void evicted(K key, V value);
+    }
+
+    /** Create a cache holding at most the given number of entries. */
+    public ConcurrentLRUCache(int capacity, int segmentCount) {
+        this(capacity, segmentCount, null, null);
+    }
+
+    /**
+     * Create a cache whose values weight at most maxWeight in total.
+     * The segment count is rounded up to a power of two (but it never exceeds
+     * maxWeight so that each segment can hold at least one unit of weight).
+     * @throws BNLibIllegalArgumentException When the capacity or the segment
+     *         count is not positive.
+     */
+    public ConcurrentLRUCache(long maxWeight, int segmentCount, Weigher<? super V> weigher) throws BNLibIllegalArgumentException {
+        this(maxWeight, segmentCount, weigher, null);
+    }
+
+    /**
+     * Create a cache whose values weight at most maxWeight in total and whose
+     * evictions are reported to the listener.
+     * @param weigher Weigher of the values (null if each entry weights 1).
+     * @param evictionListener Listener of the evictions (can be null).
+     * @throws BNLibIllegalArgumentException When the capacity or the segment
+     *         count is not positive.
+     */
+    public ConcurrentLRUCache(long maxWeight, int segmentCount, Weigher<? super V> weigher,
+                              EvictionListener<? super K, ? super V> evictionListener) throws BNLibIllegalArgumentException {
+        if(maxWeight <= 0 || segmentCount <= 0)
+            throw new BNLibIllegalArgumentException("Cache capacity and segment count have to be positive.");
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        int count = 1;
+        while(count < segmentCount && 2 * count <= maxWeight)
+            count *= 2;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Segment<K,V>[] segments = (Segment<K,V>[])new Segment[count];
+        this.segments = segments;
+        for(int i = 0 ; i < count ; i++) {
+            // distribute the capacity so that the segments sum exactly to maxWeight
+            long segmentMaxWeight = maxWeight / count + ((i < maxWeight % count) ? 1 : 0);
+            this.segments[i] = new Segment<K,V>(segmentMaxWeight, evictionListener);
+        }
+    }
+
+    private Segment<K,V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16); // spread higher bits because only the lowest bits select the segment
+        h ^= (h >>> 7);
+        return this.segments[h & (this.segments.length - 1)];
+    }
+
+    /**
+     * Get value associated with given key or null if no such key exists.
+     * Accessing an element moves it in front of the queue of recently used
+     * objects of its segment.
+     */
+    public V get(K key) {
+        V value = this.segmentFor(key).get(key);
+        if(value == null)
+            this.misses.incrementAndGet();
+        else
+            this.hits.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Get value associated with given key like get, but without affecting
+     * the usage counters. Meant for lookups that aren't requests of the key
+     * itself (eg. when an entry is used to derive a value of another key),
+     * the entry is still moved in front of the queue of its segment.
+     */
+    public V peek(K key) {
+        return this.segmentFor(key).get(key);
+    }
+
+    /**
+     * Put or rewrite the given pair mapping.
+     * Least recently used entries of the segment are evicted to make space
+     * for the new value. A value heavier than the capacity of a single segment
+     * is not cached at all.
+     */
+    public void put(K key, V value) {
+        long weight = (this.weigher == null) ? 1 : this.weigher.weigh(value);
+        int evicted = this.segmentFor(key).put(key, value, weight);
+        if(evicted > 0)
+            this.evictions.addAndGet(evicted);
+    }
+
+    /** Remove the mapping of given key (if there is one). */
+    public void remove(K key) {
+        this.segmentFor(key).remove(key);
+    }
+
+    /** Clear all entries in this cache (usage counters are kept). */
+    public void clear() {
+        for(Segment<K,V> segment : this.segments)
+            segment.clear();
+    }
+
+    /** Return current number of items in the cache. */
+    public int size() {
+        int size = 0;
+        for(Segment<K,V> segment : this.segments)
+            size += segment.size();
+        return size;
+    }
+
+    /** Return current total weight of the items in the cache. */
+    public long weight() {
+        long weight = 0;
+        for(Segment<K,V> segment : this.segments)
+            weight += segment.weight();
+        return weight;
+    }
+
+    /** Returns the maximal total weight of items this cache can hold. */
+    public long capacity() {
+        return this.maxWeight;
+    }
+
+    /**
+     * Snapshot of the keys currently in the cache.
+     * Does not affect the access order nor the usage counters.
+     */
+    public List<K> keys() {
+        ArrayList<K> keys = new ArrayList<K>();
+        for(Segment<K,V> segment : this.segments)
+            segment.copyKeysTo(keys);
+        return keys;
+    }
+
+    /** Snapshot of the usage counters and of the occupancy of this cache. */
+    public CacheStatistics getStatistics() {
+        CacheStatistics statistics = new CacheStatistics();
+        statistics.hits = this.hits.get();
+        statistics.misses = this.misses.get();
+        statistics.evictions = this.evictions.get();
+        statistics.entries = this.size();
+        statistics.weight = this.weight();
+        statistics.maxWeight = this.maxWeight;
+        return statistics;
+    }
+
+    /**
+     * Provides iterator over a snapshot of the values, segment by segment.
+     * Within a segment the values are in reversed access order (most recently
+     * accessed item is last).
+     */
+    @Override
+    public Iterator<V> iterator() {
+        ArrayList<V> values = new ArrayList<V>();
+        for(Segment<K,V> segment : this.segments)
+            segment.copyValuesTo(values);
+        return values.iterator();
+    }
+
+
+    /** Single lock-guarded part of the cache. */
+    private static class Segment<K,V> {
+        private final long maxWeight;
+        private final EvictionListener<? super K, ? super V> evictionListener;
+        private long weight = 0;
+        private LinkedHashMap<K, WeightedValue<V>> data;
+
+        Segment(long maxWeight, EvictionListener<? super K, ? super V> evictionListener) {
+            this.maxWeight = maxWeight;
+            this.evictionListener = evictionListener;
+            this.data = new LinkedHashMap<K, WeightedValue<V>>(16, 0.75f, true);
+        }
+
+        synchronized V get(K key) {
+            WeightedValue<V> entry = this.data.get(key);
+            return (entry == null) ? null : entry.value;
+        }
+
+        /** Returns the number of evicted entries. */
+        synchronized int put(K key, V value, long valueWeight) {
+            WeightedValue<V> old = this.data.remove(key);
+            if(old != null)
+                this.weight -= old.weight;
+            if(valueWeight > this.maxWeight) {
+                // would evict everything and still not fit
+                if(this.evictionListener != null)
+                    this.evictionListener.evicted(key, value);
+                return 0;
+            }
+            this.data.put(key, new WeightedValue<V>(value, valueWeight));
+            this.weight += valueWeight;
+            // the eldest entries are first in the access order
+            int evicted = 0;
+            Iterator<Map.Entry<K, WeightedValue<V>>> eldestIterator = this.data.entrySet().iterator();
+            while(this.weight > this.maxWeight) {
+                Map.Entry<K, WeightedValue<V>> eldest = eldestIterator.next();
+                this.weight -= eldest.getValue().weight;
+                eldestIterator.remove();
+                evicted++;
+                if(this.evictionListener != null)
+                    this.evictionListener.evicted(eldest.getKey(), eldest.getValue().value);
+            }
+            return evicted;
+        }
+
+        synchronized void remove(K key) {
+            WeightedValue<V> old = this.data.remove(key);
+            if(old != null)
+                this.weight -= old.weight;
+        }
+
+        synchronized void clear() {
+            this.data.clear();
+            this.weight = 0;
+        }
+
+        synchronized int size() {
+            return this.data.size();
+        }
+
+        synchronized long weight() {
+            return this.weight;
+        }
+
+        synchronized void copyKeysTo(ArrayList<K> target) {
+            target.addAll(this.data.keySet());
+        }
+
+        synchronized void copyValuesTo(ArrayList<V> target) {
+            for(WeightedValue<V> entry : this.data.values())
+                target.add(entry.value);
+        }
+    }
+
+    private static class WeightedValue<V> {
+        final V value;
+        final long weight;
+
+        WeightedValue(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
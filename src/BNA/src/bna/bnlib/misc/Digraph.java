@@ -4,31 +4,36 @@
 
 package bna.bnlib.misc;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 
 
-/** A general digraph with valued nodes (each node has some associated data). */
+/**
+ * A general digraph with valued nodes (each node has some associated data).
+ * The data are mapped to node indices and the graph itself is represented
+ * by an IndexedDigraph.
+ */
 public class Digraph {
-    DigraphNode[] nodes;
+    private Object[] dataNodes;
+    private HashMap<Object, Integer> indices = new HashMap<Object, Integer>();
+    private IndexedDigraph graph;
     
     /** Create a digraph whose nodes (vertices) are the given items. */
     public Digraph(Object[] dataNodes) {
-        this.nodes = new DigraphNode[dataNodes.length];
+        this.dataNodes = Arrays.copyOf(dataNodes, dataNodes.length);
         for(int i = 0 ; i < dataNodes.length ; i++)
-            this.nodes[i] = new DigraphNode(dataNodes[i]);
+            this.indices.put(dataNodes[i], i);
+        this.graph = new IndexedDigraph(dataNodes.length);
     }
     
     /** Add the directed edge (uData,vData). */
     public void addEdge(Object uData, Object vData) {
-        DigraphNode u = this.findNodeByData(uData),
-                    v = this.findNodeByData(vData);
-        u.out.add(v);
-        v.in.add(u);
+        this.graph.addEdge(this.indices.get(uData), this.indices.get(vData));
     }
     
     /** Check whether the graph is acyclic. */
     public boolean isAcyclic() {
-        return this.topologicalSort() != null;
+        return this.graph.isAcyclic();
     }
     
     /**
@@ -37,51 +42,12 @@ public class Digraph {
      *         topological order. If the graph is not acyclic, returns null.
      */
     public Object[] topologicalSort() {
-        Integer markNone = 0,
-                markTemporary = 1,
-                markFinal = 2;
-        for(DigraphNode n : this.nodes)
-            n.algorithmData = markNone;
-        ArrayList order = new ArrayList();
-        for(DigraphNode n : this.nodes)
-            if(!this.topologicalSortVisit(n, order))
-                return null;
-        return order.toArray();
-    }
-    
-    private boolean topologicalSortVisit(DigraphNode n, ArrayList order) {
-        Integer markNone = 0,
-                markTemporary = 1,
-                markFinal = 2;
-        if(n.algorithmData == markTemporary)
-            return false; // not a DAG
-        else if(n.algorithmData == markNone) {
-            n.algorithmData = markTemporary;
-            for(DigraphNode parent : n.in) {
-                if(!this.topologicalSortVisit(parent, order))
-                    return false;
-            }
-            n.algorithmData = markFinal;
-            order.add(n.data);
-        }
-        return true;
-    }
-    
-    private DigraphNode findNodeByData(Object data) {
-        for(DigraphNode node : this.nodes)
-            if(node.data.equals(data))
-                return node;
-        return null;
-    }
-}
-
-class DigraphNode {
-    ArrayList<DigraphNode> in = new ArrayList<DigraphNode>();
-    ArrayList<DigraphNode> out = new ArrayList<DigraphNode>();
-    Object data; // the user data
-    Object algorithmData;
-    
-    public DigraphNode(Object data) {
-        this.data = data;
+        int[] order = this.graph.topologicalSort();
+        if(order == null)
+            return null;
+        Object[] orderedData = new Object[order.length];
+        for(int i = 0 ; i < order.length ; i++)
+            orderedData[i] = this.dataNodes[order[i]];
+        return orderedData;
     }
 }
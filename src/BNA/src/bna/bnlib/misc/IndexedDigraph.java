@@ -0,0 +1,217 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/12
+
+package bna.bnlib.misc;
+
+import java.util.Arrays;
+
+
+/**
+ * A digraph whose nodes are identified by indices 0..n-1.
+ * Parents and children of each node are held as bitsets (arrays of longs),
+ * so that reachability and acyclicity checks work with whole words instead
+ * of individual nodes and edges. The static bitset operations are shared
+ * by other index-based graph algorithms of the library.
+ */
+public class IndexedDigraph {
+    private int nodeCount;
+    private int words; // length of each bitset
+    private long[][] parents, children; // [node][bitset word]
+
+
+    /** Create a digraph with the given number of nodes and no edges. */
+    public IndexedDigraph(int nodeCount) {
+        this.nodeCount = nodeCount;
+        this.words = IndexedDigraph.bitsetLength(nodeCount);
+        this.parents = new long[nodeCount][this.words];
+        this.children = new long[nodeCount][this.words];
+    }
+
+    /** Create a copy of the given digraph. */
+    public IndexedDigraph(IndexedDigraph original) {
+        this.nodeCount = original.nodeCount;
+        this.words = original.words;
+        this.parents = new long[this.nodeCount][];
+        this.children = new long[this.nodeCount][];
+        for(int i = 0 ; i < this.nodeCount ; i++) {
+            this.parents[i] = Arrays.copyOf(original.parents[i], this.words);
+            this.children[i] = Arrays.copyOf(original.children[i], this.words);
+        }
+    }
+
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /** Add the directed edge (u,v). Adding an existing edge has no effect. */
+    public void addEdge(int u, int v) {
+        IndexedDigraph.setBit(this.children[u], v);
+        IndexedDigraph.setBit(this.parents[v], u);
+    }
+
+    /** Remove the directed edge (u,v). Removing a nonexistent edge has no effect. */
+    public void removeEdge(int u, int v) {
+        IndexedDigraph.clearBit(this.children[u], v);
+        IndexedDigraph.clearBit(this.parents[v], u);
+    }
+
+    /** Is there the directed edge (u,v)? */
+    public boolean hasEdge(int u, int v) {
+        return IndexedDigraph.testBit(this.children[u], v);
+    }
+
+    /** Get parents of the node as a bitset. The bitset is backed by the graph and mustn't be modified. */
+    public long[] getParents(int v) {
+        return this.parents[v];
+    }
+
+    /** Get children of the node as a bitset. The bitset is backed by the graph and mustn't be modified. */
+    public long[] getChildren(int u) {
+        return this.children[u];
+    }
+
+    /** Get the number of parents of the node. */
+    public int getInDegree(int v) {
+        return IndexedDigraph.cardinality(this.parents[v]);
+    }
+
+    /** Get the number of children of the node. */
+    public int getOutDegree(int u) {
+        return IndexedDigraph.cardinality(this.children[u]);
+    }
+
+    /** Is there a directed path from u to v? A node is considered reachable from itself. */
+    public boolean hasPath(int u, int v) {
+        if(u == v)
+            return true;
+        return IndexedDigraph.testBit(this.reachable(u, this.children, v), v);
+    }
+
+    /** Get the set of all (indirect) descendants of the node as a bitset. */
+    public long[] descendants(int u) {
+        return this.reachable(u, this.children, -1);
+    }
+
+    /** Get the set of all (indirect) ancestors of the node as a bitset. */
+    public long[] ancestors(int v) {
+        return this.reachable(v, this.parents, -1);
+    }
+
+    /**
+     * Compute the nodes reachable from the start node (excluding the node
+     * itself unless it lies on a cycle) along the given adjacency. Each node
+     * is expanded at most once. The search stops early when the target
+     * (if non-negative) has been reached.
+     */
+    private long[] reachable(int start, long[][] adjacency, int target) {
+        long[] visited = new long[this.words],
+               open = Arrays.copyOf(adjacency[start], this.words);
+        while(true) {
+            int node = IndexedDigraph.nextSetBit(open, 0);
+            if(node < 0)
+                return visited;
+            IndexedDigraph.clearBit(open, node);
+            IndexedDigraph.setBit(visited, node);
+            if(node == target)
+                return visited;
+            long[] next = adjacency[node];
+            for(int w = 0 ; w < this.words ; w++)
+                open[w] |= next[w] & ~visited[w];
+        }
+    }
+
+    /** Check whether the graph is acyclic. */
+    public boolean isAcyclic() {
+        return this.topologicalSort() != null;
+    }
+
+    /**
+     * Compute topological sort of the graph using a DFS-based O(n + e) algorithm.
+     * Parents of a node are visited in the order of their indices.
+     * @return Indices of the nodes in topological order. If the graph is not
+     *         acyclic, returns null.
+     */
+    public int[] topologicalSort() {
+        final byte MARK_NONE = 0,
+                   MARK_TEMPORARY = 1,
+                   MARK_FINAL = 2;
+        byte[] marks = new byte[this.nodeCount];
+        int[] order = new int[this.nodeCount];
+        int ordered = 0;
+        // explicit DFS stack, each node with the next parent to visit
+        int[] stack = new int[this.nodeCount],
+              nextParent = new int[this.nodeCount];
+        for(int root = 0 ; root < this.nodeCount ; root++) {
+            if(marks[root] != MARK_NONE)
+                continue;
+            int depth = 0;
+            stack[0] = root;
+            nextParent[0] = 0;
+            marks[root] = MARK_TEMPORARY;
+            while(depth >= 0) {
+                int node = stack[depth];
+                int parent = IndexedDigraph.nextSetBit(this.parents[node], nextParent[depth]);
+                if(parent < 0) {
+                    marks[node] = MARK_FINAL;
+                    order[ordered++] = node;
+                    depth--;
+                    continue;
+                }
+                nextParent[depth] = parent + 1;
+                if(marks[parent] == MARK_TEMPORARY)
+                    return null; // not a DAG
+                if(marks[parent] == MARK_NONE) {
+                    marks[parent] = MARK_TEMPORARY;
+                    depth++;
+                    stack[depth] = parent;
+                    nextParent[depth] = 0;
+                }
+            }
+        }
+        return order;
+    }
+
+
+    // bitset operations
+
+    /** Number of longs needed for a bitset of the given size. */
+    public static int bitsetLength(int size) {
+        return (size + 63) / 64;
+    }
+
+    public static void setBit(long[] bitset, int index) {
+        bitset[index >>> 6] |= 1L << index;
+    }
+
+    public static void clearBit(long[] bitset, int index) {
+        bitset[index >>> 6] &= ~(1L << index);
+    }
+
+    public static boolean testBit(long[] bitset, int index) {
+        return (bitset[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /** Number of set bits. */
+    public static int cardinality(long[] bitset) {
+        int count = 0;
+        for(long word : bitset)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /** Index of the first set bit at or after from (or -1 if there is none). */
+    public static int nextSetBit(long[] bitset, int from) {
+        int w = from >>> 6;
+        if(w >= bitset.length)
+            return -1;
+        long word = bitset[w] & (-1L << from);
+        while(true) {
+            if(word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if(++w == bitset.length)
+                return -1;
+            word = bitset[w];
+        }
+    }
+}
@@ -0,0 +1,157 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/13
+
+package bna.bnlib.misc;
+
+import java.util.Arrays;
+
+
+/**
+ * Binary max-heap of keys 0..capacity-1 with double priorities.
+ * The position of each key in the heap is remembered, so that the priority
+ * of a key can be changed (or the key removed) in O(log n) without searching.
+ */
+public class IndexedMaxHeap {
+    private int[] heap;       // keys in heap order
+    private int[] positions;  // position of each key in the heap or -1
+    private double[] priorities;
+    private int size = 0;
+
+
+    /** Create an empty heap for keys 0..capacity-1. */
+    public IndexedMaxHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(this.positions, -1);
+        this.priorities = new double[capacity];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean contains(int key) {
+        return this.positions[key] >= 0;
+    }
+
+    /** Get priority of the key (only valid if the heap contains the key). */
+    public double getPriority(int key) {
+        return this.priorities[key];
+    }
+
+    /** Insert the key or change its priority if it's already present. */
+    public void put(int key, double priority) {
+        if(!this.contains(key)) {
+            this.heap[this.size] = key;
+            this.positions[key] = this.size;
+            this.size++;
+            this.priorities[key] = priority;
+            this.siftUp(this.positions[key]);
+        }
+        else {
+            double oldPriority = this.priorities[key];
+            this.priorities[key] = priority;
+            if(priority > oldPriority)
+                this.siftUp(this.positions[key]);
+            else
+                this.siftDown(this.positions[key]);
+        }
+    }
+
+    /** Remove the key from the heap (if present). */
+    public void remove(int key) {
+        int position = this.positions[key];
+        if(position < 0)
+            return;
+        this.size--;
+        this.positions[key] = -1;
+        if(position == this.size)
+            return;
+        int lastKey = this.heap[this.size];
+        this.heap[position] = lastKey;
+        this.positions[lastKey] = position;
+        this.siftUp(position);
+        this.siftDown(this.positions[lastKey]);
+    }
+
+    /** Remove all keys. */
+    public void clear() {
+        for(int i = 0 ; i < this.size ; i++)
+            this.positions[this.heap[i]] = -1;
+        this.size = 0;
+    }
+
+    /** Get the key with the highest priority or -1 if the heap is empty. */
+    public int peek() {
+        return this.isEmpty() ? -1 : this.heap[0];
+    }
+
+    /** Remove and return the key with the highest priority or -1 if the heap is empty. */
+    public int pop() {
+        int top = this.peek();
+        if(top >= 0)
+            this.remove(top);
+        return top;
+    }
+
+    /**
+     * Get all keys whose priority is at least the given threshold.
+     * Only the subtrees of such keys are inspected.
+     */
+    public int[] keysAtLeast(double threshold) {
+        int[] keys = new int[this.size],
+              open = new int[this.size];
+        int found = 0, openCount = 0;
+        if(this.size > 0)
+            open[openCount++] = 0;
+        while(openCount > 0) {
+            int position = open[--openCount];
+            int key = this.heap[position];
+            if(this.priorities[key] < threshold)
+                continue;
+            keys[found++] = key;
+            for(int child = 2 * position + 1 ; child <= 2 * position + 2 && child < this.size ; child++)
+                open[openCount++] = child;
+        }
+        return Arrays.copyOf(keys, found);
+    }
+
+    private void siftUp(int position) {
+        int key = this.heap[position];
+        while(position > 0) {
+            int parent = (position - 1) / 2;
+            int parentKey = this.heap[parent];
+            if(this.priorities[parentKey] >= this.priorities[key])
+                break;
+            this.heap[position] = parentKey;
+            this.positions[parentKey] = position;
+            position = parent;
+        }
+        this.heap[position] = key;
+        this.positions[key] = position;
+    }
+
+    private void siftDown(int position) {
+        int key = this.heap[position];
+        while(true) {
+            int child = 2 * position + 1;
+            if(child >= this.size)
+                break;
+            if(child + 1 < this.size && this.priorities[this.heap[child + 1]] > this.priorities[this.heap[child]])
+                child++;
+            int childKey = this.heap[child];
+            if(this.priorities[childKey] <= this.priorities[key])
+                break;
+            this.heap[position] = childKey;
+            this.positions[childKey] = position;
+            position = child;
+        }
+        this.heap[position] = key;
+        this.positions[key] = position;
+    }
+}
@@ -1,6 +1,8 @@
 /**
  * Classes that are inconvenient to put elsewhere.
- * Includes LRU cache implementation, multipurpose toolkit, a general digraph
- * representation and ThreadLocalRandom implementation using WeakHashMap.
+ * Includes LRU cache implementations (plain and thread-safe weighted one),
+ * multipurpose toolkit, a general digraph representation (on top of a bitset-based
+ * digraph of indexed nodes), an indexed max-heap and ThreadLocalRandom
+ * implementation using WeakHashMap.
  */
 package bna.bnlib.misc;
\ No newline at end of file
@@ -61,7 +61,7 @@ public class DatasetViewTable extends javax.swing.JTable {
             if(!(i < dataRowCount))
                 break;
             for(int j = 0 ; j < variables.length ; j++)
-                data[i][j] = variables[j].getValues()[iSample[j]];
+                data[i][j] = (iSample[j] == Dataset.MISSING_VALUE) ? "?" : variables[j].getValues()[iSample[j]];
             i++;
         }
         
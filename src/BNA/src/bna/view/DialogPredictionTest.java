@@ -283,6 +283,10 @@ public class DialogPredictionTest extends javax.swing.JDialog {
             notifyTestingStarted();
             int i = 0;
             for(int[] sample : this.dataset.getDataReadOnly()) {
+                if(sample[targetVarIndexInDataset] == Dataset.MISSING_VALUE) {
+                    notifyTestingProgress(++i / (double)this.dataset.getSize());
+                    continue; // nothing to compare the prediction with
+                }
                 // assemble a query in which everything except targetVariable is evidence, ie. P(Target | E = e)
                 String query = this.getQueryString(targetVar, datasetVars, sample);
                 // make a prediction via sampling
@@ -305,7 +309,7 @@ public class DialogPredictionTest extends javax.swing.JDialog {
                     .append(" | ");
             boolean firstEvidence = true;
             for(int i = 0 ; i < datasetVars.length ; i++) {
-                if(datasetVars[i].equals(targetVar))
+                if(datasetVars[i].equals(targetVar) || datasetSample[i] == Dataset.MISSING_VALUE)
                     continue;
                 if(!firstEvidence)
                     query.append(", ");
@@ -161,7 +161,7 @@ public class DialogStructureLearning extends javax.swing.JDialog implements Acti
 
     private boolean verifyInputs() {
         int selectedScoringMethod = this.comboBoxMethod.getSelectedIndex();
-        if(selectedScoringMethod != 0 && selectedScoringMethod != 1) {
+        if(selectedScoringMethod < 0 || selectedScoringMethod > 4) {
             String msg = "No scoring method is selected.";
             JOptionPane.showMessageDialog(this, msg, "Incomplete parameters", JOptionPane.ERROR_MESSAGE);
             return false;
@@ -217,7 +217,7 @@ public class DialogStructureLearning extends javax.swing.JDialog implements Acti
     }
     
     private void notifyLearningProgess(int currentRun, StructureLearningStatistics statistics) {
-        this.labelStatus.setText(String.format("computing run no %d...", currentRun + 1));
+        this.labelStatus.setText(String.format("%d run(s) finished...", currentRun));
         this.updateFrequencyMatrix(statistics.getEdgeCountMatrix());
         this.setBestScoringNetworks(statistics.getBestScoringNetworks(), statistics.getBestScoreSoFar());
     }
@@ -383,7 +383,7 @@ public class DialogStructureLearning extends javax.swing.JDialog implements Acti
 
         jLabel2.setText("Number of runs");
 
-        comboBoxMethod.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "BIC score", "Bayesian score" }));
+        comboBoxMethod.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "BIC score", "Bayesian score", "AIC score", "fNML score", "qNML score" }));
         comboBoxMethod.addItemListener(new java.awt.event.ItemListener() {
             public void itemStateChanged(java.awt.event.ItemEvent evt) {
                 comboBoxMethodItemStateChanged(evt);
@@ -742,23 +742,37 @@ public class DialogStructureLearning extends javax.swing.JDialog implements Acti
                 fillStructuralConstraints(constraints);
                 learningController = new LearningController(iterationCount);
                 BayesianNetwork bnEmpty = new BayesianNetwork(VARIABLES);
-                DecomposableScoringMethod scoringMethod;
+                final DecomposableScoringMethod scoringMethod;
                 if(selectedScoringMethodIndex == 0)
                     scoringMethod = new BICScoringMethod(cachedDataset);
-                else
+                else if(selectedScoringMethodIndex == 1)
                     scoringMethod = new BayesianScoringMethod(cachedDataset, equivalentSampleSize);
-                StructureLearningStatistics statistics = new StructureLearningStatistics(VARIABLES);
-
-                for(int run = 0 ; run < runCount && !learningController.getStopFlag(); run++) {
-                    notifyLearningProgess(run, statistics);
-                    BayesianNetwork bnInitial = bnEmpty.copyEmptyStructure();
-                    StructureLearningAlgorithm learningAlgorithm = new TabuSearchLearningAlgorithm(scoringMethod, tabulistAbssize, randomRestartStepcount);
-                    BayesianNetwork resultBN = learningAlgorithm.learn(bnInitial, learningController, constraints);
-                    if(learningController.getStopFlag() == true)
-                        break;
-                    double resultScore =  scoringMethod.absoluteScore(resultBN);
-                    statistics.registerLearntNetwork(resultBN, resultScore);
-                }
+                else if(selectedScoringMethodIndex == 2)
+                    scoringMethod = new AICScoringMethod(cachedDataset);
+                else if(selectedScoringMethodIndex == 3)
+                    scoringMethod = new FNMLScoringMethod(cachedDataset);
+                else
+                    scoringMethod = new QNMLScoringMethod(cachedDataset);
+                
+                // independent runs in parallel sharing the scoring method (and its caches)
+                final int TABULIST_SIZE = tabulistAbssize,
+                          RANDOM_RESTART_STEPS = randomRestartStepcount;
+                StructureLearningAlgorithmFactory factory = new StructureLearningAlgorithmFactory() {
+                    @Override
+                    public StructureLearningAlgorithm createLearningAlgorithm(int run) {
+                        return new TabuSearchLearningAlgorithm(scoringMethod, TABULIST_SIZE, RANDOM_RESTART_STEPS);
+                    }
+                };
+                StructureLearningObserver observer = new StructureLearningObserver() {
+                    @Override
+                    public void notifyRunFinished(int finishedRuns, StructureLearningStatistics statistics) {
+                        notifyLearningProgess(finishedRuns, statistics);
+                    }
+                };
+                notifyLearningProgess(0, new StructureLearningStatistics(VARIABLES));
+                ParallelStructureLearning parallelLearning = new ParallelStructureLearning(scoringMethod, factory,
+                                                                                           Runtime.getRuntime().availableProcessors());
+                StructureLearningStatistics statistics = parallelLearning.learn(bnEmpty, learningController, constraints, runCount, observer);
                 notifyLearningProgess(runCount, statistics);
                 notifyLearningFinished(!learningController.getStopFlag());
             }
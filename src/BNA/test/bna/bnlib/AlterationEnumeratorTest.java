@@ -0,0 +1,89 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib;
+
+import bna.bnlib.learning.StructuralConstraints;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class AlterationEnumeratorTest {
+
+    public AlterationEnumeratorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /** The actions as strings (AlterationAction.equals doesn't tell the kinds of actions apart). */
+    private static HashSet<String> toSet(Iterable<AlterationAction> actions) {
+        HashSet<String> set = new HashSet<String>();
+        for(AlterationAction action : actions) {
+            String key = action.getClass().getSimpleName() + "(" + action.getParentVariable().getName()
+                       + "," + action.getChildVariable().getName() + ")";
+            assertTrue(set.add(key)); // no duplicates
+        }
+        return set;
+    }
+
+    /**
+     * Test of apply method, the incrementally updated enumerator must offer
+     * the same alterations as an enumerator created from scratch after any
+     * sequence of random alterations and their undos.
+     */
+    @Test
+    public void testApply_RandomWalk() {
+        System.out.println("apply_RandomWalk");
+        Random rand = new Random(17);
+        Variable[] vars = new Variable[12];
+        for(int i = 0 ; i < vars.length ; i++)
+            vars[i] = new Variable("V" + i, new String[]{"0", "1"});
+        BayesianNetwork bn = new BayesianNetwork(vars);
+        StructuralConstraints constraints = new StructuralConstraints(vars);
+        constraints.setMaxParentCount(3);
+        constraints.setConnectionAllowed(vars[0], vars[1], false);
+        constraints.disallowBeChild(vars[2]);
+        AlterationEnumerator enumerator = new AlterationEnumerator(bn, constraints);
+        ArrayList<AlterationAction> taken = new ArrayList<AlterationAction>();
+        for(int step = 0 ; step < 500 ; step++) {
+            AlterationAction action;
+            if(!taken.isEmpty() && rand.nextDouble() < 0.3)
+                action = taken.remove(taken.size() - 1).getUndoAction();
+            else {
+                action = enumerator.getRandomAlteration(rand);
+                taken.add(action);
+            }
+            AlterationEnumerator before = new AlterationEnumerator(bn, constraints);
+            action.apply(bn);
+            Variable[] recomputed = enumerator.apply(action);
+            AlterationEnumerator expected = new AlterationEnumerator(bn, constraints);
+            assertEquals(expected.getAlterationCount(), enumerator.getAlterationCount());
+            assertEquals(AlterationEnumeratorTest.toSet(expected), AlterationEnumeratorTest.toSet(enumerator));
+            // the alterations of the children not reported as recomputed haven't changed
+            HashSet<Variable> recomputedSet = new HashSet<Variable>();
+            for(Variable var : recomputed)
+                recomputedSet.add(var);
+            for(Variable var : vars) {
+                HashSet<String> actual = AlterationEnumeratorTest.toSet(enumerator.getAlterationsOfChild(var));
+                assertEquals(AlterationEnumeratorTest.toSet(expected.getAlterationsOfChild(var)), actual);
+                if(!recomputedSet.contains(var))
+                    assertEquals(AlterationEnumeratorTest.toSet(before.getAlterationsOfChild(var)), actual);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/02
+
+package bna.bnlib;
+
+import bna.bnlib.misc.CacheStatistics;
+import bna.bnlib.misc.ConcurrentLRUCache;
+import bna.bnlib.misc.LRUCache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class ConcurrentLRUCacheTest {
+
+    public ConcurrentLRUCacheTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /**
+     * With a single segment the cache has to behave exactly like a plain LRU cache.
+     */
+    @Test
+    public void testSingleSegmentAsLRU() {
+        System.out.println("single segment");
+        Random rand = new Random();
+        final int POSSIBLE_VALUES_COUNT = 50;
+        final int OPERATION_COUNT = 20 * 1000;
+        final int CAPACITY = POSSIBLE_VALUES_COUNT / 2;
+
+        ConcurrentLRUCache<Integer,String> cache = new ConcurrentLRUCache<Integer,String>(CAPACITY, 1);
+        LRUCache<Integer,String> referentialCache = new LRUCache<Integer,String>(CAPACITY);
+        for(int i = 0 ; i < OPERATION_COUNT ; i++) {
+            Integer k = rand.nextInt(POSSIBLE_VALUES_COUNT);
+            String v = String.valueOf(k);
+            String referentialValue = referentialCache.get(k);
+            if(referentialValue != null)
+                assertEquals(referentialValue, cache.get(k));
+            else {
+                cache.put(k, v);
+                referentialCache.put(k, v);
+            }
+            assertEquals(referentialCache.size(), cache.size());
+        }
+        HashSet<String> values = new HashSet<String>(),
+                        referentialValues = new HashSet<String>();
+        for(String v : cache)
+            values.add(v);
+        for(String v : referentialCache)
+            referentialValues.add(v);
+        assertEquals(referentialValues, values);
+    }
+
+    /**
+     * Eviction has to respect weights of the values rather than the number of entries.
+     */
+    @Test
+    public void testWeightedEviction() {
+        System.out.println("weighted eviction");
+        ConcurrentLRUCache.Weigher<String> lengthWeigher = new ConcurrentLRUCache.Weigher<String>() {
+            @Override
+            public long weigh(String value) {
+                return value.length();
+            }
+        };
+        ConcurrentLRUCache<Integer,String> cache = new ConcurrentLRUCache<Integer,String>(10, 1, lengthWeigher);
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        assertEquals(8, cache.weight());
+        cache.get(1); // now 2 is the least recently used
+        cache.put(3, "cccc");
+        assertNull(cache.get(2));
+        assertEquals("aaaa", cache.get(1));
+        assertEquals("cccc", cache.get(3));
+        cache.put(4, "too heavy to be cached");
+        assertNull(cache.get(4));
+        assertTrue(cache.weight() <= cache.capacity());
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.evictions);
+        assertEquals(3, statistics.hits);
+        assertEquals(2, statistics.misses);
+    }
+
+    /**
+     * Test of peek method and of the eviction listener, peek mustn't count
+     * as a hit or a miss and each evicted entry must be reported.
+     */
+    @Test
+    public void testPeekAndEvictionListener() {
+        System.out.println("peek and eviction listener");
+        final ArrayList<Integer> evicted = new ArrayList<Integer>();
+        ConcurrentLRUCache.EvictionListener<Integer,String> listener = new ConcurrentLRUCache.EvictionListener<Integer,String>() {
+            @Override
+            public void evicted(Integer key, String value) {
+                assertEquals(String.valueOf(key), value);
+                evicted.add(key);
+            }
+        };
+        ConcurrentLRUCache<Integer,String> cache = new ConcurrentLRUCache<Integer,String>(2, 1, null, listener);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        assertEquals("1", cache.peek(1)); // now 2 is the least recently used
+        assertNull(cache.peek(3));
+        cache.put(3, "3");
+        assertEquals(Arrays.asList(2), evicted);
+        assertNull(cache.peek(2));
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(0, statistics.hits);
+        assertEquals(0, statistics.misses);
+        assertEquals(1, statistics.evictions);
+    }
+
+    /**
+     * Concurrent access mustn't break the capacity bound nor lose counted lookups.
+     */
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        System.out.println("concurrent access");
+        final int THREAD_COUNT = 4;
+        final int OPERATION_COUNT = 20 * 1000;
+        final int CAPACITY = 100;
+        final ConcurrentLRUCache<Integer,Integer> cache = new ConcurrentLRUCache<Integer,Integer>(CAPACITY, 8);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>(); // the first failure of a thread
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for(int t = 0 ; t < THREAD_COUNT ; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random rand = new Random();
+                        for(int i = 0 ; i < OPERATION_COUNT ; i++) {
+                            Integer k = rand.nextInt(4 * CAPACITY);
+                            Integer v = cache.get(k);
+                            if(v == null)
+                                cache.put(k, k);
+                            else if(!v.equals(k))
+                                throw new AssertionError("Value mapped to a wrong key.");
+                        }
+                    }
+                    catch(Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for(Thread t : threads)
+            t.join();
+        assertNull(failure.get()); // no thread failed
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(THREAD_COUNT * OPERATION_COUNT, statistics.hits + statistics.misses);
+        assertTrue(cache.size() <= CAPACITY);
+    }
+}
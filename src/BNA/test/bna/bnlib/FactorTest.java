@@ -221,4 +221,31 @@ public class FactorTest {
         for(int[] assignment : factorSum)
             assertEquals(factorSum.getProbability(assignment), 1, this.DOUBLE_EPS);
     }
+    
+    /**
+     * Test of reorderScope method, of class Factor.
+     */
+    @Test
+    public void testReorderScope() {
+        System.out.println("reorderScope");
+        Variable var1 = new Variable("V1", new String[] {"a", "b", "c"}),
+                 var2 = new Variable("V2", new String[] {"k", "l"}),
+                 var3 = new Variable("V3", new String[] {"x", "y"});
+        double[] values = new double[3 * 2 * 2];
+        for(int i = 0 ; i < values.length ; i++)
+            values[i] = i;
+        Factor factor = new Factor(new Variable[] {var1, var2, var3}, values);
+        Factor reordered = factor.reorderScope(new Variable[] {var3, var1, var2});
+        for(int[] assignment : factor) {
+            int[] reorderedAssignment = {assignment[2], assignment[0], assignment[1]};
+            assertEquals(factor.getProbability(assignment), reordered.getProbability(reorderedAssignment), this.DOUBLE_EPS);
+        }
+        assertSame(factor, factor.reorderScope(new Variable[] {var1, var2, var3}));
+    }
+    
+    @Test(expected=BNLibIllegalArgumentException.class)
+    public void testReorderScope_NotAPermutation() {
+        System.out.println("reorderScope - not a permutation");
+        this.rainGivenCloudyFactor.reorderScope(new Variable[] {this.rainVariable});
+    }
 }
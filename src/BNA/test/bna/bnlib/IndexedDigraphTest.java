@@ -0,0 +1,124 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib;
+
+import bna.bnlib.misc.IndexedDigraph;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class IndexedDigraphTest {
+    /** More nodes than fit into a single word of a bitset. */
+    private static final int NODE_COUNT = 70;
+
+    public IndexedDigraphTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /** Random graph with the given probability of each edge, the edges are set in both representations. */
+    private static IndexedDigraph randomGraph(Random rand, boolean[][] adjacency, double edgeProbability, boolean acyclic) {
+        IndexedDigraph graph = new IndexedDigraph(NODE_COUNT);
+        for(int u = 0 ; u < NODE_COUNT ; u++) {
+            for(int v = 0 ; v < NODE_COUNT ; v++) {
+                // edges of an acyclic graph only go from lower to higher indices
+                if(u != v && (!acyclic || u < v) && rand.nextDouble() < edgeProbability) {
+                    adjacency[u][v] = true;
+                    graph.addEdge(u, v);
+                }
+            }
+        }
+        return graph;
+    }
+
+    /** Reachability matrix by the Floyd-Warshall algorithm (a node reaches itself only over a cycle). */
+    private static boolean[][] transitiveClosure(boolean[][] adjacency) {
+        boolean[][] closure = new boolean[NODE_COUNT][];
+        for(int u = 0 ; u < NODE_COUNT ; u++)
+            closure[u] = adjacency[u].clone();
+        for(int k = 0 ; k < NODE_COUNT ; k++)
+            for(int u = 0 ; u < NODE_COUNT ; u++)
+                if(closure[u][k])
+                    for(int v = 0 ; v < NODE_COUNT ; v++)
+                        closure[u][v] |= closure[k][v];
+        return closure;
+    }
+
+    /**
+     * Test of hasPath, descendants and ancestors methods, they must agree
+     * with the transitive closure of the graph.
+     */
+    @Test
+    public void testReachability() {
+        System.out.println("reachability");
+        Random rand = new Random(5);
+        for(int g = 0 ; g < 10 ; g++) {
+            boolean[][] adjacency = new boolean[NODE_COUNT][NODE_COUNT];
+            IndexedDigraph graph = IndexedDigraphTest.randomGraph(rand, adjacency, 0.02, g % 2 == 0);
+            boolean[][] closure = IndexedDigraphTest.transitiveClosure(adjacency);
+            for(int u = 0 ; u < NODE_COUNT ; u++) {
+                long[] descendants = graph.descendants(u),
+                       ancestors = graph.ancestors(u);
+                for(int v = 0 ; v < NODE_COUNT ; v++) {
+                    assertEquals(adjacency[u][v], graph.hasEdge(u, v));
+                    assertEquals(u == v || closure[u][v], graph.hasPath(u, v));
+                    assertEquals(closure[u][v], IndexedDigraph.testBit(descendants, v));
+                    assertEquals(closure[v][u], IndexedDigraph.testBit(ancestors, v));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of topologicalSort and isAcyclic methods, the order must respect
+     * all edges of an acyclic graph and a cycle must be detected.
+     */
+    @Test
+    public void testTopologicalSort() {
+        System.out.println("topologicalSort");
+        Random rand = new Random(9);
+        boolean[][] adjacency = new boolean[NODE_COUNT][NODE_COUNT];
+        IndexedDigraph graph = IndexedDigraphTest.randomGraph(rand, adjacency, 0.05, true);
+        int[] order = graph.topologicalSort();
+        assertNotNull(order);
+        assertTrue(graph.isAcyclic());
+        int[] positions = new int[NODE_COUNT];
+        boolean[] seen = new boolean[NODE_COUNT];
+        for(int i = 0 ; i < NODE_COUNT ; i++) {
+            assertFalse(seen[order[i]]);
+            seen[order[i]] = true;
+            positions[order[i]] = i;
+        }
+        for(int u = 0 ; u < NODE_COUNT ; u++)
+            for(int v = 0 ; v < NODE_COUNT ; v++)
+                if(adjacency[u][v])
+                    assertTrue(positions[u] < positions[v]);
+        // close a long cycle 0 -> 1 -> ... -> 69 -> 0
+        for(int u = 0 ; u + 1 < NODE_COUNT ; u++)
+            graph.addEdge(u, u + 1);
+        assertTrue(graph.isAcyclic());
+        graph.addEdge(NODE_COUNT - 1, 0);
+        assertNull(graph.topologicalSort());
+        assertFalse(graph.isAcyclic());
+        IndexedDigraph copy = new IndexedDigraph(graph);
+        graph.removeEdge(NODE_COUNT - 1, 0);
+        assertTrue(graph.isAcyclic());
+        assertFalse(copy.isAcyclic()); // the copy is independent
+        assertEquals(IndexedDigraph.cardinality(graph.getParents(1)), graph.getInDegree(1));
+        assertEquals(IndexedDigraph.cardinality(graph.getChildren(0)), graph.getOutDegree(0));
+    }
+}
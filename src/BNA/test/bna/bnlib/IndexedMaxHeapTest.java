@@ -0,0 +1,119 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib;
+
+import bna.bnlib.misc.IndexedMaxHeap;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class IndexedMaxHeapTest {
+    private static final int CAPACITY = 50;
+
+    public IndexedMaxHeapTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /** Key of the highest priority in the reference (null stands for a missing key) or -1. */
+    private static int referenceMax(Double[] reference) {
+        int best = -1;
+        for(int key = 0 ; key < reference.length ; key++)
+            if(reference[key] != null && (best < 0 || reference[key] > reference[best]))
+                best = key;
+        return best;
+    }
+
+    /**
+     * Test of put and remove methods, the heap must keep the key of the highest
+     * priority on the top after random insertions, priority updates (both
+     * increases and decreases) and removals.
+     */
+    @Test
+    public void testPutRemove_HeapOrder() {
+        System.out.println("put and remove heap order");
+        Random rand = new Random(23);
+        IndexedMaxHeap heap = new IndexedMaxHeap(CAPACITY);
+        Double[] reference = new Double[CAPACITY];
+        int size = 0;
+        for(int op = 0 ; op < 20 * 1000 ; op++) {
+            int key = rand.nextInt(CAPACITY);
+            if(rand.nextDouble() < 0.3) {
+                heap.remove(key);
+                if(reference[key] != null)
+                    size--;
+                reference[key] = null;
+            }
+            else {
+                double priority = rand.nextInt(100); // ties are likely
+                heap.put(key, priority);
+                if(reference[key] == null)
+                    size++;
+                reference[key] = priority;
+            }
+            assertEquals(size, heap.size());
+            assertEquals(reference[key] != null, heap.contains(key));
+            int top = heap.peek(),
+                expectedTop = IndexedMaxHeapTest.referenceMax(reference);
+            if(expectedTop < 0)
+                assertEquals(-1, top);
+            else
+                assertEquals(reference[expectedTop], heap.getPriority(top), 0.0);
+        }
+    }
+
+    /**
+     * Test of pop and keysAtLeast methods, the keys must be popped in order
+     * of non-increasing priorities.
+     */
+    @Test
+    public void testPop_Order() {
+        System.out.println("pop order");
+        Random rand = new Random(29);
+        IndexedMaxHeap heap = new IndexedMaxHeap(CAPACITY);
+        double[] priorities = new double[CAPACITY];
+        for(int key = 0 ; key < CAPACITY ; key++) {
+            priorities[key] = rand.nextDouble();
+            heap.put(key, priorities[key]);
+        }
+        for(int key = 0 ; key < CAPACITY ; key += 3) {
+            priorities[key] = rand.nextDouble();
+            heap.put(key, priorities[key]);
+        }
+        double threshold = 0.5;
+        int[] keys = heap.keysAtLeast(threshold);
+        Arrays.sort(keys);
+        int expectedCount = 0;
+        for(int key = 0 ; key < CAPACITY ; key++) {
+            if(priorities[key] >= threshold) {
+                assertTrue(Arrays.binarySearch(keys, key) >= 0);
+                expectedCount++;
+            }
+        }
+        assertEquals(expectedCount, keys.length);
+        double previous = Double.POSITIVE_INFINITY;
+        for(int i = 0 ; i < CAPACITY ; i++) {
+            int key = heap.pop();
+            assertTrue(priorities[key] <= previous);
+            previous = priorities[key];
+            assertFalse(heap.contains(key));
+        }
+        assertTrue(heap.isEmpty());
+        assertEquals(-1, heap.pop());
+    }
+}
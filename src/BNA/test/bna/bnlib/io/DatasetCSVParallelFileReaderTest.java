@@ -0,0 +1,148 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.io;
+
+import bna.bnlib.*;
+import bna.bnlib.learning.Dataset;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class DatasetCSVParallelFileReaderTest {
+    private static final String HEADER = "A(a0|a1),B(b0|b1|b2),C(c0|c1)";
+    private static final String[] LINE_ENDS = {"\n", "\r\n", "\r"};
+    /** Sizes of the chunks, the small ones split the file at many places. */
+    private static final int[] CHUNK_BYTES = {1, 7, 16, 100, DatasetCSVParallelFileReader.DEFAULT_CHUNK_BYTES};
+
+    public DatasetCSVParallelFileReaderTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /** Write the header and the lines, each line is ended by a random line end. */
+    private static File writeCSVFile(String[] lines, Random rand) throws IOException {
+        File csvFile = File.createTempFile("bnlib-test", ".csv");
+        csvFile.deleteOnExit();
+        StringBuilder text = new StringBuilder(HEADER).append(LINE_ENDS[rand.nextInt(LINE_ENDS.length)]);
+        for(String line : lines)
+            text.append(line).append(LINE_ENDS[rand.nextInt(LINE_ENDS.length)]);
+        FileOutputStream out = new FileOutputStream(csvFile);
+        out.write(text.toString().getBytes());
+        out.close();
+        return csvFile;
+    }
+
+    /** Random lines of values including missing values and blank lines. */
+    private static String[] randomLines(Random rand, int count) {
+        String[][] values = {{"a0", "a1", "?"}, {"b0", "b1", "b2", "?"}, {"c0", "c1", "?"}};
+        String[] lines = new String[count];
+        for(int l = 0 ; l < count ; l++) {
+            if(rand.nextDouble() < 0.05) {
+                lines[l] = "";
+                continue;
+            }
+            StringBuilder line = new StringBuilder();
+            for(int i = 0 ; i < values.length ; i++) {
+                if(i > 0)
+                    line.append(',');
+                line.append(values[i][rand.nextInt(values[i].length)]);
+            }
+            lines[l] = line.toString();
+        }
+        return lines;
+    }
+
+    /** Message of the exception thrown when loading the file (or null if it loads). */
+    private static String loadingError(DatasetFileReader reader) {
+        try {
+            reader.load();
+            return null;
+        }
+        catch(BNLibIOException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    /**
+     * Test of load method, the dataset must be the same as the one read
+     * by DatasetCSVFileReader for any size of the chunks and number of
+     * threads (with '\n', '\r' and "\r\n" line ends and missing values).
+     */
+    @Test
+    public void testLoad_SameAsSequential() throws IOException {
+        System.out.println("load_SameAsSequential");
+        Random rand = new Random(3);
+        File csvFile = DatasetCSVParallelFileReaderTest.writeCSVFile(DatasetCSVParallelFileReaderTest.randomLines(rand, 300), rand);
+        Dataset expected = new DatasetCSVFileReader(csvFile.getPath(), ",").load();
+        assertTrue(expected.hasMissingValues());
+        int[] threadcounts = {1, 4};
+        for(int chunkBytes : CHUNK_BYTES) {
+            for(int threadcount : threadcounts) {
+                Dataset actual = new DatasetCSVParallelFileReader(csvFile.getPath(), ",", threadcount, chunkBytes).load();
+                assertEquals(expected.getVariables().length, actual.getVariables().length);
+                for(int i = 0 ; i < expected.getVariables().length ; i++) {
+                    assertEquals(expected.getVariables()[i].getName(), actual.getVariables()[i].getName());
+                    assertArrayEquals(expected.getVariables()[i].getValues(), actual.getVariables()[i].getValues());
+                }
+                List<int[]> expectedRows = expected.getDataReadOnly(),
+                            actualRows = actual.getDataReadOnly();
+                assertEquals(expectedRows.size(), actualRows.size());
+                for(int r = 0 ; r < expectedRows.size() ; r++)
+                    assertArrayEquals(expectedRows.get(r), actualRows.get(r));
+                assertEquals(expected.hasMissingValues(), actual.hasMissingValues());
+            }
+        }
+        csvFile.delete();
+    }
+
+    /**
+     * Test of load method, an invalid value or number of fields must be
+     * reported with the same message (and line number) as by DatasetCSVFileReader.
+     */
+    @Test
+    public void testLoad_SameErrors() throws IOException {
+        System.out.println("load_SameErrors");
+        Random rand = new Random(5);
+        String[] invalidLines = {"a0,b9,c1", "a0,b1", "a2,b0,c0,c1"};
+        for(String invalidLine : invalidLines) {
+            String[] lines = DatasetCSVParallelFileReaderTest.randomLines(rand, 60);
+            lines[37] = invalidLine;
+            File csvFile = DatasetCSVParallelFileReaderTest.writeCSVFile(lines, rand);
+            String expected = DatasetCSVParallelFileReaderTest.loadingError(new DatasetCSVFileReader(csvFile.getPath(), ","));
+            assertNotNull(expected);
+            for(int chunkBytes : CHUNK_BYTES) {
+                String actual = DatasetCSVParallelFileReaderTest.loadingError(
+                        new DatasetCSVParallelFileReader(csvFile.getPath(), ",", 3, chunkBytes));
+                assertEquals(expected, actual);
+            }
+            csvFile.delete();
+        }
+    }
+
+    /**
+     * Test of constructor, the number of threads has to be positive.
+     */
+    @Test(expected=BNLibIllegalArgumentException.class)
+    public void testConstructor_InvalidThreadcount() {
+        System.out.println("constructor_InvalidThreadcount");
+        new DatasetCSVParallelFileReader("data.csv", ",", 0);
+    }
+}
@@ -0,0 +1,129 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.CacheStatistics;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class CachedDatasetTest {
+
+    private Variable[] vars;
+    private Dataset dataset;
+
+
+    public CachedDatasetTest() {
+        this.vars = new Variable[] {
+            new Variable("A", new String[]{"a0", "a1"}),
+            new Variable("B", new String[]{"b0", "b1", "b2"}),
+            new Variable("C", new String[]{"c0", "c1"}),
+            new Variable("D", new String[]{"d0", "d1"}),
+        };
+        this.dataset = new Dataset(this.vars);
+        Random rand = new Random(42);
+        for(int r = 0 ; r < 1000 ; r++) {
+            int[] record = new int[this.vars.length];
+            for(int i = 0 ; i < record.length ; i++)
+                record[i] = rand.nextInt(this.vars[i].getCardinality());
+            this.dataset.addRecord(record);
+        }
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    private void assertSameCounts(Factor expected, Factor actual) {
+        assertArrayEquals(expected.getScope(), actual.getScope());
+        for(int i = 0 ; i < expected.getCardinality() ; i++)
+            assertEquals(expected.getProbability(i), actual.getProbability(i), 1e-9);
+    }
+
+    /**
+     * Test of computeFactor method, a missing factor has to be derived from
+     * the smallest cached superset without counting the superset lookup
+     * as a cache hit.
+     */
+    @Test
+    public void testComputeFactor_DerivedFromSuperset() {
+        System.out.println("computeFactor_DerivedFromSuperset");
+        CachedDataset cached = new CachedDataset(this.dataset, 100);
+        cached.computeFactor(new Variable[] {this.vars[0], this.vars[1], this.vars[2], this.vars[3]});
+        cached.computeFactor(new Variable[] {this.vars[2], this.vars[1], this.vars[0]});
+        cached.computeFactor(new Variable[] {this.vars[3]});
+        assertEquals(2, cached.getDerivedFactorCount());
+        Variable[] scope = {this.vars[1], this.vars[0]};
+        this.assertSameCounts(this.dataset.computeFactor(scope), cached.computeFactor(scope));
+        assertEquals(3, cached.getDerivedFactorCount());
+        CacheStatistics statistics = cached.getFactorCacheStatistics();
+        assertEquals(0, statistics.hits);
+        assertEquals(4, statistics.misses);
+        this.assertSameCounts(this.dataset.computeFactor(scope), cached.computeFactor(scope));
+        assertEquals(1, cached.getFactorCacheStatistics().hits);
+    }
+
+    /**
+     * Test of computeFactor method with a small cache, the factors must be
+     * correct after the supersets they could be derived from are evicted.
+     */
+    @Test
+    public void testComputeFactor_EvictedSupersets() {
+        System.out.println("computeFactor_EvictedSupersets");
+        CachedDataset cached = new CachedDataset(this.dataset, 2);
+        Random rand = new Random(7);
+        for(int q = 0 ; q < 200 ; q++) {
+            Variable[] scope = new Variable[1 + rand.nextInt(this.vars.length)];
+            int first = rand.nextInt(this.vars.length);
+            for(int i = 0 ; i < scope.length ; i++)
+                scope[i] = this.vars[(first + i) % this.vars.length];
+            this.assertSameCounts(this.dataset.computeFactor(scope), cached.computeFactor(scope));
+        }
+        assertTrue(cached.getDerivedFactorCount() > 0);
+        assertTrue(cached.getFactorCacheStatistics().evictions > 0);
+    }
+
+    /**
+     * Test of addRecord method, cached values must not be returned after
+     * records are appended, registered counts must be kept up to date.
+     */
+    @Test
+    public void testAddRecord() {
+        System.out.println("addRecord");
+        Dataset expected = new Dataset(this.vars);
+        CachedDataset cached = new CachedDataset(new Dataset(this.vars), 100);
+        Variable[] registered = {this.vars[1], this.vars[0]},
+                   scope = {this.vars[2], this.vars[3]},
+                   set1 = {this.vars[0]},
+                   set2 = {this.vars[1], this.vars[3]};
+        cached.registerCounts(registered);
+        Random rand = new Random(3);
+        for(int batch = 0 ; batch < 10 ; batch++) {
+            for(int r = 0 ; r < 1 + batch * 10 ; r++) {
+                int[] record = new int[this.vars.length];
+                for(int i = 0 ; i < record.length ; i++)
+                    record[i] = rand.nextInt(this.vars[i].getCardinality());
+                expected.addRecord(record);
+                cached.addRecord(record);
+            }
+            this.assertSameCounts(expected.computeFactor(registered), cached.computeFactor(registered));
+            this.assertSameCounts(expected.computeFactor(scope), cached.computeFactor(scope));
+            this.assertSameCounts(expected.computeFactor(scope), cached.computeFactor(scope)); // cached now
+            assertEquals(expected.mutualInformation(set1, set2), cached.mutualInformation(set1, set2), 1e-12);
+        }
+        assertEquals(10, cached.getFactorCacheStatistics().hits);
+    }
+}
@@ -0,0 +1,81 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/18
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class ConditionalIndependenceTestsTest {
+
+    private Variable[] vars;
+    private Dataset dataset;
+
+
+    public ConditionalIndependenceTestsTest() {
+        this.vars = new Variable[] {
+            new Variable("A", new String[]{"a0", "a1"}),
+            new Variable("B", new String[]{"b0", "b1", "b2"}),
+            new Variable("C", new String[]{"c0", "c1"}),
+            new Variable("D", new String[]{"d0", "d1"}),
+        };
+        // B and C depend on A (so they are independent given A), D is independent
+        this.dataset = new Dataset(this.vars);
+        Random rand = new Random(7);
+        for(int r = 0 ; r < 3000 ; r++) {
+            int a = rand.nextInt(2),
+                b = rand.nextDouble() < 0.8 ? a : rand.nextInt(3),
+                c = rand.nextDouble() < 0.8 ? a : 1 - a,
+                d = rand.nextInt(2);
+            this.dataset.addRecord(new int[] {a, b, c, d});
+        }
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /**
+     * Test of test method, the statistics must agree with the mutual information of the dataset.
+     */
+    @Test
+    public void testTest() {
+        System.out.println("test");
+        Variable A = this.vars[0], B = this.vars[1], C = this.vars[2], D = this.vars[3];
+        ConditionalIndependenceTests tests = new ConditionalIndependenceTests(this.dataset, 100, 2);
+        ConditionalIndependenceTests.Result[] results = tests.test(
+                new Variable[] {B, C, B, D},
+                new Variable[] {C, B, D, A},
+                new Variable[][] {{}, {A}, {A, C}, {B}});
+        double cmiBCgivenA = this.dataset.mutualInformation(new Variable[] {B}, new Variable[] {C, A})
+                             - this.dataset.mutualInformation(new Variable[] {B}, new Variable[] {A});
+        assertEquals(this.dataset.mutualInformation(new Variable[] {B}, new Variable[] {C}),
+                     results[0].getConditionalMutualInformation(), 1e-9);
+        assertEquals(cmiBCgivenA, results[1].getConditionalMutualInformation(), 1e-9);
+        assertEquals(2 * this.dataset.getSize() * cmiBCgivenA, results[1].getG2(), 1e-6);
+        assertEquals(2, results[0].getDegreesOfFreedom());
+        assertEquals(4, results[1].getDegreesOfFreedom());
+        assertEquals(8, results[2].getDegreesOfFreedom());
+        // B and C are dependent, but independent given A
+        assertTrue(results[0].getPValue() < 0.01);
+        assertTrue(results[0].getChiSquarePValue() < 0.01);
+        assertTrue(results[1].getPValue() > 0.01);
+        assertTrue(results[3].getPValue() > 0.01);
+        // the canonical form of a test is cached
+        assertSame(results[1], tests.test(C, B, new Variable[] {A}));
+        assertSame(results[2], tests.test(D, B, new Variable[] {C, A}));
+    }
+}
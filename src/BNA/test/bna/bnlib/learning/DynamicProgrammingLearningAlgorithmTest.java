@@ -0,0 +1,157 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class DynamicProgrammingLearningAlgorithmTest {
+
+    private Variable[] vars;
+    private Dataset dataset;
+
+
+    public DynamicProgrammingLearningAlgorithmTest() {
+        this.vars = new Variable[] {
+            new Variable("A", new String[]{"a0", "a1"}),
+            new Variable("B", new String[]{"b0", "b1", "b2"}),
+            new Variable("C", new String[]{"c0", "c1"}),
+            new Variable("D", new String[]{"d0", "d1"}),
+            new Variable("E", new String[]{"e0", "e1"}),
+        };
+        // B and C depend on A, D depends on B and C, E depends on D weakly
+        this.dataset = new Dataset(this.vars);
+        Random rand = new Random(42);
+        for(int r = 0 ; r < 500 ; r++) {
+            int a = rand.nextInt(2),
+                b = rand.nextDouble() < 0.8 ? a : rand.nextInt(3),
+                c = rand.nextDouble() < 0.7 ? a : 1 - a,
+                d = rand.nextDouble() < 0.9 ? (b + c) % 2 : rand.nextInt(2),
+                e = rand.nextDouble() < 0.6 ? d : rand.nextInt(2);
+            this.dataset.addRecord(new int[] {a, b, c, d, e});
+        }
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    private DecomposableScoringMethod[] createScoringMethods() {
+        return new DecomposableScoringMethod[] {
+            new LikelihoodScoringMethod(this.dataset),
+            new AICScoringMethod(this.dataset),
+            new BICScoringMethod(this.dataset),
+            new BayesianScoringMethod(this.dataset, 1.0),
+            new FNMLScoringMethod(this.dataset),
+            new QNMLScoringMethod(this.dataset),
+        };
+    }
+
+    /** Variables of the mask (bit i stands for the i-th variable). */
+    private Variable[] maskToVariables(int mask) {
+        Variable[] variables = new Variable[Integer.bitCount(mask)];
+        int count = 0;
+        for(int i = 0 ; i < this.vars.length ; i++)
+            if((mask & (1 << i)) != 0)
+                variables[count++] = this.vars[i];
+        return variables;
+    }
+
+    /** Is the graph given by the parent masks of its variables acyclic? */
+    private static boolean isAcyclic(int[] parents) {
+        int remaining = (1 << parents.length) - 1;
+        while(remaining != 0) {
+            int source = -1;
+            for(int x = 0 ; x < parents.length && source < 0 ; x++)
+                if((remaining & (1 << x)) != 0 && (parents[x] & remaining) == 0)
+                    source = x;
+            if(source < 0)
+                return false;
+            remaining &= ~(1 << source);
+        }
+        return true;
+    }
+
+    /** Best score of a DAG over the first n variables found by enumerating all the DAGs. */
+    private double bestScoreBruteForce(DecomposableScoringMethod method, int n) {
+        double[][] localScores = new double[n][1 << n];
+        for(int x = 0 ; x < n ; x++)
+            for(int mask = 0 ; mask < (1 << n) ; mask++)
+                if((mask & (1 << x)) == 0)
+                    localScores[x][mask] = method.computeLocalScore(this.vars[x], this.maskToVariables(mask));
+        int[] parents = new int[n];
+        double best = Double.NEGATIVE_INFINITY;
+        // parents[x] goes through all the masks without x like the digits of a counter
+        while(true) {
+            if(DynamicProgrammingLearningAlgorithmTest.isAcyclic(parents)) {
+                double score = 0;
+                for(int x = 0 ; x < n ; x++)
+                    score += localScores[x][parents[x]];
+                best = Math.max(best, score);
+            }
+            int x = 0;
+            do {
+                parents[x]++;
+                if((parents[x] & (1 << x)) != 0)
+                    parents[x] += 1 << x; // skip the masks containing x
+                if(parents[x] < (1 << n))
+                    break;
+                parents[x] = 0;
+                x++;
+            } while(x < n);
+            if(x == n)
+                return best;
+        }
+    }
+
+    /** Sum of the local scores of the variables of the network. */
+    private static double localScoresSum(DecomposableScoringMethod method, BayesianNetwork bn) {
+        double score = 0;
+        for(Node node : bn.getNodes())
+            score += method.computeLocalScore(node.getVariable(), node.getParentVariables());
+        return score;
+    }
+
+    /**
+     * Test of learn method, the learnt network must be optimal among all
+     * the DAGs of 4 and 5 variables for each scoring method, both with the
+     * tables of the best parent sets and in the memory-bounded mode.
+     */
+    @Test
+    public void testLearn_BruteForce() {
+        System.out.println("learn_BruteForce");
+        int[] variableCounts = {4, 5};
+        for(int n : variableCounts) {
+            Variable[] variables = Arrays.copyOf(this.vars, n);
+            long tablesBytes = (1L << n) * 9,
+                 parentSetTablesBytes = n * (1L << (n - 1)) * 4;
+            long[] memoryBudgets = {tablesBytes + parentSetTablesBytes, tablesBytes}; // with the tables, memory-bounded
+            for(DecomposableScoringMethod method : this.createScoringMethods()) {
+                double expected = this.bestScoreBruteForce(method, n);
+                for(long memoryBudget : memoryBudgets) {
+                    DynamicProgrammingLearningAlgorithm algorithm = new DynamicProgrammingLearningAlgorithm(method, null, 2, memoryBudget);
+                    BayesianNetwork bnLearnt = algorithm.learn(new BayesianNetwork(variables), new LearningController(null),
+                                                               new StructuralConstraints(variables));
+                    assertEquals(n, bnLearnt.getVariablesCount());
+                    double actual = DynamicProgrammingLearningAlgorithmTest.localScoresSum(method, bnLearnt);
+                    assertEquals(expected, actual, 1e-9 * Math.abs(expected));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class ExpectationMaximizationTest {
+
+    private Variable a, b, c;
+    private BayesianNetwork bn;
+
+
+    public ExpectationMaximizationTest() {
+        // A -> B -> C
+        this.a = new Variable("A", new String[]{"a0", "a1"});
+        this.b = new Variable("B", new String[]{"b0", "b1", "b2"});
+        this.c = new Variable("C", new String[]{"c0", "c1"});
+        this.bn = new BayesianNetwork(new Variable[] {this.a, this.b, this.c});
+        this.bn.addDependency(this.a, this.b);
+        this.bn.addDependency(this.b, this.c);
+        this.bn.setCPT("A", new double[] {0.3, 0.7});
+        this.bn.setCPT("B", new double[] {0.5, 0.3, 0.2, 0.1, 0.1, 0.8});
+        this.bn.setCPT("C", new double[] {0.9, 0.1, 0.4, 0.6, 0.2, 0.8});
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /**
+     * Test of complete method, the weights of completions of a record must be
+     * the posterior probabilities of the missing values.
+     */
+    @Test
+    public void testComplete() {
+        System.out.println("complete");
+        Dataset dataset = new Dataset(this.bn.getVariables());
+        dataset.addRecord(new int[] {1, Dataset.MISSING_VALUE, 0});
+        dataset.addRecord(new int[] {0, 2, 1});
+        DatasetInterface completed = new ExpectationMaximization(dataset, 1.0, 1).complete(this.bn);
+        assertEquals(2, completed.getSize());
+        Factor counts = completed.computeFactor(new Variable[] {this.b});
+        // P(B | A = a1, C = c0) is proportional to P(B | a1) * P(c0 | B)
+        double[] joint = new double[] {0.1 * 0.9, 0.1 * 0.4, 0.8 * 0.2};
+        double sum = joint[0] + joint[1] + joint[2];
+        assertEquals(joint[0] / sum, counts.getProbability(0), 1e-12);
+        assertEquals(joint[1] / sum, counts.getProbability(1), 1e-12);
+        assertEquals(joint[2] / sum + 1.0, counts.getProbability(2), 1e-12);
+    }
+
+    /** Test of learnParameters method, complete data need a single M-step. */
+    @Test
+    public void testLearnParameters_CompleteData() {
+        System.out.println("learnParameters_CompleteData");
+        Dataset dataset = new Dataset(this.bn.getVariables());
+        dataset.addRecord(new int[] {1, 0, 0});
+        dataset.addRecord(new int[] {0, 2, 1});
+        dataset.addRecord(new int[] {1, 2, 1});
+        BayesianNetwork expected = ParameterLearner.learnBayesianEstimationUniform(this.bn, dataset, 1.0);
+        BayesianNetwork actual = new ExpectationMaximization(dataset, 1.0, 2).learnParameters(this.bn.copyStructureWithEmptyCPDs(), 10, 1e-6);
+        for(Node node : expected.getNodes()) {
+            Factor expectedCPD = node.getFactor(),
+                   actualCPD = actual.getNode(node.getVariable()).getFactor().reorderScope(expectedCPD.getScope());
+            for(int i = 0 ; i < expectedCPD.getCardinality() ; i++)
+                assertEquals(expectedCPD.getProbability(i), actualCPD.getProbability(i), 1e-12);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class MappedDatasetTest {
+
+    private Variable[] vars;
+
+
+    public MappedDatasetTest() {
+        String[] manyValues = new String[300]; // 2 bytes per value
+        for(int i = 0 ; i < manyValues.length ; i++)
+            manyValues[i] = "d" + i;
+        this.vars = new Variable[] {
+            new Variable("A", new String[]{"a0", "a1"}),
+            new Variable("B", new String[]{"b0", "b1", "b2"}),
+            new Variable("D", manyValues),
+        };
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /** Dataset of random records, each value is missing with the given probability. */
+    private Dataset randomDataset(int count, double missingProbability) {
+        Dataset dataset = new Dataset(this.vars);
+        Random rand = new Random(42);
+        for(int r = 0 ; r < count ; r++) {
+            int[] record = new int[this.vars.length];
+            for(int i = 0 ; i < record.length ; i++)
+                record[i] = (rand.nextDouble() < missingProbability) ? Dataset.MISSING_VALUE : rand.nextInt(this.vars[i].getCardinality());
+            dataset.addRecord(record);
+        }
+        return dataset;
+    }
+
+    private File saveBinaryFile(Dataset dataset) throws IOException {
+        File binaryFile = File.createTempFile("bnlib-test", ".bin");
+        binaryFile.deleteOnExit();
+        dataset.saveBinaryFile(binaryFile.getPath());
+        return binaryFile;
+    }
+
+    private void assertSameRecords(Dataset expected, Dataset actual) {
+        List<int[]> expectedRecords = expected.getDataReadOnly(),
+                    actualRecords = actual.getDataReadOnly();
+        assertEquals(expectedRecords.size(), actualRecords.size());
+        for(int r = 0 ; r < expectedRecords.size() ; r++)
+            assertArrayEquals(expectedRecords.get(r), actualRecords.get(r));
+    }
+
+    private void assertSameCounts(Dataset dataset, MappedDataset mappedDataset) {
+        Variable[][] scopes = {{this.vars[0]}, {this.vars[2], this.vars[1]}, {this.vars[1], this.vars[0], this.vars[2]}};
+        Factor[] actual = mappedDataset.computeFactors(scopes);
+        for(int s = 0 ; s < scopes.length ; s++) {
+            Factor expected = dataset.computeFactor(scopes[s]);
+            for(int i = 0 ; i < expected.getCardinality() ; i++)
+                assertEquals(expected.getProbability(i), actual[s].getProbability(i), 0.0);
+        }
+    }
+
+    /**
+     * Test of the binary dataset file with missing values, they must survive
+     * the round trip and be left out of the counts of MappedDataset.
+     */
+    @Test
+    public void testBinaryFile_MissingValues() throws IOException {
+        System.out.println("binaryFile_MissingValues");
+        Dataset dataset = this.randomDataset(10000, 0.1);
+        assertTrue(dataset.hasMissingValues());
+        File binaryFile = this.saveBinaryFile(dataset);
+        Dataset loaded = Dataset.loadBinaryFile(binaryFile.getPath());
+        assertTrue(loaded.hasMissingValues());
+        this.assertSameRecords(dataset, loaded);
+        MappedDataset mappedDataset = MappedDataset.open(binaryFile.getPath());
+        assertTrue(mappedDataset.hasMissingValues());
+        assertEquals(dataset.getSize(), mappedDataset.getSize());
+        this.assertSameCounts(dataset, mappedDataset);
+        binaryFile.delete();
+    }
+
+    /**
+     * Test of the binary dataset file round trip, the loaded records must
+     * equal the saved ones and MappedDataset must count as Dataset does.
+     */
+    @Test
+    public void testBinaryFile_RoundTrip() throws IOException {
+        System.out.println("binaryFile_RoundTrip");
+        Dataset dataset = this.randomDataset(10000, 0.0);
+        File binaryFile = this.saveBinaryFile(dataset);
+        Dataset loaded = Dataset.loadBinaryFile(binaryFile.getPath());
+        assertFalse(loaded.hasMissingValues());
+        assertArrayEquals(this.vars, loaded.getVariables());
+        this.assertSameRecords(dataset, loaded);
+        MappedDataset mappedDataset = MappedDataset.open(binaryFile.getPath());
+        assertFalse(mappedDataset.hasMissingValues());
+        assertEquals(dataset.getSize(), mappedDataset.getSize());
+        this.assertSameCounts(dataset, mappedDataset);
+        Variable[] set1 = {this.vars[0]},
+                   set2 = {this.vars[1], this.vars[2]};
+        assertEquals(dataset.mutualInformation(set1, set2), mappedDataset.mutualInformation(set1, set2), 1e-12);
+        binaryFile.delete();
+    }
+
+    /** Overwrite the bytes at the given offset from the end of the file. */
+    private void patchFile(File file, long offsetFromEnd, byte[] bytes) throws IOException {
+        RandomAccessFile patched = new RandomAccessFile(file, "rw");
+        patched.seek(patched.length() - offsetFromEnd);
+        patched.write(bytes);
+        patched.close();
+    }
+
+    /** Both Dataset.loadBinaryFile and MappedDataset.computeFactor must reject the file. */
+    private void assertRejected(File binaryFile, Variable[] scope) {
+        try {
+            Dataset.loadBinaryFile(binaryFile.getPath());
+            fail("Invalid value has been loaded.");
+        }
+        catch(BNLibIOException ex) {
+        }
+        try {
+            MappedDataset.open(binaryFile.getPath()).computeFactor(scope);
+            fail("Invalid value has been counted.");
+        }
+        catch(BNLibIOException ex) {
+        }
+    }
+
+    /**
+     * Test of a corrupted binary dataset file, values out of range (including
+     * negative values and undeclared missing values) must be rejected.
+     */
+    @Test
+    public void testBinaryFile_Corrupted() throws IOException {
+        System.out.println("binaryFile_Corrupted");
+        String[] manyValues = new String[1 << 16]; // 4 bytes per value
+        for(int i = 0 ; i < manyValues.length ; i++)
+            manyValues[i] = "e" + i;
+        Variable a = this.vars[0],
+                 e = new Variable("E", manyValues);
+        Dataset dataset = new Dataset(new Variable[] {a, e});
+        for(int r = 0 ; r < 10 ; r++)
+            dataset.addRecord(new int[] {r % 2, r * 1000});
+        // the column of E is the last one (10 * 4 bytes), the column of A precedes it (10 * 1 byte)
+        byte[][] invalidValuesA = {{2}, {(byte)0xFF}},
+                 invalidValuesE = {{0, 1, 0, 0}, {(byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFB}, {(byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF}};
+        for(byte[] invalidValue : invalidValuesA) {
+            File binaryFile = this.saveBinaryFile(dataset);
+            this.patchFile(binaryFile, 10 * 4 + 3, invalidValue);
+            this.assertRejected(binaryFile, new Variable[] {a});
+            binaryFile.delete();
+        }
+        for(byte[] invalidValue : invalidValuesE) {
+            File binaryFile = this.saveBinaryFile(dataset);
+            this.patchFile(binaryFile, 5 * 4, invalidValue);
+            this.assertRejected(binaryFile, new Variable[] {e});
+            binaryFile.delete();
+        }
+    }
+}
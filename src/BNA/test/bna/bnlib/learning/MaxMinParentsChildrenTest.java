@@ -0,0 +1,122 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class MaxMinParentsChildrenTest {
+
+    private Variable[] vars;
+    private Dataset dataset;
+    /** Parents and children of each variable in the network generating the dataset. */
+    private int[][] expectedParentsChildren;
+
+
+    public MaxMinParentsChildrenTest() {
+        this.vars = new Variable[] {
+            new Variable("A", new String[]{"a0", "a1"}),
+            new Variable("B", new String[]{"b0", "b1", "b2"}),
+            new Variable("C", new String[]{"c0", "c1"}),
+            new Variable("D", new String[]{"d0", "d1"}),
+            new Variable("E", new String[]{"e0", "e1"}),
+            new Variable("F", new String[]{"f0", "f1"}),
+        };
+        // A -> B, A -> C, B -> D <- C (a v-structure), D -> E and F is independent
+        this.expectedParentsChildren = new int[][] {{1, 2}, {0, 3}, {0, 3}, {1, 2, 4}, {3}, {}};
+        this.dataset = new Dataset(this.vars);
+        Random rand = new Random(11);
+        for(int r = 0 ; r < 5000 ; r++) {
+            int a = rand.nextInt(2),
+                b = rand.nextDouble() < 0.8 ? a : rand.nextInt(3),
+                c = rand.nextDouble() < 0.8 ? a : 1 - a,
+                d = rand.nextDouble() < 0.85 ? ((b == 1 || c == 1) ? 1 : 0) : rand.nextInt(2),
+                e = rand.nextDouble() < 0.8 ? d : 1 - d,
+                f = rand.nextInt(2);
+            this.dataset.addRecord(new int[] {a, b, c, d, e, f});
+        }
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    private HashSet<Variable> expectedSet(int i) {
+        HashSet<Variable> set = new HashSet<Variable>();
+        for(int j : this.expectedParentsChildren[i])
+            set.add(this.vars[j]);
+        return set;
+    }
+
+    /**
+     * Test of findParentsChildren method, the parents and children of each
+     * variable of a known sparse network must be recovered (the spouses
+     * B and C of the v-structure must be separated given A).
+     */
+    @Test
+    public void testFindParentsChildren() {
+        System.out.println("findParentsChildren");
+        MaxMinParentsChildren mmpc = new MaxMinParentsChildren(this.dataset, 0.01, 2);
+        for(int i = 0 ; i < this.vars.length ; i++) {
+            HashSet<Variable> candidates = new HashSet<Variable>(Arrays.asList(this.vars));
+            candidates.remove(this.vars[i]);
+            Variable[] pc = mmpc.findParentsChildren(this.vars[i], Arrays.asList(candidates.toArray(new Variable[0])));
+            assertEquals(this.expectedSet(i), new HashSet<Variable>(Arrays.asList(pc)));
+        }
+    }
+
+    /**
+     * Test of findSkeleton and restrictConstraints methods, the skeleton must
+     * be the one of the network and only its edges may stay allowed.
+     */
+    @Test
+    public void testFindSkeleton() {
+        System.out.println("findSkeleton");
+        StructuralConstraints constraints = new StructuralConstraints(this.vars);
+        MaxMinParentsChildren mmpc = new MaxMinParentsChildren(this.dataset, 0.01, 2);
+        boolean[][] adjacent = mmpc.findSkeleton(this.vars, constraints);
+        StructuralConstraints restricted = mmpc.restrictConstraints(this.vars, constraints);
+        for(int i = 0 ; i < this.vars.length ; i++) {
+            HashSet<Variable> expected = this.expectedSet(i);
+            for(int j = 0 ; j < this.vars.length ; j++) {
+                if(i == j)
+                    continue;
+                assertEquals(expected.contains(this.vars[j]), adjacent[i][j]);
+                assertEquals(adjacent[i][j], restricted.isConnectionAllowed(this.vars[j], this.vars[i]));
+                assertTrue(constraints.isConnectionAllowed(this.vars[j], this.vars[i])); // not modified
+            }
+        }
+        // a pair not allowed by the constraints isn't connected
+        constraints.setConnectionAllowed(this.vars[0], this.vars[1], false);
+        constraints.setConnectionAllowed(this.vars[1], this.vars[0], false);
+        adjacent = mmpc.findSkeleton(this.vars, constraints);
+        assertFalse(adjacent[0][1]);
+        assertFalse(adjacent[1][0]);
+        assertTrue(adjacent[0][2]);
+    }
+
+    /**
+     * Test of constructor, the significance level has to be in (0,1).
+     */
+    @Test(expected=BNLibIllegalArgumentException.class)
+    public void testConstructor_InvalidSignificance() {
+        System.out.println("constructor_InvalidSignificance");
+        new MaxMinParentsChildren(this.dataset, 1.0, 2);
+    }
+}
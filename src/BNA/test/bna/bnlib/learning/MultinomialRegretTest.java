@@ -0,0 +1,68 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/20
+
+package bna.bnlib.learning;
+
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class MultinomialRegretTest {
+
+    public MultinomialRegretTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /** C(n, k) by definition: sum over all the count vectors of size k summing to n. */
+    private static double bruteForceRegret(int n, int k) {
+        return MultinomialRegretTest.bruteForceRegret(n, n, k, 1.0);
+    }
+
+    private static double bruteForceRegret(int n, int remaining, int k, double term) {
+        if(k == 1) {
+            // the last count takes the rest, multinomial coefficient is built
+            // as a product of binomial coefficients
+            return term * (remaining == 0 ? 1 : Math.pow(remaining / (double)n, remaining));
+        }
+        double sum = 0, binom = 1;
+        for(int h = 0 ; h <= remaining ; h++) {
+            double p = (h == 0) ? 1 : Math.pow(h / (double)n, h);
+            sum += MultinomialRegretTest.bruteForceRegret(n, remaining - h, k - 1, term * binom * p);
+            binom = binom * (remaining - h) / (h + 1);
+        }
+        return sum;
+    }
+
+    /**
+     * Test of logRegretsOfSampleSizes and of the fixed sample size table,
+     * both must agree with the definition of the regret.
+     */
+    @Test
+    public void testLogRegret() {
+        System.out.println("logRegret");
+        for(int k = 1 ; k <= 4 ; k++) {
+            double[] logRegrets = MultinomialRegret.logRegretsOfSampleSizes(k, 12);
+            for(int n = 0 ; n <= 12 ; n++)
+                assertEquals(Math.log(bruteForceRegret(n, k)), logRegrets[n], 1e-9);
+        }
+        MultinomialRegret.FixedSampleSize regrets = new MultinomialRegret.FixedSampleSize(7);
+        for(int k = 6 ; k >= 1 ; k--)
+            assertEquals(Math.log(bruteForceRegret(7, k)), regrets.logRegret(k), 1e-9);
+        // the asymptotic expansion takes over smoothly
+        double[] logRegrets = MultinomialRegret.logRegretsOfSampleSizes(2, 1002);
+        assertEquals(logRegrets[1000] + 0.5 * Math.log(1001 / 1000.0), logRegrets[1001], 1e-4);
+    }
+}
@@ -0,0 +1,119 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.Toolkit;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class OrderingSearchLearningAlgorithmTest {
+
+    private Variable[] vars;
+    private Dataset dataset;
+
+
+    public OrderingSearchLearningAlgorithmTest() {
+        this.vars = new Variable[] {
+            new Variable("A", new String[]{"a0", "a1"}),
+            new Variable("B", new String[]{"b0", "b1", "b2"}),
+            new Variable("C", new String[]{"c0", "c1"}),
+            new Variable("D", new String[]{"d0", "d1"}),
+            new Variable("E", new String[]{"e0", "e1"}),
+            new Variable("F", new String[]{"f0", "f1"}),
+        };
+        // B and C depend on A, D depends on B and C, E on D and F on E and A
+        this.dataset = new Dataset(this.vars);
+        Random rand = new Random(42);
+        for(int r = 0 ; r < 1000 ; r++) {
+            int a = rand.nextInt(2),
+                b = rand.nextDouble() < 0.8 ? a : rand.nextInt(3),
+                c = rand.nextDouble() < 0.7 ? a : 1 - a,
+                d = rand.nextDouble() < 0.9 ? (b + c) % 2 : rand.nextInt(2),
+                e = rand.nextDouble() < 0.75 ? d : rand.nextInt(2),
+                f = rand.nextDouble() < 0.8 ? e ^ a : rand.nextInt(2);
+            this.dataset.addRecord(new int[] {a, b, c, d, e, f});
+        }
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    private static double localScoresSum(DecomposableScoringMethod method, BayesianNetwork bn) {
+        double score = 0;
+        for(Node node : bn.getNodes())
+            score += method.computeLocalScore(node.getVariable(), node.getParentVariables());
+        return score;
+    }
+
+    /**
+     * Check that each variable has the best parent set among its ancestors.
+     * The variables preceding a variable in the order of the search include
+     * its ancestors, so a network learnt for an order has this property.
+     */
+    private static void assertOrderConsistent(DecomposableScoringMethod method, ParentSetScoreCache scores, BayesianNetwork bn) {
+        for(Node node : bn.getNodes()) {
+            Variable[] parents = node.getParentVariables();
+            long ancestors = 0;
+            for(Variable var : bn.getVariables())
+                if(var != node.getVariable() && bn.hasDescendant(var, node.getVariable()))
+                    ancestors |= 1L << scores.getVariableIndex(var);
+            int x = scores.getVariableIndex(node.getVariable());
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for(int k = 0 ; k < scores.getParentSetCount(x) ; k++) {
+                long parentSet = 0;
+                for(int parent : scores.getParentIndices(x, k))
+                    parentSet |= 1L << parent;
+                if((parentSet & ~ancestors) == 0)
+                    bestScore = Math.max(bestScore, scores.getScore(x, k));
+            }
+            assertEquals(bestScore, method.computeLocalScore(node.getVariable(), parents), 1e-9);
+        }
+    }
+
+    /**
+     * Test of learn method, the learnt network must be order-consistent and
+     * its score must not exceed the optimum (found by dynamic programming).
+     * With random restarts the optimum is found for this small network.
+     */
+    @Test
+    public void testLearn_WithinOptimum() {
+        System.out.println("learn_WithinOptimum");
+        DecomposableScoringMethod[] methods = {new BICScoringMethod(this.dataset), new BayesianScoringMethod(this.dataset, 1.0)};
+        for(DecomposableScoringMethod method : methods) {
+            StructuralConstraints constraints = new StructuralConstraints(this.vars);
+            ParentSetScoreCache scores = ParentSetScoreCache.compute(method, this.vars, constraints);
+            BayesianNetwork bnOptimal = new DynamicProgrammingLearningAlgorithm(method, scores, 1, 1 << 20)
+                    .learn(new BayesianNetwork(this.vars), new LearningController(null), constraints);
+            double optimum = OrderingSearchLearningAlgorithmTest.localScoresSum(method, bnOptimal);
+            // a local search only (no random restart) and a search with random restarts
+            int[] restartSteps = {0, 3};
+            double[] scoresLearnt = new double[restartSteps.length];
+            for(int i = 0 ; i < restartSteps.length ; i++) {
+                OrderingSearchLearningAlgorithm algorithm = new OrderingSearchLearningAlgorithm(method, scores, restartSteps[i]);
+                algorithm.rand = new Random(1);
+                BayesianNetwork bnLearnt = algorithm.learn(new BayesianNetwork(this.vars), new LearningController(500L), constraints);
+                assertTrue(bnLearnt.topologicalSort() != null);
+                OrderingSearchLearningAlgorithmTest.assertOrderConsistent(method, scores, bnLearnt);
+                scoresLearnt[i] = OrderingSearchLearningAlgorithmTest.localScoresSum(method, bnLearnt);
+                assertTrue(scoresLearnt[i] <= optimum + 1e-9 * Math.abs(optimum));
+            }
+            assertTrue(scoresLearnt[1] >= scoresLearnt[0] - Toolkit.DOUBLE_EPS);
+            assertEquals(optimum, scoresLearnt[1], 1e-9 * Math.abs(optimum));
+        }
+    }
+}
@@ -91,4 +91,68 @@ public class ParameterLearnerTest {
         assertEquals(factorResult.getProbability(this.recordHeads), (2 + alpha/2) / (2 + 3 + alpha), Toolkit.DOUBLE_EPS);
         assertEquals(factorResult.getProbability(this.recordTails), (3 + alpha/2) / (2 + 3 + alpha), Toolkit.DOUBLE_EPS);
     }
+
+    /**
+     * Test of learnMLE method with counts maintained by a cached dataset
+     * while records are appended.
+     */
+    @Test
+    public void testLearnMLE_Incremental() {
+        System.out.println("learnMLE incremental");
+        CachedDataset dataset = new CachedDataset(new Dataset(this.coinBn.getVariables()), 10);
+        ParameterLearner.registerFamilies(this.coinBn, dataset);
+        Factor factorResult;
+        // 1x heads, 0x tails => P(h) = 1, P(t) = 0
+        dataset.addRecord(this.recordHeads);
+        factorResult = ParameterLearner.learnMLE(this.coinBn, dataset).getNode(this.coinVar).getFactor();
+        assertEquals(factorResult.getProbability(this.recordHeads), (1.0) / (1 + 0), Toolkit.DOUBLE_EPS);
+        assertEquals(factorResult.getProbability(this.recordTails), (0.0) / (1 + 0), Toolkit.DOUBLE_EPS);
+        // 1x heads, 3x tails => P(h) = 1/4, P(t) = 3/4
+        dataset.addRecord(this.recordTails);
+        dataset.addRecord(this.recordTails);
+        dataset.addRecord(this.recordTails);
+        factorResult = ParameterLearner.learnMLE(this.coinBn, dataset).getNode(this.coinVar).getFactor();
+        assertEquals(factorResult.getProbability(this.recordHeads), (1.0) / (1 + 3), Toolkit.DOUBLE_EPS);
+        assertEquals(factorResult.getProbability(this.recordTails), (3.0) / (1 + 3), Toolkit.DOUBLE_EPS);
+        assertEquals(4, dataset.getSize());
+    }
+
+    /**
+     * Test of learnBayesianEstimationUniform method with the families counted
+     * by several threads, the CPDs must not depend on the number of threads.
+     */
+    @Test
+    public void testLearnBayesianEstimationUniform_Parallel() {
+        System.out.println("learnBayesianEstimationUniform parallel");
+        final double alpha = 4;
+        Variable dieVar = new Variable("DIE", new String[]{"1", "2", "3"});
+        BayesianNetwork bn = new BayesianNetwork(new Variable[]{this.coinVar, dieVar});
+        bn.addDependency(this.coinVar, dieVar);
+        Dataset dataset = new Dataset(bn.getVariables());
+        int[][] records = new int[][] {{0, 0}, {0, 2}, {1, 1}, {1, 1}, {0, 2}};
+        int repeats = ParallelCounting.MIN_RECORDS_PER_THREAD; // enough records to be split among the threads
+        for(int k = 0 ; k < repeats ; k++)
+            for(int[] record : records)
+                dataset.addRecord(record);
+        CachedDataset cached = new CachedDataset(dataset, 10);
+        BayesianNetwork bnSerial = ParameterLearner.learnBayesianEstimationUniform(bn, dataset, alpha, 1),
+                        bnParallel = ParameterLearner.learnBayesianEstimationUniform(bn, dataset, alpha, 3),
+                        bnDefault = ParameterLearner.learnBayesianEstimationUniform(bn, dataset, alpha),
+                        bnCached = ParameterLearner.learnBayesianEstimationUniform(bn, cached, alpha, 3);
+        Factor factorDie = bnParallel.getNode(dieVar).getFactor();
+        // P(DIE = 3 | COIN = heads) = (2 * repeats + alpha/6) / (3 * repeats + alpha/2)
+        assertEquals((2 * repeats + alpha/6) / (3 * repeats + alpha/2), factorDie.getProbability(new int[]{2, 0}), Toolkit.DOUBLE_EPS);
+        BayesianNetwork[] bnsParallel = {bnParallel, bnDefault, bnCached};
+        for(Node node : bnSerial.getNodes()) {
+            Factor factorSerial = node.getFactor();
+            for(BayesianNetwork bnOther : bnsParallel) {
+                Factor factorParallel = bnOther.getNode(node.getVariable()).getFactor();
+                for(int i = 0 ; i < factorSerial.getCardinality() ; i++)
+                    assertEquals(factorSerial.getProbability(i), factorParallel.getProbability(i), 0.0);
+            }
+        }
+        // the families counted over the underlying dataset are cached
+        ParameterLearner.learnMLE(bn, cached);
+        assertEquals(2, cached.getFactorCacheStatistics().hits);
+    }
 }
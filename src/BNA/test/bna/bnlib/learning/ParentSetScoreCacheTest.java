@@ -0,0 +1,118 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/14
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class ParentSetScoreCacheTest {
+
+    private Variable[] vars;
+    private Dataset dataset;
+
+
+    public ParentSetScoreCacheTest() {
+        this.vars = new Variable[] {
+            new Variable("A", new String[]{"a0", "a1"}),
+            new Variable("B", new String[]{"b0", "b1", "b2"}),
+            new Variable("C", new String[]{"c0", "c1"}),
+            new Variable("D", new String[]{"d0", "d1"}),
+            new Variable("E", new String[]{"e0", "e1"}),
+        };
+        // B and C depend on A, D depends on B and C, E is independent
+        this.dataset = new Dataset(this.vars);
+        Random rand = new Random(42);
+        for(int r = 0 ; r < 2000 ; r++) {
+            int a = rand.nextInt(2),
+                b = rand.nextDouble() < 0.8 ? a : rand.nextInt(3),
+                c = rand.nextDouble() < 0.7 ? a : 1 - a,
+                d = rand.nextDouble() < 0.9 ? (b + c) % 2 : rand.nextInt(2),
+                e = rand.nextInt(2);
+            this.dataset.addRecord(new int[] {a, b, c, d, e});
+        }
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /** Best local score of x over all parent sets of at most maxParents variables (no pruning). */
+    private double bestScoreBruteForce(DecomposableScoringMethod method, int x, int maxParents) {
+        double best = Double.NEGATIVE_INFINITY;
+        for(int mask = 0 ; mask < (1 << this.vars.length) ; mask++) {
+            if((mask & (1 << x)) != 0 || Integer.bitCount(mask) > maxParents)
+                continue;
+            Variable[] parents = new Variable[Integer.bitCount(mask)];
+            int count = 0;
+            for(int i = 0 ; i < this.vars.length ; i++)
+                if((mask & (1 << i)) != 0)
+                    parents[count++] = this.vars[i];
+            best = Math.max(best, method.computeLocalScore(this.vars[x], parents));
+        }
+        return best;
+    }
+
+    /**
+     * Test of compute method, the pruning must keep the best parent set of each variable.
+     */
+    @Test
+    public void testCompute() {
+        System.out.println("compute");
+        DecomposableScoringMethod[] methods = {new BICScoringMethod(this.dataset), new BayesianScoringMethod(this.dataset, 1.0)};
+        for(DecomposableScoringMethod method : methods) {
+            StructuralConstraints constraints = new StructuralConstraints(this.vars);
+            constraints.setMaxParentCount(3);
+            ParentSetScoreCache cache = ParentSetScoreCache.compute(method, this.vars, constraints);
+            for(int x = 0 ; x < this.vars.length ; x++) {
+                assertEquals(this.bestScoreBruteForce(method, x, 3), cache.getScore(x, 0), 1e-9);
+                for(int k = 1 ; k < cache.getParentSetCount(x) ; k++)
+                    assertTrue(cache.getScore(x, k - 1) >= cache.getScore(x, k));
+            }
+            // the independent variable has the empty parent set only
+            assertEquals(1, cache.getParentSetCount(4));
+            assertEquals(0, cache.getParents(4, 0).length);
+        }
+    }
+
+    /**
+     * Test of save and load methods.
+     */
+    @Test
+    public void testSaveLoad() throws Exception {
+        System.out.println("save and load");
+        StructuralConstraints constraints = new StructuralConstraints(this.vars);
+        constraints.setMaxParentCount(2);
+        ParentSetScoreCache cache = ParentSetScoreCache.compute(new BICScoringMethod(this.dataset), this.vars, constraints);
+        File file = File.createTempFile("parentsets", ".bin");
+        try {
+            cache.save(file.getPath());
+            ParentSetScoreCache loaded = ParentSetScoreCache.load(file.getPath(), this.vars);
+            for(int x = 0 ; x < this.vars.length ; x++) {
+                assertEquals(cache.getParentSetCount(x), loaded.getParentSetCount(x));
+                for(int k = 0 ; k < cache.getParentSetCount(x) ; k++) {
+                    assertEquals(cache.getScore(x, k), loaded.getScore(x, k), 0.0);
+                    assertTrue(Arrays.equals(cache.getParentIndices(x, k), loaded.getParentIndices(x, k)));
+                }
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
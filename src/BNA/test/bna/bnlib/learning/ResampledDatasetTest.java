@@ -0,0 +1,94 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/21
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class ResampledDatasetTest {
+
+    private Variable[] vars;
+    private Dataset dataset;
+
+
+    public ResampledDatasetTest() {
+        this.vars = new Variable[] {
+            new Variable("A", new String[]{"a0", "a1"}),
+            new Variable("B", new String[]{"b0", "b1", "b2"}),
+            new Variable("C", new String[]{"c0", "c1"}),
+        };
+        this.dataset = new Dataset(this.vars);
+        Random rand = new Random(3);
+        for(int r = 0 ; r < 200 ; r++)
+            this.dataset.addRecord(new int[] {rand.nextInt(2), rand.nextInt(3), rand.nextInt(2)});
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /**
+     * Test of computeFactors method, the weighted counts must equal the counts
+     * of a dataset with the records repeated by their weights.
+     */
+    @Test
+    public void testComputeFactors() {
+        System.out.println("computeFactors");
+        ResampledDataset replica = ResampledDataset.bootstrap(this.dataset, new Random(5));
+        assertEquals(this.dataset.getSize(), replica.getSize());
+        Dataset materialized = new Dataset(this.vars);
+        for(int r = 0 ; r < this.dataset.getSize() ; r++)
+            for(int k = 0 ; k < replica.getWeight(r) ; k++)
+                materialized.addRecord(this.dataset.getDataReadOnly().get(r));
+        Variable[][] scopes = new Variable[][] {{this.vars[1]}, {this.vars[2], this.vars[0]}, this.vars};
+        Factor[] expected = materialized.computeFactors(scopes),
+                 actual = replica.computeFactors(scopes);
+        for(int s = 0 ; s < scopes.length ; s++)
+            for(int i = 0 ; i < expected[s].getCardinality() ; i++)
+                assertEquals(expected[s].getProbability(i), actual[s].getProbability(i), 0.0);
+    }
+
+    @Test(expected=BNLibIllegalArgumentException.class)
+    public void testConstructor_Fail() {
+        System.out.println("constructor_Fail");
+        new ResampledDataset(this.dataset, new int[this.dataset.getSize() - 1]);
+    }
+
+    /**
+     * Test of hasMissingValues method, a cached dataset over the replica
+     * mustn't derive counts of a scope from the counts of its superset
+     * when some records have a value of the superset missing.
+     */
+    @Test
+    public void testHasMissingValues_Cached() {
+        System.out.println("hasMissingValues_Cached");
+        Dataset incomplete = new Dataset(this.vars);
+        for(int r = 0 ; r < 30 ; r++)
+            incomplete.addRecord(new int[] {r % 2, (r % 3 == 0) ? Dataset.MISSING_VALUE : r % 3, 0});
+        int[] weights = new int[incomplete.getSize()];
+        Arrays.fill(weights, 1);
+        ResampledDataset replica = new ResampledDataset(incomplete, weights);
+        assertTrue(replica.hasMissingValues());
+        assertFalse(this.dataset.hasMissingValues());
+        CachedDataset cached = new CachedDataset(replica, 100);
+        cached.computeFactor(new Variable[] {this.vars[0], this.vars[1]});
+        Factor counts = cached.computeFactor(new Variable[] {this.vars[0]});
+        assertEquals(15, counts.getProbability(0), 0.0);
+        assertEquals(15, counts.getProbability(1), 0.0);
+    }
+}
@@ -0,0 +1,164 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/06
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import bna.bnlib.misc.Toolkit;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class StreamingDatasetTest {
+
+    private Variable[] vars;
+
+
+    public StreamingDatasetTest() {
+        this.vars = new Variable[] {
+            new Variable("A", new String[]{"a0", "a1"}),
+            new Variable("B", new String[]{"b0", "b1", "b2"}),
+            new Variable("C", new String[]{"c0", "c1"}),
+        };
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /** Fill both datasets with the same random records. */
+    private void fillRandomly(Dataset dataset, StreamingDataset streamingDataset, int count) {
+        Random rand = new Random(42);
+        for(int r = 0 ; r < count ; r++) {
+            int[] record = new int[this.vars.length];
+            for(int i = 0 ; i < record.length ; i++)
+                record[i] = rand.nextInt(this.vars[i].getCardinality());
+            dataset.addRecord(record);
+            streamingDataset.addRecord(record);
+        }
+    }
+
+    private void assertSameCounts(Dataset dataset, StreamingDataset streamingDataset) {
+        Variable[][] scopes = {{this.vars[0]}, {this.vars[2], this.vars[1]}, {this.vars[1], this.vars[0], this.vars[2]}};
+        for(Variable[] scope : scopes) {
+            Factor expected = dataset.computeFactor(scope),
+                   actual = streamingDataset.computeFactor(scope);
+            for(int[] assignment : expected)
+                assertEquals(expected.getProbability(assignment), actual.getProbability(assignment), 0.0);
+        }
+        Variable[] set1 = {this.vars[0]},
+                   set2 = {this.vars[1], this.vars[2]};
+        assertEquals(dataset.mutualInformation(set1, set2), streamingDataset.mutualInformation(set1, set2), Toolkit.DOUBLE_EPS);
+    }
+
+    /**
+     * Test of computeFactor and mutualInformation when the records fit into memory.
+     */
+    @Test
+    public void testInMemory() {
+        System.out.println("in memory");
+        Dataset dataset = new Dataset(this.vars);
+        StreamingDataset streamingDataset = new StreamingDataset(this.vars, 1 << 20);
+        this.fillRandomly(dataset, streamingDataset, 1000);
+        assertFalse(streamingDataset.isSpilled());
+        assertEquals(dataset.getSize(), streamingDataset.getSize());
+        this.assertSameCounts(dataset, streamingDataset);
+        streamingDataset.close();
+    }
+
+    /**
+     * Test of computeFactor and mutualInformation when the records exceed
+     * the memory budget and are streamed from a file.
+     */
+    @Test
+    public void testSpilled() {
+        System.out.println("spilled");
+        Dataset dataset = new Dataset(this.vars);
+        StreamingDataset streamingDataset = new StreamingDataset(this.vars, 100);
+        this.fillRandomly(dataset, streamingDataset, 50 * 1000);
+        assertTrue(streamingDataset.isSpilled());
+        assertEquals(dataset.getSize(), streamingDataset.getSize());
+        this.assertSameCounts(dataset, streamingDataset);
+        streamingDataset.close();
+    }
+
+    /** Count the temporary files of the streaming datasets. */
+    private static int countTemporaryFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+        int count = 0;
+        for(File file : files)
+            if(file.getName().startsWith("bnlib-dataset"))
+                count++;
+        return count;
+    }
+
+    /** Write a CSV file of the variables with the given lines of values. */
+    private File writeCSVFile(String[] lines) throws IOException {
+        File csvFile = File.createTempFile("bnlib-test", ".csv");
+        csvFile.deleteOnExit();
+        PrintWriter writer = new PrintWriter(new FileWriter(csvFile));
+        writer.println("A(a0|a1),B(b0|b1|b2),C(c0|c1)");
+        for(String line : lines)
+            writer.println(line);
+        writer.close();
+        return csvFile;
+    }
+
+    /**
+     * Test of loadCSVFile method, the temporary file must be deleted when
+     * the loading fails after the records have been spilled.
+     */
+    @Test
+    public void testLoadCSVFile_FailureDeletesFile() throws IOException {
+        System.out.println("loadCSVFile_FailureDeletesFile");
+        File csvFile = this.writeCSVFile(new String[] {"a0,b1,c0", "a1,b2,c1", "a1,b9,c1"});
+        int temporaryFiles = StreamingDatasetTest.countTemporaryFiles();
+        try {
+            StreamingDataset.loadCSVFile(csvFile.getPath(), ",", 0);
+            fail("Invalid value has been loaded.");
+        }
+        catch(BNLibIOException ex) {
+        }
+        assertEquals(temporaryFiles, StreamingDatasetTest.countTemporaryFiles());
+        csvFile.delete();
+    }
+
+    /**
+     * Test of loadCSVFile method, records with missing values must be loaded
+     * and left out of the counts of the scopes with the value missing.
+     */
+    @Test
+    public void testLoadCSVFile_MissingValues() throws IOException {
+        System.out.println("loadCSVFile_MissingValues");
+        File csvFile = this.writeCSVFile(new String[] {"a0,b1,c0", "?,b2,c1", "a1,?,?", "a1,b0,c1", "?,?,?"});
+        Dataset dataset = Dataset.loadCSVFile(csvFile.getPath(), ",");
+        long[] memoryBudgets = {1 << 20, 0};
+        for(long memoryBudget : memoryBudgets) {
+            StreamingDataset streamingDataset = StreamingDataset.loadCSVFile(csvFile.getPath(), ",", memoryBudget);
+            assertEquals(memoryBudget == 0, streamingDataset.isSpilled());
+            assertEquals(5, streamingDataset.getSize());
+            assertTrue(streamingDataset.hasMissingValues());
+            this.assertSameCounts(dataset, streamingDataset);
+            Factor counts = streamingDataset.computeFactor(new Variable[] {this.vars[0]});
+            assertEquals(1.0, counts.getProbability(0), 0.0);
+            assertEquals(2.0, counts.getProbability(1), 0.0);
+            streamingDataset.close();
+        }
+        csvFile.delete();
+    }
+}
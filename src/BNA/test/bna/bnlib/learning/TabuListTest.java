@@ -0,0 +1,103 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.LinkedList;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class TabuListTest {
+
+    private Variable[] vars;
+
+
+    public TabuListTest() {
+        this.vars = new Variable[4];
+        for(int i = 0 ; i < this.vars.length ; i++)
+            this.vars[i] = new Variable("V" + i, new String[]{"0", "1"});
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /**
+     * Test of addLast and removeFirst methods, the oldest action must expire
+     * first and an action stays in the list while any of its occurences does.
+     */
+    @Test
+    public void testAddLast_Eviction() {
+        System.out.println("addLast_Eviction");
+        AlterationAction a = new AlterationActionAddEdge(this.vars[0], this.vars[1]),
+                         b = new AlterationActionRemoveEdge(this.vars[1], this.vars[2]),
+                         c = new AlterationActionReverseEdge(this.vars[2], this.vars[3]);
+        TabuList tabu = new TabuList(3);
+        assertNull(tabu.addLast(a));
+        assertNull(tabu.addLast(b));
+        assertNull(tabu.addLast(a)); // the second occurence of a
+        assertEquals(3, tabu.size());
+        assertSame(a, tabu.addLast(c));
+        assertTrue(tabu.contains(a)); // still held by the second occurence
+        assertSame(b, tabu.addLast(c));
+        assertFalse(tabu.contains(b));
+        assertSame(a, tabu.removeFirst());
+        assertFalse(tabu.contains(a));
+        assertTrue(tabu.contains(c));
+        assertSame(c, tabu.removeFirst());
+        assertSame(c, tabu.removeFirst());
+        assertFalse(tabu.contains(c));
+        assertEquals(0, tabu.size());
+        assertNull(tabu.removeFirst());
+        // a list of zero capacity never holds anything
+        TabuList empty = new TabuList(0);
+        assertSame(a, empty.addLast(a));
+        assertFalse(empty.contains(a));
+        assertEquals(0, empty.size());
+    }
+
+    /**
+     * Test of contains method, the membership must agree with a reference
+     * FIFO after random insertions and removals (wrapping the ring buffer).
+     */
+    @Test
+    public void testContains_RandomOperations() {
+        System.out.println("contains_RandomOperations");
+        Random rand = new Random(13);
+        int capacity = 5;
+        TabuList tabu = new TabuList(capacity);
+        LinkedList<AlterationAction> reference = new LinkedList<AlterationAction>();
+        for(int op = 0 ; op < 2000 ; op++) {
+            if(rand.nextDouble() < 0.2) {
+                assertEquals(reference.pollFirst(), tabu.removeFirst());
+            }
+            else {
+                // few distinct actions so that they repeat in the list
+                AlterationAction action = new AlterationActionAddEdge(this.vars[rand.nextInt(2)], this.vars[2 + rand.nextInt(2)]);
+                AlterationAction expected = (reference.size() == capacity) ? reference.removeFirst() : null;
+                reference.addLast(action);
+                assertEquals(expected, tabu.addLast(action));
+            }
+            assertEquals(reference.size(), tabu.size());
+            for(int i = 0 ; i < 2 ; i++) {
+                for(int j = 2 ; j < 4 ; j++) {
+                    AlterationAction probe = new AlterationActionAddEdge(this.vars[i], this.vars[j]);
+                    assertEquals(reference.contains(probe), tabu.contains(probe));
+                }
+            }
+        }
+    }
+}
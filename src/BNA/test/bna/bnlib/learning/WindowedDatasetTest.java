@@ -0,0 +1,176 @@
+// Project: Bayesian networks applications (Master's thesis), BUT FIT 2013
+// Author:  David Chaloupka (xchalo09)
+// Created: 2013/05/22
+
+package bna.bnlib.learning;
+
+import bna.bnlib.*;
+import java.util.Random;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Chaloupka
+ */
+public class WindowedDatasetTest {
+
+    private Variable a, b;
+    private Variable[] vars;
+
+
+    public WindowedDatasetTest() {
+        this.a = new Variable("A", new String[]{"a0", "a1"});
+        this.b = new Variable("B", new String[]{"b0", "b1", "b2"});
+        this.vars = new Variable[] {this.a, this.b};
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    /** Test of addRecord method, the oldest batch must be forgotten when the window is full. */
+    @Test
+    public void testAddRecord_WindowEviction() {
+        System.out.println("addRecord_WindowEviction");
+        WindowedDataset dataset = new WindowedDataset(this.vars, 2, 2);
+        dataset.registerCounts(new Variable[] {this.a});
+        dataset.addRecord(new int[] {0, 0});
+        dataset.addRecord(new int[] {0, 1});
+        dataset.addRecord(new int[] {1, 2});
+        dataset.addRecord(new int[] {1, 0});
+        assertEquals(4, dataset.getRecordCount());
+        dataset.addRecord(new int[] {1, 1}); // the first batch is forgotten
+        assertEquals(3, dataset.getRecordCount());
+        assertEquals(3, dataset.getSize());
+        Factor registered = dataset.computeFactor(new Variable[] {this.a}),
+               counted = dataset.computeFactor(new Variable[] {this.b});
+        assertEquals(0.0, registered.getProbability(0), 0.0);
+        assertEquals(3.0, registered.getProbability(1), 0.0);
+        assertEquals(1.0, counted.getProbability(0), 0.0);
+        assertEquals(1.0, counted.getProbability(1), 0.0);
+        assertEquals(1.0, counted.getProbability(2), 0.0);
+    }
+
+    /**
+     * Test of computeFactors method, counts of the registered scopes must
+     * equal counts of the records of the window weighted by their decay.
+     */
+    @Test
+    public void testComputeFactors_Decayed() {
+        System.out.println("computeFactors_Decayed");
+        double decay = 0.5;
+        WindowedDataset dataset = new WindowedDataset(this.vars, 3, 4, decay),
+                        unregistered = new WindowedDataset(this.vars, 3, 4, decay);
+        Variable[] scope = new Variable[] {this.b, this.a};
+        dataset.registerCounts(scope);
+        Random rand = new Random(7);
+        int[][] records = new int[23][];
+        for(int r = 0 ; r < records.length ; r++) {
+            records[r] = new int[] {rand.nextInt(2), rand.nextInt(3)};
+            dataset.addRecord(records[r]);
+            unregistered.addRecord(records[r]);
+        }
+        // batches of 4 records, the window holds records 12..22 (the newest batch has 3)
+        double[] expected = new double[6];
+        for(int r = 12 ; r < records.length ; r++) {
+            double weight = Math.pow(decay, (records.length - 1) / 4 - r / 4);
+            expected[records[r][1] + 3 * records[r][0]] += weight;
+        }
+        Factor registered = dataset.computeFactor(scope),
+               counted = unregistered.computeFactor(scope),
+               reordered = dataset.computeFactor(new Variable[] {this.a, this.b});
+        for(int i = 0 ; i < expected.length ; i++) {
+            assertEquals(expected[i], registered.getProbability(i), 1e-12);
+            assertEquals(expected[i], counted.getProbability(i), 1e-12);
+        }
+        assertEquals(expected[1], reordered.getProbability(2), 1e-12); // (b1, a0) is on index 2 of (A, B)
+        assertEquals(3 + 4 * decay + 4 * decay * decay, dataset.getEffectiveSize(), 1e-12);
+    }
+
+    /**
+     * Test of exponentialDecay method, the counts decay by each batch
+     * without any window.
+     */
+    @Test
+    public void testExponentialDecay() {
+        System.out.println("exponentialDecay");
+        WindowedDataset dataset = WindowedDataset.exponentialDecay(this.vars, 1, 0.5);
+        dataset.registerCounts(new Variable[] {this.a});
+        for(int r = 0 ; r < 10 ; r++)
+            dataset.addRecord(new int[] {0, 0});
+        dataset.addRecord(new int[] {1, 0});
+        Factor counts = dataset.computeFactor(new Variable[] {this.a});
+        assertEquals(1.0 - Math.pow(0.5, 10), counts.getProbability(0), 1e-12);
+        assertEquals(1.0, counts.getProbability(1), 0.0);
+        assertEquals(11, dataset.getRecordCount());
+        assertEquals(2, dataset.getSize());
+    }
+
+    @Test(expected=BNLibIllegalOperationException.class)
+    public void testExponentialDecay_Unregistered() {
+        System.out.println("exponentialDecay_Unregistered");
+        WindowedDataset dataset = WindowedDataset.exponentialDecay(this.vars, 1, 0.5);
+        dataset.addRecord(new int[] {0, 0});
+        dataset.computeFactor(new Variable[] {this.b});
+    }
+
+    @Test(expected=BNLibIllegalOperationException.class)
+    public void testRegisterCounts_DecayedFail() {
+        System.out.println("registerCounts_DecayedFail");
+        WindowedDataset dataset = WindowedDataset.exponentialDecay(this.vars, 1, 0.5);
+        dataset.addRecord(new int[] {0, 0});
+        dataset.registerCounts(new Variable[] {this.a});
+    }
+
+    /**
+     * Test of endBatch method, the next record starts a new batch even
+     * if the current one isn't full.
+     */
+    @Test
+    public void testEndBatch() {
+        System.out.println("endBatch");
+        WindowedDataset dataset = new WindowedDataset(this.vars, 2, 100, 0.5);
+        dataset.addRecord(new int[] {0, 0});
+        dataset.addRecord(new int[] {0, 0});
+        dataset.endBatch();
+        dataset.endBatch(); // no empty batch
+        dataset.addRecord(new int[] {1, 0});
+        assertEquals(2.0, dataset.getEffectiveSize(), 1e-12);
+        dataset.endBatch();
+        dataset.addRecord(new int[] {1, 1}); // the first batch is forgotten
+        Factor counts = dataset.computeFactor(new Variable[] {this.a});
+        assertEquals(0.0, counts.getProbability(0), 0.0);
+        assertEquals(1.5, counts.getProbability(1), 1e-12);
+        assertEquals(2, dataset.getRecordCount());
+    }
+
+    /** Test of registerCounts method, counts registered later must cover the records of the window. */
+    @Test
+    public void testRegisterCounts_Late() {
+        System.out.println("registerCounts_Late");
+        WindowedDataset dataset = new WindowedDataset(this.vars, 2, 3, 0.5);
+        Random rand = new Random(11);
+        for(int r = 0 ; r < 8 ; r++)
+            dataset.addRecord(new int[] {rand.nextInt(2), rand.nextInt(3)});
+        Variable[] scope = new Variable[] {this.a, this.b};
+        Factor counted = dataset.computeFactor(scope);
+        dataset.registerCounts(scope);
+        Factor registered = dataset.computeFactor(scope);
+        for(int i = 0 ; i < counted.getCardinality() ; i++)
+            assertEquals(counted.getProbability(i), registered.getProbability(i), 1e-12);
+    }
+
+    @Test(expected=BNLibIllegalOperationException.class)
+    public void testCachedDataset_RegisterCountsFail() {
+        System.out.println("cachedDataset_RegisterCountsFail");
+        CachedDataset cached = new CachedDataset(new WindowedDataset(this.vars, 2, 2), 10);
+        cached.registerCounts(new Variable[] {this.a});
+    }
+}